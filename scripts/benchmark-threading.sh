@@ -0,0 +1,51 @@
+#!/usr/bin/env bash
+# Compares the platform thread pool model with the virtual thread profile on POST /v1/sms/send and GET /v1/sms/{id}.
+# Starts the packaged jar once per mode against the local MySQL/Redis/Kafka/Elasticsearch and load tests it with hey
+# (https://github.com/rakyll/hey), which reports the throughput and the latency percentiles (p99 included).
+#
+# Usage: JAVA_HOME=/path/to/jdk21 scripts/benchmark-threading.sh [concurrency] [requests]
+# Needs: mvn package done, hey on the PATH, the usual env variables (see sample.env).
+# The admission control is disabled so that it measures the threading model, not the limiter.
+set -euo pipefail
+
+CONCURRENCY=${1:-400}
+REQUESTS=${2:-50000}
+PORT=8082
+JAR=$(ls target/NotificationSystem-*.jar | head -n 1)
+JAVA=${JAVA_HOME:+$JAVA_HOME/bin/}java
+OUT=target/benchmark
+mkdir -p "$OUT"
+
+BODY='{"phoneNumber":"+919999999999","message":"benchmark"}'
+
+run() {
+  local mode=$1 profiles=$2
+  echo "== $mode (profiles: ${profiles:-default})"
+  "$JAVA" -jar "$JAR" --spring.profiles.active="$profiles" --sms.admission.enabled=false \
+    --logging.level.root=WARN --logging.level.org.springframework.web=WARN > "$OUT/$mode-app.log" 2>&1 &
+  local pid=$!
+  trap "kill $pid 2>/dev/null || true" EXIT
+  until curl -sf "http://localhost:$PORT/actuator/health" > /dev/null; do sleep 1; done
+
+  # Warm up the JIT and the connection pools
+  hey -n 5000 -c 50 -m POST -T application/json -d "$BODY" "http://localhost:$PORT/v1/sms/send" > /dev/null
+
+  hey -n "$REQUESTS" -c "$CONCURRENCY" -m POST -T application/json -d "$BODY" \
+    "http://localhost:$PORT/v1/sms/send" | tee "$OUT/$mode-send.txt"
+  local id
+  id=$(curl -s -X POST -H 'Content-Type: application/json' -d "$BODY" "http://localhost:$PORT/v1/sms/send" | sed -E 's/.*"requestId":"([0-9]+)".*/\1/')
+  hey -n "$REQUESTS" -c "$CONCURRENCY" "http://localhost:$PORT/v1/sms/$id" | tee "$OUT/$mode-get.txt"
+
+  kill "$pid"; wait "$pid" 2>/dev/null || true
+  trap - EXIT
+}
+
+run platform-threads ""
+run virtual-threads "virtual-threads"
+
+echo "== Summary (requests/sec, p99)"
+for f in "$OUT"/*-send.txt "$OUT"/*-get.txt; do
+  printf '%-40s %12s %12s\n' "$(basename "$f" .txt)" \
+    "$(awk '/Requests\/sec/ {print $2}' "$f")" \
+    "$(awk '/99% in/ {print $3}' "$f")"
+done
@@ -35,6 +35,12 @@ public class ElasticsearchClientConfig {
     @Value("${elasticsearch.password}")
     private String password;
 
+    @Value("${elasticsearch.max-connections}")
+    private int maxConnections;
+
+    @Value("${elasticsearch.max-connections-per-route}")
+    private int maxConnectionsPerRoute;
+
     @Bean(destroyMethod = "close")
     public RestHighLevelClient elasticSearchClient() {
 
@@ -42,7 +48,10 @@ public class ElasticsearchClientConfig {
         credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(userName, password));
 
         RestClientBuilder builder = RestClient.builder(new HttpHost(host, port, protocol))
-                .setHttpClientConfigCallback(httpClientBuilder -> httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider))
+                .setHttpClientConfigCallback(httpClientBuilder -> httpClientBuilder
+                        .setDefaultCredentialsProvider(credentialsProvider)
+                        .setMaxConnTotal(maxConnections)
+                        .setMaxConnPerRoute(maxConnectionsPerRoute))
                 .setDefaultHeaders(compatibilityHeaders());
         RestHighLevelClient client = new RestHighLevelClient(builder);
         return client;
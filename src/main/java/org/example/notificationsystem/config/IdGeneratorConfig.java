@@ -0,0 +1,25 @@
+package org.example.notificationsystem.config;
+
+import org.example.notificationsystem.utils.SnowflakeIdGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Exposes the node's {@link SnowflakeIdGenerator}, for callers that need ids (or whole batches of ids) up front.
+ * It is the same instance the SnowflakeIdentifierGenerator of the entities uses, so the ids never collide.
+ */
+@Configuration
+public class IdGeneratorConfig {
+
+    @Value("${spring.jpa.properties.sms.id.node-id}")
+    private String nodeId;
+
+    @Value("${spring.jpa.properties.sms.id.multi-node}")
+    private boolean multiNode;
+
+    @Bean
+    public SnowflakeIdGenerator snowflakeIdGenerator() {
+        return SnowflakeIdGenerator.forConfiguredNode(nodeId, multiNode);
+    }
+}
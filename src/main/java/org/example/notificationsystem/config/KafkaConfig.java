@@ -3,6 +3,8 @@ package org.example.notificationsystem.config;
 import org.apache.kafka.clients.admin.AdminClient;
 import org.apache.kafka.clients.admin.AdminClientConfig;
 import org.apache.kafka.clients.admin.NewTopic;
+import org.example.notificationsystem.kafka.PriorityLanes;
+import org.example.notificationsystem.kafka.RetryTopics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -11,6 +13,7 @@ import org.springframework.kafka.core.KafkaAdmin;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Configuration
@@ -59,4 +62,32 @@ public class KafkaConfig {
                 .build();
     }
 
+    /**
+     * The priority lanes besides the Sms Request topic (see PriorityLanes).
+     */
+    @Bean
+    public KafkaAdmin.NewTopics priorityLaneTopics(PriorityLanes priorityLanes) {
+        List<NewTopic> topics = new ArrayList<>();
+        for (String topic : priorityLanes.getLaneTopics()) {
+            topics.add(TopicBuilder.name(topic).partitions(numPartitions).replicas(numReplicas).build());
+        }
+        return new KafkaAdmin.NewTopics(topics.toArray(new NewTopic[0]));
+    }
+
+    /**
+     * The retry tiers, when the retries are enabled, and the dead-letter topic of the Sms Request topic (see RetryTopics).
+     * The dead-letter topic is always created: the records whose handling failed are parked there either way.
+     */
+    @Bean
+    public KafkaAdmin.NewTopics retryTopics(RetryTopics retryTopics) {
+        List<NewTopic> topics = new ArrayList<>();
+        if (retryTopics.isEnabled()) {
+            for (String topic : retryTopics.getTopics()) {
+                topics.add(TopicBuilder.name(topic).partitions(numPartitions).replicas(numReplicas).build());
+            }
+        }
+        topics.add(TopicBuilder.name(retryTopics.getDeadLetterTopic()).partitions(numPartitions).replicas(numReplicas).build());
+        return new KafkaAdmin.NewTopics(topics.toArray(new NewTopic[0]));
+    }
+
 }
@@ -2,6 +2,8 @@ package org.example.notificationsystem.config;
 
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.common.serialization.LongDeserializer;
+import org.example.notificationsystem.kafka.SmsMessagePayload;
+import org.example.notificationsystem.kafka.SmsMessagePayloadDeserializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -10,9 +12,13 @@ import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 
 // https://docs.spring.io/spring-kafka/reference/kafka/receiving-messages/listener-annotation.html
@@ -26,23 +32,101 @@ public class KafkaConsumerConfig {
     @Value("${spring.kafka.consumer.group-id}")
     private String groupId;
 
+    @Value("${sms.consumer.batch.max-poll-records}")
+    private int batchMaxPollRecords;
+
+    @Value("${sms.status.write-behind.enabled}")
+    private boolean statusWriteBehind;
+
+    @Value("${sms.provider.dispatch.enabled}")
+    private boolean smsDispatch;
+
+    @Value("${sms.retry.max-poll-records}")
+    private int retryMaxPollRecords;
+
+    @Value("${sms.status.write-threads}")
+    private int statusWriteThreads;
+
+    @Value("${sms.consumer.throttled-threads}")
+    private int throttledThreads;
+
     @Bean("SmsRequestConsumerFactory")
-    public ConsumerFactory<Long, Long> createOrderConsumerFactory() {
+    public ConsumerFactory<Long, SmsMessagePayload> createOrderConsumerFactory() {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, LongDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, LongDeserializer.class);
+        // Reads both the payload and the legacy id-only records. A record that can not be read is logged and skipped
+        // by the container instead of failing the poll loop forever.
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
+        props.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, SmsMessagePayloadDeserializer.class);
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
         return new DefaultKafkaConsumerFactory<>(props);
     }
 
     @Bean("SmsRequestConcurrentListenerFactory")
-    public ConcurrentKafkaListenerContainerFactory<Long, Long> createOrderKafkaListenerContainerFactory() {
-        ConcurrentKafkaListenerContainerFactory<Long, Long> factory =
+    public ConcurrentKafkaListenerContainerFactory<Long, SmsMessagePayload> createOrderKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<Long, SmsMessagePayload> factory =
                 new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(createOrderConsumerFactory());
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        // With the status write-behind (or the micro-batching), records are acked from the flusher (or dispatcher) thread
+        // once their status is durable, so acks arrive out of order. The container then only commits up to the first
+        // record not acked yet.
+        factory.getContainerProperties().setAsyncAcks(statusWriteBehind || smsDispatch);
+        return factory;
+    }
+
+    /**
+     * Batch listener variant (see BatchConsumer): the listener gets every record of a poll at once and commits the
+     * offsets of the batch with a single acknowledgement.
+     */
+    @Bean("SmsRequestBatchListenerFactory")
+    public ConcurrentKafkaListenerContainerFactory<Long, SmsMessagePayload> createBatchKafkaListenerContainerFactory() {
+        Map<String, Object> props = new HashMap<>(createOrderConsumerFactory().getConfigurationProperties());
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, batchMaxPollRecords);
+
+        ConcurrentKafkaListenerContainerFactory<Long, SmsMessagePayload> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(props));
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
         return factory;
     }
-}
\ No newline at end of file
+
+    /**
+     * Retry tier variant (see RetryConsumer): records not due yet are nacked, which pauses the partitions for the
+     * remaining delay. Small polls keep the number of records fetched again after a nack low.
+     */
+    @Bean("SmsRetryListenerFactory")
+    public ConcurrentKafkaListenerContainerFactory<Long, SmsMessagePayload> createRetryKafkaListenerContainerFactory() {
+        Map<String, Object> props = new HashMap<>(createOrderConsumerFactory().getConfigurationProperties());
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, retryMaxPollRecords);
+        // The retry topics only hold records written after a failure, none may be skipped
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+
+        ConcurrentKafkaListenerContainerFactory<Long, SmsMessagePayload> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(props));
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        return factory;
+    }
+
+    /**
+     * Writes the status of the records whose send completes on a dispatch sender (see SmsRecordHandler), with the
+     * write-behind disabled: the UPDATE is a blocking MySQL round trip that must not hold the senders.
+     */
+    @Bean(name = "statusWriteExecutor", destroyMethod = "shutdown")
+    public ExecutorService statusWriteExecutor() {
+        return Executors.newFixedThreadPool(statusWriteThreads);
+    }
+
+    /**
+     * Holds the records of the Consumer whose route is out of send tokens while out of order acks are enabled (they
+     * can not be nacked), and handles them once the wait is over, off the listener threads.
+     */
+    @Bean(name = "throttledRecordExecutor", destroyMethod = "shutdown")
+    public ScheduledExecutorService throttledRecordExecutor() {
+        return Executors.newScheduledThreadPool(throttledThreads);
+    }
+}
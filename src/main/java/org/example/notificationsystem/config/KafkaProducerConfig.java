@@ -3,12 +3,15 @@ package org.example.notificationsystem.config;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.LongSerializer;
+import org.example.notificationsystem.kafka.SmsMessagePayloadSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Configuration
 public class KafkaProducerConfig {
@@ -16,15 +19,43 @@ public class KafkaProducerConfig {
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    /*
+    Batching knobs. A batch of a few bytes holds a single record, so every send becomes its own broker request.
+    See the "high-throughput" profile for values tuned for bursts.
+    */
+    @Value("${sms.kafka.producer.batch-size}")
+    private int batchSize;
+
+    @Value("${sms.kafka.producer.linger-ms}")
+    private int lingerMs;
+
+    @Value("${sms.kafka.producer.compression-type}")
+    private String compressionType;
+
+    @Value("${sms.kafka.producer.buffer-memory}")
+    private long bufferMemory;
+
+    @Value("${sms.kafka.producer.callback-threads}")
+    private int callbackThreads;
+
+    /**
+     * Keep writing the legacy id-only records while consumers that can not read the payload are still running.
+     */
+    @Value("${sms.kafka.payload.legacy-format}")
+    private boolean legacyPayloadFormat;
+
     @Bean
     public <K, V> KafkaProducer<K, V> createOrderProducerFactory() {
         Map<String, Object> config = new HashMap<>();
         config.put(org.apache.kafka.clients.producer.ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         config.put(org.apache.kafka.clients.producer.ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, LongSerializer.class);
-        config.put(org.apache.kafka.clients.producer.ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, LongSerializer.class);
+        config.put(org.apache.kafka.clients.producer.ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, SmsMessagePayloadSerializer.class);
+        config.put(SmsMessagePayloadSerializer.LEGACY_FORMAT_CONFIG, legacyPayloadFormat);
         config.put(org.apache.kafka.clients.producer.ProducerConfig.ACKS_CONFIG, "all");
-        config.put(org.apache.kafka.clients.producer.ProducerConfig.LINGER_MS_CONFIG, 5);
-        config.put(ProducerConfig.BATCH_SIZE_CONFIG, 50);
+        config.put(org.apache.kafka.clients.producer.ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        config.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+        config.put(ProducerConfig.BUFFER_MEMORY_CONFIG, bufferMemory);
         config.put(org.apache.kafka.clients.producer.ProducerConfig.RETRIES_CONFIG, 100);
         config.put(ProducerConfig.RETRY_BACKOFF_MS_CONFIG, 100);
         config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
@@ -36,4 +67,12 @@ public class KafkaProducerConfig {
         config.put(ProducerConfig.REQUEST_TIMEOUT_MS_CONFIG, 30000);
         return new KafkaProducer<>(config);
     }
+
+    /**
+     * Runs the follow-up work of async publishes (ex: marking a request FAILED) off the producer's I/O thread.
+     */
+    @Bean(name = "publishCallbackExecutor", destroyMethod = "shutdown")
+    public ExecutorService publishCallbackExecutor() {
+        return Executors.newFixedThreadPool(callbackThreads);
+    }
 }
\ No newline at end of file
@@ -1,11 +1,17 @@
 package org.example.notificationsystem.config;
 
+import org.example.notificationsystem.constants.RedisConstants;
+import org.example.notificationsystem.services.impl.BlacklistServiceImpl;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.nio.charset.StandardCharsets;
+
 @Configuration
 public class RedisConfig {
 
@@ -19,4 +25,17 @@ public class RedisConfig {
         template.setValueSerializer(StringRedisSerializer.UTF_8);
         return template;
     }
-}
\ No newline at end of file
+
+    /**
+     * Subscribes to the blacklist changes published by every node, to keep the blacklist mirror of this one coherent.
+     * The container resubscribes on its own after a connection loss.
+     */
+    @Bean
+    public RedisMessageListenerContainer blacklistInvalidationListenerContainer(RedisConnectionFactory connectionFactory, BlacklistServiceImpl blacklistServiceImpl) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener((message, pattern) -> blacklistServiceImpl.onChange(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(RedisConstants.blacklist_changes_channel));
+        return container;
+    }
+}
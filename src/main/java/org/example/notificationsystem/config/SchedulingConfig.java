@@ -0,0 +1,30 @@
+package org.example.notificationsystem.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Enables the @Scheduled background jobs (ex: the outbox relay), run by a pool of spring.task.scheduling.pool.size
+ * threads.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+    /**
+     * Runs the release of the scheduled Sms Requests (see SmsScheduleServiceImpl) every tick on a thread of its own:
+     * it blocks on Kafka, which must not delay the @Scheduled jobs.
+     */
+    @Bean(name = "scheduleReleaseExecutor", destroyMethod = "shutdown")
+    public ScheduledExecutorService scheduleReleaseExecutor() {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sms-schedule-release");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,53 @@
+package org.example.notificationsystem.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Opt-in virtual thread mode (sms.virtual-threads.enabled=true, see the virtual-threads profile).
+ * <p>
+ * Tomcat handles every request on its own virtual thread instead of a pooled platform thread, so the blocking
+ * JDBC, Redis, Elasticsearch and Kafka calls made by the services park a cheap virtual thread and concurrency is
+ * bounded by the connection pools instead of server.tomcat.threads.max. The Spring task executor (@Async) uses
+ * virtual threads as well.
+ * <p>
+ * The project still compiles for Java 8, so the executor is looked up reflectively and the mode needs a JDK 21+
+ * runtime. Startup fails if it is enabled on an older JDK.
+ */
+@Configuration
+@ConditionalOnProperty(name = "sms.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    @Bean(name = "virtualThreadExecutor", destroyMethod = "shutdown")
+    public ExecutorService virtualThreadExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            logger.info("Running request handling on virtual threads (Java {})", System.getProperty("java.version"));
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("sms.virtual-threads.enabled requires a Java 21+ runtime, running on Java " + System.getProperty("java.version"), e);
+        }
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME, "taskExecutor"})
+    public AsyncTaskExecutor applicationTaskExecutor(ExecutorService virtualThreadExecutor) {
+        return new TaskExecutorAdapter(virtualThreadExecutor);
+    }
+}
@@ -0,0 +1,38 @@
+package org.example.notificationsystem.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Per endpoint timeouts of the asynchronous (ex: StreamingResponseBody) responses.
+ * <p>
+ * An endpoint that streams for longer than spring.mvc.async.request-timeout sets its own timeout (ms) in the
+ * ASYNC_TIMEOUT_ATTRIBUTE request attribute, applied when its asynchronous processing starts. The other endpoints keep
+ * the default timeout.
+ */
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    public static final String ASYNC_TIMEOUT_ATTRIBUTE = WebMvcConfig.class.getName() + ".asyncTimeout";
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.registerCallableInterceptors(new CallableProcessingInterceptor() {
+            @Override
+            public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+                Object timeoutMs = request.getAttribute(ASYNC_TIMEOUT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+                // Called before the asynchronous processing starts, while its timeout may still be changed
+                if (timeoutMs instanceof Long && request instanceof AsyncWebRequest) {
+                    ((AsyncWebRequest) request).setTimeout((Long) timeoutMs);
+                }
+            }
+        });
+    }
+}
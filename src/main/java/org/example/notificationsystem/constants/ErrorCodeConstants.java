@@ -10,7 +10,11 @@ public enum ErrorCodeConstants {
     /**
      * Used to indicate that the request is invalid.
      */
-    INVALID_REQUEST(0);
+    INVALID_REQUEST(0),
+    /**
+     * Used to indicate that the request was saved but could not be queued for sending.
+     */
+    PUBLISH_FAILED(1);
 
     private final int code;
 
@@ -34,7 +34,23 @@ public enum FailureCodeConstants {
     /**
      * The Sms Request is still being handled.
      */
-    IN_PROGRESS(6);
+    IN_PROGRESS(6),
+    /**
+     * The Sms Request could not be published to Kafka.
+     */
+    QUEUE_PUBLISH_FAILED(7),
+    /**
+     * The External API was not called: it is failing or saturated (see ProviderGuard).
+     */
+    EXTERNAL_API_UNAVAILABLE(8),
+    /**
+     * The External API kept refusing the request for exceeding its rate limit (HTTP 429).
+     */
+    EXTERNAL_API_THROTTLED(9),
+    /**
+     * The same message was sent to the same phone number within the dedup window, the copy was dropped.
+     */
+    DUPLICATE_MESSAGE(10);
 
     private final int code;
 
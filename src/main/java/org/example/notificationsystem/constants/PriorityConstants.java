@@ -0,0 +1,29 @@
+package org.example.notificationsystem.constants;
+
+/**
+ * An enum to represent the priority of an SmsRequest, which decides the Kafka topic (lane) it is sent through.
+ * Persisted (and carried by the Kafka records) as the ordinal, new values must be added at the end.
+ */
+public enum PriorityConstants {
+    /**
+     * Regular traffic (the default), on the Sms Request topic.
+     */
+    NORMAL,
+    /**
+     * Time-critical traffic (ex: OTPs), on the -high lane, served first.
+     */
+    HIGH,
+    /**
+     * Bulk traffic (ex: marketing campaigns), on the -bulk lane, served last but never starved.
+     */
+    BULK;
+
+    /**
+     * @param ordinal A persisted priority, null for the rows written before priorities existed.
+     * @return The priority, NORMAL if unknown.
+     */
+    public static PriorityConstants of(Integer ordinal) {
+        PriorityConstants[] values = values();
+        return ordinal == null || ordinal < 0 || ordinal >= values.length ? NORMAL : values[ordinal];
+    }
+}
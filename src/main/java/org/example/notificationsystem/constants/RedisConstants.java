@@ -9,4 +9,24 @@ public final class RedisConstants {
      * The key of the SET containing all blacklisted phone numbers.
      */
     public static final String blacklisted_key = "blacklisted";
-}
\ No newline at end of file
+    /**
+     * Prefix of the keys holding the request id created for a client's Idempotency-Key.
+     */
+    public static final String idempotency_key_prefix = "idempotency:";
+    /**
+     * Prefix of the HASHes holding the token buckets of the send throttling (see SendThrottleService).
+     */
+    public static final String throttle_key_prefix = "throttle:";
+    /**
+     * Prefix of the time-bucketed SETs holding the content hashes of the recent Sms Requests, dedup:{shard}:window (see DuplicateSuppressionService).
+     */
+    public static final String dedup_key_prefix = "dedup:";
+    /**
+     * Pub/sub channel of the blacklist changes, which every node applies to its mirror of the blacklist (see BlacklistServiceImpl).
+     */
+    public static final String blacklist_changes_channel = "blacklist:changes";
+    /**
+     * The counter incremented with every change of the blacklist, a node loads the whole set again when it moved.
+     */
+    public static final String blacklist_version_key = "blacklist:version";
+}
@@ -26,7 +26,16 @@ public enum ThirdPartyApiResponseCode {
     /**
      * The endpoint which is being requested is malformed.
      */
-    MALFORMED_URL(4);
+    MALFORMED_URL(4),
+    /**
+     * The request was not sent: the circuit breaker is open or the concurrency limit is reached (see ProviderGuard).
+     */
+    REJECTED(5),
+    /**
+     * The rate limit of the route or of the gateway is reached: the gateway answered 429, or no gateway of the route
+     * had tokens left (see SendThrottleService).
+     */
+    THROTTLED(6);
 
     private final int code;
 
@@ -0,0 +1,32 @@
+package org.example.notificationsystem.controllers;
+
+import org.example.notificationsystem.services.impl.AdmissionControlServiceImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Actuator endpoint exposing the state of the admission control.
+ * <ul>
+ *     <li><b>GET /actuator/admission</b>: Current global rate, pipeline measurements and tracked clients</li>
+ * </ul>
+ */
+@Component
+@Endpoint(id = "admission")
+public class AdmissionControlEndpoint {
+
+    private final AdmissionControlServiceImpl admissionControlServiceImpl;
+
+    @Autowired
+    public AdmissionControlEndpoint(AdmissionControlServiceImpl admissionControlServiceImpl) {
+        this.admissionControlServiceImpl = admissionControlServiceImpl;
+    }
+
+    @ReadOperation
+    public Map<String, Object> admission() {
+        return admissionControlServiceImpl.getState();
+    }
+}
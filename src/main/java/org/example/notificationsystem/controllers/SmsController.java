@@ -1,24 +1,47 @@
 package org.example.notificationsystem.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.example.notificationsystem.config.WebMvcConfig;
 import org.example.notificationsystem.constants.ErrorCodeConstants;
+import org.example.notificationsystem.constants.PriorityConstants;
+import org.example.notificationsystem.constants.StatusConstants;
 import org.example.notificationsystem.dto.request.ElasticSearchRequest;
+import org.example.notificationsystem.dto.request.SmsBatchRequest;
 import org.example.notificationsystem.dto.response.*;
+import org.example.notificationsystem.exception.AdmissionRejectedException;
+import org.example.notificationsystem.exception.DuplicateMessageException;
+import org.example.notificationsystem.exception.IdempotencyKeyInProgressException;
+import org.example.notificationsystem.exception.IdempotencyKeyMismatchException;
+import org.example.notificationsystem.models.AdmissionDecision;
 import org.example.notificationsystem.models.SmsRequest;
 import org.example.notificationsystem.models.SmsRequestElasticsearch;
+import org.example.notificationsystem.services.impl.AdmissionControlServiceImpl;
+import org.example.notificationsystem.services.impl.IdempotencyServiceImpl;
 import org.example.notificationsystem.services.impl.SmsServiceImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.Principal;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.Optional;
+import java.time.format.DateTimeParseException;
+import java.util.*;
 
 import static org.example.notificationsystem.constants.Time.MAX_DATE;
 import static org.example.notificationsystem.utils.NotificationSystemUtils.parseIstToUtcDate;
@@ -35,8 +58,10 @@ import static org.example.notificationsystem.utils.NotificationSystemUtils.parse
  *     <li><b>GET /v1/sms/failed</b>: Get all failed Sms Requests data from MySQL</li>
  *     <li><b>GET /v1/sms/elasticsearch/all</b>: Get all Sms Requests data from Elastic Search</li>
  *     <li><b>GET /v1/sms/pageable/elasticsearch</b>: Get requested Sms Requested data from Elastic Search</li>
+ *     <li><b>GET /v1/sms/export</b>: Stream the Sms Requests (optionally filtered by status and creation time) from MySQL as NDJSON</li>
  *     <li><b>GET /v1/sms/{request_id}</b>: Get the requested Sms Request from MySQL</li>
  *     <li><b>POST /v1/sms/send</b>: Initiate an Sms Request</li>
+ *     <li><b>POST /v1/sms/send/batch</b>: Initiate a batch of Sms Requests</li>
  *     <li><b></b></li>
  * </ul>
  */
@@ -44,22 +69,54 @@ import static org.example.notificationsystem.utils.NotificationSystemUtils.parse
 public class SmsController {
 
     private static final Logger logger = LoggerFactory.getLogger(SmsController.class);
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
     private final SmsServiceImpl smsServiceImpl;
+    private final IdempotencyServiceImpl idempotencyServiceImpl;
+    private final AdmissionControlServiceImpl admissionControlServiceImpl;
+    private final Validator validator;
+    private final ObjectWriter smsRequestWriter;
+    private final int maxBatchSize;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    private final long exportTimeoutMs;
 
     @Autowired
-    public SmsController(SmsServiceImpl smsServiceImpl) {
+    public SmsController(SmsServiceImpl smsServiceImpl,
+                         IdempotencyServiceImpl idempotencyServiceImpl,
+                         AdmissionControlServiceImpl admissionControlServiceImpl,
+                         Validator validator,
+                         ObjectMapper objectMapper,
+                         @Value("${sms.batch.max-size}") int maxBatchSize,
+                         @Value("${sms.page.default-size}") int defaultPageSize,
+                         @Value("${sms.page.max-size}") int maxPageSize,
+                         @Value("${sms.export.timeout-ms}") long exportTimeoutMs) {
         this.smsServiceImpl = smsServiceImpl;
+        this.idempotencyServiceImpl = idempotencyServiceImpl;
+        this.admissionControlServiceImpl = admissionControlServiceImpl;
+        this.validator = validator;
+        this.smsRequestWriter = objectMapper.writerFor(SmsRequest.class);
+        this.maxBatchSize = maxBatchSize;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.exportTimeoutMs = exportTimeoutMs;
     }
 
     /**
      * Return all the Sms Request data in MySQL using smsServiceImpl.
+     * If limit or cursor is given, returns one page (see getSmsRequestsPage) instead of everything.
      *
-     * @return ResponseEntity<GetAllSmsResponse> if success
+     * @return ResponseEntity<GetAllSmsResponse> (ResponseEntity<GetSmsPageResponse> if paginated) if success
      * @return ResponseEntity<ErrorResponse> otherwise
      */
     @GetMapping("/v1/sms/all")
-    public ResponseEntity<?> getAllSmsRequests() {
+    public ResponseEntity<?> getAllSmsRequests(
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
         logger.info("GET /v1/sms/all called");
+        if (limit != null || cursor != null) {
+            return getSmsRequestsPage(null, limit, cursor);
+        }
         try {
             List<SmsRequest> smsRequests = this.smsServiceImpl.getAllSmsRequests();
             logger.info("Fetched {} SMS requests", smsRequests.size());
@@ -77,13 +134,20 @@ public class SmsController {
 
     /**
      * Return all the Sms Request data of finished requests in MySQL using smsServiceImpl.
+     * If limit or cursor is given, returns one page (see getSmsRequestsPage) instead of everything.
      *
-     * @return ResponseEntity<GetAllSmsResponse> if success
+     * @return ResponseEntity<GetAllSmsResponse> (ResponseEntity<GetSmsPageResponse> if paginated) if success
      * @return ResponseEntity<ErrorResponse> otherwise
      */
     @GetMapping("/v1/sms/finished")
-    public ResponseEntity<?> getFinishedSmsRequests() {
+    public ResponseEntity<?> getFinishedSmsRequests(
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
         logger.info("GET /v1/sms/finished called");
+        if (limit != null || cursor != null) {
+            return getSmsRequestsPage(StatusConstants.FINISHED, limit, cursor);
+        }
         try {
             List<SmsRequest> finishedSmsRequests = this.smsServiceImpl.getFinishedSmsRequests();
             logger.info("Fetched {} finished SMS requests", finishedSmsRequests.size());
@@ -101,13 +165,20 @@ public class SmsController {
 
     /**
      * Return all the Sms Request data of in progress requests in MySQL using smsServiceImpl.
+     * If limit or cursor is given, returns one page (see getSmsRequestsPage) instead of everything.
      *
-     * @return ResponseEntity<GetAllSmsResponse> if success
+     * @return ResponseEntity<GetAllSmsResponse> (ResponseEntity<GetSmsPageResponse> if paginated) if success
      * @return ResponseEntity<ErrorResponse> otherwise
      */
     @GetMapping("/v1/sms/in_progress")
-    public ResponseEntity<?> getInProgressSmsRequests() {
+    public ResponseEntity<?> getInProgressSmsRequests(
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
         logger.info("GET /v1/sms/in_progress called");
+        if (limit != null || cursor != null) {
+            return getSmsRequestsPage(StatusConstants.IN_PROGRESS, limit, cursor);
+        }
         try {
             List<SmsRequest> inProgressSmsRequests = this.smsServiceImpl.getInProgressSmsRequests();
             logger.info("Fetched {} in-progress SMS requests", inProgressSmsRequests.size());
@@ -125,13 +196,20 @@ public class SmsController {
 
     /**
      * Return all the Sms Request data of failed requests in MySQL using smsServiceImpl.
+     * If limit or cursor is given, returns one page (see getSmsRequestsPage) instead of everything.
      *
-     * @return ResponseEntity<GetAllSmsResponse> if success
+     * @return ResponseEntity<GetAllSmsResponse> (ResponseEntity<GetSmsPageResponse> if paginated) if success
      * @return ResponseEntity<ErrorResponse> otherwise
      */
     @GetMapping("/v1/sms/failed")
-    public ResponseEntity<?> getFailedSmsRequests() {
+    public ResponseEntity<?> getFailedSmsRequests(
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
         logger.info("GET /v1/sms/failed called");
+        if (limit != null || cursor != null) {
+            return getSmsRequestsPage(StatusConstants.FAILED, limit, cursor);
+        }
         try {
             List<SmsRequest> failedSmsRequests = this.smsServiceImpl.getFailedSmsRequests();
             logger.info("Fetched {} failed SMS requests", failedSmsRequests.size());
@@ -147,6 +225,32 @@ public class SmsController {
         }
     }
 
+    /**
+     * Returns one page of the Sms Requests in MySQL (optionally with the given status) ordered by (createdAt, id), using smsServiceImpl.
+     * Keyset pagination: the nextCursor of a page is passed as the cursor of the next request, so deep pages cost the
+     * same as the first one and rows inserted meanwhile do not shift the pages.
+     *
+     * @return ResponseEntity<GetSmsPageResponse> if success
+     * @return ResponseEntity<ErrorResponse> otherwise
+     */
+    private ResponseEntity<?> getSmsRequestsPage(StatusConstants status, Integer limit, String cursor) {
+        int pageSize = limit == null ? defaultPageSize : limit;
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message("limit must be between 1 and " + maxPageSize).build());
+        }
+        try {
+            GetSmsPageResponse page = this.smsServiceImpl.getSmsRequestsPage(status, cursor, pageSize);
+            logger.info("Fetched page of {} SMS requests with status {}", page.getData().size(), status);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid cursor: {}", cursor);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message("Invalid cursor").build());
+        } catch (Exception e) {
+            logger.error("Error fetching page of SMS requests", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message("SERVER ERROR").build());
+        }
+    }
+
     /**
      * Return all the Sms Request data in Elastic Search of the as per the query in ElasticSearchRequest query using smsServiceImpl.
      * Checks if the
@@ -166,6 +270,56 @@ public class SmsController {
         }
     }
 
+    /**
+     * Streams the Sms Requests in MySQL as NDJSON (one JSON object per line) using smsServiceImpl.
+     * Unlike the listing endpoints above, rows are read through a streaming cursor and written to the response as they
+     * arrive, so memory use does not depend on the number of rows. The response may stream for sms.export.timeout-ms
+     * (see WebMvcConfig), instead of the default timeout of the asynchronous requests.
+     *
+     * @param status Optional status filter (IN_PROGRESS, FINISHED or FAILED).
+     * @param from   Optional start of the creation time range, "dd-MM-yyyy HH:mm:ss" in IST (inclusive).
+     * @param to     Optional end of the creation time range, "dd-MM-yyyy HH:mm:ss" in IST (exclusive).
+     * @return ResponseEntity<StreamingResponseBody> if success
+     * @return ResponseEntity<ErrorResponse> otherwise
+     */
+    @GetMapping("/v1/sms/export")
+    public ResponseEntity<?> exportSmsRequests(
+            @RequestParam(value = "status", required = false) String status,
+            @RequestParam(value = "from", required = false) String from,
+            @RequestParam(value = "to", required = false) String to,
+            HttpServletRequest httpServletRequest
+    ) {
+        logger.info("GET /v1/sms/export called with status: {}, from: {}, to: {}", status, from, to);
+        StatusConstants statusFilter;
+        Date fromDate;
+        Date toDate;
+        try {
+            statusFilter = status == null ? null : StatusConstants.valueOf(status.toUpperCase());
+            fromDate = from == null ? Date.from(Instant.EPOCH) : parseIstToUtcDate(from);
+            toDate = parseIstToUtcDate(to == null ? MAX_DATE : to);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            logger.warn("Invalid export filters status: {}, from: {}, to: {}", status, from, to);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message("status must be one of " + Arrays.toString(StatusConstants.values()) + " and from/to must be dd-MM-yyyy HH:mm:ss").build());
+        }
+
+        httpServletRequest.setAttribute(WebMvcConfig.ASYNC_TIMEOUT_ATTRIBUTE, exportTimeoutMs);
+        StreamingResponseBody body = outputStream -> {
+            OutputStream out = new BufferedOutputStream(outputStream, 64 * 1024);
+            long count = this.smsServiceImpl.streamSmsRequests(statusFilter, fromDate, toDate, smsRequest -> {
+                try {
+                    out.write(smsRequestWriter.writeValueAsBytes(smsRequest));
+                    out.write('\n');
+                } catch (IOException e) {
+                    // Client went away, abort the query
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+            logger.info("Exported {} SMS requests", count);
+        };
+        return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(body);
+    }
+
     /**
      * Return the Sms Request in MySQL having the request_id smsServiceImpl.
      * Checks if the
@@ -203,6 +357,12 @@ public class SmsController {
 
     /**
      * Initiates an Sms Request using smsServiceImpl.
+     * Answers 202 Accepted instead of 200 when the service publishes to Kafka after returning (async publish or outbox).
+     * If an Idempotency-Key header is given, a repeated key returns the id of the original request and 409 is returned
+     * while the original request is still being created. A key reused with a different body is answered 422.
+     * Answers 429 with a Retry-After header when the client or the pipeline is over its admission rate.
+     * A templated Sms (templateId and params instead of a message) is answered 400 if the template does not exist or
+     * the params do not match it.
      *
      * @return ResponseEntity<SmsRequestResponse> if success
      * @return ResponseEntity<ErrorResponse> otherwise
@@ -210,12 +370,47 @@ public class SmsController {
     @PostMapping("/v1/sms/send")
     @ResponseStatus(HttpStatus.CREATED)
     public ResponseEntity<?> sendSmsRequest(
-            @Valid @RequestBody org.example.notificationsystem.dto.request.SmsRequest smsRequest
+            @Valid @RequestBody org.example.notificationsystem.dto.request.SmsRequest smsRequest,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            HttpServletRequest httpServletRequest
     ) {
         logger.info("POST /v1/sms/send called with request: {}", smsRequest);
+        if (idempotencyKey != null && (idempotencyKey.isEmpty() || idempotencyKey.length() > 255)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message("Idempotency-Key must be between 1 and 255 characters").build());
+        }
+        Date sendAt;
+        try {
+            sendAt = smsRequest.getSendAt() == null ? null : parseIstToUtcDate(smsRequest.getSendAt());
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message("sendAt is not a valid time").build());
+        }
+        String clientId = resolveClientId(httpServletRequest);
         try {
-            String requestId = this.smsServiceImpl.createSmsRequest(smsRequest.getPhoneNumber(), smsRequest.getMessage()).getId().toString();
+            String requestId;
+            if (idempotencyKey != null) {
+                // A retry with the same key gets the original request id back without creating anything, or being
+                // admitted: only the call that creates the request takes a permit.
+                String fingerprint = IdempotencyServiceImpl.fingerprint(smsRequest.getPhoneNumber(), smsRequest.getMessage(), smsRequest.getTemplateId(),
+                        smsRequest.getParams() == null ? null : new TreeMap<>(smsRequest.getParams()), smsRequest.getPriority(), smsRequest.getSendAt());
+                requestId = this.idempotencyServiceImpl.getOrCreate(idempotencyKey, fingerprint, () -> admitAndCreateSmsRequest(clientId, smsRequest, sendAt));
+            } else {
+                requestId = admitAndCreateSmsRequest(clientId, smsRequest, sendAt);
+            }
             logger.info("Successfully created SMS request with ID: {}", requestId);
+            if (this.smsServiceImpl.isPublishDeferred() || sendAt != null) {
+                // Not queued yet (handed to the Kafka producer, written to the outbox or scheduled).
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(SmsRequestResponse
+                        .builder()
+                        .data(
+                                DataResponse
+                                        .builder()
+                                        .requestId(requestId)
+                                        .comments("Accepted")
+                                        .build()
+                        )
+                        .build()
+                );
+            }
             return ResponseEntity.ok(SmsRequestResponse
                     .builder()
                     .data(
@@ -227,9 +422,141 @@ public class SmsController {
                     )
                     .build()
             );
+        } catch (AdmissionRejectedException e) {
+            return tooManyRequests(e.getAdmissionDecision());
+        } catch (IdempotencyKeyInProgressException e) {
+            logger.warn("SMS request with Idempotency-Key {} is still in progress", idempotencyKey);
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message(e.getMessage()).build());
+        } catch (IdempotencyKeyMismatchException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message(e.getMessage()).build());
+        } catch (DuplicateMessageException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(ErrorResponse.builder().code(e.getFailureCode().name()).message(e.getMessage()).build());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid templated SMS request: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message(e.getMessage()).build());
         } catch (Exception e) {
             logger.error("Error sending SMS request", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message("SERVER ERROR").build());
         }
     }
+
+    /**
+     * @return The id of the Sms Request created from the request body, with its message or from its template.
+     * @throws AdmissionRejectedException If the client or the pipeline is over its admission rate.
+     */
+    private String admitAndCreateSmsRequest(String clientId, org.example.notificationsystem.dto.request.SmsRequest smsRequest, Date sendAt) {
+        AdmissionDecision admissionDecision = this.admissionControlServiceImpl.tryAdmit(clientId, smsRequest.getPriority(), 1);
+        if (!admissionDecision.isAdmitted()) {
+            throw new AdmissionRejectedException(admissionDecision);
+        }
+        return createSmsRequest(smsRequest, sendAt);
+    }
+
+    private String createSmsRequest(org.example.notificationsystem.dto.request.SmsRequest smsRequest, Date sendAt) {
+        SmsRequest created = smsRequest.getTemplateId() == null
+                ? this.smsServiceImpl.createSmsRequest(smsRequest.getPhoneNumber(), smsRequest.getMessage(), smsRequest.getPriority(), sendAt)
+                : this.smsServiceImpl.createSmsRequest(smsRequest.getPhoneNumber(), Long.valueOf(smsRequest.getTemplateId()), smsRequest.getParams(), smsRequest.getPriority(), sendAt);
+        return created.getId().toString();
+    }
+
+    /**
+     * Initiates a batch of Sms Requests using smsServiceImpl.
+     * Every item is validated on its own. Invalid items are reported with an error and the valid ones are created
+     * with batched writes.
+     * The whole batch is admitted or rejected (429 with a Retry-After header), each item taking one permit of its priority lane.
+     *
+     * @return ResponseEntity<SmsBatchResponse> with one entry per item if the batch was processed
+     * @return ResponseEntity<ErrorResponse> otherwise
+     */
+    @PostMapping("/v1/sms/send/batch")
+    public ResponseEntity<?> sendSmsRequestBatch(
+            @Valid @RequestBody SmsBatchRequest smsBatchRequest,
+            HttpServletRequest httpServletRequest
+    ) {
+        List<org.example.notificationsystem.dto.request.SmsRequest> requests = smsBatchRequest.getRequests();
+        logger.info("POST /v1/sms/send/batch called with {} requests", requests.size());
+        if (requests.size() > maxBatchSize) {
+            logger.warn("Rejecting batch of {} SMS requests, max batch size is {}", requests.size(), maxBatchSize);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message("At most " + maxBatchSize + " requests are allowed in a batch").build());
+        }
+        Map<PriorityConstants, Integer> permitsByLane = new EnumMap<>(PriorityConstants.class);
+        for (org.example.notificationsystem.dto.request.SmsRequest request : requests) {
+            PriorityConstants lane = request == null || request.getPriority() == null ? PriorityConstants.NORMAL : request.getPriority();
+            permitsByLane.merge(lane, 1, Integer::sum);
+        }
+        AdmissionDecision admissionDecision = this.admissionControlServiceImpl.tryAdmit(resolveClientId(httpServletRequest), permitsByLane);
+        if (!admissionDecision.isAdmitted()) {
+            return tooManyRequests(admissionDecision);
+        }
+
+        // Validate each item on its own
+        SmsBatchItemResponse[] results = new SmsBatchItemResponse[requests.size()];
+        List<org.example.notificationsystem.dto.request.SmsRequest> validRequests = new ArrayList<>();
+        List<Integer> validIndexes = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            org.example.notificationsystem.dto.request.SmsRequest request = requests.get(i);
+            Set<ConstraintViolation<org.example.notificationsystem.dto.request.SmsRequest>> violations = request == null ? Collections.emptySet() : validator.validate(request);
+            boolean validSendAt = request == null || !violations.isEmpty() || request.getSendAt() == null || isValidTime(request.getSendAt());
+            if (request == null || !violations.isEmpty() || !validSendAt) {
+                String message = request == null ? "request must not be null" : violations.stream()
+                        .findFirst()
+                        .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                        .orElse("sendAt is not a valid time");
+                results[i] = SmsBatchItemResponse.builder()
+                        .index(i)
+                        .error(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message(message).build())
+                        .build();
+            } else {
+                validRequests.add(request);
+                validIndexes.add(i);
+            }
+        }
+
+        try {
+            if (!validRequests.isEmpty()) {
+                List<SmsBatchItemResponse> created = this.smsServiceImpl.createSmsRequests(validRequests);
+                for (int i = 0; i < created.size(); i++) {
+                    SmsBatchItemResponse item = created.get(i);
+                    item.setIndex(validIndexes.get(i));
+                    results[validIndexes.get(i)] = item;
+                }
+            }
+            logger.info("Processed batch of {} SMS requests, {} valid", requests.size(), validRequests.size());
+            return ResponseEntity.ok(SmsBatchResponse
+                    .builder()
+                    .data(Arrays.asList(results))
+                    .build()
+            );
+        } catch (Exception e) {
+            logger.error("Error sending batch of SMS requests", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message("SERVER ERROR").build());
+        }
+    }
+
+    private static boolean isValidTime(String time) {
+        try {
+            parseIstToUtcDate(time);
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The client is identified by its authenticated principal, falling back to the remote address (behind a trusted
+     * proxy, see server.forward-headers-strategy). A header supplied by the caller is not used: every new value would
+     * get a fresh bucket.
+     */
+    private static String resolveClientId(HttpServletRequest httpServletRequest) {
+        Principal principal = httpServletRequest.getUserPrincipal();
+        if (principal != null && principal.getName() != null) return "principal:" + principal.getName();
+        return "address:" + httpServletRequest.getRemoteAddr();
+    }
+
+    private static ResponseEntity<?> tooManyRequests(AdmissionDecision admissionDecision) {
+        logger.warn("Rejecting SMS request: {}, retry after {}s", admissionDecision.getReason(), admissionDecision.getRetryAfterSeconds());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(admissionDecision.getRetryAfterSeconds()))
+                .body(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message("Too many requests: " + admissionDecision.getReason()).build());
+    }
 }
@@ -0,0 +1,85 @@
+package org.example.notificationsystem.controllers;
+
+import org.example.notificationsystem.constants.ErrorCodeConstants;
+import org.example.notificationsystem.dto.request.SmsTemplateRequest;
+import org.example.notificationsystem.dto.response.ErrorResponse;
+import org.example.notificationsystem.dto.response.SmsTemplateResponse;
+import org.example.notificationsystem.models.SmsTemplate;
+import org.example.notificationsystem.services.impl.SmsTemplateServiceImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.validation.Valid;
+import java.util.Optional;
+
+
+/**
+ * The Sms Template Controller handles all the /v1/templates/* endpoints related to the message templates.
+ * It handles the following endpoints:
+ * <ul>
+ *     <li><b>POST /v1/templates</b>: Register a template, or the next version of a registered one</li>
+ *     <li><b>GET /v1/templates/{template_id}</b>: Get a template version</li>
+ * </ul>
+ * A templated Sms is sent with POST /v1/sms/send, giving the templateId and params instead of the message.
+ */
+@RestController
+public class SmsTemplateController {
+
+    private static final Logger logger = LoggerFactory.getLogger(SmsTemplateController.class);
+
+    private final SmsTemplateServiceImpl smsTemplateServiceImpl;
+
+    public SmsTemplateController(SmsTemplateServiceImpl smsTemplateServiceImpl) {
+        this.smsTemplateServiceImpl = smsTemplateServiceImpl;
+    }
+
+    /**
+     * Register the next version of a template.
+     * Answers 400 if the body is not a valid template and 409 if another version of the same name is registered concurrently.
+     */
+    @PostMapping("/v1/templates")
+    public ResponseEntity<?> registerTemplate(@Valid @RequestBody SmsTemplateRequest smsTemplateRequest) {
+        logger.info("POST /v1/templates called for template: {}", smsTemplateRequest.getName());
+        try {
+            SmsTemplate smsTemplate = this.smsTemplateServiceImpl.registerTemplate(smsTemplateRequest.getName(), smsTemplateRequest.getBody());
+            return ResponseEntity.status(HttpStatus.CREATED).body(toResponse(smsTemplate));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message(e.getMessage()).build());
+        } catch (DataIntegrityViolationException e) {
+            logger.warn("Concurrent registration of template {}", smsTemplateRequest.getName());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message("Another version of the template was registered at the same time, retry").build());
+        } catch (Exception e) {
+            logger.error("Error registering template {}", smsTemplateRequest.getName(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message("SERVER ERROR").build());
+        }
+    }
+
+    /**
+     * Get a template version by its id.
+     */
+    @GetMapping("/v1/templates/{template_id}")
+    public ResponseEntity<?> getTemplate(@PathVariable Long template_id) {
+        logger.info("GET /v1/templates/{} called", template_id);
+        try {
+            Optional<SmsTemplate> smsTemplate = this.smsTemplateServiceImpl.getTemplate(template_id);
+            if (!smsTemplate.isPresent()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message("Invalid request").build());
+            }
+            return ResponseEntity.ok(toResponse(smsTemplate.get()));
+        } catch (Exception e) {
+            logger.error("Error fetching template with ID: {}", template_id, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message("SERVER ERROR").build());
+        }
+    }
+
+    private SmsTemplateResponse toResponse(SmsTemplate smsTemplate) {
+        return SmsTemplateResponse.builder()
+                .data(smsTemplate)
+                .parameters(this.smsTemplateServiceImpl.compiled(smsTemplate.getId()).getParameterNames())
+                .build();
+    }
+}
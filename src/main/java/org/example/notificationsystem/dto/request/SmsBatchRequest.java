@@ -0,0 +1,25 @@
+package org.example.notificationsystem.dto.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotEmpty;
+import java.util.List;
+
+/**
+ * Object to represent the request body of a batch of SmsRequests.
+ * Each item is validated individually so that one bad item does not reject the whole batch.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class SmsBatchRequest {
+    /**
+     * The Sms Requests to be initiated.
+     */
+    @NotEmpty
+    private List<SmsRequest> requests;
+}
@@ -1,15 +1,19 @@
 package org.example.notificationsystem.dto.request;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Builder;
 import lombok.Data;
+import org.example.notificationsystem.constants.PriorityConstants;
 
+import javax.validation.constraints.AssertTrue;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.Pattern;
 import javax.validation.constraints.Size;
+import java.util.Map;
 
 /**
  * Obect to represent the request body of an SmsRequest.
- * It is used to initiate an Sms Request.
+ * It is used to initiate an Sms Request, either with a message or with a templateId and its params.
  */
 @Data
 @Builder
@@ -22,9 +26,40 @@ public class SmsRequest {
     private String phoneNumber;
 
     /**
-     * Message to be send to the recipient.
+     * Message to be send to the recipient (null for a templated Sms).
      */
-    @NotBlank
-    @Size(max = 10000)
+    @Size(min = 1, max = 10000)
     private String message;
-}
\ No newline at end of file
+
+    /**
+     * The id of the template version to render the message from (see POST /v1/templates), instead of a message.
+     */
+    @Pattern(regexp = "^\\d{1,19}$")
+    private String templateId;
+
+    /**
+     * The value of every parameter of the template, by name.
+     */
+    private Map<String, String> params;
+
+    /**
+     * Priority of the Sms (NORMAL if not given): HIGH for time-critical messages such as OTPs, BULK for campaigns.
+     */
+    private PriorityConstants priority;
+
+    /**
+     * The (optional) time (IST) to send the Sms at, written in readable format. Sent right away if null or past.
+     * Ex: "05-01-2025 21:19:00"
+     */
+    @Pattern(regexp = "^(\\d{2})-(\\d{2})-(\\d{4}) (\\d{2}):(\\d{2}):(\\d{2})$")
+    private String sendAt;
+
+    /**
+     * @return true if the request has either a message or a templateId.
+     */
+    @JsonIgnore
+    @AssertTrue(message = "exactly one of message and templateId must be given")
+    public boolean isMessageOrTemplate() {
+        return (message != null && !message.trim().isEmpty()) != (templateId != null);
+    }
+}
@@ -0,0 +1,34 @@
+package org.example.notificationsystem.dto.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Size;
+
+/**
+ * Object to represent the request body registering a message template (or its next version).
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class SmsTemplateRequest {
+    /**
+     * Name of the template, shared by all its versions.
+     */
+    @NotBlank
+    @Pattern(regexp = "^[A-Za-z0-9_.-]{1,100}$")
+    private String name;
+
+    /**
+     * Text of the template, with its parameters written {{name}}.
+     * Ex: "Your OTP is {{otp}}, valid for {{minutes}} minutes"
+     */
+    @NotBlank
+    @Size(max = 10000)
+    private String body;
+}
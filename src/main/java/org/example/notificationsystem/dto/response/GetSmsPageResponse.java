@@ -0,0 +1,24 @@
+package org.example.notificationsystem.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+import org.example.notificationsystem.models.SmsRequest;
+
+import java.util.List;
+
+/**
+ * Object to represent the response body for paginated requests returning a page of SmsRequests (mysql).
+ */
+@Data
+@Builder
+public class GetSmsPageResponse {
+    /**
+     * The Sms Requests of the page.
+     */
+    List<SmsRequest> data;
+
+    /**
+     * Opaque token to pass as the cursor parameter to get the next page, null on the last page.
+     */
+    String nextCursor;
+}
@@ -0,0 +1,27 @@
+package org.example.notificationsystem.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Object to represent the outcome of a single item of a batch Sms Request.
+ * The requestId is set whenever a row was created, the error whenever the item was not (fully) accepted.
+ */
+@Data
+@Builder
+public class SmsBatchItemResponse {
+    /**
+     * Position of the item in the request body.
+     */
+    private Integer index;
+
+    /**
+     * The requestId of the created SmsRequest (null if the item was rejected).
+     */
+    private String requestId;
+
+    /**
+     * The error (null if the item succeeded).
+     */
+    private ErrorResponse error;
+}
@@ -0,0 +1,19 @@
+package org.example.notificationsystem.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Object to represent the response body of a batch Sms Request.
+ * Has one entry per item of the request, in the same order.
+ */
+@Data
+@Builder
+public class SmsBatchResponse {
+    /**
+     * Per item results.
+     */
+    private List<SmsBatchItemResponse> data;
+}
@@ -0,0 +1,24 @@
+package org.example.notificationsystem.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+import org.example.notificationsystem.models.SmsTemplate;
+
+import java.util.List;
+
+/**
+ * Object to represent the response body of a request registering or requesting a template version.
+ */
+@Data
+@Builder
+public class SmsTemplateResponse {
+    /**
+     * The template version. Its id is the templateId of the templated Sms Requests.
+     */
+    SmsTemplate data;
+
+    /**
+     * The names of the parameters of the template, in order of first appearance.
+     */
+    List<String> parameters;
+}
@@ -0,0 +1,18 @@
+package org.example.notificationsystem.exception;
+
+import lombok.Getter;
+import org.example.notificationsystem.models.AdmissionDecision;
+
+/**
+ * Thrown when the admission control rejects a request that was about to be created.
+ * The client should retry after the Retry-After of the decision.
+ */
+@Getter
+public class AdmissionRejectedException extends RuntimeException {
+    private final AdmissionDecision admissionDecision;
+
+    public AdmissionRejectedException(AdmissionDecision admissionDecision) {
+        super("Too many requests: " + admissionDecision.getReason());
+        this.admissionDecision = admissionDecision;
+    }
+}
@@ -0,0 +1,17 @@
+package org.example.notificationsystem.exception;
+
+import org.example.notificationsystem.constants.FailureCodeConstants;
+
+/**
+ * Thrown when the same message was already sent to the same phone number within the dedup window.
+ * Nothing was created for the duplicate.
+ */
+public class DuplicateMessageException extends RuntimeException {
+    public DuplicateMessageException(String phoneNumber) {
+        super("The same message was already sent to " + phoneNumber + " recently");
+    }
+
+    public FailureCodeConstants getFailureCode() {
+        return FailureCodeConstants.DUPLICATE_MESSAGE;
+    }
+}
@@ -0,0 +1,11 @@
+package org.example.notificationsystem.exception;
+
+/**
+ * Thrown when a request with the same Idempotency-Key is still being created and did not finish in time.
+ * The client should retry later with the same key.
+ */
+public class IdempotencyKeyInProgressException extends RuntimeException {
+    public IdempotencyKeyInProgressException(String idempotencyKey) {
+        super("A request with Idempotency-Key " + idempotencyKey + " is still in progress");
+    }
+}
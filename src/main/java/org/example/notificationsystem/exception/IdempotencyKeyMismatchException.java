@@ -0,0 +1,11 @@
+package org.example.notificationsystem.exception;
+
+/**
+ * Thrown when an Idempotency-Key is reused with a different request body than the one it was first used with.
+ * The client must not retry it: a new request needs a new key.
+ */
+public class IdempotencyKeyMismatchException extends RuntimeException {
+    public IdempotencyKeyMismatchException(String idempotencyKey) {
+        super("Idempotency-Key " + idempotencyKey + " was already used with a different request");
+    }
+}
@@ -0,0 +1,207 @@
+package org.example.notificationsystem.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.example.notificationsystem.models.SmsRequest;
+import org.example.notificationsystem.models.StatusTransition;
+import org.example.notificationsystem.services.impl.BlacklistServiceImpl;
+import org.example.notificationsystem.services.impl.SmsServiceImpl;
+import org.example.notificationsystem.services.impl.StatusWriteServiceImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Batch variant of the Consumer (sms.consumer.mode=batch): receives all the records of a poll at once.
+ * <p>
+ * Per batch instead of per record:
+ * <ul>
+ *     <li>One findAllById for the legacy id-only records (the others carry the Sms Request).</li>
+ *     <li>One pipelined blacklist check for all the phone numbers, before the send tokens are taken.</li>
+ *     <li>Third party API calls of several destinations each, when the micro-batching is enabled (SmsDispatchService).</li>
+ *     <li>One JDBC batch for all the status transitions.</li>
+ *     <li>One offset commit.</li>
+ * </ul>
+ * The records are handled up to the first one whose route is out of send tokens (see SendThrottleService): the batch
+ * is then nacked at that record, the container commits the records before it and pauses the partitions for the wait.
+ * <p>
+ * If the batch fails on the way (blacklist or MySQL unavailable), the records not sent yet, and those sent whose
+ * status is not written, are parked like the Consumer parks a record (see SmsRequestProcessor.park) before the batch
+ * is acknowledged. If they could not even be parked, the batch is left unacknowledged and redelivered.
+ */
+@Component
+@ConditionalOnProperty(name = "sms.consumer.mode", havingValue = "batch")
+public class BatchConsumer {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchConsumer.class);
+
+    private final BlacklistServiceImpl blacklistServiceImpl;
+    private final SmsServiceImpl smsServiceImpl;
+    private final SmsRequestProcessor smsRequestProcessor;
+    private final StatusWriteServiceImpl statusWriteServiceImpl;
+
+    public BatchConsumer(BlacklistServiceImpl blacklistServiceImpl, SmsServiceImpl smsServiceImpl, SmsRequestProcessor smsRequestProcessor,
+                         StatusWriteServiceImpl statusWriteServiceImpl) {
+        this.blacklistServiceImpl = blacklistServiceImpl;
+        this.smsServiceImpl = smsServiceImpl;
+        this.smsRequestProcessor = smsRequestProcessor;
+        this.statusWriteServiceImpl = statusWriteServiceImpl;
+    }
+
+    /**
+     * Handle a batch of Sms Requests.
+     * The offsets of the whole batch (up to the first throttled record) are committed once all the status transitions are written.
+     */
+    @KafkaListener(topics = "#{@priorityLanes.topics}", containerFactory = "SmsRequestBatchListenerFactory")
+    public void consume(List<ConsumerRecord<Long, SmsMessagePayload>> records, Acknowledgment acknowledgment) {
+        logger.info("Received batch of {} records", records.size());
+        boolean durable = true;
+        int throttledAt = records.size();
+        long waitMs = 0;
+        // The records whose send was attempted, and those of them that got their status transition
+        Set<Long> dispatched = new HashSet<>();
+        Set<Long> sent = new HashSet<>();
+        try {
+            // Checked first: blacklisted numbers are failed without a send and take no send token
+            Set<String> phoneNumbers = new HashSet<>();
+            for (ConsumerRecord<Long, SmsMessagePayload> record : records) {
+                if (record.value() != null && record.value().isComplete()) phoneNumbers.add(record.value().getPhoneNumber());
+            }
+            Map<String, Boolean> blacklisted = new HashMap<>(blacklistServiceImpl.areNumbersBlacklisted(phoneNumbers));
+
+            // Legacy id-only records carry no phone number and are not throttled
+            for (int i = 0; i < records.size() && waitMs == 0; i++) {
+                SmsMessagePayload payload = records.get(i).value();
+                if (payload != null && payload.isComplete() && !blacklisted.getOrDefault(payload.getPhoneNumber(), true)) {
+                    waitMs = smsRequestProcessor.throttle(payload);
+                    if (waitMs > 0) throttledAt = i;
+                }
+            }
+            if (throttledAt < records.size()) {
+                logger.info("Route of record {} of the batch throttled, redelivering the last {} records in {} ms", throttledAt, records.size() - throttledAt, waitMs);
+            }
+            List<SmsMessagePayload> payloads = resolvePayloads(records.subList(0, throttledAt));
+
+            Set<String> legacyPhoneNumbers = new HashSet<>();
+            payloads.forEach(payload -> {
+                if (!blacklisted.containsKey(payload.getPhoneNumber())) legacyPhoneNumbers.add(payload.getPhoneNumber());
+            });
+            if (!legacyPhoneNumbers.isEmpty()) {
+                blacklisted.putAll(blacklistServiceImpl.areNumbersBlacklisted(legacyPhoneNumbers));
+            }
+
+            // All the sends are queued first so that the dispatcher can batch them (see SmsDispatchService)
+            Map<Long, CompletableFuture<StatusTransition>> pending = new LinkedHashMap<>();
+            for (SmsMessagePayload payload : payloads) {
+                dispatched.add(payload.getId());
+                try {
+                    pending.put(payload.getId(), blacklisted.getOrDefault(payload.getPhoneNumber(), true)
+                            ? CompletableFuture.completedFuture(smsRequestProcessor.blacklisted(payload))
+                            : smsRequestProcessor.dispatch(payload));
+                } catch (Exception e) {
+                    logger.error("Error processing SMS request ID: {}. Exception: {}", payload.getId(), e.getMessage());
+                }
+            }
+
+            List<StatusTransition> statusTransitions = new ArrayList<>(pending.size());
+            pending.forEach((smsRequestId, statusTransition) -> {
+                try {
+                    statusTransitions.add(statusTransition.join());
+                    sent.add(smsRequestId);
+                } catch (CompletionException e) {
+                    logger.error("Error processing SMS request ID: {}. Exception: {}", smsRequestId, e.getMessage());
+                }
+            });
+
+            if (statusWriteServiceImpl.isEnabled()) {
+                // Coalesced with the other listeners' transitions, the offsets are committed once they are durable
+                List<CompletableFuture<Boolean>> futures = new ArrayList<>(statusTransitions.size());
+                statusTransitions.forEach(statusTransition -> futures.add(statusWriteServiceImpl.submit(statusTransition)));
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            } else {
+                smsServiceImpl.applyTransitions(statusTransitions);
+            }
+            logger.info("Processed batch of {} records", throttledAt);
+        } catch (CompletionException e) {
+            // The status transitions are not in MySQL: do not commit, the batch is redelivered
+            durable = false;
+            logger.error("Status of batch of {} records not written, leaving it unacknowledged", records.size());
+            throw e;
+        } catch (Exception e) {
+            logger.error("Error processing batch of {} records. Exception: {}", records.size(), e.getMessage());
+            durable = park(records.subList(0, throttledAt), dispatched, sent);
+            if (!durable) {
+                logger.error("Could not park the records of the failed batch, leaving it unacknowledged");
+                throw e;
+            }
+        } finally {
+            if (durable && throttledAt < records.size()) {
+                acknowledgment.nack(throttledAt, Duration.ofMillis(waitMs));
+            } else if (durable) {
+                acknowledgment.acknowledge();
+            }
+        }
+    }
+
+    /**
+     * Parks the records of a failed batch (see SmsRequestProcessor.park): to a retry tier those not sent yet, to the
+     * dead-letter topic those sent whose status is not written. The records whose send failed on its own were already
+     * given up on, and unreadable records have nothing to park.
+     *
+     * @return Whether all of them were parked, the batch may then be acknowledged.
+     */
+    private boolean park(List<ConsumerRecord<Long, SmsMessagePayload>> records, Set<Long> dispatched, Set<Long> sent) {
+        List<CompletableFuture<Boolean>> parked = new ArrayList<>(records.size());
+        for (ConsumerRecord<Long, SmsMessagePayload> record : records) {
+            SmsMessagePayload payload = record.value();
+            if (payload == null || (dispatched.contains(payload.getId()) && !sent.contains(payload.getId()))) continue;
+            parked.add(smsRequestProcessor.park(payload, sent.contains(payload.getId())));
+        }
+        boolean all = true;
+        for (CompletableFuture<Boolean> future : parked) {
+            all &= future.join();
+        }
+        return all;
+    }
+
+    /**
+     * Returns the payloads of the records, loading the legacy id-only ones from MySQL with one query.
+     * Records that could not be deserialized (null value) or whose Sms Request does not exist are dropped.
+     */
+    private List<SmsMessagePayload> resolvePayloads(List<ConsumerRecord<Long, SmsMessagePayload>> records) {
+        List<SmsMessagePayload> payloads = new ArrayList<>(records.size());
+        List<Long> legacyIds = new ArrayList<>();
+        for (ConsumerRecord<Long, SmsMessagePayload> record : records) {
+            SmsMessagePayload payload = record.value();
+            if (payload == null) {
+                logger.error("Skipping unreadable record at {}-{}@{}", record.topic(), record.partition(), record.offset());
+            } else if (payload.isComplete()) {
+                payloads.add(payload);
+            } else {
+                legacyIds.add(payload.getId());
+            }
+        }
+
+        if (!legacyIds.isEmpty()) {
+            List<SmsRequest> smsRequests = smsServiceImpl.getSmsRequests(legacyIds);
+            smsRequests.forEach(smsRequest -> payloads.add(SmsMessagePayload.of(smsRequest)));
+            if (smsRequests.size() < legacyIds.size()) {
+                logger.error("{} of {} legacy SMS request IDs not found", legacyIds.size() - smsRequests.size(), legacyIds.size());
+            }
+        }
+        return payloads;
+    }
+}
@@ -1,152 +1,125 @@
 package org.example.notificationsystem.kafka;
 
 import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.example.notificationsystem.constants.FailureCodeConstants;
-import org.example.notificationsystem.constants.StatusConstants;
-import org.example.notificationsystem.constants.ThirdPartyApiResponseCode;
-import org.example.notificationsystem.dto.request.ChannelsThirdPartySmsApiRequest;
-import org.example.notificationsystem.dto.request.DestinationThirdPartySmsApiRequest;
-import org.example.notificationsystem.dto.request.SmsThirdPartySmsApiRequest;
-import org.example.notificationsystem.dto.request.ThirdPartySmsApiRequest;
-import org.example.notificationsystem.services.impl.BlacklistServiceImpl;
-import org.example.notificationsystem.services.impl.SmsServiceImpl;
-import org.example.notificationsystem.utils.NotificationSystemUtils;
+import org.apache.kafka.common.TopicPartition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.listener.AbstractConsumerSeekAware;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Optional;
-import java.util.UUID;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Subscribes to a partition (check KafkaConsumerConfig for configuration parameters) and processes the logs received.
+ * Subscribes to a partition (check KafkaConsumerConfig for configuration parameters) and processes the logs received,
+ * one record at a time. Every priority lane is consumed (see PriorityLanes), without weights: the lanes only keep
+ * their own partitions, the weighted scheduling needs sms.consumer.mode=parallel. Active unless sms.consumer.mode=batch (see BatchConsumer) or parallel (see ParallelConsumer).
+ * <p>
+ * A record whose route is out of send tokens (see SendThrottleService) is nacked for the wait: the container pauses
+ * the partition and redelivers the record once it is over. Out of order acks (asyncAcks) can not be nacked, the
+ * record is then held on the throttledRecordExecutor and handled once its route has tokens again. Meanwhile the
+ * container polls no new records, as it waits for every record of the last poll to be acked, so the partitions are
+ * held back just the same without blocking the listener thread.
+ * <p>
+ * A record whose handling failed is parked on a retry tier or the dead-letter topic (see SmsRecordHandler) and
+ * acknowledged. If it could not even be parked (Kafka unavailable), the partition is sought back to it so that it is
+ * redelivered, along with the records after it, rather than leaving a gap that freezes the commits.
  */
 @Component
-public class Consumer {
+@ConditionalOnProperty(name = "sms.consumer.mode", havingValue = "record", matchIfMissing = true)
+public class Consumer extends AbstractConsumerSeekAware {
 
     private static final Logger logger = LoggerFactory.getLogger(Consumer.class);
 
-    /**
-     * The blacklist and sms service are injected through the constructor for interacting with Redis (to check if a number is blacklisted) and
-     * updating the status of the Sms Request in SmsRequest.
-     */
-    private final BlacklistServiceImpl blacklistServiceImpl;
-    private final SmsServiceImpl smsServiceImpl;
+    private final SmsRecordHandler smsRecordHandler;
+    private final boolean asyncAcks;
+    private final ScheduledExecutorService throttledRecordExecutor;
 
-    public Consumer(BlacklistServiceImpl blacklistServiceImpl, SmsServiceImpl smsServiceImpl) {
-        this.blacklistServiceImpl = blacklistServiceImpl;
-        this.smsServiceImpl = smsServiceImpl;
+    public Consumer(SmsRecordHandler smsRecordHandler,
+                    @Qualifier("SmsRequestConcurrentListenerFactory") ConcurrentKafkaListenerContainerFactory<Long, SmsMessagePayload> factory,
+                    @Qualifier("throttledRecordExecutor") ScheduledExecutorService throttledRecordExecutor) {
+        this.smsRecordHandler = smsRecordHandler;
+        this.asyncAcks = factory.getContainerProperties().isAsyncAcks();
+        this.throttledRecordExecutor = throttledRecordExecutor;
     }
 
     /**
-     * Handle an Sms Request.
+     * Handle an Sms Request (see SmsRecordHandler).
+     * The offset is committed (MANUAL_IMMEDIATE) once the record is handled, so that the consumer lag seen by the
+     * admission control reflects the records actually processed.
+     * With the status write-behind or the micro-batching enabled, the record is acknowledged only once its status
+     * transition is durable (out of order acks are allowed by the container, see KafkaConsumerConfig).
      */
-    @KafkaListener(topics = "${spring.kafka.sms-request-topic-name}", containerFactory = "SmsRequestConcurrentListenerFactory")
-    public void consume(ConsumerRecord<Long, Long> record) {
-        /**
-         * Log the receival of the request.
-         * */
-        Long smsRequestId = record.value();
-        Long key = record.key();
-        logger.info("Received record with key: {} and value: {}", key, record.value());
-
-        try {
-            /**
-             * Get the Sms Request from MySQL
-             * */
-            Optional<org.example.notificationsystem.models.SmsRequest> optionalSmsRequest = this.smsServiceImpl.getSmsRequest(smsRequestId);
-
-            if (optionalSmsRequest.isPresent()) {
-                String phoneNumber = optionalSmsRequest.get().getPhoneNumber();
-
-                logger.info("Found SMS request ID: {} for phone number: {}", smsRequestId, phoneNumber);
-
-                /**
-                 * Check if the number is blacklisted or not.
-                 * */
-                if (blacklistServiceImpl.isNumberBlacklisted(phoneNumber)) {
-                    /**
-                     * If blacklisted, update the state in MySQL.
-                     * */
-                    logger.warn("Phone number {} is blacklisted. Marking SMS request ID: {} as FAILED", phoneNumber, smsRequestId);
-                    this.smsServiceImpl.setStatus(smsRequestId, StatusConstants.FAILED);
-                    this.smsServiceImpl.setFailureCode(smsRequestId, FailureCodeConstants.BLACKLISTED_PHONE_NUMBER, "The phone number " + phoneNumber + " is blacklisted");
-                } else {
-                    logger.info("Phone number {} is not blacklisted. Proceeding with SMS sending...", phoneNumber);
-                    /**
-                     * Otherwise, make a request to the third party API.
-                     * */
-                    // Send to third-party API here
-                    ThirdPartySmsApiRequest thirdPartySmsApiRequest = ThirdPartySmsApiRequest
-                            .builder()
-                            .deliveryChannel("sms")
-                            .channels(
-                                    ChannelsThirdPartySmsApiRequest
-                                            .builder()
-                                            .sms(
-                                                    SmsThirdPartySmsApiRequest
-                                                            .builder()
-                                                            .text(optionalSmsRequest.get().getMessage())
-                                                            .build()
-                                            )
-                                            .build()
-                            )
-                            // For now sending only one message at a time
-                            .destination(
-                                    new ArrayList<DestinationThirdPartySmsApiRequest>(Arrays.asList(
-                                            DestinationThirdPartySmsApiRequest
-                                                    .builder()
-                                                    .msisdn(
-                                                            new ArrayList<String>(Arrays.asList(phoneNumber))
-                                                    )
-                                                    .correlationId(
-                                                            UUID.randomUUID().toString()
-                                                    )
-                                                    .build()
-                                    ))
-                            )
-                            .build();
+    @KafkaListener(topics = "#{@priorityLanes.topics}", containerFactory = "SmsRequestConcurrentListenerFactory")
+    public void consume(ConsumerRecord<Long, SmsMessagePayload> record, Acknowledgment acknowledgment) {
+        long waitMs = smsRecordHandler.throttle(record);
+        if (waitMs > 0) {
+            if (asyncAcks) {
+                hold(record, acknowledgment, waitMs);
+            } else {
+                // Redelivered once the pause is over
+                acknowledgment.nack(Duration.ofMillis(waitMs));
+            }
+            return;
+        }
+        handle(record, acknowledgment);
+    }
 
-                    ThirdPartyApiResponseCode thirdPartyApiResponseCode = NotificationSystemUtils.send2ThirdPartyApi(
-                            new ArrayList<ThirdPartySmsApiRequest>(
-                                    Arrays.asList(thirdPartySmsApiRequest)
-                            )
-                    );
-                    /**
-                     * Handle all the possible errors that might occur from the third party API request.
-                     * */
-                    if (thirdPartyApiResponseCode == ThirdPartyApiResponseCode.SUCCESS) {
-                        /**
-                         * If success, update state to indicate so in MySQL.
-                         * */
-                        this.smsServiceImpl.setStatus(smsRequestId, StatusConstants.FINISHED);
-                        this.smsServiceImpl.setFailureCode(smsRequestId, FailureCodeConstants.SUCCESS, "No Failure.");
-                    } else {
-                        /**
-                         * If failure, update state to indicate so in MySQL.
-                         * */
-                        this.smsServiceImpl.setStatus(smsRequestId, StatusConstants.FAILED);
+    /**
+     * Handles the throttled record on the throttledRecordExecutor once the wait is over, if its route has tokens by
+     * then, otherwise holds it again. A record whose partition was revoked in the meantime is dropped: its new owner
+     * resumes from the last commit, which is before the record.
+     */
+    private void hold(ConsumerRecord<Long, SmsMessagePayload> record, Acknowledgment acknowledgment, long waitMs) {
+        logger.debug("Route of record {}-{}@{} throttled, holding it {} ms", record.topic(), record.partition(), record.offset(), waitMs);
+        throttledRecordExecutor.schedule(() -> {
+            if (getSeekCallbackFor(new TopicPartition(record.topic(), record.partition())) == null) {
+                logger.warn("Throttled record {}-{}@{} dropped, its partition was revoked", record.topic(), record.partition(), record.offset());
+                return;
+            }
+            long remainingMs;
+            try {
+                remainingMs = smsRecordHandler.throttle(record);
+            } catch (RuntimeException e) {
+                logger.error("Could not take the send token of record {}-{}@{}, holding it again", record.topic(), record.partition(), record.offset(), e);
+                remainingMs = waitMs;
+            }
+            if (remainingMs > 0) {
+                hold(record, acknowledgment, remainingMs);
+            } else {
+                handle(record, acknowledgment);
+            }
+        }, waitMs, TimeUnit.MILLISECONDS);
+    }
 
-                        if (thirdPartyApiResponseCode == ThirdPartyApiResponseCode.TIMEOUT) {
-                            this.smsServiceImpl.setFailureCode(smsRequestId, FailureCodeConstants.EXTERNAL_API_TIMEOUT, "TCP Connection timed out.");
-                        } else if (thirdPartyApiResponseCode == ThirdPartyApiResponseCode.INVALID_REQUEST_BODY) {
-                            this.smsServiceImpl.setFailureCode(smsRequestId, FailureCodeConstants.INVALID_REQUEST_BODY, "Request body when making third party request was invalid.");
-                        } else if (thirdPartyApiResponseCode == ThirdPartyApiResponseCode.MALFORMED_URL) {
-                            this.smsServiceImpl.setFailureCode(smsRequestId, FailureCodeConstants.INVALID_URL, "URL of third party request was malformed.");
-                        } else {
-                            this.smsServiceImpl.setFailureCode(smsRequestId, FailureCodeConstants.EXTERNAL_API_ERROR, "Something went wrong while making third party request.");
-                        }
-                    }
-                    logger.info("SMS request ID: {} sent successfully. Marking as FINISHED", smsRequestId);
-                }
+    private void handle(ConsumerRecord<Long, SmsMessagePayload> record, Acknowledgment acknowledgment) {
+        smsRecordHandler.handle(record).whenComplete((ignored, exception) -> {
+            if (exception == null) {
+                acknowledgment.acknowledge();
             } else {
-                logger.error("Invalid SMS Request ID: {}. Unable to find phone number or SMS request details.", smsRequestId);
+                redeliver(record);
             }
-        } catch (Exception e) {
-            logger.error("Error processing SMS request ID: {}. Exception: {}", smsRequestId, e.getMessage());
+        });
+    }
+
+    /**
+     * Seeks the partition of the record back to it. The seek is queued and performed by the listener thread before
+     * its next poll, so it may be requested from any thread.
+     */
+    private void redeliver(ConsumerRecord<Long, SmsMessagePayload> record) {
+        ConsumerSeekCallback seekCallback = getSeekCallbackFor(new TopicPartition(record.topic(), record.partition()));
+        if (seekCallback == null) {
+            // Revoked: its new owner resumes from the last commit, which is before the record
+            logger.warn("Record {}-{}@{} not handled, its partition was revoked", record.topic(), record.partition(), record.offset());
+            return;
         }
+        logger.error("Record {}-{}@{} not handled, seeking back to it", record.topic(), record.partition(), record.offset());
+        seekCallback.seek(record.topic(), record.partition(), record.offset());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,128 @@
+package org.example.notificationsystem.kafka;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically measures how far the consumer group is behind on the Sms Request topics
+ * (sum over partitions of the log end offset minus the committed offset).
+ * <p>
+ * The measured lag feeds the admission control of the ingest API and is exported as the
+ * <b>sms.kafka.consumer.lag{topic}</b> gauge.
+ */
+@Component
+public class ConsumerLagMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConsumerLagMonitor.class);
+
+    private final AdminClient adminClient;
+    private final String groupId;
+    private final List<String> topics;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AtomicLong> lagByTopic = new ConcurrentHashMap<>();
+    private volatile long lastUpdatedMillis = 0;
+
+    @Autowired
+    public ConsumerLagMonitor(KafkaAdmin kafkaAdmin,
+                              MeterRegistry meterRegistry,
+                              @Value("${spring.kafka.consumer.group-id}") String groupId,
+                              @Value("#{'${sms.kafka.lag.topics}'.split(',')}") List<String> topics) {
+        this.adminClient = AdminClient.create(kafkaAdmin.getConfigurationProperties());
+        this.meterRegistry = meterRegistry;
+        this.groupId = groupId;
+        this.topics = topics;
+        topics.forEach(this::lagHolder);
+    }
+
+    /**
+     * Refreshes the lag of every monitored topic.
+     */
+    @Scheduled(fixedDelayString = "${sms.kafka.lag.interval-ms}")
+    public void refresh() {
+        try {
+            Map<String, TopicDescription> descriptions = adminClient.describeTopics(topics).allTopicNames().get(5, TimeUnit.SECONDS);
+            Map<TopicPartition, OffsetSpec> latest = new HashMap<>();
+            descriptions.forEach((topic, description) -> {
+                for (TopicPartitionInfo partition : description.partitions()) {
+                    latest.put(new TopicPartition(topic, partition.partition()), OffsetSpec.latest());
+                }
+            });
+
+            Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> endOffsets = adminClient.listOffsets(latest).all().get(5, TimeUnit.SECONDS);
+            Map<TopicPartition, OffsetAndMetadata> committed = adminClient.listConsumerGroupOffsets(groupId).partitionsToOffsetAndMetadata().get(5, TimeUnit.SECONDS);
+
+            Map<String, Long> lag = new HashMap<>();
+            topics.forEach(topic -> lag.put(topic, 0L));
+            endOffsets.forEach((topicPartition, info) -> {
+                OffsetAndMetadata offset = committed.get(topicPartition);
+                // Nothing committed yet: the group starts from the end (auto.offset.reset=latest), so there is no lag.
+                long partitionLag = offset == null ? 0 : Math.max(0, info.offset() - offset.offset());
+                lag.merge(topicPartition.topic(), partitionLag, Long::sum);
+            });
+            lag.forEach((topic, value) -> lagHolder(topic).set(value));
+            lastUpdatedMillis = System.currentTimeMillis();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warn("Could not measure the consumer lag of group {}: {}", groupId, e.getMessage());
+        }
+    }
+
+    /**
+     * @return The last measured lag summed over all the monitored topics.
+     */
+    public long getTotalLag() {
+        long total = 0;
+        for (AtomicLong lag : lagByTopic.values()) total += lag.get();
+        return total;
+    }
+
+    /**
+     * @param topic A monitored topic.
+     * @return The last measured lag of the topic (0 if it is not monitored).
+     */
+    public long getLag(String topic) {
+        AtomicLong lag = lagByTopic.get(topic);
+        return lag == null ? 0 : lag.get();
+    }
+
+    /**
+     * @return The epoch millis of the last successful measurement (0 if there was none yet).
+     */
+    public long getLastUpdatedMillis() {
+        return lastUpdatedMillis;
+    }
+
+    private AtomicLong lagHolder(String topic) {
+        return lagByTopic.computeIfAbsent(topic, t -> {
+            AtomicLong holder = new AtomicLong();
+            Gauge.builder("sms.kafka.consumer.lag", holder, AtomicLong::get).tag("topic", t).register(meterRegistry);
+            return holder;
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        adminClient.close();
+    }
+}
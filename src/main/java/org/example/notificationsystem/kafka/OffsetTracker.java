@@ -0,0 +1,62 @@
+package org.example.notificationsystem.kafka;
+
+import java.util.TreeSet;
+
+/**
+ * The offsets of a partition that are being processed, when records complete out of order (see ParallelConsumer).
+ * <p>
+ * Only the offsets below the lowest one still in flight are done for sure, so that is the offset to commit: after
+ * a crash or a rebalance, the records from there on are redelivered, including the ones that had completed already
+ * (at least once, the status transitions are conditional and ignore them).
+ */
+public class OffsetTracker {
+
+    private final TreeSet<Long> inFlight = new TreeSet<>();
+    private final TreeSet<Long> abandoned = new TreeSet<>();
+    private long nextOffset = -1;
+    private long committed = -1;
+
+    /**
+     * @param offset Offset of a record handed to a worker, in the order of the partition.
+     */
+    public synchronized void started(long offset) {
+        inFlight.add(offset);
+        nextOffset = Math.max(nextOffset, offset + 1);
+    }
+
+    /**
+     * @param offset Offset of a record whose processing is over (committable).
+     */
+    public synchronized void completed(long offset) {
+        inFlight.remove(offset);
+    }
+
+    /**
+     * @param offset Offset of a record given up on without processing it (its partition was revoked). No longer in
+     *               flight, but nothing from it on is committed, so that the next owner of the partition processes it.
+     */
+    public synchronized void abandoned(long offset) {
+        if (inFlight.remove(offset)) abandoned.add(offset);
+    }
+
+    /**
+     * @return Records started and not completed (nor abandoned) yet.
+     */
+    public synchronized int inFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * @return The offset to commit (the next record to consume after a restart), or -1 if nothing new completed since
+     * the last call to {@link #markCommitted(long)}.
+     */
+    public synchronized long committable() {
+        long offset = inFlight.isEmpty() ? nextOffset : inFlight.first();
+        if (!abandoned.isEmpty()) offset = Math.min(offset, abandoned.first());
+        return offset > committed ? offset : -1;
+    }
+
+    public synchronized void markCommitted(long offset) {
+        committed = Math.max(committed, offset);
+    }
+}
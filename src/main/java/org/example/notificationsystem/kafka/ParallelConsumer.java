@@ -0,0 +1,472 @@
+package org.example.notificationsystem.kafka;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.example.notificationsystem.constants.PriorityConstants;
+import org.example.notificationsystem.utils.KeyOrderedExecutor;
+import org.example.notificationsystem.utils.WeightedLaneQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parallel variant of the Consumer (sms.consumer.mode=parallel): processes many records of each partition at once,
+ * so the parallelism is no longer capped by the partition count (spring.kafka.num_partitions).
+ * <ul>
+ *     <li><b>Ordering</b>: Records of the same phone number (the record key for legacy id-only records) are handled
+ *     one after the other, in the order of their partition. Other records run concurrently on a pool of threads
+ *     (see KeyOrderedExecutor).</li>
+ *     <li><b>Offsets</b>: Records complete out of order, every partition commits up to its lowest offset still in
+ *     flight (see OffsetTracker), every commit-interval-ms and on rebalance / shutdown.</li>
+ *     <li><b>Priorities</b>: Every lane topic is consumed (see PriorityLanes). At most max-in-flight records are
+ *     processed at once, the next one is taken from the lanes by weighted round robin: HIGH drains first while BULK
+ *     still gets its share.</li>
+ *     <li><b>Backpressure</b>: A partition with max-in-flight-per-partition records in flight is paused until half of
+ *     them completed. A poll returns at most that many records, so a partition never holds more than twice as many.</li>
+ *     <li><b>Throttling</b>: A record whose route is out of send tokens (see SendThrottleService) is handled again
+ *     once the wait is over, keeping its place in the order of its key, and its partition is paused until then.
+ *     No thread waits meanwhile.</li>
+ *     <li><b>Rebalance</b>: The records of revoked (or lost) partitions not started yet are dropped, and those waiting
+ *     for their key or for send tokens are skipped: they are left to the new owner. The records in flight get
+ *     drain-timeout-ms to complete before the offsets of revoked partitions are committed, up to the first record not
+ *     handled, the others are redelivered to the new owner.</li>
+ * </ul>
+ * A record whose handling failed is parked on a retry tier or the dead-letter topic (see SmsRecordHandler.park). If
+ * it could not be, it is parked again every PARK_RETRY_INTERVAL, staying in flight meanwhile: its partition commits no
+ * further and is paused once at its in-flight limit.
+ */
+@Component
+@ConditionalOnProperty(name = "sms.consumer.mode", havingValue = "parallel")
+public class ParallelConsumer implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelConsumer.class);
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+    private static final Duration PARK_RETRY_INTERVAL = Duration.ofSeconds(1);
+
+    private final ConsumerFactory<Long, SmsMessagePayload> consumerFactory;
+    private final SmsRecordHandler smsRecordHandler;
+    private final PriorityLanes priorityLanes;
+    private final int threads;
+    private final int maxInFlight;
+    private final int maxInFlightPerPartition;
+    private final long commitIntervalMs;
+    private final long drainTimeoutMs;
+
+    private final Map<TopicPartition, OffsetTracker> trackers = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, Long> throttledUntil = new ConcurrentHashMap<>();
+    /**
+     * The partitions being revoked: their records are no longer handled.
+     */
+    private final Set<TopicPartition> revoking = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger pausedPartitions = new AtomicInteger();
+    private final WeightedLaneQueue<PriorityConstants, PendingRecord> pending;
+    private int processing = 0;
+    private ExecutorService workers;
+    private ScheduledExecutorService throttleTimer;
+    private KeyOrderedExecutor keyOrderedExecutor;
+    private Thread pollThread;
+    private org.apache.kafka.clients.consumer.Consumer<Long, SmsMessagePayload> consumer;
+    private volatile boolean running = false;
+
+    @Autowired
+    public ParallelConsumer(@Qualifier("SmsRequestConsumerFactory") ConsumerFactory<Long, SmsMessagePayload> consumerFactory,
+                            SmsRecordHandler smsRecordHandler,
+                            PriorityLanes priorityLanes,
+                            MeterRegistry meterRegistry,
+                            @Value("${sms.consumer.parallel.threads}") int threads,
+                            @Value("${sms.consumer.parallel.max-in-flight}") int maxInFlight,
+                            @Value("${sms.consumer.parallel.max-in-flight-per-partition}") int maxInFlightPerPartition,
+                            @Value("${sms.consumer.parallel.commit-interval-ms}") long commitIntervalMs,
+                            @Value("${sms.consumer.parallel.drain-timeout-ms}") long drainTimeoutMs) {
+        this.consumerFactory = consumerFactory;
+        this.smsRecordHandler = smsRecordHandler;
+        this.priorityLanes = priorityLanes;
+        this.threads = threads;
+        this.maxInFlight = maxInFlight;
+        this.maxInFlightPerPartition = maxInFlightPerPartition;
+        this.commitIntervalMs = commitIntervalMs;
+        this.drainTimeoutMs = drainTimeoutMs;
+        Map<PriorityConstants, Integer> weights = new EnumMap<>(PriorityConstants.class);
+        for (PriorityConstants lane : Arrays.asList(PriorityConstants.HIGH, PriorityConstants.NORMAL, PriorityConstants.BULK)) {
+            weights.put(lane, priorityLanes.weightOf(lane));
+            Gauge.builder("sms.consumer.parallel.lane.pending", this, consumer -> consumer.pending(lane)).tag("lane", lane.name()).register(meterRegistry);
+        }
+        this.pending = new WeightedLaneQueue<>(weights);
+        Gauge.builder("sms.consumer.parallel.in-flight", this, ParallelConsumer::inFlight).register(meterRegistry);
+        Gauge.builder("sms.consumer.parallel.paused-partitions", pausedPartitions, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder("sms.consumer.parallel.active-keys", this, consumer -> consumer.keyOrderedExecutor == null ? 0 : consumer.keyOrderedExecutor.activeKeys())
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "sms-parallel-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        keyOrderedExecutor = new KeyOrderedExecutor(workers);
+        throttleTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sms-parallel-throttle");
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        pollThread = new Thread(this::run, "sms-parallel-consumer");
+        pollThread.start();
+        logger.info("Parallel consumer started ({} threads, {} records in flight, {} per partition)", threads, maxInFlight, maxInFlightPerPartition);
+    }
+
+    private void run() {
+        Properties overrides = new Properties();
+        overrides.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(maxInFlightPerPartition));
+        overrides.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        try {
+            consumer = consumerFactory.createConsumer(null, "sms-parallel", null, overrides);
+            consumer.subscribe(priorityLanes.getTopics(), new RebalanceListener());
+            long lastCommit = System.currentTimeMillis();
+            while (running) {
+                ConsumerRecords<Long, SmsMessagePayload> records = consumer.poll(POLL_TIMEOUT);
+                for (ConsumerRecord<Long, SmsMessagePayload> record : records) {
+                    submit(record);
+                }
+                applyBackpressure();
+                if (System.currentTimeMillis() - lastCommit >= commitIntervalMs) {
+                    commit(trackers.keySet(), false);
+                    lastCommit = System.currentTimeMillis();
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Parallel consumer failed: {}", e.getMessage(), e);
+        } finally {
+            try {
+                drain(trackers.keySet());
+                commit(trackers.keySet(), true);
+            } catch (Exception e) {
+                logger.error("Error committing the offsets on shutdown: {}", e.getMessage());
+            }
+            if (consumer != null) consumer.close();
+        }
+    }
+
+    private void submit(ConsumerRecord<Long, SmsMessagePayload> record) {
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        OffsetTracker tracker = trackers.computeIfAbsent(partition, ignored -> new OffsetTracker());
+        tracker.started(record.offset());
+        synchronized (pending) {
+            pending.add(priorityLanes.laneOf(record.topic()), new PendingRecord(record, partition, tracker));
+        }
+        schedule();
+    }
+
+    /**
+     * Starts the next waiting records, by lane weight, while fewer than max-in-flight are processed.
+     */
+    private void schedule() {
+        while (true) {
+            PendingRecord next;
+            synchronized (pending) {
+                if (processing >= maxInFlight) return;
+                next = pending.poll();
+                if (next == null) return;
+                processing++;
+            }
+            process(next.record, next.partition, next.tracker);
+        }
+    }
+
+    private void process(ConsumerRecord<Long, SmsMessagePayload> record, TopicPartition partition, OffsetTracker tracker) {
+        if (isRevoked(partition, tracker)) {
+            synchronized (pending) {
+                processing--;
+            }
+            tracker.abandoned(record.offset());
+            return;
+        }
+        keyOrderedExecutor.submit(orderingKey(record), () -> handleWhenAllowed(record, partition, tracker))
+                .whenComplete((handled, exception) -> {
+                    synchronized (pending) {
+                        processing--;
+                    }
+                    if (exception == null && handled) {
+                        tracker.completed(record.offset());
+                    } else if (exception == null) {
+                        tracker.abandoned(record.offset());
+                    } else {
+                        park(record, tracker, exception);
+                    }
+                    schedule();
+                });
+    }
+
+    /**
+     * Parks the failed record, again every PARK_RETRY_INTERVAL until it is parked, then completes it. Left in flight
+     * (uncommitted) once shutting down, so that it is redelivered on restart.
+     */
+    private void park(ConsumerRecord<Long, SmsMessagePayload> record, OffsetTracker tracker, Throwable failure) {
+        smsRecordHandler.park(record, failure).whenComplete((ignored, exception) -> {
+            if (exception == null) {
+                tracker.completed(record.offset());
+                return;
+            }
+            if (!running) return;
+            logger.error("Record {}-{}@{} could not be parked, trying again in {} ms", record.topic(), record.partition(), record.offset(),
+                    PARK_RETRY_INTERVAL.toMillis());
+            try {
+                throttleTimer.schedule(() -> park(record, tracker, failure), PARK_RETRY_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Shutting down: left uncommitted, redelivered on restart
+            }
+        });
+    }
+
+    /**
+     * Handles the record once its route has send tokens. Until then the record keeps its key busy, so that the next
+     * records of the phone number stay behind it, and its partition is paused (see applyBackpressure).
+     *
+     * @return Completed with true once the record is handled, with false if it was skipped: its partition was revoked
+     * while it waited for its key or for send tokens.
+     */
+    private CompletableFuture<Boolean> handleWhenAllowed(ConsumerRecord<Long, SmsMessagePayload> record, TopicPartition partition, OffsetTracker tracker) {
+        if (isRevoked(partition, tracker)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        long waitMs = smsRecordHandler.throttle(record);
+        if (waitMs <= 0) {
+            return smsRecordHandler.handle(record).thenApply(ignored -> true);
+        }
+        throttledUntil.merge(partition, System.currentTimeMillis() + waitMs, Math::max);
+        CompletableFuture<Boolean> handled = new CompletableFuture<>();
+        throttleTimer.schedule(() -> {
+            try {
+                workers.execute(() -> handleWhenAllowed(record, partition, tracker).whenComplete((result, exception) -> {
+                    if (exception == null) {
+                        handled.complete(result);
+                    } else {
+                        handled.completeExceptionally(exception);
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                // Shutting down: left uncommitted, redelivered on restart
+                handled.completeExceptionally(e);
+            }
+        }, waitMs, TimeUnit.MILLISECONDS);
+        return handled;
+    }
+
+    /**
+     * @return Whether the partition of the record is being revoked, or was revoked (or lost) since the record was polled.
+     */
+    private boolean isRevoked(TopicPartition partition, OffsetTracker tracker) {
+        return revoking.contains(partition) || trackers.get(partition) != tracker;
+    }
+
+    /**
+     * Drops the records of the partitions not started yet, they are left to the new owner of the partitions.
+     */
+    private void dropPending(Collection<TopicPartition> partitions) {
+        List<PendingRecord> dropped;
+        synchronized (pending) {
+            dropped = pending.removeIf(entry -> partitions.contains(entry.partition));
+        }
+        dropped.forEach(entry -> entry.tracker.abandoned(entry.record.offset()));
+        if (!dropped.isEmpty()) logger.info("Dropped {} records of the revoked partitions {} not started yet", dropped.size(), partitions);
+    }
+
+    private int pending(PriorityConstants lane) {
+        synchronized (pending) {
+            return pending.size(lane);
+        }
+    }
+
+    /**
+     * The phone number, so that the Sms of a recipient are sent in order. Legacy id-only records fall back to the
+     * record key (the id of the Sms Request).
+     */
+    private static Object orderingKey(ConsumerRecord<Long, SmsMessagePayload> record) {
+        SmsMessagePayload payload = record.value();
+        if (payload != null && payload.getPhoneNumber() != null) return payload.getPhoneNumber();
+        return record.key() != null ? record.key() : record;
+    }
+
+    /**
+     * Pauses the partitions at their in-flight limit or throttled, and resumes the ones back under half of the limit
+     * whose throttling is over.
+     */
+    private void applyBackpressure() {
+        long now = System.currentTimeMillis();
+        throttledUntil.values().removeIf(until -> until <= now);
+        Set<TopicPartition> paused = consumer.paused();
+        List<TopicPartition> toPause = new ArrayList<>();
+        List<TopicPartition> toResume = new ArrayList<>();
+        trackers.forEach((partition, tracker) -> {
+            int inFlight = tracker.inFlight();
+            boolean throttled = throttledUntil.containsKey(partition);
+            if (!paused.contains(partition) && (inFlight >= maxInFlightPerPartition || throttled)) {
+                toPause.add(partition);
+            } else if (paused.contains(partition) && !throttled && inFlight <= maxInFlightPerPartition / 2) {
+                toResume.add(partition);
+            }
+        });
+        if (!toPause.isEmpty()) consumer.pause(toPause);
+        if (!toResume.isEmpty()) consumer.resume(toResume);
+        pausedPartitions.set(consumer.paused().size());
+    }
+
+    private void commit(Collection<TopicPartition> partitions, boolean sync) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            OffsetTracker tracker = trackers.get(partition);
+            long offset = tracker == null ? -1 : tracker.committable();
+            if (offset >= 0) offsets.put(partition, new OffsetAndMetadata(offset));
+        }
+        if (offsets.isEmpty()) return;
+
+        if (sync) {
+            consumer.commitSync(offsets);
+            markCommitted(offsets);
+        } else {
+            consumer.commitAsync(offsets, (committed, exception) -> {
+                if (exception == null) {
+                    markCommitted(committed);
+                } else {
+                    // Committed again with the next interval
+                    logger.warn("Offset commit failed: {}", exception.getMessage());
+                }
+            });
+        }
+    }
+
+    private void markCommitted(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        offsets.forEach((partition, offset) -> {
+            OffsetTracker tracker = trackers.get(partition);
+            if (tracker != null) tracker.markCommitted(offset.offset());
+        });
+    }
+
+    /**
+     * Waits up to drain-timeout-ms for the records in flight of the partitions to complete.
+     */
+    private void drain(Collection<TopicPartition> partitions) {
+        long deadline = System.currentTimeMillis() + drainTimeoutMs;
+        while (System.currentTimeMillis() < deadline && partitions.stream().anyMatch(partition -> inFlight(partition) > 0)) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private int inFlight(TopicPartition partition) {
+        OffsetTracker tracker = trackers.get(partition);
+        return tracker == null ? 0 : tracker.inFlight();
+    }
+
+    private int inFlight() {
+        return trackers.values().stream().mapToInt(OffsetTracker::inFlight).sum();
+    }
+
+    /**
+     * Runs on the poll thread, within poll().
+     */
+    private final class RebalanceListener implements ConsumerRebalanceListener {
+
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            revoking.addAll(partitions);
+            try {
+                dropPending(partitions);
+                drain(partitions);
+                commit(partitions, true);
+            } catch (Exception e) {
+                logger.error("Error committing the offsets of the revoked partitions {}: {}", partitions, e.getMessage());
+            } finally {
+                partitions.forEach(trackers::remove);
+                partitions.forEach(throttledUntil::remove);
+                revoking.removeAll(partitions);
+            }
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            logger.info("Parallel consumer assigned {}", partitions);
+        }
+
+        @Override
+        public void onPartitionsLost(Collection<TopicPartition> partitions) {
+            // Already owned by another consumer, nothing to commit
+            dropPending(partitions);
+            partitions.forEach(trackers::remove);
+            partitions.forEach(throttledUntil::remove);
+        }
+    }
+
+    /**
+     * A record polled and waiting for its turn in the lanes.
+     */
+    private static final class PendingRecord {
+        private final ConsumerRecord<Long, SmsMessagePayload> record;
+        private final TopicPartition partition;
+        private final OffsetTracker tracker;
+
+        private PendingRecord(ConsumerRecord<Long, SmsMessagePayload> record, TopicPartition partition, OffsetTracker tracker) {
+            this.record = record;
+            this.partition = partition;
+            this.tracker = tracker;
+        }
+    }
+
+    @Override
+    public void stop() {
+        // The poll loop notices within POLL_TIMEOUT, then drains and commits
+        running = false;
+        try {
+            pollThread.join(drainTimeoutMs + TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+        throttleTimer.shutdown();
+        logger.info("Parallel consumer stopped");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
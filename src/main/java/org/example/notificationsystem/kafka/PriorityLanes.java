@@ -0,0 +1,98 @@
+package org.example.notificationsystem.kafka;
+
+import org.example.notificationsystem.constants.PriorityConstants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * The priority lanes of the Sms Requests: one topic per priority, so that a bulk campaign queues behind itself
+ * instead of in front of the OTPs.
+ * <ul>
+ *     <li>NORMAL: the Sms Request topic itself (notificationsystem), as before priorities existed.</li>
+ *     <li>HIGH: notificationsystem-high.</li>
+ *     <li>BULK: notificationsystem-bulk.</li>
+ * </ul>
+ * With sms.priority.lanes.enabled=false every Sms Request goes to the Sms Request topic (ex: while consumers that
+ * only read that topic are still running).
+ * <p>
+ * The weights (sms.priority.weight.*) are the share of the consumer's capacity each lane gets while they all have
+ * records waiting (see ParallelConsumer), ex: 8/3/1 serves 8 HIGH records for 1 BULK record. They only apply with
+ * sms.consumer.mode=parallel: the record and batch listeners consume every lane without weights, each lane only
+ * keeping its own partitions (and, for the ingest, its own admission rate, see AdmissionControlService).
+ */
+@Component
+public class PriorityLanes {
+
+    private final boolean enabled;
+    private final Map<PriorityConstants, String> topics = new EnumMap<>(PriorityConstants.class);
+    private final Map<String, PriorityConstants> lanes = new HashMap<>();
+    private final Map<PriorityConstants, Integer> weights = new EnumMap<>(PriorityConstants.class);
+
+    @Autowired
+    public PriorityLanes(@Value("${spring.kafka.sms-request-topic-name}") String topicName,
+                         @Value("${sms.priority.lanes.enabled}") boolean enabled,
+                         @Value("${sms.priority.weight.high}") int highWeight,
+                         @Value("${sms.priority.weight.normal}") int normalWeight,
+                         @Value("${sms.priority.weight.bulk}") int bulkWeight) {
+        this.enabled = enabled;
+        topics.put(PriorityConstants.NORMAL, topicName);
+        topics.put(PriorityConstants.HIGH, topicName + "-high");
+        topics.put(PriorityConstants.BULK, topicName + "-bulk");
+        topics.forEach((lane, topic) -> lanes.put(topic, lane));
+        weights.put(PriorityConstants.HIGH, Math.max(1, highWeight));
+        weights.put(PriorityConstants.NORMAL, Math.max(1, normalWeight));
+        weights.put(PriorityConstants.BULK, Math.max(1, bulkWeight));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return The topics to consume: every lane (they are always consumed, so that disabling the lanes while records
+     * are still on them loses nothing).
+     */
+    public List<String> getTopics() {
+        return new ArrayList<>(topics.values());
+    }
+
+    /**
+     * @return The lane topics besides the Sms Request topic.
+     */
+    public List<String> getLaneTopics() {
+        List<String> laneTopics = getTopics();
+        laneTopics.remove(topics.get(PriorityConstants.NORMAL));
+        return laneTopics;
+    }
+
+    /**
+     * @param priority The priority of a payload (see SmsMessagePayload).
+     * @return The topic to publish it to.
+     */
+    public String topicFor(byte priority) {
+        return topicOf(PriorityConstants.of((int) priority));
+    }
+
+    /**
+     * @param lane A priority.
+     * @return The topic its Sms Requests are published to.
+     */
+    public String topicOf(PriorityConstants lane) {
+        return enabled ? topics.get(lane) : topics.get(PriorityConstants.NORMAL);
+    }
+
+    /**
+     * @param topic A consumed topic.
+     * @return Its lane, NORMAL for any other topic.
+     */
+    public PriorityConstants laneOf(String topic) {
+        return lanes.getOrDefault(topic, PriorityConstants.NORMAL);
+    }
+
+    public int weightOf(PriorityConstants lane) {
+        return weights.get(lane);
+    }
+}
@@ -3,17 +3,30 @@ package org.example.notificationsystem.kafka;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.example.notificationsystem.models.SmsRequest;
+import org.example.notificationsystem.services.impl.SmsTemplateServiceImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Bean to represent the Producer which publishes logs to the Kafka Topic on receiving a request to initiate an Sms Request.
+ * The records are keyed by the id of the Sms Request and carry a {@link SmsMessagePayload}.
+ * Each Sms Request goes to the topic of its priority (see {@link PriorityLanes}).
+ * A templated Sms Request is rendered here, the record carries the text so that the consumers do not need the templates.
  * Injected into the SmsService.
  */
 @Component
@@ -25,26 +38,54 @@ public class Producer {
      * See the KafkaProducerConfig for more details.
      * Injected through the constructor.
      */
-    private final KafkaProducer<Long, Long> producer;
-    private final String topicName;
+    private final KafkaProducer<Long, SmsMessagePayload> producer;
+    private final PriorityLanes priorityLanes;
+    private final SmsTemplateServiceImpl smsTemplateServiceImpl;
 
     @Autowired
-    public Producer(KafkaProducer<Long, Long> producer,
-                    @Value("${spring.kafka.sms-request-topic-name}") String topicName) {
+    public Producer(KafkaProducer<Long, SmsMessagePayload> producer, PriorityLanes priorityLanes, SmsTemplateServiceImpl smsTemplateServiceImpl) {
         this.producer = producer;
-        this.topicName = topicName;
+        this.priorityLanes = priorityLanes;
+        this.smsTemplateServiceImpl = smsTemplateServiceImpl;
+    }
+
+    private ProducerRecord<Long, SmsMessagePayload> newRecord(SmsRequest smsRequest) {
+        SmsMessagePayload payload = SmsMessagePayload.of(smsRequest, smsTemplateServiceImpl.textOf(smsRequest));
+        return new ProducerRecord<>(priorityLanes.topicFor(payload.getPriority()), smsRequest.getId(), payload);
     }
 
     /**
-     * Publishes (sync) the log containing the request Id of the sms request in the MySQL.
-     * Key and Value both are the requestId itself.
+     * Returns how full the producer's record buffer (buffer.memory) is.
+     * A buffer filling up means the brokers do not keep up, and send() will soon block the callers.
+     *
+     * @return The used fraction of the buffer, between 0 and 1.
      */
-    public boolean publishSync(Long smsRequestId) {
-        logger.info("Attempting to send SMS request ID: {} to Kafka topic: {}", smsRequestId, topicName);
+    public double getBufferUtilization() {
+        double total = metricValue("buffer-total-bytes");
+        double available = metricValue("buffer-available-bytes");
+        if (total <= 0 || Double.isNaN(total) || Double.isNaN(available)) return 0;
+        return Math.max(0, Math.min(1, (total - available) / total));
+    }
 
-        Long key = smsRequestId;
-        Long value = smsRequestId;
-        ProducerRecord<Long, Long> producerRecord = new ProducerRecord<>(topicName, key, value);
+    private double metricValue(String name) {
+        for (Map.Entry<MetricName, ? extends Metric> entry : producer.metrics().entrySet()) {
+            if (entry.getKey().name().equals(name) && entry.getKey().group().equals("producer-metrics")) {
+                Object value = entry.getValue().metricValue();
+                return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Publishes (sync) the log containing the sms request persisted in the MySQL.
+     * Key is the requestId, value is the {@link SmsMessagePayload} of the request.
+     */
+    public boolean publishSync(SmsRequest smsRequest) {
+        Long smsRequestId = smsRequest.getId();
+        ProducerRecord<Long, SmsMessagePayload> producerRecord = newRecord(smsRequest);
+        String topicName = producerRecord.topic();
+        logger.info("Attempting to send SMS request ID: {} to Kafka topic: {}", smsRequestId, topicName);
 
         RecordMetadata recordMetadata;
         try {
@@ -58,4 +99,129 @@ public class Producer {
             return false;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Publishes (async) the log containing the sms request persisted in the MySQL.
+     * Returns as soon as the record is handed to the producer, the returned future completes once the brokers ack it.
+     * Callers must not block the producer's I/O thread in callbacks chained on the returned future.
+     *
+     * @param smsRequest The sms request persisted in MySQL.
+     * @return A future holding the metadata of the acked record, or the failure.
+     */
+    public CompletableFuture<RecordMetadata> publishAsync(SmsRequest smsRequest) {
+        Long smsRequestId = smsRequest.getId();
+        ProducerRecord<Long, SmsMessagePayload> producerRecord = newRecord(smsRequest);
+        String topicName = producerRecord.topic();
+        logger.info("Handing SMS request ID: {} to the Kafka producer for topic: {}", smsRequestId, topicName);
+
+        CompletableFuture<RecordMetadata> future = new CompletableFuture<>();
+        try {
+            producer.send(producerRecord, (recordMetadata, exception) -> {
+                if (exception != null) {
+                    logger.error("Failed to send SMS request ID: {} to Kafka topic: {}", smsRequestId, topicName, exception);
+                    future.completeExceptionally(exception);
+                } else {
+                    logger.debug("Successfully sent SMS request ID: {}, to Kafka topic: {}, to partition: {}", smsRequestId, recordMetadata.topic(), recordMetadata.partition());
+                    future.complete(recordMetadata);
+                }
+            });
+        } catch (KafkaException e) {
+            // send() itself throws if the record can not even be buffered (ex: max.block.ms elapsed)
+            logger.error("Failed to hand SMS request ID: {} to the Kafka producer", smsRequestId, e);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Publishes a batch of logs, one per sms request.
+     * All the records are handed to the producer first so that they are pipelined into the same broker requests,
+     * and only then are the acknowledgements awaited.
+     *
+     * @param smsRequests The sms requests persisted in MySQL.
+     * @return Per request success flags, in the same order as smsRequests. A request that could not even be handed
+     * to the producer (ex: buffer full for max.block.ms, serialization) is false, like one the brokers did not ack.
+     */
+    public List<Boolean> publishBatch(List<SmsRequest> smsRequests) {
+        logger.info("Attempting to send {} SMS request IDs to Kafka", smsRequests.size());
+
+        List<Long> smsRequestIds = new ArrayList<>(smsRequests.size());
+        List<String> topicNames = new ArrayList<>(smsRequests.size());
+        List<Future<RecordMetadata>> futures = new ArrayList<>(smsRequests.size());
+        for (SmsRequest smsRequest : smsRequests) {
+            smsRequestIds.add(smsRequest.getId());
+            ProducerRecord<Long, SmsMessagePayload> producerRecord = null;
+            Future<RecordMetadata> future = null;
+            try {
+                producerRecord = newRecord(smsRequest);
+                future = producer.send(producerRecord);
+            } catch (RuntimeException e) {
+                logger.error("Failed to hand SMS request ID: {} to the Kafka producer", smsRequest.getId(), e);
+            }
+            topicNames.add(producerRecord == null ? null : producerRecord.topic());
+            futures.add(future);
+        }
+
+        List<Boolean> results = new ArrayList<>(smsRequests.size());
+        for (int i = 0; i < futures.size(); i++) {
+            if (futures.get(i) == null) {
+                results.add(false);
+                continue;
+            }
+            try {
+                futures.get(i).get();
+                results.add(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while sending SMS request ID: {} to Kafka topic: {}", smsRequestIds.get(i), topicNames.get(i));
+                results.add(false);
+            } catch (ExecutionException e) {
+                logger.error("Failed to send SMS request ID: {} to Kafka topic: {}", smsRequestIds.get(i), topicNames.get(i), e);
+                results.add(false);
+            }
+        }
+        logger.info("Sent batch of {} SMS request IDs to Kafka", smsRequestIds.size());
+        return results;
+    }
+
+    /**
+     * Publishes (async) an Sms Request to a retry tier or the dead-letter topic (see {@link RetryTopics}).
+     * Callers must not block the producer's I/O thread in callbacks chained on the returned future.
+     *
+     * @param topic       The retry tier or dead-letter topic.
+     * @param payload     The Sms Request.
+     * @param attempt     The attempt the record is for.
+     * @param dueAtMillis Epoch millis before which the record must not be retried.
+     * @param lastFailure The outcome of the last failed attempt.
+     * @return A future completed with true once the brokers acked the record, false if it could not be sent (never
+     * completed exceptionally).
+     */
+    public CompletableFuture<Boolean> publishRetryAsync(String topic, SmsMessagePayload payload, int attempt, long dueAtMillis, String lastFailure) {
+        ProducerRecord<Long, SmsMessagePayload> producerRecord = newRetryRecord(topic, payload, attempt, dueAtMillis, lastFailure);
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        try {
+            producer.send(producerRecord, (recordMetadata, exception) -> {
+                if (exception != null) {
+                    logger.error("Failed to send SMS request ID: {} to Kafka topic: {}", payload.getId(), topic, exception);
+                    future.complete(false);
+                } else {
+                    logger.info("Sent SMS request ID: {} (attempt {}) to Kafka topic: {}", payload.getId(), attempt, topic);
+                    future.complete(true);
+                }
+            });
+        } catch (KafkaException e) {
+            logger.error("Failed to hand SMS request ID: {} to the Kafka producer", payload.getId(), e);
+            future.complete(false);
+        }
+        return future;
+    }
+
+    private static ProducerRecord<Long, SmsMessagePayload> newRetryRecord(String topic, SmsMessagePayload payload, int attempt, long dueAtMillis, String lastFailure) {
+        ProducerRecord<Long, SmsMessagePayload> producerRecord = new ProducerRecord<>(topic, payload.getId(), payload);
+        producerRecord.headers()
+                .add(RetryTopics.ATTEMPT_HEADER, Integer.toString(attempt).getBytes(StandardCharsets.UTF_8))
+                .add(RetryTopics.DUE_AT_HEADER, Long.toString(dueAtMillis).getBytes(StandardCharsets.UTF_8))
+                .add(RetryTopics.LAST_FAILURE_HEADER, lastFailure.getBytes(StandardCharsets.UTF_8));
+        return producerRecord;
+    }
+}
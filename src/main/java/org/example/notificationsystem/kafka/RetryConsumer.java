@@ -0,0 +1,136 @@
+package org.example.notificationsystem.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.example.notificationsystem.models.StatusTransition;
+import org.example.notificationsystem.services.impl.BlacklistServiceImpl;
+import org.example.notificationsystem.services.impl.SmsServiceImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.listener.AcknowledgingMessageListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Consumes the retry tiers (see {@link RetryTopics}), one listener container per tier so that a long delay never holds
+ * back a shorter one.
+ * <p>
+ * A record that is not due yet is nacked with the remaining delay: the container pauses its partitions for that long
+ * and keeps polling, so no thread sleeps and the consumer stays in the group. The records of a tier are due in the
+ * order they were written, so the first record not due yet holds back only records that are not due either.
+ * The main topic is not affected and keeps its full speed. A record whose route is out of send tokens (see
+ * SmsRequestProcessor.throttle) is nacked for the wait the same way.
+ * <p>
+ * Retried requests are few, their status is written synchronously (not through the write-behind buffer).
+ */
+@Component
+@ConditionalOnProperty(name = "sms.retry.enabled", havingValue = "true")
+public class RetryConsumer implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryConsumer.class);
+
+    private final BlacklistServiceImpl blacklistServiceImpl;
+    private final SmsServiceImpl smsServiceImpl;
+    private final SmsRequestProcessor smsRequestProcessor;
+    private final List<ConcurrentMessageListenerContainer<Long, SmsMessagePayload>> containers = new ArrayList<>();
+    private volatile boolean running = false;
+
+    @Autowired
+    public RetryConsumer(BlacklistServiceImpl blacklistServiceImpl, SmsServiceImpl smsServiceImpl, SmsRequestProcessor smsRequestProcessor,
+                         RetryTopics retryTopics,
+                         @Qualifier("SmsRetryListenerFactory") ConcurrentKafkaListenerContainerFactory<Long, SmsMessagePayload> factory,
+                         @Value("${sms.retry.concurrency}") int concurrency) {
+        this.blacklistServiceImpl = blacklistServiceImpl;
+        this.smsServiceImpl = smsServiceImpl;
+        this.smsRequestProcessor = smsRequestProcessor;
+        // No tier to consume when the retries are disabled (their topics are not created)
+        List<String> topics = retryTopics.isEnabled() ? retryTopics.getTopics() : Collections.emptyList();
+        for (String topic : topics) {
+            ConcurrentMessageListenerContainer<Long, SmsMessagePayload> container = factory.createContainer(topic);
+            container.setConcurrency(concurrency);
+            container.getContainerProperties().setClientId("sms-" + topic);
+            container.setupMessageListener((AcknowledgingMessageListener<Long, SmsMessagePayload>) this::consume);
+            containers.add(container);
+        }
+    }
+
+    /**
+     * Handle a retried Sms Request once it is due.
+     */
+    void consume(ConsumerRecord<Long, SmsMessagePayload> record, Acknowledgment acknowledgment) {
+        SmsMessagePayload payload = record.value();
+        if (payload == null) {
+            logger.error("Skipping unreadable record at {}-{}@{}", record.topic(), record.partition(), record.offset());
+            acknowledgment.acknowledge();
+            return;
+        }
+
+        long waitMs = headerAsLong(record, RetryTopics.DUE_AT_HEADER, 0) - System.currentTimeMillis();
+        if (waitMs > 0) {
+            // Redelivered once the pause is over
+            acknowledgment.nack(Duration.ofMillis(waitMs));
+            return;
+        }
+
+        int attempt = (int) headerAsLong(record, RetryTopics.ATTEMPT_HEADER, 2);
+        logger.info("Retrying SMS request ID: {} (attempt {}) from topic: {}", payload.getId(), attempt, record.topic());
+        try {
+            StatusTransition statusTransition;
+            if (blacklistServiceImpl.isNumberBlacklisted(payload.getPhoneNumber())) {
+                statusTransition = smsRequestProcessor.blacklisted(payload);
+            } else {
+                // Retries share the route's send tokens with the first attempts
+                long throttledMs = smsRequestProcessor.throttle(payload);
+                if (throttledMs > 0) {
+                    acknowledgment.nack(Duration.ofMillis(throttledMs));
+                    return;
+                }
+                statusTransition = smsRequestProcessor.send(payload, attempt);
+            }
+            smsServiceImpl.transition(statusTransition);
+        } catch (Exception e) {
+            logger.error("Error retrying SMS request ID: {}. Exception: {}", payload.getId(), e.getMessage());
+        }
+        acknowledgment.acknowledge();
+    }
+
+    private static long headerAsLong(ConsumerRecord<?, ?> record, String name, long defaultValue) {
+        Header header = record.headers().lastHeader(name);
+        if (header == null) return defaultValue;
+        try {
+            return Long.parseLong(new String(header.value(), StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public void start() {
+        containers.forEach(ConcurrentMessageListenerContainer::start);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        containers.forEach(ConcurrentMessageListenerContainer::stop);
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,126 @@
+package org.example.notificationsystem.kafka;
+
+import org.example.notificationsystem.constants.PriorityConstants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The retry tiers of the Sms Request topic and its dead-letter topic.
+ * <p>
+ * An Sms Request whose send failed transiently (timeout, API error, rejected by the ProviderGuard, throttled) is re-enqueued on
+ * the tier of its attempt, ex: notificationsystem-retry-5s, then -retry-1m, then -retry-10m (sms.retry.delays-ms).
+ * Once every tier was tried it lands on notificationsystem-dlt and is marked FAILED.
+ * <p>
+ * With the priority lanes enabled (see PriorityLanes) the HIGH Sms Requests get tiers of their own, ex:
+ * notificationsystem-high-retry-5s, so that an OTP retry does not queue behind the retries of a bulk campaign.
+ * They are always consumed, so that disabling the lanes while records are still on them loses nothing.
+ * <p>
+ * The records carry the attempt number, the time they are due and the last failure in headers.
+ */
+@Component
+public class RetryTopics {
+
+    /**
+     * Number of the attempt the record is for (the first send on the main topic is attempt 1).
+     */
+    public static final String ATTEMPT_HEADER = "sms-attempt";
+    /**
+     * Epoch millis before which the record must not be retried.
+     */
+    public static final String DUE_AT_HEADER = "sms-due-at";
+    /**
+     * The ThirdPartyApiResponseCode of the last failed attempt.
+     */
+    public static final String LAST_FAILURE_HEADER = "sms-last-failure";
+
+    private final boolean enabled;
+    private final boolean lanesEnabled;
+    private final List<String> topics = new ArrayList<>();
+    private final List<String> highTopics = new ArrayList<>();
+    private final List<Long> delaysMs = new ArrayList<>();
+    private final String deadLetterTopic;
+
+    @Autowired
+    public RetryTopics(@Value("${spring.kafka.sms-request-topic-name}") String topicName,
+                       @Value("${sms.retry.enabled}") boolean enabled,
+                       @Value("#{'${sms.retry.delays-ms}'.split(',')}") List<String> delaysMs,
+                       @Value("${sms.priority.lanes.enabled}") boolean lanesEnabled) {
+        this.enabled = enabled;
+        this.lanesEnabled = lanesEnabled;
+        for (String delay : delaysMs) {
+            long delayMs = Long.parseLong(delay.trim());
+            this.delaysMs.add(delayMs);
+            this.topics.add(topicName + "-retry-" + suffix(delayMs));
+            this.highTopics.add(topicName + "-high-retry-" + suffix(delayMs));
+        }
+        this.deadLetterTopic = topicName + "-dlt";
+    }
+
+    /**
+     * ex: 5000 -> 5s, 60000 -> 1m, 600000 -> 10m.
+     */
+    private static String suffix(long delayMs) {
+        if (delayMs % TimeUnit.HOURS.toMillis(1) == 0) return TimeUnit.MILLISECONDS.toHours(delayMs) + "h";
+        if (delayMs % TimeUnit.MINUTES.toMillis(1) == 0) return TimeUnit.MILLISECONDS.toMinutes(delayMs) + "m";
+        if (delayMs % TimeUnit.SECONDS.toMillis(1) == 0) return TimeUnit.MILLISECONDS.toSeconds(delayMs) + "s";
+        return delayMs + "ms";
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Every tier topic, the HIGH ones included.
+     */
+    public List<String> getTopics() {
+        List<String> allTopics = new ArrayList<>(topics);
+        allTopics.addAll(highTopics);
+        return Collections.unmodifiableList(allTopics);
+    }
+
+    public String getDeadLetterTopic() {
+        return deadLetterTopic;
+    }
+
+    /**
+     * @return Attempts an Sms Request gets in total: the first one plus one per tier.
+     */
+    public int getMaxAttempts() {
+        return enabled ? topics.size() + 1 : 1;
+    }
+
+    /**
+     * @param attempt The attempt that failed (1 for the first send).
+     * @return The tier topic of the next attempt, or null if the attempts are exhausted.
+     */
+    public String topicAfter(int attempt) {
+        return topicAfter(attempt, (byte) PriorityConstants.NORMAL.ordinal());
+    }
+
+    /**
+     * @param attempt  The attempt that failed (1 for the first send).
+     * @param priority The priority of the Sms Request.
+     * @return The tier topic of the next attempt, on the HIGH tiers for a HIGH Sms Request while the lanes are
+     * enabled, or null if the attempts are exhausted.
+     */
+    public String topicAfter(int attempt, byte priority) {
+        if (attempt >= getMaxAttempts()) return null;
+        boolean high = lanesEnabled && PriorityConstants.of((int) priority) == PriorityConstants.HIGH;
+        return (high ? highTopics : topics).get(attempt - 1);
+    }
+
+    /**
+     * @param attempt The attempt that failed (1 for the first send).
+     * @return How long to wait before the next attempt.
+     */
+    public long delayAfter(int attempt) {
+        return delaysMs.get(attempt - 1);
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.notificationsystem.kafka;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import org.example.notificationsystem.constants.PriorityConstants;
+import org.example.notificationsystem.models.SmsRequest;
+
+/**
+ * The value of the records on the Sms Request topic.
+ * It carries everything the Consumer needs to send the Sms, so that it does not have to read MySQL first.
+ * <ul>
+ *   <li><b>id</b>: The id of the Sms Request row in MySQL.</li>
+ *   <li><b>phoneNumber</b>: The recipient's phone number (null for a legacy id-only record).</li>
+ *   <li><b>message</b>: The text content of the Sms (null for a legacy id-only record).</li>
+ *   <li><b>priority</b>: The priority of the Sms Request (the ordinal of a PriorityConstants).</li>
+ *   <li><b>enqueuedAt</b>: The epoch millis at which the record was produced (0 for a legacy id-only record).</li>
+ * </ul>
+ * See {@link SmsMessagePayloadSerializer} for the wire format.
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+@ToString(exclude = "message")
+public class SmsMessagePayload {
+
+    public static final byte DEFAULT_PRIORITY = 0;
+
+    private final Long id;
+    private final String phoneNumber;
+    private final String message;
+    private final byte priority;
+    private final long enqueuedAt;
+
+    /**
+     * @param smsRequest The persisted Sms Request, not templated (ex: read for a legacy id-only record, whose Sms
+     *                   Request predates the templates).
+     * @return The payload of the Sms Request, enqueued now.
+     */
+    public static SmsMessagePayload of(SmsRequest smsRequest) {
+        return of(smsRequest, smsRequest.getMessage());
+    }
+
+    /**
+     * @param smsRequest The persisted Sms Request.
+     * @param text       The text of the Sms (the rendered template of a templated Sms Request, see SmsTemplateService.textOf).
+     * @return The payload of the Sms Request, enqueued now.
+     */
+    public static SmsMessagePayload of(SmsRequest smsRequest, String text) {
+        return new SmsMessagePayload(smsRequest.getId(), smsRequest.getPhoneNumber(), text,
+                (byte) PriorityConstants.of(smsRequest.getPriority()).ordinal(), System.currentTimeMillis());
+    }
+
+    /**
+     * @param id The id of the Sms Request row in MySQL.
+     * @return The payload of a legacy record, that only carries the id.
+     */
+    public static SmsMessagePayload idOnly(Long id) {
+        return new SmsMessagePayload(id, null, null, DEFAULT_PRIORITY, 0);
+    }
+
+    /**
+     * @return false for a legacy id-only record (or one written without a phone number or message, ex: empty
+     * strings), whose phone number and message must be read from MySQL.
+     */
+    public boolean isComplete() {
+        return phoneNumber != null && !phoneNumber.isEmpty() && message != null && !message.isEmpty();
+    }
+}
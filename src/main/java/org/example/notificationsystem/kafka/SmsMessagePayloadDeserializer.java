@@ -0,0 +1,52 @@
+package org.example.notificationsystem.kafka;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Deserializes the records written by {@link SmsMessagePayloadSerializer}.
+ * An 8 byte value is a legacy record (the id as a long) and is read as an id-only payload, so that records produced
+ * before the migration are still handled.
+ */
+public class SmsMessagePayloadDeserializer implements Deserializer<SmsMessagePayload> {
+
+    @Override
+    public SmsMessagePayload deserialize(String topic, byte[] data) {
+        if (data == null) return null;
+        if (data.length == 8) {
+            return SmsMessagePayload.idOnly(ByteBuffer.wrap(data).getLong());
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            byte magic = buffer.get();
+            byte version = buffer.get();
+            if (magic != SmsMessagePayloadSerializer.MAGIC) {
+                throw new SerializationException("Unknown record format on topic " + topic + " (magic " + magic + ")");
+            }
+            if (version != SmsMessagePayloadSerializer.VERSION) {
+                throw new SerializationException("Unsupported record version " + version + " on topic " + topic);
+            }
+            long id = buffer.getLong();
+            long enqueuedAt = buffer.getLong();
+            byte priority = buffer.get();
+            String phoneNumber = readString(buffer);
+            String message = readString(buffer);
+            return new SmsMessagePayload(id, phoneNumber, message, priority, enqueuedAt);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new SerializationException("Truncated record on topic " + topic, e);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) throw new IllegalArgumentException("Invalid length " + length);
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.notificationsystem.kafka;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Serializes a {@link SmsMessagePayload} into the compact binary record format (big endian):
+ * <pre>
+ * magic (1) | version (1) | id (8) | enqueuedAt (8) | priority (1) | phone length (4) | phone (UTF-8) | message length (4) | message (UTF-8)
+ * </pre>
+ * With {@link #LEGACY_FORMAT_CONFIG} set to true only the id is written as an 8 byte long, the format of the records
+ * before the payload was introduced. This is meant for the migration, while consumers that only read ids are still running.
+ */
+public class SmsMessagePayloadSerializer implements Serializer<SmsMessagePayload> {
+
+    /**
+     * Producer config key (passed through to the serializer) to keep writing the legacy id-only format.
+     */
+    public static final String LEGACY_FORMAT_CONFIG = "sms.payload.legacy-format";
+
+    static final byte MAGIC = 0x53;
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 1 + 1 + 8 + 8 + 1 + 4 + 4;
+
+    private boolean legacyFormat = false;
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object legacy = configs.get(LEGACY_FORMAT_CONFIG);
+        legacyFormat = legacy != null && Boolean.parseBoolean(legacy.toString());
+    }
+
+    @Override
+    public byte[] serialize(String topic, SmsMessagePayload payload) {
+        if (payload == null) return null;
+        if (legacyFormat) {
+            return ByteBuffer.allocate(8).putLong(payload.getId()).array();
+        }
+
+        byte[] phoneNumber = bytesOf(payload.getPhoneNumber());
+        byte[] message = bytesOf(payload.getMessage());
+        return ByteBuffer.allocate(HEADER_SIZE + phoneNumber.length + message.length)
+                .put(MAGIC)
+                .put(VERSION)
+                .putLong(payload.getId())
+                .putLong(payload.getEnqueuedAt())
+                .put(payload.getPriority())
+                .putInt(phoneNumber.length)
+                .put(phoneNumber)
+                .putInt(message.length)
+                .put(message)
+                .array();
+    }
+
+    private static byte[] bytesOf(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,229 @@
+package org.example.notificationsystem.kafka;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.example.notificationsystem.constants.PriorityConstants;
+import org.example.notificationsystem.models.StatusTransition;
+import org.example.notificationsystem.services.impl.BlacklistServiceImpl;
+import org.example.notificationsystem.services.impl.SmsServiceImpl;
+import org.example.notificationsystem.services.impl.StatusWriteServiceImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handles one record of the Sms Request topics, for the Consumer and the ParallelConsumer.
+ * <p>
+ * Records the <b>sms.lane.latency{lane}</b> timer: from the publish of the record to the end of its handling, per
+ * priority lane (see PriorityLanes).
+ */
+@Component
+public class SmsRecordHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SmsRecordHandler.class);
+
+    /**
+     * The blacklist and sms service are injected through the constructor for interacting with Redis (to check if a number is blacklisted) and
+     * updating the status of the Sms Request in SmsRequest.
+     */
+    private final BlacklistServiceImpl blacklistServiceImpl;
+    private final SmsServiceImpl smsServiceImpl;
+    private final SmsRequestProcessor smsRequestProcessor;
+    private final StatusWriteServiceImpl statusWriteServiceImpl;
+    private final Executor statusWriteExecutor;
+    private final Map<PriorityConstants, Timer> latencyByLane = new EnumMap<>(PriorityConstants.class);
+
+    public SmsRecordHandler(BlacklistServiceImpl blacklistServiceImpl, SmsServiceImpl smsServiceImpl, SmsRequestProcessor smsRequestProcessor,
+                            StatusWriteServiceImpl statusWriteServiceImpl, @Qualifier("statusWriteExecutor") Executor statusWriteExecutor,
+                            MeterRegistry meterRegistry) {
+        this.blacklistServiceImpl = blacklistServiceImpl;
+        this.smsServiceImpl = smsServiceImpl;
+        this.smsRequestProcessor = smsRequestProcessor;
+        this.statusWriteServiceImpl = statusWriteServiceImpl;
+        this.statusWriteExecutor = statusWriteExecutor;
+        for (PriorityConstants lane : PriorityConstants.values()) {
+            latencyByLane.put(lane, Timer.builder("sms.lane.latency").tag("lane", lane.name()).register(meterRegistry));
+        }
+    }
+
+    /**
+     * Takes the send token of the route of the record (see SmsRequestProcessor.throttle), before it is handled.
+     * Legacy id-only records carry no phone number and are not throttled, nor are blacklisted numbers: they are
+     * failed without a send.
+     *
+     * @return 0 if the record may be handled now, otherwise the milliseconds to wait before asking again.
+     */
+    public long throttle(ConsumerRecord<Long, SmsMessagePayload> record) {
+        SmsMessagePayload payload = record.value();
+        if (payload == null || !payload.isComplete()) return 0;
+        try {
+            if (blacklistServiceImpl.isNumberBlacklisted(payload.getPhoneNumber())) return 0;
+        } catch (Exception e) {
+            // Checked again by handle, which parks the record if it still fails
+            logger.warn("Could not check the blacklist before throttling SMS request ID: {}. Exception: {}", payload.getId(), e.getMessage());
+        }
+        return smsRequestProcessor.throttle(payload);
+    }
+
+    /**
+     * Handle an Sms Request. If its handling fails, the record is parked on a retry tier or the dead-letter topic
+     * (see SmsRequestProcessor.park) and counts as handled.
+     *
+     * @return Completed once the record may be committed: right away, once its status transition is durable with
+     * the status write-behind or the micro-batching enabled, or once it is parked. Completed exceptionally if it could
+     * not even be parked, the record must then be redelivered.
+     */
+    public CompletableFuture<Void> handle(ConsumerRecord<Long, SmsMessagePayload> record) {
+        CompletableFuture<Void> handled = recover(record, process(record));
+        SmsMessagePayload payload = record.value();
+        if (payload != null && payload.getEnqueuedAt() > 0) {
+            // Legacy id-only records carry no publish time
+            Timer latency = latencyByLane.get(PriorityConstants.of((int) payload.getPriority()));
+            handled.whenComplete((ignored, exception) ->
+                    latency.record(Math.max(0, System.currentTimeMillis() - payload.getEnqueuedAt()), TimeUnit.MILLISECONDS));
+        }
+        return handled;
+    }
+
+    private CompletableFuture<Void> recover(ConsumerRecord<Long, SmsMessagePayload> record, CompletableFuture<Void> processed) {
+        CompletableFuture<Void> handled = new CompletableFuture<>();
+        processed.whenComplete((ignored, exception) -> {
+            if (exception == null) {
+                handled.complete(null);
+                return;
+            }
+            logger.error("Handling of record {}-{}@{} failed", record.topic(), record.partition(), record.offset(), unwrap(exception));
+            park(record, exception).whenComplete((parked, e) -> {
+                if (e == null) {
+                    handled.complete(null);
+                } else {
+                    handled.completeExceptionally(e);
+                }
+            });
+        });
+        return handled;
+    }
+
+    /**
+     * Parks a record whose handling failed on a retry tier or the dead-letter topic (see SmsRequestProcessor.park).
+     * Used by handle, and by the ParallelConsumer to try again a record that could not be parked.
+     *
+     * @param failure The failure of its handling.
+     * @return Completed once the record is parked (or is unreadable, with nothing to park), otherwise completed
+     * exceptionally with the failure.
+     */
+    public CompletableFuture<Void> park(ConsumerRecord<Long, SmsMessagePayload> record, Throwable failure) {
+        Throwable cause = unwrap(failure);
+        if (record.value() == null) return CompletableFuture.completedFuture(null);
+        CompletableFuture<Void> parked = new CompletableFuture<>();
+        smsRequestProcessor.park(record.value(), cause instanceof StatusNotWrittenException).whenComplete((published, e) -> {
+            if (Boolean.TRUE.equals(published)) {
+                parked.complete(null);
+            } else {
+                parked.completeExceptionally(cause);
+            }
+        });
+        return parked;
+    }
+
+    private static Throwable unwrap(Throwable exception) {
+        return exception instanceof CompletionException && exception.getCause() != null ? exception.getCause() : exception;
+    }
+
+    private CompletableFuture<Void> process(ConsumerRecord<Long, SmsMessagePayload> record) {
+        /**
+         * Log the receival of the request.
+         * */
+        SmsMessagePayload payload = record.value();
+        if (payload == null) {
+            logger.error("Skipping unreadable record at {}-{}@{}", record.topic(), record.partition(), record.offset());
+            return CompletableFuture.completedFuture(null);
+        }
+        Long smsRequestId = payload.getId();
+        logger.info("Received record with key: {} and value: {}", record.key(), payload);
+
+        try {
+            /**
+             * The record carries the Sms Request. Only legacy id-only records need to get it from MySQL.
+             * */
+            Optional<SmsMessagePayload> optionalSmsRequest = payload.isComplete()
+                    ? Optional.of(payload)
+                    : this.smsServiceImpl.getSmsRequest(smsRequestId).map(SmsMessagePayload::of);
+
+            if (!optionalSmsRequest.isPresent()) {
+                logger.error("Invalid SMS Request ID: {}. Unable to find phone number or SMS request details.", smsRequestId);
+                return CompletableFuture.completedFuture(null);
+            }
+            String phoneNumber = optionalSmsRequest.get().getPhoneNumber();
+
+            logger.info("Found SMS request ID: {} for phone number: {}", smsRequestId, phoneNumber);
+
+            /**
+             * Check if the number is blacklisted or not.
+             * If blacklisted, fail the request, otherwise make a request to the third party API
+             * (possibly batched with other requests, see SmsDispatchService).
+             * */
+            CompletableFuture<StatusTransition> statusTransition = blacklistServiceImpl.isNumberBlacklisted(phoneNumber)
+                    ? CompletableFuture.completedFuture(smsRequestProcessor.blacklisted(optionalSmsRequest.get()))
+                    : smsRequestProcessor.dispatch(optionalSmsRequest.get());
+
+            /**
+             * Update the state in MySQL (one conditional UPDATE, rejected if the request is no longer IN_PROGRESS),
+             * either now or through the write-behind buffer. A send completed by the dispatcher has its UPDATE run
+             * on the statusWriteExecutor, off the dispatch senders.
+             * */
+            if (statusTransition.isDone() || statusWriteServiceImpl.isEnabled()) {
+                return statusTransition.thenCompose(this::writeStatus);
+            }
+            return statusTransition.thenComposeAsync(this::writeStatus, statusWriteExecutor);
+        } catch (Exception e) {
+            logger.error("Error processing SMS request ID: {}. Exception: {}", smsRequestId, e.getMessage());
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    /**
+     * Writes the transition through the write-behind buffer if it is enabled, otherwise right away.
+     *
+     * @return Completed once the transition is durable (applied or rejected as stale), otherwise completed with a
+     * StatusNotWrittenException.
+     */
+    private CompletableFuture<Void> writeStatus(StatusTransition statusTransition) {
+        CompletableFuture<Boolean> written;
+        try {
+            written = statusWriteServiceImpl.isEnabled()
+                    ? statusWriteServiceImpl.submit(statusTransition)
+                    : CompletableFuture.completedFuture(smsServiceImpl.transition(statusTransition));
+        } catch (RuntimeException e) {
+            written = new CompletableFuture<>();
+            written.completeExceptionally(e);
+        }
+        return written.handle((applied, exception) -> {
+            if (exception != null) {
+                throw new StatusNotWrittenException(statusTransition, exception);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * The request was sent, but its status transition could not be written.
+     */
+    private static final class StatusNotWrittenException extends RuntimeException {
+        StatusNotWrittenException(StatusTransition statusTransition, Throwable cause) {
+            super("Status of SMS request ID: " + statusTransition.getSmsRequestId() + " not written", cause);
+        }
+    }
+}
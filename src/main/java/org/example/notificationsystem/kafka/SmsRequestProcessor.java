@@ -0,0 +1,243 @@
+package org.example.notificationsystem.kafka;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.notificationsystem.constants.FailureCodeConstants;
+import org.example.notificationsystem.constants.StatusConstants;
+import org.example.notificationsystem.constants.ThirdPartyApiResponseCode;
+import org.example.notificationsystem.models.StatusTransition;
+import org.example.notificationsystem.provider.ProviderResponse;
+import org.example.notificationsystem.provider.ProviderRouter;
+import org.example.notificationsystem.provider.ThirdPartySmsClient;
+import org.example.notificationsystem.services.impl.SmsDispatchServiceImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends an Sms Request to the third party API and maps the result to the {@link StatusTransition} (from IN_PROGRESS) to write to MySQL.
+ * Shared by the record (Consumer), batch (BatchConsumer) and retry (RetryConsumer) listeners.
+ * <p>
+ * A transient failure (timeout, API error, rejected by the ProviderGuard, throttled) re-enqueues the Sms Request on the next
+ * retry tier (see {@link RetryTopics}) and leaves it IN_PROGRESS. Once the tiers are exhausted it is sent to the
+ * dead-letter topic and marked FAILED. A rejected or throttled attempt was not accepted by the provider and does not
+ * count: it is retried on the same tier until a call goes through. Metrics: <b>sms.retry.scheduled{topic}</b> and <b>sms.retry.dead-lettered</b>.
+ */
+@Component
+public class SmsRequestProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(SmsRequestProcessor.class);
+
+    /**
+     * The last failure (see RetryTopics.LAST_FAILURE_HEADER) of the records parked by park.
+     */
+    static final String HANDLING_FAILED = "HANDLING_FAILED";
+    static final String STATUS_NOT_WRITTEN = "STATUS_NOT_WRITTEN";
+
+    private final ProviderRouter providerRouter;
+    private final SmsDispatchServiceImpl smsDispatchServiceImpl;
+    private final Producer producer;
+    private final RetryTopics retryTopics;
+    private final MeterRegistry meterRegistry;
+    private final Counter deadLettered;
+
+    @Autowired
+    public SmsRequestProcessor(ProviderRouter providerRouter, SmsDispatchServiceImpl smsDispatchServiceImpl,
+                               Producer producer, RetryTopics retryTopics, MeterRegistry meterRegistry) {
+        this.providerRouter = providerRouter;
+        this.smsDispatchServiceImpl = smsDispatchServiceImpl;
+        this.producer = producer;
+        this.retryTopics = retryTopics;
+        this.meterRegistry = meterRegistry;
+        this.deadLettered = Counter.builder("sms.retry.dead-lettered").register(meterRegistry);
+    }
+
+    /**
+     * @param payload The Sms Request, whose phone number is blacklisted.
+     * @return The transition marking the Sms Request FAILED.
+     */
+    public StatusTransition blacklisted(SmsMessagePayload payload) {
+        logger.warn("Phone number {} is blacklisted. Marking SMS request ID: {} as FAILED", payload.getPhoneNumber(), payload.getId());
+        return StatusTransition.fromInProgress(payload.getId(), StatusConstants.FAILED, FailureCodeConstants.BLACKLISTED_PHONE_NUMBER, "The phone number " + payload.getPhoneNumber() + " is blacklisted");
+    }
+
+    /**
+     * Takes the token of the route of the Sms Request (see ProviderRouter.tryAcquireRoute), the listeners call it
+     * before handling a record and pause when it returns a wait. While no gateway of the route would take a call
+     * (circuit open or at its concurrency limit, see ProviderGuard), the listeners pause as well instead of having the
+     * Sms Request rejected.
+     *
+     * @param payload The Sms Request.
+     * @return 0 if it may be sent now, otherwise the milliseconds to wait before asking again.
+     */
+    public long throttle(SmsMessagePayload payload) {
+        String routeKey = providerRouter.routeKey(payload.getPhoneNumber());
+        long unavailableMs = providerRouter.availableIn(routeKey);
+        if (unavailableMs > 0) return unavailableMs;
+        return providerRouter.tryAcquireRoute(routeKey, 1);
+    }
+
+    /**
+     * Makes the (first) request to the third party API.
+     *
+     * @param payload The Sms Request (its phone number is not blacklisted).
+     * @return The transition holding the result of the request.
+     */
+    public StatusTransition send(SmsMessagePayload payload) {
+        return send(payload, 1);
+    }
+
+    /**
+     * Makes the request to the third party API.
+     *
+     * @param payload The Sms Request (its phone number is not blacklisted).
+     * @param attempt The number of the attempt, 1 for the first one.
+     * @return The transition holding the result of the request.
+     */
+    public StatusTransition send(SmsMessagePayload payload, int attempt) {
+        logger.info("Phone number {} is not blacklisted. Proceeding with SMS sending...", payload.getPhoneNumber());
+
+        // One message to one number, see dispatch for the batched variant
+        String correlationId = UUID.randomUUID().toString();
+        ProviderResponse providerResponse = providerRouter.exchange(providerRouter.routeKey(payload.getPhoneNumber()), Collections.singletonList(
+                ThirdPartySmsClient.smsRequest(payload.getMessage(), Collections.singletonList(
+                        ThirdPartySmsClient.destination(payload.getPhoneNumber(), correlationId)))
+        ));
+        ThirdPartyApiResponseCode thirdPartyApiResponseCode = providerResponse.resultOf(correlationId);
+        return complete(payload, attempt, thirdPartyApiResponseCode);
+    }
+
+    /**
+     * Makes the request to the third party API through the micro-batching dispatcher when it is enabled,
+     * otherwise right away (see send).
+     *
+     * @param payload The Sms Request (its phone number is not blacklisted).
+     * @return A future holding the transition with the result of the request, completed on a dispatch sender thread, or on
+     * the producer's I/O thread once a failed request is re-enqueued.
+     */
+    public CompletableFuture<StatusTransition> dispatch(SmsMessagePayload payload) {
+        if (!smsDispatchServiceImpl.isEnabled()) {
+            return CompletableFuture.completedFuture(send(payload));
+        }
+        logger.info("Phone number {} is not blacklisted. Queueing SMS request ID: {} for the next batch", payload.getPhoneNumber(), payload.getId());
+        return smsDispatchServiceImpl.submit(payload).thenCompose(thirdPartyApiResponseCode -> completeAsync(payload, 1, thirdPartyApiResponseCode));
+    }
+
+    /**
+     * Retries a transient failure on the next tier if there is one, otherwise maps the result to its final transition.
+     * Blocks until the retry is published, see completeAsync for the dispatch senders.
+     */
+    public StatusTransition complete(SmsMessagePayload payload, int attempt, ThirdPartyApiResponseCode thirdPartyApiResponseCode) {
+        return completeAsync(payload, attempt, thirdPartyApiResponseCode).join();
+    }
+
+    /**
+     * Like complete, without blocking on the publish of the retry.
+     *
+     * @return A future holding the transition, completed right away unless the Sms Request is re-enqueued, otherwise
+     * on the producer's I/O thread (never completed exceptionally).
+     */
+    public CompletableFuture<StatusTransition> completeAsync(SmsMessagePayload payload, int attempt, ThirdPartyApiResponseCode thirdPartyApiResponseCode) {
+        if (!retryTopics.isEnabled() || !isTransient(thirdPartyApiResponseCode)) {
+            return CompletableFuture.completedFuture(toStatusUpdate(payload.getId(), thirdPartyApiResponseCode));
+        }
+        // An attempt that never reached the provider is not used up: retried from the tier it came from
+        int tier = isNotSent(thirdPartyApiResponseCode) ? Math.max(1, attempt - 1) : attempt;
+        int nextAttempt = isNotSent(thirdPartyApiResponseCode) ? attempt : attempt + 1;
+        String retryTopic = retryTopics.topicAfter(tier, payload.getPriority());
+        if (retryTopic == null) {
+            return producer.publishRetryAsync(retryTopics.getDeadLetterTopic(), payload, attempt, System.currentTimeMillis(), thirdPartyApiResponseCode.name())
+                    .thenApply(published -> {
+                        if (published) deadLettered.increment();
+                        return toStatusUpdate(payload.getId(), thirdPartyApiResponseCode);
+                    });
+        }
+        long delayMs = retryTopics.delayAfter(tier);
+        return producer.publishRetryAsync(retryTopic, payload, nextAttempt, System.currentTimeMillis() + delayMs, thirdPartyApiResponseCode.name())
+                .thenApply(published -> {
+                    if (!published) {
+                        logger.error("SMS request ID: {} could not be re-enqueued for a retry", payload.getId());
+                        return toStatusUpdate(payload.getId(), thirdPartyApiResponseCode);
+                    }
+                    meterRegistry.counter("sms.retry.scheduled", "topic", retryTopic).increment();
+                    logger.warn("SMS request ID: {} attempt {} failed ({}). Retrying in {} ms", payload.getId(), attempt, thirdPartyApiResponseCode, delayMs);
+                    return StatusTransition.fromInProgress(payload.getId(), StatusConstants.IN_PROGRESS, FailureCodeConstants.IN_PROGRESS,
+                            "Attempt " + attempt + " failed (" + thirdPartyApiResponseCode + "), retrying in " + delayMs + " ms.");
+                });
+    }
+
+    /**
+     * Parks a record of the Sms Request topics whose handling failed, so that it can be committed without being lost.
+     * If it may not have been sent yet (ex: the blacklist or the dispatcher failed), it goes to the first retry tier
+     * when the retries are enabled. If it was sent but its status could not be written, or can not be retried, it goes
+     * to the dead-letter topic: retrying it would send it twice.
+     *
+     * @param payload The Sms Request.
+     * @param sent    Whether the request was made to the third party API.
+     * @return A future completed with true once the record is parked, false if it could not be (never completed
+     * exceptionally). Completed on the producer's I/O thread.
+     */
+    public CompletableFuture<Boolean> park(SmsMessagePayload payload, boolean sent) {
+        if (!sent && retryTopics.isEnabled() && payload.isComplete()) {
+            String retryTopic = retryTopics.topicAfter(1, payload.getPriority());
+            long delayMs = retryTopics.delayAfter(1);
+            logger.warn("Handling of SMS request ID: {} failed. Retrying in {} ms", payload.getId(), delayMs);
+            return producer.publishRetryAsync(retryTopic, payload, 2, System.currentTimeMillis() + delayMs, HANDLING_FAILED)
+                    .thenApply(published -> {
+                        if (published) meterRegistry.counter("sms.retry.scheduled", "topic", retryTopic).increment();
+                        return published;
+                    });
+        }
+        logger.error("Handling of SMS request ID: {} failed (sent: {}). Sending it to the dead-letter topic", payload.getId(), sent);
+        return producer.publishRetryAsync(retryTopics.getDeadLetterTopic(), payload, 1, System.currentTimeMillis(), sent ? STATUS_NOT_WRITTEN : HANDLING_FAILED)
+                .thenApply(published -> {
+                    if (published) deadLettered.increment();
+                    return published;
+                });
+    }
+
+    /**
+     * Rejected by the ProviderGuard without calling the provider, or throttled: every gateway out of tokens, or the
+     * provider refusing the request (429).
+     */
+    private static boolean isNotSent(ThirdPartyApiResponseCode thirdPartyApiResponseCode) {
+        return thirdPartyApiResponseCode == ThirdPartyApiResponseCode.REJECTED
+                || thirdPartyApiResponseCode == ThirdPartyApiResponseCode.THROTTLED;
+    }
+
+    private static boolean isTransient(ThirdPartyApiResponseCode thirdPartyApiResponseCode) {
+        return thirdPartyApiResponseCode == ThirdPartyApiResponseCode.TIMEOUT
+                || thirdPartyApiResponseCode == ThirdPartyApiResponseCode.API_ERROR
+                || thirdPartyApiResponseCode == ThirdPartyApiResponseCode.REJECTED
+                || thirdPartyApiResponseCode == ThirdPartyApiResponseCode.THROTTLED;
+    }
+
+    /**
+     * Handle all the possible errors that might occur from the third party API request.
+     */
+    static StatusTransition toStatusUpdate(Long smsRequestId, ThirdPartyApiResponseCode thirdPartyApiResponseCode) {
+        if (thirdPartyApiResponseCode == ThirdPartyApiResponseCode.SUCCESS) {
+            logger.info("SMS request ID: {} sent successfully. Marking as FINISHED", smsRequestId);
+            return StatusTransition.fromInProgress(smsRequestId, StatusConstants.FINISHED, FailureCodeConstants.SUCCESS, "No Failure.");
+        }
+        logger.warn("SMS request ID: {} could not be sent ({}). Marking as FAILED", smsRequestId, thirdPartyApiResponseCode);
+        if (thirdPartyApiResponseCode == ThirdPartyApiResponseCode.TIMEOUT) {
+            return StatusTransition.fromInProgress(smsRequestId, StatusConstants.FAILED, FailureCodeConstants.EXTERNAL_API_TIMEOUT, "TCP Connection timed out.");
+        } else if (thirdPartyApiResponseCode == ThirdPartyApiResponseCode.INVALID_REQUEST_BODY) {
+            return StatusTransition.fromInProgress(smsRequestId, StatusConstants.FAILED, FailureCodeConstants.INVALID_REQUEST_BODY, "Request body when making third party request was invalid.");
+        } else if (thirdPartyApiResponseCode == ThirdPartyApiResponseCode.REJECTED) {
+            return StatusTransition.fromInProgress(smsRequestId, StatusConstants.FAILED, FailureCodeConstants.EXTERNAL_API_UNAVAILABLE, "Third party API is unavailable, the request was not sent.");
+        } else if (thirdPartyApiResponseCode == ThirdPartyApiResponseCode.THROTTLED) {
+            return StatusTransition.fromInProgress(smsRequestId, StatusConstants.FAILED, FailureCodeConstants.EXTERNAL_API_THROTTLED, "Third party API rate limit exceeded, the request was not accepted.");
+        } else if (thirdPartyApiResponseCode == ThirdPartyApiResponseCode.MALFORMED_URL) {
+            return StatusTransition.fromInProgress(smsRequestId, StatusConstants.FAILED, FailureCodeConstants.INVALID_URL, "URL of third party request was malformed.");
+        } else {
+            return StatusTransition.fromInProgress(smsRequestId, StatusConstants.FAILED, FailureCodeConstants.EXTERNAL_API_ERROR, "Something went wrong while making third party request.");
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.example.notificationsystem.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The outcome of asking the admission control to let a request in.
+ * <ul>
+ *   <li><b>admitted</b>: Whether the request may proceed.</li>
+ *   <li><b>retryAfterSeconds</b>: If rejected, when the client should retry (sent as the Retry-After header).</li>
+ *   <li><b>reason</b>: If rejected, which limit was hit.</li>
+ * </ul>
+ */
+@Getter
+@AllArgsConstructor
+public class AdmissionDecision {
+    private static final AdmissionDecision ADMITTED = new AdmissionDecision(true, 0, null);
+
+    private final boolean admitted;
+    private final long retryAfterSeconds;
+    private final String reason;
+
+    public static AdmissionDecision admitted() {
+        return ADMITTED;
+    }
+
+    public static AdmissionDecision rejected(long retryAfterSeconds, String reason) {
+        return new AdmissionDecision(false, retryAfterSeconds, reason);
+    }
+}
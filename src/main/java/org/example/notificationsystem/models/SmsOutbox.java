@@ -0,0 +1,53 @@
+package org.example.notificationsystem.models;
+
+import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.*;
+import java.util.Date;
+
+
+/**
+ * Represents an outbox entry that maps to the "sms_outbox" table in the MySQL database.
+ * It is written in the same transaction as the {@link SmsRequest} row and drained by the outbox relay.
+ * <ul>
+ *   <li><b>id</b>: The unique id (primary key of the table) of the outbox entry (auto-generated, time-ordered). Entries are drained in id order.</li>
+ *   <li><b>smsRequestId</b>: The id of the SMS request row to be published to Kafka and indexed into Elasticsearch.</li>
+ *   <li><b>published</b>: Whether the entry has been published to Kafka.</li>
+ *   <li><b>indexed</b>: Whether the entry has been indexed into Elasticsearch.</li>
+ *   <li><b>createdAt</b>: The timestamp when the entry was written.</li>
+ * </ul>
+ * <p>
+ * The published and indexed flags are the (per sink) cursors of the relay. A single high-water mark id per sink is not
+ * enough because transactions commit out of id order, so a cursor past a not yet committed id would skip it forever.
+ * <p>
+ * This class is annotated with: {@code @Getter}, {@code @Setter}, {@code @NoArgsConstructor}, {@code @AllArgsConstructor}, {@code @Builder})
+ */
+@Entity
+@Table(name = "sms_outbox", indexes = {
+        @Index(name = "idx_sms_outbox_published_id", columnList = "published, id"),
+        @Index(name = "idx_sms_outbox_indexed_id", columnList = "indexed, id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SmsOutbox {
+    @Id
+    @GeneratedValue(generator = "snowflake")
+    @GenericGenerator(name = "snowflake", strategy = "org.example.notificationsystem.models.SnowflakeIdentifierGenerator")
+    private Long id;
+
+    @Column(name = "sms_request_id", nullable = false)
+    private Long smsRequestId;
+
+    @Column(name = "published", nullable = false)
+    private boolean published;
+
+    @Column(name = "indexed", nullable = false)
+    private boolean indexed;
+
+    @Column(name = "created_at")
+    private Date createdAt;
+}
@@ -1,9 +1,13 @@
 package org.example.notificationsystem.models;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import lombok.*;
 import org.example.notificationsystem.constants.FailureCodeConstants;
+import org.example.notificationsystem.constants.PriorityConstants;
 import org.example.notificationsystem.constants.StatusConstants;
 import org.example.notificationsystem.utils.NotificationSystemUtils;
+import org.hibernate.annotations.GenericGenerator;
 
 import javax.persistence.*;
 import javax.validation.constraints.Size;
@@ -13,13 +17,19 @@ import java.util.Date;
 /**
  * Represents an SMS request entity that maps to the "sms_request" table in the MySQL database.
  * <ul>
- *   <li><b>id</b>: The unique id (primary key of the table) for the SMS request row (auto-generated).</li>
+ *   <li><b>id</b>: The unique id (primary key of the table) for the SMS request row (auto-generated, time-ordered, see {@link SnowflakeIdentifierGenerator}).
+ *   Written as a string in JSON: a 64-bit id does not fit the 53 bits of a JavaScript number.</li>
  *   <li><b>phoneNumber</b>: The recipient's phone number, which must be between 4 and 17 characters long.</li>
- *   <li><b>message</b>: The text content of the SMS message.</li>
+ *   <li><b>message</b>: The text content of the SMS message (null for a templated SMS).</li>
+ *   <li><b>templateId</b>: The id of the {@link SmsTemplate} version the text is rendered from (null for a plain message).</li>
+ *   <li><b>templateParams</b>: The parameters of the template, in their compact form (see {@link org.example.notificationsystem.utils.CompiledTemplate#encodeParams}).
+ *   Only they are stored instead of the whole text.</li>
  *   <li><b>status</b>: The current status of the request, represented by an integer.Refer to the StatusConstants.java file for the values it can take.
  *   <li><b>failureCode</b>: Indicates the failure code if an error occurs. Refer to the FailureCodeConstants.java file for the values it can take.
  *   <li><b>failureComments</b>: Additional details or comments regarding any failure that may occur.</li>
- *   <li><b>createdAt</b>: The timestamp when the SMS request was created.</li>
+ *   <li><b>priority</b>: The priority of the request (the ordinal of a PriorityConstants), which decides its Kafka lane.</li>
+ *   <li><b>sendAt</b>: When the SMS must be sent, null to send it right away (see {@link SmsSchedule}).</li>
+ *   <li><b>createdAt</b>: The timestamp when the SMS request was created. Together with the id it is the (keyset) sort key of the listings.</li>
  *   <li><b>updatedAt</b>: The timestamp when the SMS request was last updated.</li>
  * </ul>
  * <p>
@@ -38,7 +48,10 @@ import java.util.Date;
  * @author Malladi Pradyumna
  */
 @Entity
-@Table(name = "sms_request")
+@Table(name = "sms_request", indexes = {
+        @Index(name = "idx_sms_request_created_at_id", columnList = "created_at, id"),
+        @Index(name = "idx_sms_request_status_created_at_id", columnList = "status, created_at, id")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -46,16 +59,25 @@ import java.util.Date;
 @Builder
 public class SmsRequest {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = "snowflake")
+    @GenericGenerator(name = "snowflake", strategy = "org.example.notificationsystem.models.SnowflakeIdentifierGenerator")
+    @JsonSerialize(using = ToStringSerializer.class)
     private Long id;
 
     @Column(name = "phone_number", nullable = false)
     @Size(min = 4, max = 17, message = "{validation.phone.number.size}")
     private String phoneNumber;
 
-    @Column(columnDefinition = "TEXT", nullable = false)
+    @Column(columnDefinition = "TEXT")
     private String message;
 
+    @Column(name = "template_id")
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long templateId;
+
+    @Column(name = "template_params", columnDefinition = "TEXT")
+    private String templateParams;
+
     private Integer status;
 
     private Integer failureCode;
@@ -63,8 +85,15 @@ public class SmsRequest {
     @Column(columnDefinition = "TEXT")
     private String failureComments;
 
+    private Integer priority;
+
+    @Column(name = "send_at")
+    private Date sendAt;
+
+    @Column(name = "created_at")
     private Date createdAt;
 
+    @Column(name = "updated_at")
     private Date updatedAt;
 
     @PrePersist
@@ -74,6 +103,7 @@ public class SmsRequest {
         status = StatusConstants.IN_PROGRESS.ordinal();
         failureCode = FailureCodeConstants.IN_PROGRESS.ordinal();
         failureComments = null;
+        if (priority == null) priority = PriorityConstants.NORMAL.ordinal();
     }
 
     @PreUpdate
@@ -21,7 +21,9 @@ import java.util.Date;
  *   <li><b>id</b>: The unique id (primary key of the document) for the SMS request (auto-generated).</li>
  *   <li><b>smsRequestId</b>: The unique identifier for the SMS request.</li>
  *   <li><b>phoneNumber</b>: The recipient's phone number, which must be between 4 and 17 characters long.</li>
- *   <li><b>message</b>: The text content of the SMS message.</li>
+ *   <li><b>message</b>: The text content of the SMS message (null for a templated SMS, rendered when it is read).</li>
+ *   <li><b>templateId</b>: The id of the template version of a templated SMS.</li>
+ *   <li><b>templateParams</b>: The parameters of a templated SMS.</li>
  *   <li><b>createdAt</b>: The timestamp when the SMS request was created.</li>
  *   <li><b>updatedAt</b>: The timestamp when the SMS request was last updated.</li>
  * </ul>
@@ -63,6 +65,14 @@ public class SmsRequestElasticsearch {
     @Field(type = FieldType.Text, name = "message")
     private String message;
 
+    @JsonProperty("template_id")
+    @Field(type = FieldType.Keyword, name = "template_id")
+    private String templateId;
+
+    @JsonProperty("template_params")
+    @Field(type = FieldType.Text, name = "template_params")
+    private String templateParams;
+
     @JsonFormat(shape = JsonFormat.Shape.STRING,
             pattern = "yyyyMMdd'T'HHmmss.SSSX",
             timezone = "UTC")
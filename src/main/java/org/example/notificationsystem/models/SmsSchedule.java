@@ -0,0 +1,47 @@
+package org.example.notificationsystem.models;
+
+import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.*;
+import java.util.Date;
+
+
+/**
+ * Represents a scheduled Sms Request that maps to the "sms_schedule" table in the MySQL database.
+ * It is written in the same transaction as the {@link SmsRequest} row, instead of publishing it to Kafka, and deleted
+ * once the scheduler published it.
+ * <ul>
+ *   <li><b>id</b>: The unique id (primary key of the table) of the entry (auto-generated, time-ordered).</li>
+ *   <li><b>smsRequestId</b>: The id of the SMS request row to publish to Kafka.</li>
+ *   <li><b>sendAt</b>: When the SMS request is due.</li>
+ *   <li><b>claimedUntil</b>: Until when a node holds the entry in its in-memory timing wheel (null if none does yet).
+ *   Past that time, the entry is loaded again by any node (ex: its node crashed).</li>
+ * </ul>
+ * <p>
+ * This class is annotated with: {@code @Getter}, {@code @Setter}, {@code @NoArgsConstructor}, {@code @AllArgsConstructor}, {@code @Builder})
+ */
+@Entity
+@Table(name = "sms_schedule", indexes = {
+        @Index(name = "idx_sms_schedule_send_at", columnList = "send_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SmsSchedule {
+    @Id
+    @GeneratedValue(generator = "snowflake")
+    @GenericGenerator(name = "snowflake", strategy = "org.example.notificationsystem.models.SnowflakeIdentifierGenerator")
+    private Long id;
+
+    @Column(name = "sms_request_id", nullable = false)
+    private Long smsRequestId;
+
+    @Column(name = "send_at", nullable = false)
+    private Date sendAt;
+
+    @Column(name = "claimed_until")
+    private Date claimedUntil;
+}
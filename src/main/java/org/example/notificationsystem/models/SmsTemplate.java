@@ -0,0 +1,53 @@
+package org.example.notificationsystem.models;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.*;
+import java.util.Date;
+
+
+/**
+ * Represents a version of a message template that maps to the "sms_template" table in the MySQL database.
+ * A row is never updated: registering a template again adds its next version, with a new id, so that the Sms Requests
+ * referencing an older version keep rendering the same text.
+ * <ul>
+ *   <li><b>id</b>: The unique id (primary key of the table) of the template version (auto-generated, time-ordered, written as a string in JSON).</li>
+ *   <li><b>name</b>: The name of the template, shared by all its versions.</li>
+ *   <li><b>version</b>: The version of the template, starting at 1.</li>
+ *   <li><b>body</b>: The text of the template, with its parameters written {{name}} (see {@link org.example.notificationsystem.utils.CompiledTemplate}).</li>
+ *   <li><b>createdAt</b>: The timestamp when the version was registered.</li>
+ * </ul>
+ * <p>
+ * This class is annotated with: {@code @Getter}, {@code @Setter}, {@code @NoArgsConstructor}, {@code @AllArgsConstructor}, {@code @Builder})
+ */
+@Entity
+@Table(name = "sms_template", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_sms_template_name_version", columnNames = {"name", "version"})
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SmsTemplate {
+    @Id
+    @GeneratedValue(generator = "snowflake")
+    @GenericGenerator(name = "snowflake", strategy = "org.example.notificationsystem.models.SnowflakeIdentifierGenerator")
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long id;
+
+    @Column(nullable = false, length = 100)
+    private String name;
+
+    @Column(nullable = false)
+    private Integer version;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String body;
+
+    @Column(name = "created_at")
+    private Date createdAt;
+}
@@ -0,0 +1,51 @@
+package org.example.notificationsystem.models;
+
+import org.example.notificationsystem.utils.SnowflakeIdGenerator;
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Hibernate id generator backed by {@link SnowflakeIdGenerator}.
+ * Ids are produced in memory, so an insert no longer needs the locked round trip to hibernate_sequence and
+ * concurrent inserts (and JDBC batches) are not serialized on it.
+ * <p>
+ * The node id is read from the "sms.id.node-id" hibernate setting (spring.jpa.properties.sms.id.node-id), and must be
+ * set when the "sms.id.multi-node" one is true (see {@link SnowflakeIdGenerator#forConfiguredNode}).
+ */
+public class SnowflakeIdentifierGenerator implements IdentifierGenerator {
+
+    /**
+     * Name of the hibernate setting holding the node id.
+     */
+    public static final String NODE_ID_SETTING = "sms.id.node-id";
+
+    /**
+     * Name of the hibernate setting telling whether several nodes run.
+     */
+    public static final String MULTI_NODE_SETTING = "sms.id.multi-node";
+
+    private SnowflakeIdGenerator generator;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        Map<?, ?> settings = serviceRegistry.getService(ConfigurationService.class).getSettings();
+        Object nodeId = settings.get(NODE_ID_SETTING);
+        Object multiNode = settings.get(MULTI_NODE_SETTING);
+        this.generator = SnowflakeIdGenerator.forConfiguredNode(nodeId == null ? null : nodeId.toString(),
+                multiNode != null && Boolean.parseBoolean(multiNode.toString().trim()));
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
+        return generator.nextId();
+    }
+}
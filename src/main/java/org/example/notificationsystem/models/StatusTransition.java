@@ -0,0 +1,35 @@
+package org.example.notificationsystem.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.example.notificationsystem.constants.FailureCodeConstants;
+import org.example.notificationsystem.constants.StatusConstants;
+
+/**
+ * A change of state of an Sms Request, to be written to its row in MySQL with a single conditional UPDATE.
+ * <ul>
+ *   <li><b>smsRequestId</b>: The id of the Sms Request.</li>
+ *   <li><b>expectedStatus</b>: The status the row must currently have, otherwise the transition is rejected (stale or duplicate).</li>
+ *   <li><b>status</b>: The new status of the Sms Request.</li>
+ *   <li><b>failureCode</b>: The new failure code of the Sms Request.</li>
+ *   <li><b>failureComments</b>: Details about the failure.</li>
+ * </ul>
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class StatusTransition {
+    private final Long smsRequestId;
+    private final StatusConstants expectedStatus;
+    private final StatusConstants status;
+    private final FailureCodeConstants failureCode;
+    private final String failureComments;
+
+    /**
+     * @return A transition of an Sms Request that is still IN_PROGRESS (the outcome of sending it).
+     */
+    public static StatusTransition fromInProgress(Long smsRequestId, StatusConstants status, FailureCodeConstants failureCode, String failureComments) {
+        return new StatusTransition(smsRequestId, StatusConstants.IN_PROGRESS, status, failureCode, failureComments);
+    }
+}
@@ -0,0 +1,113 @@
+package org.example.notificationsystem.provider;
+
+import org.apache.http.conn.ConnectTimeoutException;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * HTTP/2 transport of the {@link ThirdPartySmsClient}, backed by the JDK HTTP client (java.net.http).
+ * <p>
+ * The project still compiles for Java 8, so the client is looked up reflectively and the transport needs a Java 11+
+ * runtime. Construction fails if it is enabled on an older JDK. The methods are resolved once, so a request costs
+ * a few reflective calls on top of the HTTP exchange.
+ */
+class JdkHttp2Transport {
+
+    private final Object client;
+
+    private final Method newRequestBuilder;
+    private final Method requestTimeoutMethod;
+    private final Method requestHeader;
+    private final Method requestPost;
+    private final Method requestBuild;
+    private final Method ofByteArray;
+    private final Method send;
+    private final Method statusCode;
+    private final Object discardingHandler;
+    private final Class<?> timeoutException;
+    private final Class<?> connectTimeoutException;
+
+    JdkHttp2Transport(int connectTimeoutMs) {
+        try {
+            Class<?> httpClient = Class.forName("java.net.http.HttpClient");
+            Class<?> clientBuilder = Class.forName("java.net.http.HttpClient$Builder");
+            Class<?> version = Class.forName("java.net.http.HttpClient$Version");
+            Class<?> httpRequest = Class.forName("java.net.http.HttpRequest");
+            Class<?> requestBuilder = Class.forName("java.net.http.HttpRequest$Builder");
+            Class<?> bodyPublisher = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+            Class<?> bodyHandler = Class.forName("java.net.http.HttpResponse$BodyHandler");
+
+            Object builder = httpClient.getMethod("newBuilder").invoke(null);
+            clientBuilder.getMethod("version", version).invoke(builder, enumConstant(version, "HTTP_2"));
+            clientBuilder.getMethod("connectTimeout", Duration.class).invoke(builder, Duration.ofMillis(connectTimeoutMs));
+            this.client = clientBuilder.getMethod("build").invoke(builder);
+
+            this.newRequestBuilder = httpRequest.getMethod("newBuilder", URI.class);
+            this.requestTimeoutMethod = requestBuilder.getMethod("timeout", Duration.class);
+            this.requestHeader = requestBuilder.getMethod("header", String.class, String.class);
+            this.requestPost = requestBuilder.getMethod("POST", bodyPublisher);
+            this.requestBuild = requestBuilder.getMethod("build");
+            this.ofByteArray = Class.forName("java.net.http.HttpRequest$BodyPublishers").getMethod("ofByteArray", byte[].class);
+            this.send = httpClient.getMethod("send", httpRequest, bodyHandler);
+            this.statusCode = Class.forName("java.net.http.HttpResponse").getMethod("statusCode");
+            this.discardingHandler = Class.forName("java.net.http.HttpResponse$BodyHandlers").getMethod("discarding").invoke(null);
+            this.timeoutException = Class.forName("java.net.http.HttpTimeoutException");
+            this.connectTimeoutException = Class.forName("java.net.http.HttpConnectTimeoutException");
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("sms.provider.http2.enabled requires a Java 11+ runtime, running on Java " + System.getProperty("java.version"), e);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumConstant(Class<?> enumType, String name) {
+        return Enum.valueOf((Class<? extends Enum>) enumType, name);
+    }
+
+    /**
+     * POSTs the JSON body and discards the response body.
+     *
+     * @param timeoutMs How long to wait for the response.
+     * @return The HTTP status code of the response.
+     * @throws ConnectTimeoutException If connecting timed out (the request was not sent).
+     * @throws SocketTimeoutException  If waiting for the response timed out.
+     * @throws IOException            On any other I/O error (or if the calling thread was interrupted).
+     */
+    int post(URI uri, byte[] body, long timeoutMs) throws IOException {
+        try {
+            Object builder = newRequestBuilder.invoke(null, uri);
+            requestTimeoutMethod.invoke(builder, Duration.ofMillis(timeoutMs));
+            requestHeader.invoke(builder, "Content-Type", "application/json");
+            requestHeader.invoke(builder, "Accept", "application/json");
+            requestPost.invoke(builder, ofByteArray.invoke(null, (Object) body));
+            Object response = send.invoke(client, requestBuild.invoke(builder), discardingHandler);
+            return (Integer) statusCode.invoke(response);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (connectTimeoutException.isInstance(cause)) {
+                ConnectTimeoutException timeout = new ConnectTimeoutException(cause.getMessage());
+                timeout.initCause(cause);
+                throw timeout;
+            }
+            if (timeoutException.isInstance(cause)) {
+                SocketTimeoutException timeout = new SocketTimeoutException(cause.getMessage());
+                timeout.initCause(cause);
+                throw timeout;
+            }
+            if (cause instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the third party API", cause);
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
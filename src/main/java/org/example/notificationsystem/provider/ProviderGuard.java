@@ -0,0 +1,254 @@
+package org.example.notificationsystem.provider;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.notificationsystem.constants.ThirdPartyApiResponseCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Protects the consumers from a slow or failing provider, in front of every call made by a {@link ThirdPartySmsClient}.
+ * <ul>
+ *     <li><b>Circuit breaker</b>: Opens once failure-rate-threshold of the last sliding-window-size calls timed out or got an
+ *     API error. While open, calls are rejected right away. After open-duration-ms, half-open-calls trial calls are let
+ *     through with max-timeout-ms: the circuit closes if they all succeed and opens again on the first failure.</li>
+ *     <li><b>Concurrency limit (AIMD)</b>: At most limit calls are in flight, further calls are rejected right away.
+ *     The limit grows by 1 / limit per successful call (about +1 per round trip of all the calls) and is multiplied by
+ *     decrease-factor per failed call.</li>
+ *     <li><b>Adaptive timeout</b>: The read timeout of a call is the p99 latency of the recent calls times
+ *     timeout-multiplier, so a provider slowing down is detected in a few hundred ms instead of max-timeout-ms.
+ *     A timed out call counts as a call as slow as its timeout: a provider slower than the timeout pushes it up
+ *     towards max-timeout-ms instead of timing out forever.</li>
+ * </ul>
+ * Calls that fail on our side (invalid body, malformed URL) are neutral. The consumers ask {@link #availableInMs()}
+ * before sending, and pause instead of having their calls rejected.
+ * <p>
+ * Metrics, tagged with the provider: <b>sms.provider.circuit.state</b> (0 closed, 1 half-open, 2 open),
+ * <b>sms.provider.concurrency.limit</b>, <b>sms.provider.concurrency.in-flight</b>, <b>sms.provider.timeout</b> (ms)
+ * and <b>sms.provider.rejected{reason}</b>.
+ */
+public class ProviderGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProviderGuard.class);
+
+    /**
+     * How long to wait for a call to complete when all the permits are taken (see availableInMs).
+     */
+    private static final long BUSY_WAIT_MS = 50;
+
+    public enum CircuitState {CLOSED, HALF_OPEN, OPEN}
+
+    private final String provider;
+    private final ProviderGuardProperties properties;
+
+    private CircuitState circuitState = CircuitState.CLOSED;
+    private final boolean[] outcomes;
+    private int outcomeCount = 0;
+    private int outcomeIndex = 0;
+    private int failureCount = 0;
+    private long openedAtNanos;
+    private int halfOpenPermits = 0;
+    private int halfOpenSuccesses = 0;
+
+    private double limit;
+    private int inFlight = 0;
+
+    private final long[] latencies;
+    private int latencyCount = 0;
+    private int latencyIndex = 0;
+    private int samplesSinceRefresh = 0;
+    private volatile long timeoutMs;
+
+    private final Counter rejectedOpen;
+    private final Counter rejectedLimit;
+
+    public ProviderGuard(String provider, ProviderGuardProperties properties, MeterRegistry meterRegistry) {
+        this.provider = provider;
+        this.properties = properties;
+        this.outcomes = new boolean[properties.getSlidingWindowSize()];
+        this.latencies = new long[properties.getLatencyWindowSize()];
+        this.limit = properties.getInitialLimit();
+        this.timeoutMs = properties.getMaxTimeoutMs();
+
+        Gauge.builder("sms.provider.circuit.state", this, guard -> guard.getCircuitState().ordinal()).tag("provider", provider).register(meterRegistry);
+        Gauge.builder("sms.provider.concurrency.limit", this, ProviderGuard::getLimit).tag("provider", provider).register(meterRegistry);
+        Gauge.builder("sms.provider.concurrency.in-flight", this, ProviderGuard::getInFlight).tag("provider", provider).register(meterRegistry);
+        Gauge.builder("sms.provider.timeout", this, ProviderGuard::getTimeoutMs).tag("provider", provider).baseUnit("milliseconds").register(meterRegistry);
+        this.rejectedOpen = Counter.builder("sms.provider.rejected").tag("provider", provider).tag("reason", "circuit_open").register(meterRegistry);
+        this.rejectedLimit = Counter.builder("sms.provider.rejected").tag("provider", provider).tag("reason", "concurrency_limit").register(meterRegistry);
+    }
+
+    /**
+     * Asks for the permission to make a call.
+     *
+     * @return The permit of the call (to release once it completed), or empty if the call must not be made.
+     */
+    public synchronized Optional<Permit> tryAcquire() {
+        if (circuitState == CircuitState.OPEN) {
+            if (System.nanoTime() - openedAtNanos < TimeUnit.MILLISECONDS.toNanos(properties.getOpenDurationMs())) {
+                rejectedOpen.increment();
+                return Optional.empty();
+            }
+            transitionTo(CircuitState.HALF_OPEN);
+        }
+        if (circuitState == CircuitState.HALF_OPEN) {
+            if (halfOpenPermits >= properties.getHalfOpenCalls()) {
+                rejectedOpen.increment();
+                return Optional.empty();
+            }
+            halfOpenPermits++;
+            inFlight++;
+            // A trial call must not fail on a timeout tuned for the healthy provider
+            return Optional.of(new Permit(properties.getMaxTimeoutMs()));
+        } else if (inFlight >= (int) limit) {
+            rejectedLimit.increment();
+            return Optional.empty();
+        }
+        inFlight++;
+        return Optional.of(new Permit(timeoutMs));
+    }
+
+    /**
+     * @return 0 if a call would be let through now, otherwise the milliseconds to wait before asking again: the rest
+     * of the open duration, or BUSY_WAIT_MS while all the permits are taken.
+     */
+    public synchronized long availableInMs() {
+        if (circuitState == CircuitState.OPEN) {
+            long openForMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedAtNanos);
+            return Math.max(0, properties.getOpenDurationMs() - openForMs);
+        }
+        if (circuitState == CircuitState.HALF_OPEN) {
+            return halfOpenPermits >= properties.getHalfOpenCalls() ? BUSY_WAIT_MS : 0;
+        }
+        return inFlight >= (int) limit ? BUSY_WAIT_MS : 0;
+    }
+
+    private synchronized void onComplete(ThirdPartyApiResponseCode responseCode, long latencyNanos, long permitTimeoutMs) {
+        inFlight--;
+        boolean failed = responseCode == ThirdPartyApiResponseCode.TIMEOUT || responseCode == ThirdPartyApiResponseCode.API_ERROR;
+        if (!failed && responseCode != ThirdPartyApiResponseCode.SUCCESS) {
+            // Failed on our side or throttled (429), tells nothing about the health of the provider. A trial call
+            // gives its permit back, or the circuit would stay half-open with no trial call left to decide it
+            if (circuitState == CircuitState.HALF_OPEN && halfOpenPermits > 0) halfOpenPermits--;
+            return;
+        }
+
+        if (failed) {
+            limit = Math.max(properties.getMinLimit(), limit * properties.getDecreaseFactor());
+        } else {
+            limit = Math.min(properties.getMaxLimit(), limit + 1 / limit);
+        }
+        if (responseCode == ThirdPartyApiResponseCode.SUCCESS) {
+            recordLatency(latencyNanos);
+        } else if (responseCode == ThirdPartyApiResponseCode.TIMEOUT) {
+            // At least the timeout, so that the p99 (and the next timeout) can grow past it
+            recordLatency(Math.max(latencyNanos, TimeUnit.MILLISECONDS.toNanos(permitTimeoutMs)));
+        }
+
+        if (circuitState == CircuitState.HALF_OPEN) {
+            if (failed) {
+                transitionTo(CircuitState.OPEN);
+            } else if (++halfOpenSuccesses >= properties.getHalfOpenCalls()) {
+                transitionTo(CircuitState.CLOSED);
+            }
+            return;
+        }
+        if (circuitState == CircuitState.CLOSED) {
+            recordOutcome(failed);
+            if (outcomeCount >= properties.getMinimumCalls()
+                    && failureCount >= properties.getFailureRateThreshold() * outcomeCount) {
+                transitionTo(CircuitState.OPEN);
+            }
+        }
+    }
+
+    private void recordOutcome(boolean failed) {
+        if (outcomeCount == outcomes.length) {
+            if (outcomes[outcomeIndex]) failureCount--;
+        } else {
+            outcomeCount++;
+        }
+        outcomes[outcomeIndex] = failed;
+        if (failed) failureCount++;
+        outcomeIndex = (outcomeIndex + 1) % outcomes.length;
+    }
+
+    /**
+     * Keeps the latency of a successful or timed out call, and refreshes the timeout every 10% of the latency window.
+     */
+    private void recordLatency(long latencyNanos) {
+        latencies[latencyIndex] = latencyNanos;
+        latencyIndex = (latencyIndex + 1) % latencies.length;
+        if (latencyCount < latencies.length) latencyCount++;
+        if (++samplesSinceRefresh < Math.max(1, latencies.length / 10) || latencyCount < properties.getMinimumCalls()) {
+            return;
+        }
+        samplesSinceRefresh = 0;
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        long p99Ms = TimeUnit.NANOSECONDS.toMillis(sorted[(int) Math.ceil(0.99 * latencyCount) - 1]);
+        timeoutMs = Math.max(properties.getMinTimeoutMs(), Math.min(properties.getMaxTimeoutMs(), (long) (p99Ms * properties.getTimeoutMultiplier())));
+    }
+
+    private void transitionTo(CircuitState newState) {
+        logger.warn("Circuit of provider {}: {} -> {} (limit {}, timeout {} ms)", provider, circuitState, newState, (int) limit, timeoutMs);
+        circuitState = newState;
+        halfOpenPermits = 0;
+        halfOpenSuccesses = 0;
+        if (newState == CircuitState.OPEN) {
+            openedAtNanos = System.nanoTime();
+        } else if (newState == CircuitState.CLOSED) {
+            Arrays.fill(outcomes, false);
+            outcomeCount = 0;
+            outcomeIndex = 0;
+            failureCount = 0;
+        }
+    }
+
+    public synchronized CircuitState getCircuitState() {
+        return circuitState;
+    }
+
+    public synchronized double getLimit() {
+        return limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    /**
+     * Permission to make one call, with the timeout it should use.
+     */
+    public final class Permit {
+        private final long timeoutMs;
+        private final long startNanos = System.nanoTime();
+        private boolean released = false;
+
+        private Permit(long timeoutMs) {
+            this.timeoutMs = timeoutMs;
+        }
+
+        public long getTimeoutMs() {
+            return timeoutMs;
+        }
+
+        /**
+         * Reports the outcome of the call. Only the first release counts.
+         */
+        public void release(ThirdPartyApiResponseCode responseCode) {
+            if (released) return;
+            released = true;
+            onComplete(responseCode, System.nanoTime() - startNanos, timeoutMs);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.example.notificationsystem.provider;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings of the {@link ProviderGuard} (sms.provider.guard.*), shared by the guards of all the providers.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "sms.provider.guard")
+public class ProviderGuardProperties {
+
+    /**
+     * The circuit opens once this fraction of the calls in the sliding window failed (timeout or API error).
+     */
+    private double failureRateThreshold = 0.5;
+
+    /**
+     * Number of most recent calls the failure rate is computed over.
+     */
+    private int slidingWindowSize = 50;
+
+    /**
+     * Calls needed in the window before the failure rate (and the observed latency) is trusted.
+     */
+    private int minimumCalls = 20;
+
+    /**
+     * How long the circuit stays open before trial calls are let through.
+     */
+    private long openDurationMs = 10000;
+
+    /**
+     * Trial calls let through while half-open, the circuit closes once they all succeed.
+     */
+    private int halfOpenCalls = 5;
+
+    /**
+     * Bounds and start value of the concurrency limit (calls in flight).
+     */
+    private int minLimit = 1;
+    private int maxLimit = 200;
+    private int initialLimit = 20;
+
+    /**
+     * The limit is multiplied by this factor on a failed call, and grows by 1 / limit on a successful one.
+     */
+    private double decreaseFactor = 0.7;
+
+    /**
+     * The timeout of a call is the observed p99 latency times this multiplier, within [minTimeoutMs, maxTimeoutMs].
+     */
+    private double timeoutMultiplier = 2.0;
+    private long minTimeoutMs = 250;
+    private long maxTimeoutMs = 5000;
+
+    /**
+     * Number of most recent successful calls the p99 latency is computed over.
+     */
+    private int latencyWindowSize = 1000;
+}
@@ -0,0 +1,76 @@
+package org.example.notificationsystem.provider;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The SMS gateways (sms.providers.gateways[i].*) and the settings of the routing between them (see {@link ProviderRouter}).
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "sms.providers")
+public class ProviderRegistryProperties {
+
+    private List<Gateway> gateways = new ArrayList<>();
+
+    /**
+     * Smoothing factor of the latency EWMA (weight of the newest call).
+     */
+    private double latencyAlpha = 0.2;
+
+    /**
+     * Smoothing factor of the error rate EWMA (weight of the newest call).
+     */
+    private double errorAlpha = 0.1;
+
+    /**
+     * How much the error rate weighs against the latency: score = weight / (latency * (1 + error-penalty * error rate)).
+     */
+    private double errorPenalty = 10;
+
+    /**
+     * Providers tried per call, the first one plus the failovers.
+     */
+    private int maxAttempts = 2;
+
+    /**
+     * Contracted TPS per route (a prefix, or * for the destinations matching none), shared by the whole cluster
+     * (see SendThrottleService). Routes without an entry are not limited.
+     */
+    private Map<String, Double> routeMaxTps = new HashMap<>();
+
+    @Data
+    public static class Gateway {
+
+        private String name;
+
+        private String url;
+
+        /**
+         * Destination prefixes (ex: +91 for a country, +9198 for an operator range) this gateway serves. The gateways
+         * of the longest matching prefix are used, the gateways without prefixes serve every other destination.
+         */
+        private List<String> prefixes = new ArrayList<>();
+
+        /**
+         * Static share of the traffic, scaled by the observed latency and error rate.
+         */
+        private double weight = 1;
+
+        /**
+         * Size of the connection pool of the gateway, 0 for sms.provider.max-connections.
+         */
+        private int maxConnections = 0;
+
+        /**
+         * Contracted TPS of the gateway (Sms per second, shared by the whole cluster), 0 for no limit.
+         */
+        private double maxTps = 0;
+    }
+}
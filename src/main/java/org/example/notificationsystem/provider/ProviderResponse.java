@@ -0,0 +1,51 @@
+package org.example.notificationsystem.provider;
+
+import lombok.Getter;
+import org.example.notificationsystem.constants.ThirdPartyApiResponseCode;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Result of one call to the third party API: the outcome of the call and, when the API reports them, the outcome of
+ * each destination keyed by its correlation id. A call known not to have been accepted by the gateway (never sent,
+ * connection refused or timed out, 429 or 503 answered) is notSent: it can be sent again without duplicating an Sms.
+ */
+@Getter
+public class ProviderResponse {
+
+    private final ThirdPartyApiResponseCode responseCode;
+    private final Map<String, ThirdPartyApiResponseCode> destinationResults;
+    private final boolean notSent;
+
+    public ProviderResponse(ThirdPartyApiResponseCode responseCode, Map<String, ThirdPartyApiResponseCode> destinationResults) {
+        this(responseCode, destinationResults, false);
+    }
+
+    private ProviderResponse(ThirdPartyApiResponseCode responseCode, Map<String, ThirdPartyApiResponseCode> destinationResults, boolean notSent) {
+        this.responseCode = responseCode;
+        this.destinationResults = destinationResults;
+        this.notSent = notSent;
+    }
+
+    public static ProviderResponse of(ThirdPartyApiResponseCode responseCode) {
+        return new ProviderResponse(responseCode, Collections.emptyMap());
+    }
+
+    /**
+     * @return A failed call the gateway did not accept.
+     */
+    public static ProviderResponse notSent(ThirdPartyApiResponseCode responseCode) {
+        return new ProviderResponse(responseCode, Collections.emptyMap(), true);
+    }
+
+    /**
+     * @param correlationId The correlation id of a destination of the request.
+     * @return The outcome reported for the destination, or the outcome of the whole call if none was reported
+     * (or the call itself failed).
+     */
+    public ThirdPartyApiResponseCode resultOf(String correlationId) {
+        if (responseCode != ThirdPartyApiResponseCode.SUCCESS) return responseCode;
+        return destinationResults.getOrDefault(correlationId, responseCode);
+    }
+}
@@ -0,0 +1,282 @@
+package org.example.notificationsystem.provider;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.notificationsystem.constants.ThirdPartyApiResponseCode;
+import org.example.notificationsystem.dto.request.ThirdPartySmsApiRequest;
+import org.example.notificationsystem.services.impl.SendThrottleServiceImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of the SMS gateways (see {@link ProviderRegistryProperties}) and the routing of the calls between them.
+ * <ul>
+ *     <li><b>Routes</b>: A destination is served by the gateways of the longest prefix it starts with (ex: +91 for a
+ *     country), or by the gateways without prefixes. Callers group their destinations by {@link #routeKey(String)}.</li>
+ *     <li><b>Load balancing</b>: Each call picks a gateway of the route at random, in proportion to its score:
+ *     weight / (EWMA latency * (1 + error-penalty * EWMA error rate)). Faster and healthier gateways get more of the
+ *     traffic, and the traffic follows them as their latency changes. A gateway without calls yet is tried first.
+ *     Gateways whose circuit is open (see {@link ProviderGuard}) are only used as a last resort.</li>
+ *     <li><b>Failover</b>: A call the gateway did not accept (rejected, bad URL, connection refused or timed out, 429,
+ *     503: see {@link ProviderResponse#isNotSent()}) is retried on the next best gateway of the route, up to
+ *     max-attempts gateways per call. A call that may have been delivered (read timeout, other errors) is not failed
+ *     over, it would duplicate the message: it is left to the retry tiers.</li>
+ *     <li><b>Throttling</b>: Routes (route-max-tps) and gateways (max-tps) are capped cluster-wide (see
+ *     SendThrottleService). The listeners take the token of the route before sending (see {@link #tryAcquireRoute}),
+ *     a call skips the gateways out of tokens, and returns THROTTLED without calling any if all of them are. The
+ *     listeners then pause (see {@link #availableIn}) until a gateway has tokens again.</li>
+ * </ul>
+ * Metrics, tagged with the provider: <b>sms.provider.score</b>, <b>sms.provider.latency.ewma</b> (ms),
+ * <b>sms.provider.error-rate.ewma</b> and <b>sms.provider.failover</b> (calls moved away from the provider).
+ */
+@Component
+public class ProviderRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProviderRouter.class);
+
+    /**
+     * Route of the destinations that match no prefix.
+     */
+    public static final String DEFAULT_ROUTE = "*";
+
+    private final ProviderRegistryProperties properties;
+    private final SendThrottleServiceImpl sendThrottleServiceImpl;
+    private final List<Provider> providers = new ArrayList<>();
+    private final Map<String, List<Provider>> routes = new HashMap<>();
+    private final List<String> prefixes = new ArrayList<>();
+    /**
+     * Measures the latency of the calls (a virtual clock in the tests).
+     */
+    private LongSupplier nanoClock = System::nanoTime;
+
+    @Autowired
+    public ProviderRouter(ObjectMapper objectMapper,
+                          MeterRegistry meterRegistry,
+                          ProviderGuardProperties providerGuardProperties,
+                          ProviderRegistryProperties properties,
+                          SendThrottleServiceImpl sendThrottleServiceImpl,
+                          @Value("${sms.provider.max-connections}") int maxConnections,
+                          @Value("${sms.provider.connect-timeout-ms}") int connectTimeoutMs,
+                          @Value("${sms.provider.connection-request-timeout-ms}") int connectionRequestTimeoutMs,
+                          @Value("${sms.provider.keep-alive-ms}") long keepAliveMs,
+                          @Value("${sms.provider.http2.enabled}") boolean http2Enabled) {
+        this.properties = properties;
+        this.sendThrottleServiceImpl = sendThrottleServiceImpl;
+        if (properties.getGateways().isEmpty()) {
+            throw new IllegalStateException("No SMS gateway configured (sms.providers.gateways)");
+        }
+
+        for (ProviderRegistryProperties.Gateway gateway : properties.getGateways()) {
+            ThirdPartySmsClient client = new ThirdPartySmsClient(gateway.getName(), objectMapper, meterRegistry, providerGuardProperties,
+                    gateway.getUrl(), gateway.getMaxConnections() > 0 ? gateway.getMaxConnections() : maxConnections,
+                    connectTimeoutMs, connectionRequestTimeoutMs, keepAliveMs, http2Enabled);
+            Provider provider = new Provider(gateway, client, meterRegistry);
+            providers.add(provider);
+
+            List<String> gatewayPrefixes = gateway.getPrefixes().isEmpty() ? Collections.singletonList(DEFAULT_ROUTE) : gateway.getPrefixes();
+            for (String prefix : gatewayPrefixes) {
+                routes.computeIfAbsent(prefix.trim(), key -> new ArrayList<>()).add(provider);
+            }
+        }
+        // Every gateway serves a prefix: the other destinations may use any of them
+        routes.computeIfAbsent(DEFAULT_ROUTE, key -> new ArrayList<>(providers));
+
+        routes.keySet().stream().filter(prefix -> !DEFAULT_ROUTE.equals(prefix)).forEach(prefixes::add);
+        prefixes.sort(Comparator.comparingInt(String::length).reversed());
+        logger.info("SMS gateways: {}, routes: {}", providers.size(), routes.keySet());
+    }
+
+    /**
+     * @param phoneNumber A destination.
+     * @return The route of the destination: the longest matching prefix, or DEFAULT_ROUTE.
+     */
+    public String routeKey(String phoneNumber) {
+        if (phoneNumber != null) {
+            for (String prefix : prefixes) {
+                if (phoneNumber.startsWith(prefix)) return prefix;
+            }
+        }
+        return DEFAULT_ROUTE;
+    }
+
+    /**
+     * Takes tokens from the rate limit of the route (sms.providers.route-max-tps).
+     *
+     * @param routeKey The route (see routeKey).
+     * @param permits  The number of Sms to send on the route.
+     * @return 0 if the Sms may be sent, otherwise the milliseconds to wait before asking again.
+     */
+    public long tryAcquireRoute(String routeKey, int permits) {
+        return sendThrottleServiceImpl.tryAcquire("route:" + routeKey, properties.getRouteMaxTps().getOrDefault(routeKey, 0.0), permits);
+    }
+
+    /**
+     * @param routeKey The route (see routeKey).
+     * @return 0 if a gateway of the route would take a call now, otherwise the milliseconds to wait before asking again:
+     * every gateway is rejecting calls (see ProviderGuard.availableInMs) or known to be out of tokens.
+     */
+    public long availableIn(String routeKey) {
+        long waitMs = Long.MAX_VALUE;
+        for (Provider provider : routes.getOrDefault(routeKey, routes.get(DEFAULT_ROUTE))) {
+            long providerWaitMs = Math.max(provider.client.getProviderGuard().availableInMs(),
+                    sendThrottleServiceImpl.availableIn(gatewayBucket(provider)));
+            waitMs = Math.min(waitMs, providerWaitMs);
+            if (waitMs == 0) return 0;
+        }
+        return waitMs;
+    }
+
+    /**
+     * Sends a request to a gateway of the route, failing over to the next best ones on transient failures.
+     *
+     * @param routeKey The route of all the destinations of the request (see routeKey).
+     * @param req      list of ThirdPartySmsApiRequest objects to send
+     * @return The response of the last gateway tried, THROTTLED if every gateway of the route is out of tokens.
+     */
+    public ProviderResponse exchange(String routeKey, List<ThirdPartySmsApiRequest> req) {
+        List<Provider> candidates = order(routes.getOrDefault(routeKey, routes.get(DEFAULT_ROUTE)));
+        int attempts = Math.max(1, Math.min(properties.getMaxAttempts(), candidates.size()));
+        int destinations = 0;
+        for (ThirdPartySmsApiRequest request : req) {
+            destinations += request.getDestination() == null ? 0 : request.getDestination().size();
+        }
+
+        ProviderResponse response = null;
+        int tried = 0;
+        for (int i = 0; i < candidates.size() && tried < attempts; i++) {
+            Provider provider = candidates.get(i);
+            if (sendThrottleServiceImpl.tryAcquire(gatewayBucket(provider), provider.gateway.getMaxTps(), destinations) > 0) {
+                logger.debug("SMS gateway {} is out of tokens, skipping it", provider.gateway.getName());
+                continue;
+            }
+            tried++;
+            long start = nanoClock.getAsLong();
+            response = provider.client.exchange(req);
+            provider.record(response.getResponseCode(), nanoClock.getAsLong() - start);
+            if (!response.isNotSent()) {
+                return response;
+            }
+            if (tried < attempts && i + 1 < candidates.size()) {
+                provider.failover.increment();
+                logger.warn("SMS gateway {} failed ({}), failing over", provider.gateway.getName(), response.getResponseCode());
+            }
+        }
+        return response != null ? response : ProviderResponse.notSent(ThirdPartyApiResponseCode.THROTTLED);
+    }
+
+    private static String gatewayBucket(Provider provider) {
+        return "gateway:" + provider.gateway.getName();
+    }
+
+    /**
+     * Orders the gateways of a route: the first one drawn at random in proportion to the scores, then the others by
+     * decreasing score.
+     */
+    private List<Provider> order(List<Provider> candidates) {
+        if (candidates.size() == 1) return candidates;
+        double[] scores = new double[candidates.size()];
+        double total = 0;
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = candidates.get(i).score();
+            total += scores[i];
+        }
+
+        double draw = ThreadLocalRandom.current().nextDouble() * total;
+        int first = scores.length - 1;
+        for (int i = 0; i < scores.length; i++) {
+            draw -= scores[i];
+            if (draw < 0) {
+                first = i;
+                break;
+            }
+        }
+
+        List<Integer> rest = new ArrayList<>(scores.length - 1);
+        for (int i = 0; i < scores.length; i++) {
+            if (i != first) rest.add(i);
+        }
+        rest.sort((a, b) -> Double.compare(scores[b], scores[a]));
+
+        List<Provider> ordered = new ArrayList<>(candidates.size());
+        ordered.add(candidates.get(first));
+        rest.forEach(i -> ordered.add(candidates.get(i)));
+        return ordered;
+    }
+
+    public List<ThirdPartySmsClient> getClients() {
+        List<ThirdPartySmsClient> clients = new ArrayList<>(providers.size());
+        providers.forEach(provider -> clients.add(provider.client));
+        return clients;
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Provider provider : providers) {
+            try {
+                provider.client.close();
+            } catch (IOException e) {
+                logger.error("Error closing the client of SMS gateway {}", provider.gateway.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * A gateway, its client and its live latency and error rate.
+     */
+    private final class Provider {
+        private final ProviderRegistryProperties.Gateway gateway;
+        private final ThirdPartySmsClient client;
+        private final Counter failover;
+        private double latencyMs = Double.NaN;
+        private double errorRate = 0;
+
+        private Provider(ProviderRegistryProperties.Gateway gateway, ThirdPartySmsClient client, MeterRegistry meterRegistry) {
+            this.gateway = gateway;
+            this.client = client;
+            this.failover = Counter.builder("sms.provider.failover").tag("provider", gateway.getName()).register(meterRegistry);
+            Gauge.builder("sms.provider.score", this, Provider::score).tag("provider", gateway.getName()).register(meterRegistry);
+            Gauge.builder("sms.provider.latency.ewma", this, Provider::getLatencyMs).tag("provider", gateway.getName()).register(meterRegistry);
+            Gauge.builder("sms.provider.error-rate.ewma", this, Provider::getErrorRate).tag("provider", gateway.getName()).register(meterRegistry);
+        }
+
+        private synchronized void record(ThirdPartyApiResponseCode responseCode, long latencyNanos) {
+            if (responseCode == ThirdPartyApiResponseCode.INVALID_REQUEST_BODY) {
+                // Failed on our side, tells nothing about the gateway
+                return;
+            }
+            boolean failed = responseCode != ThirdPartyApiResponseCode.SUCCESS;
+            errorRate += properties.getErrorAlpha() * ((failed ? 1 : 0) - errorRate);
+            if (responseCode == ThirdPartyApiResponseCode.SUCCESS || responseCode == ThirdPartyApiResponseCode.TIMEOUT) {
+                // Rejected calls never reached the gateway, and fast errors would make a failing gateway look fast
+                double sample = latencyNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+                latencyMs = Double.isNaN(latencyMs) ? sample : latencyMs + properties.getLatencyAlpha() * (sample - latencyMs);
+            }
+        }
+
+        private synchronized double score() {
+            double latency = Double.isNaN(latencyMs) ? 1 : Math.max(1, latencyMs);
+            double score = gateway.getWeight() / (latency * (1 + properties.getErrorPenalty() * errorRate));
+            return client.getProviderGuard().getCircuitState() == ProviderGuard.CircuitState.OPEN ? score * 1e-3 : score;
+        }
+
+        private synchronized double getLatencyMs() {
+            return latencyMs;
+        }
+
+        private synchronized double getErrorRate() {
+            return errorRate;
+        }
+    }
+}
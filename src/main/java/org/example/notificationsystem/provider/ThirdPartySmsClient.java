@@ -0,0 +1,397 @@
+package org.example.notificationsystem.provider;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.EntityTemplate;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+import org.example.notificationsystem.constants.ThirdPartyApiResponseCode;
+import org.example.notificationsystem.dto.request.ChannelsThirdPartySmsApiRequest;
+import org.example.notificationsystem.dto.request.DestinationThirdPartySmsApiRequest;
+import org.example.notificationsystem.dto.request.SmsThirdPartySmsApiRequest;
+import org.example.notificationsystem.dto.request.ThirdPartySmsApiRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * Client of one third party SMS API (gateway), created for every gateway by the {@link ProviderRouter}.
+ * <p>
+ * Connections are pooled (bounded by the max connections of the gateway) and kept alive between requests, so the TCP and
+ * TLS handshakes are paid once per connection instead of once per Sms Request. The request body is serialized by a
+ * shared, pre-built {@link ObjectWriter} straight into the connection, and response bodies are drained (not read
+ * into memory) so that the connection goes back to the pool.
+ * <p>
+ * With sms.provider.http2.enabled=true the requests go through the JDK HTTP client over HTTP/2 instead
+ * (see {@link JdkHttp2Transport}, needs a Java 11+ runtime), multiplexing all the requests on a few connections.
+ * <p>
+ * Every call goes through a {@link ProviderGuard} (circuit breaker, concurrency limit and read timeout derived from
+ * the observed latency), a rejected call returns REJECTED without touching the network.
+ * <p>
+ * Metrics, tagged with the provider: <b>sms.provider.request{outcome}</b> (latency), <b>sms.provider.connections{state}</b> (pool, HTTP/1.1 only)
+ * and <b>sms.provider.connections.opened</b> (new connections, HTTP/1.1 only).
+ */
+public class ThirdPartySmsClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThirdPartySmsClient.class);
+
+    private static final Set<String> FAILED_DESTINATION_STATUSES = new HashSet<>(Arrays.asList("FAILED", "REJECTED", "ERROR"));
+
+    private final String name;
+    private final URI uri;
+    private final ObjectWriter requestWriter;
+    private final JsonFactory jsonFactory;
+    private final MeterRegistry meterRegistry;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final JdkHttp2Transport http2Transport;
+    private final ProviderGuard providerGuard;
+    private final int connectTimeoutMs;
+    private final RequestConfig requestConfig;
+
+    public ThirdPartySmsClient(String name,
+                               ObjectMapper objectMapper,
+                               MeterRegistry meterRegistry,
+                               ProviderGuardProperties providerGuardProperties,
+                               String url,
+                               int maxConnections,
+                               int connectTimeoutMs,
+                               int connectionRequestTimeoutMs,
+                               long keepAliveMs,
+                               boolean http2Enabled) {
+        this.name = name;
+        this.uri = parseUri(url);
+        this.requestWriter = objectMapper.writerFor(new TypeReference<List<ThirdPartySmsApiRequest>>() {
+        });
+        this.jsonFactory = objectMapper.getFactory();
+        this.meterRegistry = meterRegistry;
+        this.providerGuard = new ProviderGuard(name, providerGuardProperties, meterRegistry);
+        this.connectTimeoutMs = connectTimeoutMs;
+        // The read timeout of each call is set by the ProviderGuard
+        this.requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMs)
+                .setSocketTimeout((int) providerGuardProperties.getMaxTimeoutMs())
+                .setConnectionRequestTimeout(connectionRequestTimeoutMs)
+                .build();
+
+        if (http2Enabled) {
+            this.connectionManager = null;
+            this.httpClient = null;
+            this.http2Transport = new JdkHttp2Transport(connectTimeoutMs);
+            logger.info("Sending to the third party API {} over HTTP/2 ({})", name, url);
+            return;
+        }
+        this.http2Transport = null;
+
+        Counter connectionsOpened = Counter.builder("sms.provider.connections.opened")
+                .description("Connections opened to the third party API")
+                .tag("provider", name)
+                .register(meterRegistry);
+        Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                .build();
+        this.connectionManager = new PoolingHttpClientConnectionManager(socketFactories, (route, config) -> {
+            connectionsOpened.increment();
+            return ManagedHttpClientConnectionFactory.INSTANCE.create(route, config);
+        });
+        // Only one host is called, so the whole pool is available to it
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        connectionManager.setValidateAfterInactivity(2000);
+
+        // Honour the Keep-Alive header of the API, but never keep a connection idle for longer than keepAliveMs
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return duration > 0 ? Math.min(duration, keepAliveMs) : keepAliveMs;
+        };
+
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAliveMs, TimeUnit.MILLISECONDS)
+                .disableCookieManagement()
+                .build();
+
+        registerPoolGauge("leased", PoolStats::getLeased);
+        registerPoolGauge("available", PoolStats::getAvailable);
+        registerPoolGauge("pending", PoolStats::getPending);
+        logger.info("Sending to the third party API {} over HTTP/1.1 ({}), at most {} connections", name, url, maxConnections);
+    }
+
+    private static URI parseUri(String url) {
+        try {
+            return URI.create(url);
+        } catch (IllegalArgumentException e) {
+            logger.error("Error building URL. Malformed URL: {}", url, e);
+            return null;
+        }
+    }
+
+    private void registerPoolGauge(String state, ToIntFunction<PoolStats> value) {
+        Gauge.builder("sms.provider.connections", connectionManager, manager -> value.applyAsInt(manager.getTotalStats()))
+                .description("Connections of the pool to the third party API")
+                .tag("provider", name)
+                .tag("state", state)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Builds the request sending one text to the given destinations.
+     */
+    public static ThirdPartySmsApiRequest smsRequest(String text, List<DestinationThirdPartySmsApiRequest> destinations) {
+        return ThirdPartySmsApiRequest
+                .builder()
+                .deliveryChannel("sms")
+                .channels(
+                        ChannelsThirdPartySmsApiRequest
+                                .builder()
+                                .sms(
+                                        SmsThirdPartySmsApiRequest
+                                                .builder()
+                                                .text(text)
+                                                .build()
+                                )
+                                .build()
+                )
+                .destination(destinations)
+                .build();
+    }
+
+    /**
+     * Builds a destination of a single phone number.
+     */
+    public static DestinationThirdPartySmsApiRequest destination(String phoneNumber, String correlationId) {
+        return DestinationThirdPartySmsApiRequest
+                .builder()
+                .msisdn(new ArrayList<>(Collections.singletonList(phoneNumber)))
+                .correlationId(correlationId)
+                .build();
+    }
+
+    /**
+     * Sends a request to the third party API and returns the corresponding response code.
+     *
+     * @param req list of ThirdPartySmsApiRequest objects to send
+     * @return ThirdPartyApiResponseCode indicating the outcome of the API call
+     */
+    public ThirdPartyApiResponseCode send(List<ThirdPartySmsApiRequest> req) {
+        return exchange(req).getResponseCode();
+    }
+
+    /**
+     * Sends a request to the third party API and returns the outcome of the call and of each destination.
+     * <p>
+     * The per destination outcomes are read (streamed, over HTTP/1.1 only) from the objects of a 200 response body
+     * that carry a <b>correlationId</b> and a <b>status</b>, where a status of FAILED, REJECTED or ERROR fails the
+     * destination. Destinations the response says nothing about share the outcome of the call.
+     *
+     * @param req list of ThirdPartySmsApiRequest objects to send
+     * @return The outcome of the call and of each destination reported by the API.
+     */
+    public ProviderResponse exchange(List<ThirdPartySmsApiRequest> req) {
+        if (uri == null) {
+            return ProviderResponse.notSent(ThirdPartyApiResponseCode.MALFORMED_URL);
+        }
+        Optional<ProviderGuard.Permit> permit = providerGuard.tryAcquire();
+        if (!permit.isPresent()) {
+            logger.warn("Third party API {} call rejected (circuit {}, {} calls in flight)", name, providerGuard.getCircuitState(), providerGuard.getInFlight());
+            return ProviderResponse.notSent(ThirdPartyApiResponseCode.REJECTED);
+        }
+        long timeoutMs = permit.get().getTimeoutMs();
+        long start = System.nanoTime();
+        ProviderResponse response = ProviderResponse.of(ThirdPartyApiResponseCode.API_ERROR);
+        try {
+            response = http2Transport != null ? sendHttp2(req, timeoutMs) : sendHttp1(req, timeoutMs);
+        } finally {
+            permit.get().release(response.getResponseCode());
+        }
+        Timer.builder("sms.provider.request")
+                .description("Requests to the third party API")
+                .tag("provider", name)
+                .tag("outcome", response.getResponseCode().name())
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return response;
+    }
+
+    private ProviderResponse sendHttp1(List<ThirdPartySmsApiRequest> req, long timeoutMs) {
+        HttpPost post = new HttpPost(uri);
+        post.setConfig(RequestConfig.copy(requestConfig)
+                .setConnectTimeout((int) Math.min(connectTimeoutMs, timeoutMs))
+                .setSocketTimeout((int) timeoutMs)
+                .build());
+        post.setHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
+        EntityTemplate entity = new EntityTemplate(outputStream -> requestWriter.writeValue(outputStream, req));
+        entity.setContentType(ContentType.APPLICATION_JSON.toString());
+        post.setEntity(entity);
+
+        try (CloseableHttpResponse response = httpClient.execute(post)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            ThirdPartyApiResponseCode responseCode = toResponseCode(statusCode);
+            if (isRefused(statusCode)) {
+                EntityUtils.consume(response.getEntity());
+                return ProviderResponse.notSent(responseCode);
+            }
+            Map<String, ThirdPartyApiResponseCode> destinationResults = Collections.emptyMap();
+            HttpEntity responseEntity = response.getEntity();
+            if (responseCode == ThirdPartyApiResponseCode.SUCCESS && responseEntity != null) {
+                destinationResults = readDestinationResults(responseEntity);
+            }
+            // Drain (not read) the rest of the body so that the connection can be reused
+            EntityUtils.consume(responseEntity);
+            return new ProviderResponse(responseCode, destinationResults);
+        } catch (JsonProcessingException e) {
+            logger.error("Error serializing request body", e);
+            return ProviderResponse.of(ThirdPartyApiResponseCode.INVALID_REQUEST_BODY);
+        } catch (ConnectTimeoutException e) {
+            // Also covers waiting too long for a pooled connection (ConnectionPoolTimeoutException)
+            logger.error("Timeout in connecting to third party api.", e);
+            return ProviderResponse.notSent(ThirdPartyApiResponseCode.TIMEOUT);
+        } catch (SocketTimeoutException e) {
+            logger.error("Timeout in sending request to third party api.", e);
+            return ProviderResponse.of(ThirdPartyApiResponseCode.TIMEOUT);
+        } catch (ConnectException | UnknownHostException e) {
+            logger.error("Error connecting to third party api.", e);
+            return ProviderResponse.notSent(ThirdPartyApiResponseCode.API_ERROR);
+        } catch (IOException e) {
+            logger.error("Error sending request to third party api.", e);
+            return ProviderResponse.of(ThirdPartyApiResponseCode.API_ERROR);
+        }
+    }
+
+    /**
+     * Streams through the response body collecting the status of every object carrying a correlationId.
+     * A body that is not JSON (or is cut short) yields the results read so far.
+     */
+    private Map<String, ThirdPartyApiResponseCode> readDestinationResults(HttpEntity entity) throws IOException {
+        Map<String, ThirdPartyApiResponseCode> results = new HashMap<>();
+        Deque<String[]> objects = new ArrayDeque<>();
+        try (JsonParser parser = jsonFactory.createParser(entity.getContent())) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.START_OBJECT) {
+                    // {correlationId, status} of the object
+                    objects.push(new String[2]);
+                } else if (token == JsonToken.END_OBJECT) {
+                    String[] object = objects.pop();
+                    if (object[0] != null && object[1] != null) {
+                        results.put(object[0], FAILED_DESTINATION_STATUSES.contains(object[1].toUpperCase())
+                                ? ThirdPartyApiResponseCode.API_ERROR
+                                : ThirdPartyApiResponseCode.SUCCESS);
+                    }
+                } else if (token == JsonToken.FIELD_NAME && !objects.isEmpty()) {
+                    String field = parser.getCurrentName();
+                    int index = "correlationId".equals(field) ? 0 : "status".equals(field) ? 1 : -1;
+                    if (index >= 0 && parser.nextToken().isScalarValue()) {
+                        objects.peek()[index] = parser.getValueAsString();
+                    }
+                }
+            }
+        } catch (JsonParseException e) {
+            logger.debug("Response body of the third party API is not JSON: {}", e.getOriginalMessage());
+        }
+        return results;
+    }
+
+    private ProviderResponse sendHttp2(List<ThirdPartySmsApiRequest> req, long timeoutMs) {
+        byte[] body;
+        try {
+            body = requestWriter.writeValueAsBytes(req);
+        } catch (JsonProcessingException e) {
+            logger.error("Error serializing request body", e);
+            return ProviderResponse.of(ThirdPartyApiResponseCode.INVALID_REQUEST_BODY);
+        }
+        try {
+            int statusCode = http2Transport.post(uri, body, timeoutMs);
+            return isRefused(statusCode) ? ProviderResponse.notSent(toResponseCode(statusCode)) : ProviderResponse.of(toResponseCode(statusCode));
+        } catch (ConnectTimeoutException e) {
+            logger.error("Timeout in connecting to third party api.", e);
+            return ProviderResponse.notSent(ThirdPartyApiResponseCode.TIMEOUT);
+        } catch (SocketTimeoutException e) {
+            logger.error("Timeout in sending request to third party api.", e);
+            return ProviderResponse.of(ThirdPartyApiResponseCode.TIMEOUT);
+        } catch (ConnectException | UnknownHostException e) {
+            logger.error("Error connecting to third party api.", e);
+            return ProviderResponse.notSent(ThirdPartyApiResponseCode.API_ERROR);
+        } catch (IOException e) {
+            logger.error("Error sending request to third party api.", e);
+            return ProviderResponse.of(ThirdPartyApiResponseCode.API_ERROR);
+        }
+    }
+
+    /**
+     * @return Whether the gateway answered that it did not take the request (throttled or unavailable).
+     */
+    private static boolean isRefused(int statusCode) {
+        return statusCode == 429 || statusCode == 503;
+    }
+
+    private static ThirdPartyApiResponseCode toResponseCode(int statusCode) {
+        if (statusCode == 200) {
+            logger.debug("Successfully sent request to ThirdParty API");
+            return ThirdPartyApiResponseCode.SUCCESS;
+        }
+        if (statusCode == 429) {
+            logger.warn("Request throttled by the third party API (429)");
+            return ThirdPartyApiResponseCode.THROTTLED;
+        }
+        logger.error("Request Failed. Received non 200 Response Code: {}", statusCode);
+        return ThirdPartyApiResponseCode.API_ERROR;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ProviderGuard getProviderGuard() {
+        return providerGuard;
+    }
+
+    /**
+     * Closes the connection pool (called by the ProviderRouter on shutdown).
+     */
+    public void close() throws IOException {
+        if (httpClient != null) {
+            httpClient.close();
+        }
+    }
+}
@@ -8,6 +8,7 @@ import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.MultiMatchQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
@@ -186,8 +187,9 @@ public class ElasticSearchRepository {
         // If a phone number is provided
         number.ifPresent(num -> boolQuery.must(QueryBuilders.matchQuery("phone_number", num)));
 
-        // Filter by each term in Message Containing
-        terms.forEach(term -> boolQuery.filter(QueryBuilders.matchPhraseQuery("message", term)));
+        // Filter by each term in Message Containing (a templated SMS is indexed with its parameters, not its text)
+        terms.forEach(term -> boolQuery.filter(QueryBuilders.multiMatchQuery(term, "message", "template_params")
+                .type(MultiMatchQueryBuilder.Type.PHRASE)));
 
         return boolQuery;
     }
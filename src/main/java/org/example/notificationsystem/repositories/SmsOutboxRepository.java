@@ -0,0 +1,88 @@
+package org.example.notificationsystem.repositories;
+
+import org.example.notificationsystem.models.SmsOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * JPA Repository for the transactional outbox of Sms Requests.
+ * The claim queries lock the returned rows with SKIP LOCKED so that relays running on several nodes drain disjoint rows.
+ */
+@Repository
+public interface SmsOutboxRepository extends JpaRepository<SmsOutbox, Long> {
+    /**
+     * Locks and returns the oldest entries not yet published to Kafka.
+     *
+     * @param limit The maximum number of entries to return.
+     * @return A list of {@link SmsOutbox} entries in id order.
+     */
+    @Query(value = "SELECT * FROM sms_outbox WHERE published = false ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<SmsOutbox> claimUnpublished(@Param("limit") int limit);
+
+    /**
+     * Locks and returns the oldest entries not yet indexed into Elasticsearch.
+     *
+     * @param limit The maximum number of entries to return.
+     * @return A list of {@link SmsOutbox} entries in id order.
+     */
+    @Query(value = "SELECT * FROM sms_outbox WHERE indexed = false ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<SmsOutbox> claimUnindexed(@Param("limit") int limit);
+
+    /**
+     * Marks the entries as published to Kafka.
+     *
+     * @param ids The ids of the outbox entries.
+     * @return The number of updated rows.
+     */
+    @Modifying
+    @Query("UPDATE SmsOutbox o SET o.published = true WHERE o.id IN :ids")
+    int markPublished(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Marks the entries as indexed into Elasticsearch.
+     *
+     * @param ids The ids of the outbox entries.
+     * @return The number of updated rows.
+     */
+    @Modifying
+    @Query("UPDATE SmsOutbox o SET o.indexed = true WHERE o.id IN :ids")
+    int markIndexed(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Deletes the entries that have been drained to every sink.
+     *
+     * @return The number of deleted rows.
+     */
+    @Modifying
+    @Query("DELETE FROM SmsOutbox o WHERE o.published = true AND o.indexed = true")
+    int deleteDrained();
+
+    /**
+     * @return The number of entries not yet published to Kafka.
+     */
+    long countByPublishedFalse();
+
+    /**
+     * @return The number of entries not yet indexed into Elasticsearch.
+     */
+    long countByIndexedFalse();
+
+    /**
+     * @return The creation time of the oldest entry not yet published to Kafka (null if there is none).
+     */
+    @Query("SELECT MIN(o.createdAt) FROM SmsOutbox o WHERE o.published = false")
+    Date findOldestUnpublishedCreatedAt();
+
+    /**
+     * @return The creation time of the oldest entry not yet indexed into Elasticsearch (null if there is none).
+     */
+    @Query("SELECT MIN(o.createdAt) FROM SmsOutbox o WHERE o.indexed = false")
+    Date findOldestUnindexedCreatedAt();
+}
@@ -2,11 +2,20 @@ package org.example.notificationsystem.repositories;
 
 import org.example.notificationsystem.models.SmsRequest;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.*;
 
 /**
  * Default JPA Repository for interacting with the MySQL table for Sms Requests.
@@ -44,4 +53,92 @@ public interface SmsRequestRepository extends JpaRepository<SmsRequest, Long> {
      * @return A list of {@link SmsRequest} objects that match the given status.
      */
     List<SmsRequest> findByCreatedAtIsBetween(Date createdAtAfter, Date createdAtBefore);
-}
\ No newline at end of file
+
+    /**
+     * Streams the SMS requests created in [createdAtFrom, createdAtTo), ordered by (created_at, id) to read
+     * idx_sms_request_created_at_id in order instead of sorting the range.
+     * A fetch size of Integer.MIN_VALUE makes MySQL Connector/J stream the rows one by one instead of buffering the
+     * whole result set. Must be consumed (and closed) inside a transaction.
+     *
+     * @param createdAtFrom The start date (inclusive).
+     * @param createdAtTo   The end date (exclusive).
+     * @return A lazy {@link Stream} of {@link SmsRequest} objects.
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "-2147483648"),
+            @QueryHint(name = HINT_READONLY, value = "true"),
+            @QueryHint(name = HINT_CACHEABLE, value = "false")
+    })
+    @Query("SELECT s FROM SmsRequest s WHERE s.createdAt >= :createdAtFrom AND s.createdAt < :createdAtTo ORDER BY s.createdAt, s.id")
+    Stream<SmsRequest> streamByCreatedAtBetween(@Param("createdAtFrom") Date createdAtFrom,
+                                                @Param("createdAtTo") Date createdAtTo);
+
+    /**
+     * Streams the SMS requests having status field == status created in [createdAtFrom, createdAtTo), ordered by
+     * (created_at, id) to read idx_sms_request_status_created_at_id in order. Streamed like streamByCreatedAtBetween.
+     *
+     * @param status        The status by which we are querying.
+     * @param createdAtFrom The start date (inclusive).
+     * @param createdAtTo   The end date (exclusive).
+     * @return A lazy {@link Stream} of {@link SmsRequest} objects.
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "-2147483648"),
+            @QueryHint(name = HINT_READONLY, value = "true"),
+            @QueryHint(name = HINT_CACHEABLE, value = "false")
+    })
+    @Query("SELECT s FROM SmsRequest s WHERE s.status = :status AND s.createdAt >= :createdAtFrom AND s.createdAt < :createdAtTo ORDER BY s.createdAt, s.id")
+    Stream<SmsRequest> streamByStatusAndCreatedAtBetween(@Param("status") Integer status,
+                                                         @Param("createdAtFrom") Date createdAtFrom,
+                                                         @Param("createdAtTo") Date createdAtTo);
+
+    /**
+     * Returns the page of SMS requests that come after the (createdAt, id) keyset cursor, ordered by (created_at, id).
+     * The cursor predicate is spelled out instead of written as a row comparison ((created_at, id) > (...)), which
+     * MySQL does not always turn into a range on idx_sms_request_created_at_id. As a range scan every page costs the
+     * same however deep it is.
+     *
+     * @param createdAt The created_at of the last row of the previous page.
+     * @param id        The id of the last row of the previous page.
+     * @param limit     The maximum number of rows to return.
+     * @return A list of {@link SmsRequest} objects.
+     */
+    @Query(value = "SELECT * FROM sms_request WHERE (created_at > :createdAt OR (created_at = :createdAt AND id > :id)) ORDER BY created_at, id LIMIT :limit", nativeQuery = true)
+    List<SmsRequest> findPageAfter(@Param("createdAt") Date createdAt, @Param("id") Long id, @Param("limit") int limit);
+
+    /**
+     * Returns the page of SMS requests having status field == status that come after the (createdAt, id) keyset cursor,
+     * ordered by (created_at, id). Uses idx_sms_request_status_created_at_id.
+     *
+     * @param status    The status by which we are querying.
+     * @param createdAt The created_at of the last row of the previous page.
+     * @param id        The id of the last row of the previous page.
+     * @param limit     The maximum number of rows to return.
+     * @return A list of {@link SmsRequest} objects.
+     */
+    @Query(value = "SELECT * FROM sms_request WHERE status = :status AND (created_at > :createdAt OR (created_at = :createdAt AND id > :id)) ORDER BY created_at, id LIMIT :limit", nativeQuery = true)
+    List<SmsRequest> findPageByStatusAfter(@Param("status") Integer status, @Param("createdAt") Date createdAt, @Param("id") Long id, @Param("limit") int limit);
+
+    /**
+     * Applies a status transition in one statement, only if the row currently has the expected status.
+     * Bypasses the entity (no read, no dirty checking, no @PreUpdate), so updatedAt is passed explicitly.
+     * Runs in its own transaction unless called within one (ex: from the publish callbacks).
+     *
+     * @param id              The id of the SMS request.
+     * @param expectedStatus  The status the row must currently have.
+     * @param status          The new status.
+     * @param failureCode     The new failure code.
+     * @param failureComments The new failure comments.
+     * @param updatedAt       The new updatedAt.
+     * @return 1 if the transition was applied, 0 if the row does not exist or is not in the expected status.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE SmsRequest s SET s.status = :status, s.failureCode = :failureCode, s.failureComments = :failureComments, s.updatedAt = :updatedAt WHERE s.id = :id AND s.status = :expectedStatus")
+    int transition(@Param("id") Long id,
+                   @Param("expectedStatus") Integer expectedStatus,
+                   @Param("status") Integer status,
+                   @Param("failureCode") Integer failureCode,
+                   @Param("failureComments") String failureComments,
+                   @Param("updatedAt") Date updatedAt);
+}
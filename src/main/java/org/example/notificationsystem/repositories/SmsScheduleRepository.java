@@ -0,0 +1,55 @@
+package org.example.notificationsystem.repositories;
+
+import org.example.notificationsystem.models.SmsSchedule;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * JPA Repository for the scheduled Sms Requests.
+ * The claim query locks the returned rows with SKIP LOCKED so that schedulers running on several nodes load disjoint rows.
+ */
+@Repository
+public interface SmsScheduleRepository extends JpaRepository<SmsSchedule, Long> {
+    /**
+     * Locks and returns the entries due before the horizon that no node holds (or whose claim expired).
+     *
+     * @param horizon The end of the window to load.
+     * @param now     The current time, claims that ended before it are expired.
+     * @param limit   The maximum number of entries to return.
+     * @return A list of {@link SmsSchedule} entries in sendAt order.
+     */
+    @Query(value = "SELECT * FROM sms_schedule WHERE send_at < :horizon AND (claimed_until IS NULL OR claimed_until < :now) " +
+            "ORDER BY send_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<SmsSchedule> claimDue(@Param("horizon") Date horizon, @Param("now") Date now, @Param("limit") int limit);
+
+    /**
+     * Marks the entries as held by this node until the given time.
+     *
+     * @param ids          The ids of the entries.
+     * @param claimedUntil The end of the claim.
+     * @return The number of updated rows.
+     */
+    @Modifying
+    @Query("UPDATE SmsSchedule s SET s.claimedUntil = :claimedUntil WHERE s.id IN :ids")
+    int claim(@Param("ids") Collection<Long> ids, @Param("claimedUntil") Date claimedUntil);
+
+    /**
+     * Deletes the entries that were published.
+     * Runs in its own transaction unless called within one (the release runs outside of any).
+     *
+     * @param ids The ids of the entries.
+     * @return The number of deleted rows.
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM SmsSchedule s WHERE s.id IN :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+}
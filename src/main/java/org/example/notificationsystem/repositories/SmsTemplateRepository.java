@@ -0,0 +1,19 @@
+package org.example.notificationsystem.repositories;
+
+import org.example.notificationsystem.models.SmsTemplate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * JPA Repository for the versions of the message templates.
+ */
+@Repository
+public interface SmsTemplateRepository extends JpaRepository<SmsTemplate, Long> {
+    /**
+     * @param name The name of the template.
+     * @return The latest version of the template, if registered.
+     */
+    Optional<SmsTemplate> findTopByNameOrderByVersionDesc(String name);
+}
@@ -0,0 +1,36 @@
+package org.example.notificationsystem.services;
+
+import org.example.notificationsystem.constants.PriorityConstants;
+import org.example.notificationsystem.models.AdmissionDecision;
+
+import java.util.Map;
+
+/**
+ * Service interface for admission control (rate limiting and backpressure) of the ingest API.
+ */
+public interface AdmissionControlService {
+
+    /**
+     * Asks to let a client's request in.
+     *
+     * @param clientId The client the request comes from.
+     * @param lane     The priority of the Sms Requests.
+     * @param permits  The number of Sms Requests in the request.
+     * @return The {@link AdmissionDecision}.
+     */
+    AdmissionDecision tryAdmit(String clientId, PriorityConstants lane, int permits);
+
+    /**
+     * Asks to let a client's request in, all or nothing.
+     *
+     * @param clientId       The client the request comes from.
+     * @param permitsByLane  The number of Sms Requests in the request, by priority.
+     * @return The {@link AdmissionDecision}.
+     */
+    AdmissionDecision tryAdmit(String clientId, Map<PriorityConstants, Integer> permitsByLane);
+
+    /**
+     * @return A snapshot of the limiter state (for the actuator endpoint).
+     */
+    Map<String, Object> getState();
+}
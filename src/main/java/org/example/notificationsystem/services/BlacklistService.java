@@ -1,5 +1,7 @@
 package org.example.notificationsystem.services;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -15,6 +17,14 @@ public interface BlacklistService {
      */
     Boolean isNumberBlacklisted(String number);
 
+    /**
+     * Checks which of the given phone numbers are blacklisted, in one round trip.
+     *
+     * @param numbers The phone numbers to check.
+     * @return For every (distinct) number, true if it is blacklisted.
+     */
+    Map<String, Boolean> areNumbersBlacklisted(Collection<String> numbers);
+
     /**
      * Retrieves all blacklisted phone numbers.
      *
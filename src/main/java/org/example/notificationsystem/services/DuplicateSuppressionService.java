@@ -0,0 +1,41 @@
+package org.example.notificationsystem.services;
+
+import org.example.notificationsystem.models.SmsRequest;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Service interface for dropping the copies of an Sms Request (same phone number, message and send time) sent again within a short window.
+ */
+public interface DuplicateSuppressionService {
+
+    /**
+     * Records an Sms Request and tells whether it was already seen within the window.
+     *
+     * @param phoneNumber The phone number.
+     * @param message     The text of the Sms.
+     * @param sendAt      When the Sms is scheduled (null for now).
+     * @return true if it is a duplicate and must not be sent.
+     */
+    boolean isDuplicate(String phoneNumber, String message, Date sendAt);
+
+    /**
+     * Same as isDuplicate for a batch of Sms Requests, in a single round trip. A request repeated within the batch is a
+     * duplicate of its first occurrence. A templated Sms Request is compared by its rendered text.
+     *
+     * @param smsRequests The Sms Requests, not saved yet.
+     * @return For every request, in order, true if it is a duplicate.
+     */
+    List<Boolean> areDuplicates(List<SmsRequest> smsRequests);
+
+    /**
+     * Forgets an Sms Request recorded by isDuplicate, when it could not be created after all, so that the client may retry it.
+     */
+    void forget(String phoneNumber, String message, Date sendAt);
+
+    /**
+     * Forgets a batch of Sms Requests recorded by areDuplicates (see forget).
+     */
+    void forget(List<SmsRequest> smsRequests);
+}
@@ -0,0 +1,22 @@
+package org.example.notificationsystem.services;
+
+import java.util.function.Supplier;
+
+/**
+ * Service interface for de-duplicating client retries using an Idempotency-Key.
+ */
+public interface IdempotencyService {
+
+    /**
+     * Returns the request id stored for the idempotency key, or runs the creator and stores its result.
+     * Concurrent calls with the same key coalesce onto a single run of the creator.
+     * The key is bound to the fingerprint of the request it was first used with.
+     *
+     * @param idempotencyKey The client supplied idempotency key.
+     * @param fingerprint    The fingerprint of the request body (see IdempotencyServiceImpl.fingerprint).
+     * @param creator        Creates the request and returns its id. Only run if the key was never seen in the window.
+     * @return The id of the request created for this key (by this call or by an earlier one).
+     * @throws org.example.notificationsystem.exception.IdempotencyKeyMismatchException If the key was used with another fingerprint.
+     */
+    String getOrCreate(String idempotencyKey, String fingerprint, Supplier<String> creator);
+}
@@ -0,0 +1,28 @@
+package org.example.notificationsystem.services;
+
+/**
+ * Service interface for draining the Sms Request outbox to Kafka and Elasticsearch.
+ */
+public interface OutboxRelayService {
+
+    /**
+     * Publishes the next batch of unpublished outbox entries to Kafka.
+     *
+     * @return The number of entries published.
+     */
+    int relayToKafka();
+
+    /**
+     * Indexes the next batch of unindexed outbox entries into Elasticsearch.
+     *
+     * @return The number of entries indexed.
+     */
+    int relayToElasticsearch();
+
+    /**
+     * Deletes the entries that have been drained to every sink.
+     *
+     * @return The number of entries deleted.
+     */
+    int purgeDrained();
+}
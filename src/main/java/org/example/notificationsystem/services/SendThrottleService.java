@@ -0,0 +1,31 @@
+package org.example.notificationsystem.services;
+
+/**
+ * Service interface for the cluster-wide rate limits of the third party API calls (contracted TPS per route and per gateway).
+ */
+public interface SendThrottleService {
+
+    /**
+     * @return true if the sends are throttled, otherwise tryAcquire always lets them through.
+     */
+    boolean isEnabled();
+
+    /**
+     * Takes tokens from a shared bucket.
+     *
+     * @param bucket        The name of the bucket (ex: route:+91, gateway:beeceptor).
+     * @param ratePerSecond The rate limit of the bucket, 0 or less for none.
+     * @param permits       The number of Sms to send. Requests larger than the burst are collected over several calls.
+     * @return 0 if the tokens were taken, otherwise the (estimated) milliseconds until they will be available.
+     */
+    long tryAcquire(String bucket, double ratePerSecond, int permits);
+
+    /**
+     * Tells, without taking tokens nor calling Redis, whether a bucket is known to be empty.
+     *
+     * @param bucket The name of the bucket.
+     * @return 0 unless the last tryAcquire of the bucket on this consumer returned a wait that is not over, otherwise
+     * the milliseconds left.
+     */
+    long availableIn(String bucket);
+}
@@ -0,0 +1,30 @@
+package org.example.notificationsystem.services;
+
+import org.example.notificationsystem.constants.ThirdPartyApiResponseCode;
+import org.example.notificationsystem.kafka.SmsMessagePayload;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Service interface for sending Sms Requests to the third party API in micro-batches (several destinations per call).
+ */
+public interface SmsDispatchService {
+
+    /**
+     * @return true if the micro-batching is enabled, otherwise callers should send one request per call.
+     */
+    boolean isEnabled();
+
+    /**
+     * Queues an Sms Request for the next batch. Blocks while the queue is full.
+     *
+     * @param payload The Sms Request (its phone number is not blacklisted).
+     * @return A future completed with the outcome of the Sms Request once its batch was sent.
+     */
+    CompletableFuture<ThirdPartyApiResponseCode> submit(SmsMessagePayload payload);
+
+    /**
+     * Sends everything queued so far.
+     */
+    void flush();
+}
@@ -0,0 +1,21 @@
+package org.example.notificationsystem.services;
+
+/**
+ * Service interface for publishing the scheduled Sms Requests (sendAt) to Kafka once they are due.
+ */
+public interface SmsScheduleService {
+
+    /**
+     * Loads the scheduled Sms Requests due within the horizon into memory.
+     *
+     * @return The number of Sms Requests loaded.
+     */
+    int load();
+
+    /**
+     * Publishes the due Sms Requests, at most at the release rate.
+     *
+     * @return The number of Sms Requests published.
+     */
+    int release();
+}
@@ -1,16 +1,23 @@
 package org.example.notificationsystem.services;
 
 import org.example.notificationsystem.constants.FailureCodeConstants;
+import org.example.notificationsystem.constants.PriorityConstants;
 import org.example.notificationsystem.constants.StatusConstants;
 import org.example.notificationsystem.dto.request.ElasticSearchRequest;
+import org.example.notificationsystem.dto.response.GetSmsPageResponse;
+import org.example.notificationsystem.dto.response.SmsBatchItemResponse;
 import org.example.notificationsystem.dto.response.SmsRequestElasticsearchResponse;
 import org.example.notificationsystem.models.SmsRequest;
 import org.example.notificationsystem.models.SmsRequestElasticsearch;
+import org.example.notificationsystem.models.StatusTransition;
 import org.springframework.http.ResponseEntity;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * Service interface for managing SMS requests.
@@ -26,6 +33,38 @@ public interface SmsService {
      */
     SmsRequest createSmsRequest(String number, String message);
 
+    /**
+     * Creates a new SMS request with the provided number, message, priority and send time.
+     *
+     * @param number   The phone number to send the SMS to.
+     * @param message  The content of the SMS.
+     * @param priority The priority of the SMS (null for NORMAL), which decides its Kafka lane.
+     * @param sendAt   When to send the SMS (null for now).
+     * @return The created {@link SmsRequest}.
+     */
+    SmsRequest createSmsRequest(String number, String message, PriorityConstants priority, Date sendAt);
+
+    /**
+     * Creates a new SMS request from a template, storing the template reference and the parameters instead of the text.
+     *
+     * @param number     The phone number to send the SMS to.
+     * @param templateId The id of the template version (see SmsTemplateService).
+     * @param params     The value of every parameter of the template, by name.
+     * @param priority   The priority of the SMS (null for NORMAL), which decides its Kafka lane.
+     * @param sendAt     When to send the SMS (null for now).
+     * @return The created {@link SmsRequest}.
+     * @throws IllegalArgumentException If the template does not exist or the parameters do not match it.
+     */
+    SmsRequest createSmsRequest(String number, Long templateId, Map<String, String> params, PriorityConstants priority, Date sendAt);
+
+    /**
+     * Creates a batch of SMS requests using batched writes to MySQL, Elasticsearch and Kafka.
+     *
+     * @param requests The SMS requests to create.
+     * @return Per request results, in the same order as requests.
+     */
+    List<SmsBatchItemResponse> createSmsRequests(List<org.example.notificationsystem.dto.request.SmsRequest> requests);
+
     /**
      * Retrieves an SMS request by its ID.
      *
@@ -34,6 +73,14 @@ public interface SmsService {
      */
     Optional<SmsRequest> getSmsRequest(Long Id);
 
+    /**
+     * Retrieves the SMS requests having the given IDs with a single query.
+     *
+     * @param ids The IDs of the SMS requests.
+     * @return The {@link SmsRequest} objects found.
+     */
+    List<SmsRequest> getSmsRequests(Collection<Long> ids);
+
     /**
      * Retrieves all SMS requests with a finished status.
      *
@@ -62,6 +109,45 @@ public interface SmsService {
      */
     List<SmsRequest> getAllSmsRequests();
 
+    /**
+     * Retrieves a page of SMS requests ordered by (createdAt, id) using keyset pagination.
+     *
+     * @param status The status to filter on (null for any status).
+     * @param cursor The nextCursor of the previous page (null for the first page).
+     * @param limit  The maximum number of SMS requests in the page.
+     * @return The {@link GetSmsPageResponse} holding the page and the cursor of the next one.
+     * @throws IllegalArgumentException If the cursor is invalid.
+     */
+    GetSmsPageResponse getSmsRequestsPage(StatusConstants status, String cursor, int limit);
+
+    /**
+     * Streams the SMS requests matching the filters from MySQL to the action, one at a time, with constant memory.
+     *
+     * @param status The status to filter on (null for any status).
+     * @param from   The start of the creation time range (inclusive).
+     * @param to     The end of the creation time range (exclusive).
+     * @param action Called for every matching {@link SmsRequest}, in (createdAt, id) order.
+     * @return The number of SMS requests streamed.
+     */
+    long streamSmsRequests(StatusConstants status, Date from, Date to, Consumer<SmsRequest> action);
+
+    /**
+     * Applies a status transition (status, failure code, comments and updated_at) with a single conditional UPDATE,
+     * without reading the row.
+     *
+     * @param statusTransition The transition to apply.
+     * @return true if applied, false if the SMS request does not exist or is not in the expected status.
+     */
+    boolean transition(StatusTransition statusTransition);
+
+    /**
+     * Applies many status transitions with a single batched statement.
+     *
+     * @param statusTransitions The transitions to apply.
+     * @return Per transition applied flags, in the same order as statusTransitions.
+     */
+    List<Boolean> applyTransitions(List<StatusTransition> statusTransitions);
+
     /**
      * Sets the status of an SMS request.
      *
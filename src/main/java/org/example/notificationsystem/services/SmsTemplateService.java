@@ -0,0 +1,52 @@
+package org.example.notificationsystem.services;
+
+import org.example.notificationsystem.models.SmsRequest;
+import org.example.notificationsystem.models.SmsTemplate;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Service interface for the message templates, whose Sms Requests store the template id and the parameters instead of the text.
+ */
+public interface SmsTemplateService {
+
+    /**
+     * Registers the next version of a template.
+     *
+     * @param name The name of the template.
+     * @param body The text of the template, with its parameters written {{name}}.
+     * @return The saved {@link SmsTemplate} version.
+     * @throws IllegalArgumentException If the body is not a valid template.
+     */
+    SmsTemplate registerTemplate(String name, String body);
+
+    /**
+     * @param templateId The id of a template version.
+     * @return An Optional containing the {@link SmsTemplate} if found.
+     */
+    Optional<SmsTemplate> getTemplate(Long templateId);
+
+    /**
+     * @param templateId The id of a template version.
+     * @param params     The value of every parameter of the template, by name.
+     * @return The parameters in their stored (compact) form.
+     * @throws IllegalArgumentException If the template does not exist, the parameters do not match it or the rendered
+     *                                  text would be too long for an Sms.
+     */
+    String encodeParams(Long templateId, Map<String, String> params);
+
+    /**
+     * @param templateId    The id of a template version.
+     * @param encodedParams The parameters, as returned by encodeParams.
+     * @return The text of the Sms.
+     * @throws IllegalArgumentException If the template does not exist or the parameters do not match it.
+     */
+    String render(Long templateId, String encodedParams);
+
+    /**
+     * @param smsRequest An Sms Request, templated or not.
+     * @return The text of the Sms: its message, or its template rendered with its parameters.
+     */
+    String textOf(SmsRequest smsRequest);
+}
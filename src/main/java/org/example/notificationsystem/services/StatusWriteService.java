@@ -0,0 +1,30 @@
+package org.example.notificationsystem.services;
+
+import org.example.notificationsystem.models.StatusTransition;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Service interface for writing Sms Request status transitions to MySQL asynchronously (write-behind).
+ */
+public interface StatusWriteService {
+
+    /**
+     * @return true if the write-behind buffer is enabled, otherwise callers should write synchronously.
+     */
+    boolean isEnabled();
+
+    /**
+     * Buffers a status transition. Blocks while the buffer is full.
+     *
+     * @param statusTransition The transition to write.
+     * @return A future completed once the transition is durable in MySQL, with true if it was applied and false if it
+     * was rejected (see SmsService.transition).
+     */
+    CompletableFuture<Boolean> submit(StatusTransition statusTransition);
+
+    /**
+     * Writes everything buffered so far.
+     */
+    void flush();
+}
@@ -0,0 +1,250 @@
+package org.example.notificationsystem.services.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.notificationsystem.constants.PriorityConstants;
+import org.example.notificationsystem.kafka.ConsumerLagMonitor;
+import org.example.notificationsystem.kafka.PriorityLanes;
+import org.example.notificationsystem.kafka.Producer;
+import org.example.notificationsystem.models.AdmissionDecision;
+import org.example.notificationsystem.services.AdmissionControlService;
+import org.example.notificationsystem.utils.TokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implements AdmissionControlService with token buckets.
+ * <p>
+ * A request must get its permits from two buckets:
+ * <ul>
+ *     <li><b>Per client</b>: A fixed rate and burst per client, so one client can not take the whole capacity. At most
+ *     sms.admission.client.max-tracked clients get a bucket of their own, the clients beyond share a single one.</li>
+ *     <li><b>Global, per priority lane</b>: A rate that adapts (AIMD) to the pipeline of the lane (see PriorityLanes).
+ *     While the consumer lag of the lane or the producer buffer occupancy is above its high watermark the rate is cut
+ *     multiplicatively, once both are below their low watermarks it grows back additively up to the maximum. A BULK
+ *     backlog therefore only slows down the BULK ingest, the HIGH and NORMAL lanes keep their own rate.</li>
+ * </ul>
+ * The client permits are given back when a lane rejects the request, so a rejection costs the client nothing.
+ * Rejected requests are answered 429 with a Retry-After header by the controller.
+ */
+@Service
+public class AdmissionControlServiceImpl implements AdmissionControlService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControlServiceImpl.class);
+
+    /**
+     * The key of the bucket shared by the clients past sms.admission.client.max-tracked.
+     */
+    static final String OVERFLOW_CLIENT = "__overflow__";
+
+    private final ConsumerLagMonitor consumerLagMonitor;
+    private final Producer producer;
+    private final PriorityLanes priorityLanes;
+    private final ConcurrentMap<String, TokenBucket> clientBuckets = new ConcurrentHashMap<>();
+    private final Map<PriorityConstants, TokenBucket> laneBuckets = new EnumMap<>(PriorityConstants.class);
+    private final Counter admitted;
+    private final Counter rejectedClient;
+    private final Counter rejectedGlobal;
+
+    @Value("${sms.admission.enabled}")
+    private boolean enabled;
+
+    @Value("${sms.admission.client.rate-per-second}")
+    private double clientRate;
+
+    @Value("${sms.admission.client.burst}")
+    private double clientBurst;
+
+    @Value("${sms.admission.global.min-rate-per-second}")
+    private double globalMinRate;
+
+    @Value("${sms.admission.global.max-rate-per-second}")
+    private double globalMaxRate;
+
+    @Value("${sms.admission.global.increase-per-second}")
+    private double globalIncrease;
+
+    @Value("${sms.admission.global.decrease-factor}")
+    private double globalDecreaseFactor;
+
+    @Value("${sms.admission.lag.high-watermark}")
+    private long lagHighWatermark;
+
+    @Value("${sms.admission.lag.low-watermark}")
+    private long lagLowWatermark;
+
+    @Value("${sms.admission.producer-buffer.high-watermark}")
+    private double bufferHighWatermark;
+
+    @Value("${sms.admission.producer-buffer.low-watermark}")
+    private double bufferLowWatermark;
+
+    @Value("${sms.admission.client.idle-eviction-ms}")
+    private long clientIdleEvictionMs;
+
+    @Value("${sms.admission.client.max-tracked}")
+    private int maxTrackedClients;
+
+    private final Map<PriorityConstants, Long> lastLag = new EnumMap<>(PriorityConstants.class);
+    private volatile double lastBufferUtilization;
+
+    @Autowired
+    public AdmissionControlServiceImpl(ConsumerLagMonitor consumerLagMonitor,
+                                       Producer producer,
+                                       PriorityLanes priorityLanes,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${sms.admission.global.max-rate-per-second}") double globalMaxRate,
+                                       @Value("${sms.admission.global.burst}") double globalBurst) {
+        this.consumerLagMonitor = consumerLagMonitor;
+        this.producer = producer;
+        this.priorityLanes = priorityLanes;
+        for (PriorityConstants lane : PriorityConstants.values()) {
+            TokenBucket laneBucket = new TokenBucket(globalMaxRate, globalBurst);
+            laneBuckets.put(lane, laneBucket);
+            lastLag.put(lane, 0L);
+            Gauge.builder("sms.admission.global.rate", laneBucket, TokenBucket::getRate).tag("lane", lane.name()).register(meterRegistry);
+        }
+
+        Gauge.builder("sms.admission.clients", clientBuckets, Map::size).register(meterRegistry);
+        this.admitted = Counter.builder("sms.admission.requests").tag("outcome", "admitted").register(meterRegistry);
+        this.rejectedClient = Counter.builder("sms.admission.requests").tag("outcome", "rejected_client").register(meterRegistry);
+        this.rejectedGlobal = Counter.builder("sms.admission.requests").tag("outcome", "rejected_global").register(meterRegistry);
+    }
+
+    @Override
+    public AdmissionDecision tryAdmit(String clientId, PriorityConstants lane, int permits) {
+        return tryAdmit(clientId, Collections.singletonMap(lane == null ? PriorityConstants.NORMAL : lane, permits));
+    }
+
+    @Override
+    public AdmissionDecision tryAdmit(String clientId, Map<PriorityConstants, Integer> permitsByLane) {
+        if (!enabled) return AdmissionDecision.admitted();
+        int permits = 0;
+        for (int lanePermits : permitsByLane.values()) permits += lanePermits;
+
+        TokenBucket clientBucket = clientBucket(clientId);
+        long clientWaitNanos = clientBucket.tryAcquire(permits);
+        if (clientWaitNanos > 0) {
+            rejectedClient.increment(permits);
+            logger.warn("Rejecting {} SMS requests of client {}: client rate limit", permits, clientId);
+            return AdmissionDecision.rejected(toRetryAfterSeconds(clientWaitNanos), "client rate limit exceeded");
+        }
+
+        Map<PriorityConstants, Integer> taken = new EnumMap<>(PriorityConstants.class);
+        for (Map.Entry<PriorityConstants, Integer> entry : permitsByLane.entrySet()) {
+            PriorityConstants lane = entry.getKey();
+            long laneWaitNanos = laneBuckets.get(lane).tryAcquire(entry.getValue());
+            if (laneWaitNanos > 0) {
+                // All or nothing: the client and the lanes already taken are given back
+                clientBucket.release(permits);
+                taken.forEach((takenLane, takenPermits) -> laneBuckets.get(takenLane).release(takenPermits));
+                rejectedGlobal.increment(permits);
+                logger.warn("Rejecting {} SMS requests of client {}: {} lane saturated (lag {}, producer buffer {})", permits, clientId, lane, lastLag.get(lane), lastBufferUtilization);
+                return AdmissionDecision.rejected(toRetryAfterSeconds(laneWaitNanos), "pipeline saturated");
+            }
+            taken.put(lane, entry.getValue());
+        }
+
+        admitted.increment(permits);
+        return AdmissionDecision.admitted();
+    }
+
+    /**
+     * @return The bucket of the client, or the shared overflow bucket once max-tracked clients have one, so that
+     * the number of buckets does not grow with the number of identities seen.
+     */
+    private TokenBucket clientBucket(String clientId) {
+        TokenBucket clientBucket = clientBuckets.get(clientId);
+        if (clientBucket != null) return clientBucket;
+        String key = clientBuckets.size() < maxTrackedClients ? clientId : OVERFLOW_CLIENT;
+        return clientBuckets.computeIfAbsent(key, id -> new TokenBucket(clientRate, clientBurst));
+    }
+
+    /**
+     * Adapts the rate of every lane to the measured consumer lag of its topic and the producer buffer occupancy (AIMD),
+     * once per second. With the lanes disabled they all share the Sms Request topic, and its lag.
+     */
+    @Scheduled(fixedRate = 1000)
+    public void adapt() {
+        lastBufferUtilization = producer.getBufferUtilization();
+        for (PriorityConstants lane : PriorityConstants.values()) {
+            long lag = consumerLagMonitor.getLag(priorityLanes.topicOf(lane));
+            lastLag.put(lane, lag);
+
+            TokenBucket laneBucket = laneBuckets.get(lane);
+            double rate = laneBucket.getRate();
+            double newRate = rate;
+            if (lag > lagHighWatermark || lastBufferUtilization > bufferHighWatermark) {
+                newRate = Math.max(globalMinRate, rate * globalDecreaseFactor);
+            } else if (lag < lagLowWatermark && lastBufferUtilization < bufferLowWatermark) {
+                newRate = Math.min(globalMaxRate, rate + globalIncrease);
+            }
+            if (newRate != rate) {
+                laneBucket.setRate(newRate);
+                logger.info("{} lane admission rate {} -> {} (lag {}, producer buffer {})", lane, rate, newRate, lag, lastBufferUtilization);
+            }
+        }
+    }
+
+    /**
+     * Forgets the buckets of clients that have been idle (their bucket is full again anyway).
+     */
+    @Scheduled(fixedDelayString = "${sms.admission.client.idle-eviction-ms}")
+    public void evictIdleClients() {
+        long now = System.nanoTime();
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(clientIdleEvictionMs);
+        clientBuckets.entrySet().removeIf(entry -> now - entry.getValue().getLastUsedNanos() > idleNanos);
+    }
+
+    @Override
+    public Map<String, Object> getState() {
+        Map<String, Object> global = new LinkedHashMap<>();
+        global.put("minRatePerSecond", globalMinRate);
+        global.put("maxRatePerSecond", globalMaxRate);
+        laneBuckets.forEach((lane, laneBucket) -> {
+            Map<String, Object> laneState = new LinkedHashMap<>();
+            laneState.put("ratePerSecond", laneBucket.getRate());
+            laneState.put("burst", laneBucket.getCapacity());
+            laneState.put("availableTokens", laneBucket.getAvailableTokens());
+            global.put(lane.name(), laneState);
+        });
+
+        Map<String, Object> pipeline = new LinkedHashMap<>();
+        pipeline.put("consumerLag", new LinkedHashMap<>(lastLag));
+        pipeline.put("consumerLagHighWatermark", lagHighWatermark);
+        pipeline.put("consumerLagMeasuredAt", consumerLagMonitor.getLastUpdatedMillis());
+        pipeline.put("producerBufferUtilization", lastBufferUtilization);
+        pipeline.put("producerBufferHighWatermark", bufferHighWatermark);
+
+        Map<String, Object> clients = new LinkedHashMap<>();
+        clients.put("ratePerSecond", clientRate);
+        clients.put("burst", clientBurst);
+        clients.put("tracked", clientBuckets.size());
+        clients.put("maxTracked", maxTrackedClients);
+
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("enabled", enabled);
+        state.put("global", global);
+        state.put("pipeline", pipeline);
+        state.put("clients", clients);
+        return state;
+    }
+
+    private static long toRetryAfterSeconds(long waitNanos) {
+        if (waitNanos == Long.MAX_VALUE) return 60;
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L));
+    }
+}
@@ -1,26 +1,101 @@
 package org.example.notificationsystem.services.impl;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.example.notificationsystem.constants.RedisConstants;
 import org.example.notificationsystem.services.BlacklistService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Implements BlacklistService using RedisTemplate
+ * Implements BlacklistService using RedisTemplate, with a local mirror of the whole blacklist on every node.
+ * <ul>
+ *     <li><b>Lookups</b>: Once the mirror is loaded, a check is a local lookup and a number missing from it is not
+ *     blacklisted: neither the usual "not blacklisted" answer nor the blacklisted one costs a round trip to Redis.</li>
+ *     <li><b>Coherence</b>: Every change of the blacklist increments the blacklist version and is published, with the
+ *     version it got, on the blacklist changes channel (Redis pub/sub, see RedisConfig). Every node applies the change
+ *     to its mirror, and moves the version of its mirror along if it follows it.</li>
+ *     <li><b>Staleness</b>: Every resync-interval-ms, the node reads the version and loads the whole set again (SMEMBERS)
+ *     if its mirror is behind, that is if it missed a change while it was not subscribed. A change is seen within
+ *     resync-interval-ms at worst, within the pub/sub latency usually. The changes received during a load are
+ *     applied again on top of it.</li>
+ *     <li><b>Memory</b>: The mirror holds every blacklisted number, about 100 bytes each.</li>
+ *     <li><b>Failures</b>: Until the mirror is first loaded (or with sms.blacklist.mirror.enabled=false), the checks
+ *     ask Redis, and no answer from Redis counts as blacklisted. A failed resync keeps the mirror as it is.</li>
+ * </ul>
+ * Metrics: <b>sms.blacklist.lookups{source=mirror|redis}</b>, <b>sms.blacklist.mirror.size</b> and
+ * <b>sms.blacklist.mirror.loads</b>.
  */
 @Service
 public class BlacklistServiceImpl implements BlacklistService {
 
     private static final Logger logger = LoggerFactory.getLogger(BlacklistServiceImpl.class);
+
+    /**
+     * Prefixes of the messages of the changes channel, followed by the version of the change (empty if it could not
+     * be counted), ':' and the changed numbers separated by ','.
+     */
+    public static final String ADDED = "add:";
+    public static final String REMOVED = "remove:";
+    /**
+     * Published on the changes channel to have every node load the whole blacklist again.
+     */
+    public static final String RESYNC = "*";
+
     private final RedisTemplate<String, String> redisTemplate;
+    private final boolean mirrorEnabled;
 
-    public BlacklistServiceImpl(RedisTemplate<String, String> template) {
+    /**
+     * The mirror of the blacklist, null until it is first loaded.
+     */
+    private volatile Set<String> mirror;
+    /**
+     * The blacklist version the mirror is at (the number of changes made since the blacklist was created).
+     */
+    private volatile long mirrorVersion;
+    private volatile boolean stale = false;
+    /**
+     * Guards the changes of the mirror against a load swapping it.
+     */
+    private final Object mirrorLock = new Object();
+    /**
+     * The changes received while a load runs (null otherwise), applied again on top of the loaded set.
+     */
+    private List<String> changesDuringLoad;
+
+    private final Counter mirrorLookups;
+    private final Counter redisLookups;
+    private final Counter loads;
+
+    public BlacklistServiceImpl(RedisTemplate<String, String> template, MeterRegistry meterRegistry,
+                                @Value("${sms.blacklist.mirror.enabled}") boolean mirrorEnabled) {
         this.redisTemplate = template;
+        this.mirrorEnabled = mirrorEnabled;
+        this.mirrorLookups = Counter.builder("sms.blacklist.lookups").tag("source", "mirror").register(meterRegistry);
+        this.redisLookups = Counter.builder("sms.blacklist.lookups").tag("source", "redis").register(meterRegistry);
+        this.loads = Counter.builder("sms.blacklist.mirror.loads").register(meterRegistry);
+        Gauge.builder("sms.blacklist.mirror.size", this, service -> {
+            Set<String> current = service.mirror;
+            return current == null ? 0 : current.size();
+        }).register(meterRegistry);
     }
 
     /**
@@ -31,24 +106,64 @@ public class BlacklistServiceImpl implements BlacklistService {
      */
     @Override
     public Boolean isNumberBlacklisted(String number) {
-        logger.info("Checking if number {} is blacklisted", number);
+        Set<String> current = mirror;
+        if (current != null) {
+            mirrorLookups.increment();
+            return current.contains(number);
+        }
 
-        // Get from Redis first
+        redisLookups.increment();
         Boolean blacklistedRedis = this.redisTemplate.opsForSet().isMember(RedisConstants.blacklisted_key, number);
+        if (blacklistedRedis == null) {
+            logger.warn("Redis query for number {} returned null. Returning blacklisted.", number);
+            return true;
+        }
+        logger.debug("Number {} blacklisted: {}", number, blacklistedRedis);
+        return blacklistedRedis;
+    }
 
-        // If number not in Redis, make DB Query and set in Redis
-        if (blacklistedRedis != null) {
-            if (blacklistedRedis) {
-                logger.info("Number {} is blacklisted.", number);
-                return true;
-            } else {
-                logger.info("Number {} is not blacklisted.", number);
-                return false;
+    /**
+     * Checks which of the given phone numbers are blacklisted.
+     * Until the mirror is loaded, the numbers are checked with pipelined SISMEMBER commands, so the whole batch costs
+     * a single round trip to Redis.
+     *
+     * @param numbers The phone numbers to check.
+     * @return For every (distinct) number, true if it is blacklisted (or if Redis returned nothing for it).
+     */
+    @Override
+    public Map<String, Boolean> areNumbersBlacklisted(Collection<String> numbers) {
+        Map<String, Boolean> blacklisted = new HashMap<>();
+        Set<String> current = mirror;
+        if (current != null) {
+            for (String number : numbers) {
+                blacklisted.put(number, current.contains(number));
             }
-        } else {
-            logger.info("Redis query for number {} returned null. Returning blacklisted.", number);
-            return true;
+            mirrorLookups.increment(blacklisted.size());
+            return blacklisted;
+        }
+
+        List<String> distinctNumbers = new ArrayList<>(new LinkedHashSet<>(numbers));
+        logger.debug("Checking if {} numbers are blacklisted in Redis", distinctNumbers.size());
+        if (distinctNumbers.isEmpty()) return blacklisted;
+        redisLookups.increment(distinctNumbers.size());
+        List<Object> results = this.redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> stringOperations = (RedisOperations<String, String>) operations;
+                for (String number : distinctNumbers) {
+                    stringOperations.opsForSet().isMember(RedisConstants.blacklisted_key, number);
+                }
+                return null;
+            }
+        });
+
+        for (int i = 0; i < distinctNumbers.size(); i++) {
+            Object result = results != null && i < results.size() ? results.get(i) : null;
+            // Same as isNumberBlacklisted: no answer from Redis counts as blacklisted
+            blacklisted.put(distinctNumbers.get(i), result instanceof Boolean ? (Boolean) result : true);
         }
+        return blacklisted;
     }
 
     /**
@@ -80,6 +195,7 @@ public class BlacklistServiceImpl implements BlacklistService {
         logger.info("Adding numbers to blacklist: {}", numbers);
 
         Long res = this.redisTemplate.opsForSet().add(RedisConstants.blacklisted_key, numbers);
+        publishChange(ADDED, numbers);
         if (res != null) {
             logger.info("Successfully added {} numbers to blacklist", numbers.length);
             return true;
@@ -100,6 +216,7 @@ public class BlacklistServiceImpl implements BlacklistService {
         logger.info("Removing numbers from blacklist: {}", numbers);
 
         Long res = this.redisTemplate.opsForSet().remove(RedisConstants.blacklisted_key, numbers);
+        publishChange(REMOVED, numbers);
         if (res != null) {
             logger.info("Successfully removed {} numbers from blacklist", numbers.length);
             return true;
@@ -108,4 +225,113 @@ public class BlacklistServiceImpl implements BlacklistService {
             return false;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Bumps the blacklist version, applies the change to the mirror of this node and tells the other nodes.
+     * If the message can not be published, the other nodes see the change with their next resync.
+     */
+    private void publishChange(String prefix, String[] numbers) {
+        String version = "";
+        try {
+            version = String.valueOf(this.redisTemplate.opsForValue().increment(RedisConstants.blacklist_version_key));
+        } catch (Exception e) {
+            logger.warn("Could not count a change of the blacklist, other nodes may miss it. Exception: {}", e.getMessage());
+        }
+        String change = prefix + version + ":" + String.join(",", numbers);
+        onChange(change);
+        try {
+            this.redisTemplate.convertAndSend(RedisConstants.blacklist_changes_channel, change);
+        } catch (Exception e) {
+            logger.warn("Could not publish a change of the blacklist, other nodes may miss it until their next resync. Exception: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Handles a message of the changes channel (see RedisConfig), or a change made on this node.
+     *
+     * @param message ADDED or REMOVED followed by the version and the changed numbers, or RESYNC.
+     */
+    public void onChange(String message) {
+        if (!mirrorEnabled) return;
+        String prefix = message.startsWith(ADDED) ? ADDED : message.startsWith(REMOVED) ? REMOVED : null;
+        if (prefix == null || message.indexOf(':', prefix.length()) < 0) {
+            stale = true;
+            return;
+        }
+        synchronized (mirrorLock) {
+            if (mirror != null) apply(message, mirror);
+            if (changesDuringLoad != null) changesDuringLoad.add(message);
+        }
+    }
+
+    /**
+     * Loads the whole blacklist into the mirror if it is not loaded yet, if the mirror is behind the blacklist
+     * version (it missed a change), or if a RESYNC was asked for.
+     */
+    @Scheduled(fixedDelayString = "${sms.blacklist.mirror.resync-interval-ms}")
+    public void resync() {
+        if (!mirrorEnabled) return;
+        try {
+            long version = versionOf(this.redisTemplate.opsForValue().get(RedisConstants.blacklist_version_key));
+            if (mirror != null && !stale && mirrorVersion >= version) return;
+            load(version);
+        } catch (Exception e) {
+            logger.warn("Could not resync the blacklist mirror, keeping it as it is. Exception: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @param version The blacklist version, read before the set: the set holds at least the changes up to it.
+     */
+    private void load(long version) {
+        stale = false;
+        synchronized (mirrorLock) {
+            changesDuringLoad = new ArrayList<>();
+        }
+        try {
+            Set<String> members = this.redisTemplate.opsForSet().members(RedisConstants.blacklisted_key);
+            if (members == null) {
+                stale = true;
+                logger.warn("Redis query for blacklisted numbers returned null, the mirror is not loaded");
+                return;
+            }
+            Set<String> loaded = ConcurrentHashMap.newKeySet(members.size());
+            loaded.addAll(members);
+            synchronized (mirrorLock) {
+                mirror = loaded;
+                mirrorVersion = version;
+                // Received after (or before) SMEMBERS read the set: applied again in order, the last change wins
+                changesDuringLoad.forEach(change -> apply(change, loaded));
+            }
+            loads.increment();
+            logger.info("Loaded the {} blacklisted numbers into the mirror (version {})", loaded.size(), version);
+        } finally {
+            synchronized (mirrorLock) {
+                changesDuringLoad = null;
+            }
+        }
+    }
+
+    /**
+     * Applies a change to a set, and moves the version of the mirror along if the change is the next one.
+     * Called under the mirrorLock.
+     */
+    private void apply(String change, Set<String> blacklist) {
+        boolean added = change.startsWith(ADDED);
+        int versionEnd = change.indexOf(':', (added ? ADDED : REMOVED).length());
+        String version = change.substring((added ? ADDED : REMOVED).length(), versionEnd);
+        List<String> numbers = Arrays.asList(change.substring(versionEnd + 1).split(","));
+        if (added) {
+            blacklist.addAll(numbers);
+        } else {
+            blacklist.removeAll(numbers);
+        }
+        if (blacklist == mirror && !version.isEmpty() && versionOf(version) == mirrorVersion + 1) {
+            mirrorVersion++;
+        }
+    }
+
+    private static long versionOf(String version) {
+        return version == null ? 0 : Long.parseLong(version);
+    }
+}
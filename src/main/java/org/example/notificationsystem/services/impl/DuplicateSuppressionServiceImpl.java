@@ -0,0 +1,207 @@
+package org.example.notificationsystem.services.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.notificationsystem.constants.RedisConstants;
+import org.example.notificationsystem.models.SmsRequest;
+import org.example.notificationsystem.services.DuplicateSuppressionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Implements DuplicateSuppressionService with time-bucketed SETs in Redis.
+ * <p>
+ * An Sms Request is hashed (SHA-256 of the phone number, the text and the send time, cut to 96 bits) into the SET
+ * of its shard for the current window (dedup:{&lt;shard&gt;}:&lt;epoch millis / window-ms&gt;). It is a duplicate if
+ * its hash is already in the SET of the current or of the previous window, so the copies are dropped for at least
+ * window-ms (and at most twice as long). A SET expires once the next window is over.
+ * <p>
+ * The hashes are spread over sms.dedup.shards shards (by their first byte). The {shard} hash tag keeps the two
+ * windows of a shard in the same Redis Cluster slot, so that a Lua script checks and adds all the hashes of a shard
+ * at once: one round trip per request, one per shard of a batch.
+ * If Redis can not be reached the requests are let through, a duplicate Sms being better than a lost one.
+ * Metric: <b>sms.dedup.duplicates</b>.
+ */
+@Service
+public class DuplicateSuppressionServiceImpl implements DuplicateSuppressionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DuplicateSuppressionServiceImpl.class);
+
+    /**
+     * KEYS[1]: the SET of the current window, KEYS[2]: the SET of the previous one. ARGV[1]: TTL of the current SET
+     * (ms), ARGV[2..]: the hashes. Returns 1 per duplicate hash, 0 otherwise.
+     */
+    private static final RedisScript<List> CHECK_AND_ADD_SCRIPT = new DefaultRedisScript<>(
+            "local result = {}\n" +
+                    "for i = 2, #ARGV do\n" +
+                    "  if redis.call('SISMEMBER', KEYS[2], ARGV[i]) == 1 then\n" +
+                    "    result[i - 1] = 1\n" +
+                    "  else\n" +
+                    "    result[i - 1] = 1 - redis.call('SADD', KEYS[1], ARGV[i])\n" +
+                    "  end\n" +
+                    "end\n" +
+                    "redis.call('PEXPIRE', KEYS[1], ARGV[1])\n" +
+                    "return result",
+            List.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final SmsTemplateServiceImpl smsTemplateServiceImpl;
+    private final Counter duplicates;
+
+    @Value("${sms.dedup.enabled}")
+    private boolean enabled;
+
+    @Value("${sms.dedup.window-ms}")
+    private long windowMs;
+
+    @Value("${sms.dedup.shards}")
+    private int shards;
+
+    public DuplicateSuppressionServiceImpl(RedisTemplate<String, String> redisTemplate, SmsTemplateServiceImpl smsTemplateServiceImpl, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.smsTemplateServiceImpl = smsTemplateServiceImpl;
+        this.duplicates = Counter.builder("sms.dedup.duplicates").register(meterRegistry);
+    }
+
+    @Override
+    public boolean isDuplicate(String phoneNumber, String message, Date sendAt) {
+        if (!enabled) return false;
+        return checkAndAdd(Collections.singletonList(hash(phoneNumber, message, sendAt))).get(0);
+    }
+
+    @Override
+    public List<Boolean> areDuplicates(List<SmsRequest> smsRequests) {
+        if (!enabled || smsRequests.isEmpty()) return new ArrayList<>(Collections.nCopies(smsRequests.size(), false));
+        List<String> hashes = hashes(smsRequests);
+        List<Boolean> result = new ArrayList<>(Collections.nCopies(hashes.size(), false));
+        byShard(hashes).forEach((shard, indexes) -> {
+            List<String> shardHashes = new ArrayList<>(indexes.size());
+            indexes.forEach(i -> shardHashes.add(hashes.get(i)));
+            List<Boolean> duplicates = checkAndAdd(shardHashes);
+            for (int i = 0; i < indexes.size(); i++) {
+                result.set(indexes.get(i), duplicates.get(i));
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void forget(String phoneNumber, String message, Date sendAt) {
+        if (!enabled) return;
+        remove(Collections.singletonList(hash(phoneNumber, message, sendAt)));
+    }
+
+    @Override
+    public void forget(List<SmsRequest> smsRequests) {
+        if (!enabled || smsRequests.isEmpty()) return;
+        List<String> hashes = hashes(smsRequests);
+        byShard(hashes).values().forEach(indexes -> {
+            List<String> shardHashes = new ArrayList<>(indexes.size());
+            indexes.forEach(i -> shardHashes.add(hashes.get(i)));
+            remove(shardHashes);
+        });
+    }
+
+    /**
+     * Removes the hashes (of one shard) from the SETs of the current and previous windows (the window may have changed
+     * since they were added).
+     */
+    private void remove(List<String> hashes) {
+        long window = System.currentTimeMillis() / windowMs;
+        String shard = shardOf(hashes.get(0));
+        try {
+            redisTemplate.opsForSet().remove(key(shard, window), hashes.toArray());
+            redisTemplate.opsForSet().remove(key(shard, window - 1), hashes.toArray());
+        } catch (Exception e) {
+            logger.warn("Could not forget {} SMS requests, their retries are dropped until the window is over. Exception: {}", hashes.size(), e.getMessage());
+        }
+    }
+
+    private List<String> hashes(List<SmsRequest> smsRequests) {
+        List<String> hashes = new ArrayList<>(smsRequests.size());
+        for (SmsRequest smsRequest : smsRequests) {
+            hashes.add(hash(smsRequest.getPhoneNumber(), smsTemplateServiceImpl.textOf(smsRequest), smsRequest.getSendAt()));
+        }
+        return hashes;
+    }
+
+    /**
+     * @return The indexes of the hashes, by shard.
+     */
+    private Map<String, List<Integer>> byShard(List<String> hashes) {
+        Map<String, List<Integer>> byShard = new HashMap<>();
+        for (int i = 0; i < hashes.size(); i++) {
+            byShard.computeIfAbsent(shardOf(hashes.get(i)), shard -> new ArrayList<>()).add(i);
+        }
+        return byShard;
+    }
+
+    private String shardOf(String hash) {
+        return String.valueOf((Base64.getDecoder().decode(hash)[0] & 0xff) % shards);
+    }
+
+    /**
+     * @return The SET of a shard for a window, hash-tagged by the shard.
+     */
+    private static String key(String shard, long window) {
+        return RedisConstants.dedup_key_prefix + "{" + shard + "}:" + window;
+    }
+
+    /**
+     * Checks and adds hashes of the same shard.
+     */
+    private List<Boolean> checkAndAdd(List<String> hashes) {
+        long window = System.currentTimeMillis() / windowMs;
+        String shard = shardOf(hashes.get(0));
+        List<String> keys = Arrays.asList(key(shard, window), key(shard, window - 1));
+        List<String> args = new ArrayList<>(hashes.size() + 1);
+        args.add(String.valueOf(2 * windowMs));
+        args.addAll(hashes);
+
+        List<Boolean> result = new ArrayList<>(Collections.nCopies(hashes.size(), false));
+        List<?> seen;
+        try {
+            seen = redisTemplate.execute(CHECK_AND_ADD_SCRIPT, keys, args.toArray());
+        } catch (Exception e) {
+            logger.warn("Could not check {} SMS requests for duplicates, letting them through. Exception: {}", hashes.size(), e.getMessage());
+            return result;
+        }
+        if (seen == null) return result;
+        for (int i = 0; i < seen.size() && i < hashes.size(); i++) {
+            if (((Number) seen.get(i)).longValue() == 1) {
+                result.set(i, true);
+                duplicates.increment();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The first 96 bits of the SHA-256 of the Sms Request, in Base64 (16 characters).
+     */
+    private static String hash(String phoneNumber, String message, Date sendAt) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        // The separators can not appear in a phone number, so that no two requests hash the same input
+        digest.update(String.valueOf(phoneNumber).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+        digest.update(String.valueOf(sendAt == null ? 0 : sendAt.getTime()).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+        digest.update(String.valueOf(message).getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(Arrays.copyOf(digest.digest(), 12));
+    }
+}
@@ -0,0 +1,178 @@
+package org.example.notificationsystem.services.impl;
+
+import org.example.notificationsystem.constants.RedisConstants;
+import org.example.notificationsystem.exception.IdempotencyKeyInProgressException;
+import org.example.notificationsystem.exception.IdempotencyKeyMismatchException;
+import org.example.notificationsystem.services.IdempotencyService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Implements IdempotencyService using RedisTemplate.
+ * <p>
+ * For a key, the first caller (cluster wide) claims it in Redis with SET NX and a pending marker, creates the request
+ * and replaces the marker with the request id, for sms.idempotency.ttl-seconds. Later callers get the stored id back
+ * without touching MySQL, Elasticsearch or Kafka. Callers arriving while the key is pending wait for the id:
+ * on the same node they share the creator's future, on other nodes they poll Redis.
+ * <p>
+ * Both the marker and the id are stored with the fingerprint of the request body (&lt;fingerprint&gt;:&lt;value&gt;):
+ * a caller reusing the key for a different body is refused instead of getting the id of another request.
+ * <p>
+ * The pending marker has its own short TTL so that a node dying mid creation does not block the key for the whole window.
+ */
+@Service
+public class IdempotencyServiceImpl implements IdempotencyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyServiceImpl.class);
+
+    static final String PENDING = "__pending__";
+    private static final char SEPARATOR = ':';
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ConcurrentMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    @Value("${sms.idempotency.ttl-seconds:86400}")
+    private long ttlSeconds;
+
+    @Value("${sms.idempotency.pending-ttl-seconds:30}")
+    private long pendingTtlSeconds;
+
+    @Value("${sms.idempotency.wait-timeout-ms:5000}")
+    private long waitTimeoutMs;
+
+    @Value("${sms.idempotency.poll-interval-ms:50}")
+    private long pollIntervalMs;
+
+    public IdempotencyServiceImpl(RedisTemplate<String, String> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public String getOrCreate(String idempotencyKey, String fingerprint, Supplier<String> creator) {
+        String redisKey = RedisConstants.idempotency_key_prefix + idempotencyKey;
+
+        // Coalesce duplicates in flight on this node. A different body for the key does not share the future: it
+        // finds the pending marker of another fingerprint in Redis.
+        String inFlightKey = redisKey + SEPARATOR + fingerprint;
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(inFlightKey, mine);
+        if (existing != null) {
+            logger.info("Idempotency-Key {} is in flight on this node, waiting for it", idempotencyKey);
+            return await(existing, idempotencyKey);
+        }
+
+        try {
+            String requestId = claimOrWait(redisKey, idempotencyKey, fingerprint, creator);
+            mine.complete(requestId);
+            return requestId;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(inFlightKey, mine);
+        }
+    }
+
+    /**
+     * @param fields The fields of a request body, the maps with a defined order (ex: a TreeMap).
+     * @return The fingerprint of the request: the first 128 bits of the SHA-256 of its fields, in Base64.
+     */
+    public static String fingerprint(Object... fields) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Object field : fields) {
+            digest.update(String.valueOf(field).getBytes(StandardCharsets.UTF_8));
+            // Not a character of any field, so that moving text between two fields changes the fingerprint
+            digest.update((byte) 0);
+        }
+        return Base64.getEncoder().encodeToString(Arrays.copyOf(digest.digest(), 16));
+    }
+
+    /**
+     * Claims the key and creates the request, or waits for the request id stored by whoever claimed it.
+     */
+    private String claimOrWait(String redisKey, String idempotencyKey, String fingerprint, Supplier<String> creator) {
+        long deadline = System.currentTimeMillis() + waitTimeoutMs;
+        while (true) {
+            Boolean claimed = redisTemplate.opsForValue().setIfAbsent(redisKey, fingerprint + SEPARATOR + PENDING, Duration.ofSeconds(pendingTtlSeconds));
+            if (Boolean.TRUE.equals(claimed)) {
+                return create(redisKey, idempotencyKey, fingerprint, creator);
+            }
+
+            String value = redisTemplate.opsForValue().get(redisKey);
+            int separator = value == null ? -1 : value.indexOf(SEPARATOR);
+            // A value without a fingerprint was stored before the keys were bound to one, it is taken as a match
+            if (separator >= 0) {
+                if (!value.substring(0, separator).equals(fingerprint)) {
+                    logger.warn("Idempotency-Key {} reused with a different request", idempotencyKey);
+                    throw new IdempotencyKeyMismatchException(idempotencyKey);
+                }
+                value = value.substring(separator + 1);
+            }
+            if (value != null && !PENDING.equals(value)) {
+                logger.info("Idempotency-Key {} already used by request {}", idempotencyKey, value);
+                return value;
+            }
+            // value == null means the claimer failed (or the marker expired), so loop and try to claim it ourselves.
+            if (value != null) {
+                if (System.currentTimeMillis() >= deadline) {
+                    throw new IdempotencyKeyInProgressException(idempotencyKey);
+                }
+                sleep(pollIntervalMs);
+            }
+        }
+    }
+
+    private String create(String redisKey, String idempotencyKey, String fingerprint, Supplier<String> creator) {
+        String requestId;
+        try {
+            requestId = creator.get();
+        } catch (RuntimeException e) {
+            // Release the key so that the client's retry can create the request.
+            redisTemplate.delete(redisKey);
+            throw e;
+        }
+        redisTemplate.opsForValue().set(redisKey, fingerprint + SEPARATOR + requestId, Duration.ofSeconds(ttlSeconds));
+        logger.info("Stored request {} for Idempotency-Key {}", requestId, idempotencyKey);
+        return requestId;
+    }
+
+    private String await(CompletableFuture<String> future, String idempotencyKey) {
+        try {
+            return future.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IdempotencyKeyInProgressException(idempotencyKey);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyKeyInProgressException(idempotencyKey);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an idempotency key", e);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package org.example.notificationsystem.services.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.notificationsystem.kafka.Producer;
+import org.example.notificationsystem.models.SmsOutbox;
+import org.example.notificationsystem.models.SmsRequest;
+import org.example.notificationsystem.models.SmsRequestElasticsearch;
+import org.example.notificationsystem.repositories.SmsOutboxRepository;
+import org.example.notificationsystem.repositories.SmsRequestElasticsearchRepository;
+import org.example.notificationsystem.repositories.SmsRequestRepository;
+import org.example.notificationsystem.services.OutboxRelayService;
+import org.example.notificationsystem.utils.NotificationSystemUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains the sms_outbox table, written in the same transaction as sms_request, to Kafka and to Elasticsearch.
+ * Each sink is drained in id order, in batches, by its own scheduled job. Rows are claimed with SKIP LOCKED, so the relay
+ * can run on every node, and the per sink flags are only set once the sink acked, so a restart resumes where it stopped.
+ * <p>
+ * Exposes the following metrics:
+ * <ul>
+ *     <li><b>sms.outbox.pending{sink}</b>: Entries not yet drained to the sink.</li>
+ *     <li><b>sms.outbox.lag.seconds{sink}</b>: Age of the oldest entry not yet drained to the sink.</li>
+ *     <li><b>sms.outbox.relayed{sink}</b>: Entries drained to the sink.</li>
+ *     <li><b>sms.outbox.orphaned</b>: Entries deleted because their sms request does not exist.</li>
+ * </ul>
+ */
+@Service
+@ConditionalOnProperty(name = "sms.outbox.enabled", havingValue = "true")
+public class OutboxRelayServiceImpl implements OutboxRelayService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelayServiceImpl.class);
+
+    private static final String KAFKA_SINK = "kafka";
+    private static final String ELASTICSEARCH_SINK = "elasticsearch";
+
+    private final SmsOutboxRepository smsOutboxRepository;
+    private final SmsRequestRepository smsRequestRepository;
+    private final SmsRequestElasticsearchRepository smsRequestElasticsearchRepository;
+    private final Producer producer;
+    private final int batchSize;
+
+    // Metrics
+    private final AtomicLong pendingKafka = new AtomicLong();
+    private final AtomicLong pendingElasticsearch = new AtomicLong();
+    private final AtomicLong lagKafkaSeconds = new AtomicLong();
+    private final AtomicLong lagElasticsearchSeconds = new AtomicLong();
+    private final Counter relayedKafka;
+    private final Counter relayedElasticsearch;
+    private final Counter orphaned;
+
+    @Autowired
+    public OutboxRelayServiceImpl(SmsOutboxRepository smsOutboxRepository,
+                                  SmsRequestRepository smsRequestRepository,
+                                  SmsRequestElasticsearchRepository smsRequestElasticsearchRepository,
+                                  Producer producer,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${sms.outbox.batch-size}") int batchSize) {
+        this.smsOutboxRepository = smsOutboxRepository;
+        this.smsRequestRepository = smsRequestRepository;
+        this.smsRequestElasticsearchRepository = smsRequestElasticsearchRepository;
+        this.producer = producer;
+        this.batchSize = batchSize;
+
+        Gauge.builder("sms.outbox.pending", pendingKafka, AtomicLong::get).tag("sink", KAFKA_SINK).register(meterRegistry);
+        Gauge.builder("sms.outbox.pending", pendingElasticsearch, AtomicLong::get).tag("sink", ELASTICSEARCH_SINK).register(meterRegistry);
+        Gauge.builder("sms.outbox.lag.seconds", lagKafkaSeconds, AtomicLong::get).tag("sink", KAFKA_SINK).register(meterRegistry);
+        Gauge.builder("sms.outbox.lag.seconds", lagElasticsearchSeconds, AtomicLong::get).tag("sink", ELASTICSEARCH_SINK).register(meterRegistry);
+        this.relayedKafka = Counter.builder("sms.outbox.relayed").tag("sink", KAFKA_SINK).register(meterRegistry);
+        this.relayedElasticsearch = Counter.builder("sms.outbox.relayed").tag("sink", ELASTICSEARCH_SINK).register(meterRegistry);
+        this.orphaned = Counter.builder("sms.outbox.orphaned").register(meterRegistry);
+    }
+
+    /**
+     * Publishes the next batch of unpublished outbox entries to Kafka.
+     * Entries whose publish failed stay unpublished and are picked up again by the next run. Entries whose sms request
+     * does not exist have nothing to publish nor to index: they are deleted rather than claimed again on every run.
+     *
+     * @return The number of entries published.
+     */
+    @Override
+    @Transactional
+    @Scheduled(fixedDelayString = "${sms.outbox.poll-interval-ms}")
+    public int relayToKafka() {
+        List<SmsOutbox> entries = smsOutboxRepository.claimUnpublished(batchSize);
+        if (entries.isEmpty()) return 0;
+
+        List<Long> smsRequestIds = new ArrayList<>(entries.size());
+        entries.forEach(entry -> smsRequestIds.add(entry.getSmsRequestId()));
+
+        // The records carry the whole request, load the rows with one query
+        Map<Long, SmsRequest> smsRequestsById = new HashMap<>();
+        smsRequestRepository.findAllById(smsRequestIds).forEach(smsRequest -> smsRequestsById.put(smsRequest.getId(), smsRequest));
+        List<SmsOutbox> found = new ArrayList<>(entries.size());
+        List<SmsRequest> smsRequests = new ArrayList<>(entries.size());
+        List<Long> orphanedIds = new ArrayList<>();
+        for (SmsOutbox entry : entries) {
+            SmsRequest smsRequest = smsRequestsById.get(entry.getSmsRequestId());
+            if (smsRequest == null) {
+                logger.error("SMS request ID {} of outbox entry {} not found, deleting the entry", entry.getSmsRequestId(), entry.getId());
+                orphanedIds.add(entry.getId());
+                continue;
+            }
+            found.add(entry);
+            smsRequests.add(smsRequest);
+        }
+        if (!orphanedIds.isEmpty()) {
+            smsOutboxRepository.deleteAllByIdInBatch(orphanedIds);
+            orphaned.increment(orphanedIds.size());
+        }
+        if (smsRequests.isEmpty()) return 0;
+        List<Boolean> published = producer.publishBatch(smsRequests);
+
+        List<Long> publishedIds = new ArrayList<>(entries.size());
+        for (int i = 0; i < found.size(); i++) {
+            if (published.get(i)) publishedIds.add(found.get(i).getId());
+        }
+        if (!publishedIds.isEmpty()) smsOutboxRepository.markPublished(publishedIds);
+
+        relayedKafka.increment(publishedIds.size());
+        logger.info("Relayed {} of {} outbox entries to Kafka", publishedIds.size(), entries.size());
+        return publishedIds.size();
+    }
+
+    /**
+     * Indexes the next batch of unindexed outbox entries into Elasticsearch with a single bulk request.
+     *
+     * @return The number of entries indexed.
+     */
+    @Override
+    @Transactional
+    @Scheduled(fixedDelayString = "${sms.outbox.poll-interval-ms}")
+    public int relayToElasticsearch() {
+        List<SmsOutbox> entries = smsOutboxRepository.claimUnindexed(batchSize);
+        if (entries.isEmpty()) return 0;
+
+        List<Long> smsRequestIds = new ArrayList<>(entries.size());
+        List<Long> outboxIds = new ArrayList<>(entries.size());
+        entries.forEach(entry -> {
+            smsRequestIds.add(entry.getSmsRequestId());
+            outboxIds.add(entry.getId());
+        });
+
+        List<SmsRequestElasticsearch> documents = new ArrayList<>(entries.size());
+        for (SmsRequest smsRequest : smsRequestRepository.findAllById(smsRequestIds)) {
+            documents.add(NotificationSystemUtils.getSmsRequestElasticsearchFromSmsRequest(smsRequest));
+        }
+        try {
+            smsRequestElasticsearchRepository.saveAll(documents);
+        } catch (Exception e) {
+            logger.error("Failed to index {} outbox entries into Elasticsearch: {}", entries.size(), e.getMessage());
+            return 0;
+        }
+        smsOutboxRepository.markIndexed(outboxIds);
+
+        relayedElasticsearch.increment(outboxIds.size());
+        logger.info("Relayed {} outbox entries to Elasticsearch", outboxIds.size());
+        return outboxIds.size();
+    }
+
+    /**
+     * Deletes the entries that have been drained to every sink.
+     *
+     * @return The number of entries deleted.
+     */
+    @Override
+    @Transactional
+    @Scheduled(fixedDelayString = "${sms.outbox.purge-interval-ms}")
+    public int purgeDrained() {
+        int deleted = smsOutboxRepository.deleteDrained();
+        if (deleted > 0) logger.info("Purged {} drained outbox entries", deleted);
+        return deleted;
+    }
+
+    /**
+     * Refreshes the pending and lag gauges.
+     * Done on its own schedule so that scraping the metrics never queries MySQL.
+     */
+    @Scheduled(fixedDelayString = "${sms.outbox.metrics-interval-ms}")
+    public void refreshLagMetrics() {
+        long now = System.currentTimeMillis();
+        pendingKafka.set(smsOutboxRepository.countByPublishedFalse());
+        pendingElasticsearch.set(smsOutboxRepository.countByIndexedFalse());
+        lagKafkaSeconds.set(lagSeconds(smsOutboxRepository.findOldestUnpublishedCreatedAt(), now));
+        lagElasticsearchSeconds.set(lagSeconds(smsOutboxRepository.findOldestUnindexedCreatedAt(), now));
+    }
+
+    private static long lagSeconds(Date oldest, long now) {
+        return oldest == null ? 0 : Math.max(0, (now - oldest.getTime()) / 1000);
+    }
+}
@@ -0,0 +1,188 @@
+package org.example.notificationsystem.services.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.notificationsystem.constants.RedisConstants;
+import org.example.notificationsystem.services.SendThrottleService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implements SendThrottleService with token buckets shared by every consumer in Redis.
+ * <ul>
+ *     <li><b>Atomicity</b>: A Lua script refills and takes the tokens of a bucket (a HASH of tokens and last refill
+ *     time) in one step, on the clock of the Redis server so that the clocks of the consumers do not matter.</li>
+ *     <li><b>Leases</b>: Each consumer takes up to lease-size tokens per call and spends them locally, so a busy bucket
+ *     costs one Redis call per lease instead of one per Sms. Leased tokens not spent within lease-ttl-ms are dropped,
+ *     so a consumer can not save them up and exceed the rate later. A lease is capped at lease-ttl-ms worth of the
+ *     rate, which keeps the slow buckets accurate.</li>
+ *     <li><b>Large requests</b>: A request for more tokens than the capacity of the bucket is collected in chunks of
+ *     at most the capacity, one per call, and only granted once complete, so it never exceeds the rate.</li>
+ *     <li><b>Backoff</b>: An empty bucket answers how long until the tokens are back, the bucket is not asked again
+ *     before then. The callers pause instead of retrying in a loop.</li>
+ *     <li><b>Failures</b>: If Redis can not be reached the sends are let through (the gateways still answer 429).</li>
+ * </ul>
+ * Metrics: <b>sms.throttle.redis.calls</b>, <b>sms.throttle.redis.errors</b> and <b>sms.throttle.throttled{bucket}</b>.
+ */
+@Service
+public class SendThrottleServiceImpl implements SendThrottleService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SendThrottleServiceImpl.class);
+
+    /**
+     * KEYS[1]: the bucket. ARGV: rate (tokens per second), capacity, tokens asked for (the lease), tokens needed.
+     * Grants nothing unless the needed tokens are there, otherwise up to the tokens asked for.
+     * Returns {tokens granted, milliseconds until the needed tokens are available}.
+     */
+    private static final RedisScript<List> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "redis.replicate_commands()\n" +
+                    "local rate = tonumber(ARGV[1])\n" +
+                    "local capacity = tonumber(ARGV[2])\n" +
+                    "local asked = tonumber(ARGV[3])\n" +
+                    "local needed = tonumber(ARGV[4])\n" +
+                    "local time = redis.call('TIME')\n" +
+                    "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)\n" +
+                    "local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'ts')\n" +
+                    "local tokens = tonumber(bucket[1]) or capacity\n" +
+                    "local ts = tonumber(bucket[2]) or now\n" +
+                    "tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate / 1000)\n" +
+                    "local granted = 0\n" +
+                    "local wait = 0\n" +
+                    "if tokens >= needed then\n" +
+                    "  granted = math.min(asked, math.floor(tokens))\n" +
+                    "  tokens = tokens - granted\n" +
+                    "else\n" +
+                    "  wait = math.ceil((needed - tokens) * 1000 / rate)\n" +
+                    "end\n" +
+                    "redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(now))\n" +
+                    "redis.call('PEXPIRE', KEYS[1], math.ceil(capacity * 1000 / rate) + 1000)\n" +
+                    "return {granted, wait}",
+            List.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, Lease> leases = new ConcurrentHashMap<>();
+    private final Counter redisCalls;
+    private final Counter redisErrors;
+
+    @Value("${sms.throttle.enabled}")
+    private boolean enabled;
+
+    @Value("${sms.throttle.lease-size}")
+    private int leaseSize;
+
+    @Value("${sms.throttle.lease-ttl-ms}")
+    private long leaseTtlMs;
+
+    @Value("${sms.throttle.burst-seconds}")
+    private double burstSeconds;
+
+    public SendThrottleServiceImpl(RedisTemplate<String, String> redisTemplate, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.redisCalls = Counter.builder("sms.throttle.redis.calls").register(meterRegistry);
+        this.redisErrors = Counter.builder("sms.throttle.redis.errors").register(meterRegistry);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public long tryAcquire(String bucket, double ratePerSecond, int permits) {
+        if (!enabled || ratePerSecond <= 0 || permits <= 0) return 0;
+        long waitMs = leases.computeIfAbsent(bucket, Lease::new).tryAcquire(ratePerSecond, permits);
+        if (waitMs > 0) {
+            meterRegistry.counter("sms.throttle.throttled", "bucket", bucket).increment();
+        }
+        return waitMs;
+    }
+
+    @Override
+    public long availableIn(String bucket) {
+        if (!enabled) return 0;
+        Lease lease = leases.get(bucket);
+        return lease == null ? 0 : lease.availableIn();
+    }
+
+    /**
+     * The tokens of a bucket leased by this consumer.
+     */
+    private final class Lease {
+        private final String key;
+        private long remaining = 0;
+        private long expiresAtNanos = 0;
+        private long retryAtNanos = 0;
+
+        private Lease(String bucket) {
+            this.key = RedisConstants.throttle_key_prefix + bucket;
+        }
+
+        private synchronized long tryAcquire(double ratePerSecond, int permits) {
+            long now = System.nanoTime();
+            if (now - expiresAtNanos >= 0) remaining = 0;
+            double capacity = Math.max(1, ratePerSecond * burstSeconds);
+            long needed = permits;
+            if (remaining >= needed) {
+                remaining -= needed;
+                return 0;
+            }
+            if (now - retryAtNanos < 0) {
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(retryAtNanos - now));
+            }
+
+            // A request larger than the bucket can hold is collected one chunk of at most the capacity per call
+            long missing = Math.min(needed - remaining, Math.max(1, (long) capacity));
+            long asked = Math.max(missing, Math.min(leaseSize, (long) (ratePerSecond * leaseTtlMs / 1000)));
+            List<?> result;
+            try {
+                redisCalls.increment();
+                result = redisTemplate.execute(ACQUIRE_SCRIPT, Collections.singletonList(key),
+                        String.valueOf(ratePerSecond), String.valueOf(capacity), String.valueOf(asked), String.valueOf(missing));
+            } catch (Exception e) {
+                redisErrors.increment();
+                logger.warn("Could not take tokens from {}, letting the send through. Exception: {}", key, e.getMessage());
+                return 0;
+            }
+            if (result == null || result.size() < 2) {
+                redisErrors.increment();
+                return 0;
+            }
+
+            long granted = ((Number) result.get(0)).longValue();
+            if (granted > 0) {
+                remaining += granted;
+                if (remaining >= needed) {
+                    remaining -= needed;
+                    expiresAtNanos = now + TimeUnit.MILLISECONDS.toNanos(leaseTtlMs);
+                    return 0;
+                }
+                // Keeps the chunks collected so far until the next one is due
+                long nextChunkMs = Math.max(1, (long) Math.ceil(Math.min(needed - remaining, capacity) * 1000 / ratePerSecond));
+                retryAtNanos = now + TimeUnit.MILLISECONDS.toNanos(nextChunkMs);
+                expiresAtNanos = retryAtNanos + TimeUnit.MILLISECONDS.toNanos(leaseTtlMs);
+                return nextChunkMs;
+            }
+            long waitMs = Math.max(1, ((Number) result.get(1)).longValue());
+            retryAtNanos = now + TimeUnit.MILLISECONDS.toNanos(waitMs);
+            return waitMs;
+        }
+
+        private synchronized long availableIn() {
+            long now = System.nanoTime();
+            return now - retryAtNanos < 0 ? Math.max(1, TimeUnit.NANOSECONDS.toMillis(retryAtNanos - now)) : 0;
+        }
+    }
+}
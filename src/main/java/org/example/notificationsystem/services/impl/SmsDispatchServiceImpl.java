@@ -0,0 +1,272 @@
+package org.example.notificationsystem.services.impl;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.notificationsystem.constants.ThirdPartyApiResponseCode;
+import org.example.notificationsystem.dto.request.DestinationThirdPartySmsApiRequest;
+import org.example.notificationsystem.dto.request.ThirdPartySmsApiRequest;
+import org.example.notificationsystem.kafka.SmsMessagePayload;
+import org.example.notificationsystem.provider.ProviderResponse;
+import org.example.notificationsystem.provider.ProviderRouter;
+import org.example.notificationsystem.provider.ThirdPartySmsClient;
+import org.example.notificationsystem.services.SmsDispatchService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Implements SmsDispatchService with an in-memory queue (sms.provider.dispatch.enabled=true).
+ * <ul>
+ *     <li><b>Batching</b>: A dedicated thread sends the queue (one third party API call per route) as soon as it holds
+ *     max-batch-size Sms Requests, or every max-delay-ms otherwise.</li>
+ *     <li><b>Fan-out</b>: The calls of a batch are made concurrently by up to senders threads, so that a slow route
+ *     does not hold back the others. The dispatcher waits for a free sender before handing over the next call.</li>
+ *     <li><b>Grouping</b>: Sms Requests are grouped by route (see ProviderRouter), one call per route. Within a call,
+ *     Sms Requests with the same text share one ThirdPartySmsApiRequest (one channel payload), with one destination
+ *     per Sms Request.</li>
+ *     <li><b>Correlation</b>: Every destination gets a fresh correlation id, mapped back to its Sms Request to
+ *     complete it with the outcome the API reported for it (see ThirdPartySmsClient.exchange).</li>
+ *     <li><b>Backpressure</b>: submit blocks the caller (the Kafka listener thread) while the queue holds capacity Sms
+ *     Requests, which happens once every sender is busy.</li>
+ *     <li><b>Shutdown</b>: New Sms Requests are sent right away and the queue is drained before the bean is destroyed.</li>
+ * </ul>
+ * The futures are completed on the sender threads, so the stages chained on them should be short.
+ */
+@Service
+public class SmsDispatchServiceImpl implements SmsDispatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SmsDispatchServiceImpl.class);
+
+    private final ProviderRouter providerRouter;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition flushNeeded = lock.newCondition();
+    private List<Pending> queue = new ArrayList<>();
+    private volatile boolean closed = false;
+    private Thread dispatcher;
+    private ExecutorService senderPool;
+    private Semaphore freeSenders;
+
+    private final DistributionSummary batchSize;
+    private final DistributionSummary textsPerBatch;
+
+    @Value("${sms.provider.dispatch.enabled}")
+    private boolean enabled;
+
+    @Value("${sms.provider.dispatch.max-batch-size}")
+    private int maxBatchSize;
+
+    @Value("${sms.provider.dispatch.max-delay-ms}")
+    private long maxDelayMs;
+
+    @Value("${sms.provider.dispatch.capacity}")
+    private int capacity;
+
+    @Value("${sms.provider.dispatch.senders}")
+    private int senders;
+
+    @Autowired
+    public SmsDispatchServiceImpl(ProviderRouter providerRouter, MeterRegistry meterRegistry) {
+        this.providerRouter = providerRouter;
+        Gauge.builder("sms.dispatch.queue.size", this, SmsDispatchServiceImpl::size).register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("sms.dispatch.batch.size").register(meterRegistry);
+        this.textsPerBatch = DistributionSummary.builder("sms.dispatch.batch.texts").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        AtomicInteger threadNumber = new AtomicInteger();
+        senderPool = Executors.newFixedThreadPool(senders, runnable -> {
+            Thread thread = new Thread(runnable, "sms-dispatch-sender-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        freeSenders = new Semaphore(senders);
+        dispatcher = new Thread(this::runDispatcher, "sms-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        logger.info("SMS micro-batching enabled (max batch size {}, max delay {} ms, capacity {}, senders {})", maxBatchSize, maxDelayMs, capacity, senders);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public CompletableFuture<ThirdPartyApiResponseCode> submit(SmsMessagePayload payload) {
+        Pending pending = new Pending(payload);
+        lock.lock();
+        try {
+            while (!closed && queue.size() >= capacity) {
+                // Backpressure: the listener waits for the dispatcher instead of queueing without bound
+                flushNeeded.signal();
+                notFull.awaitUninterruptibly();
+            }
+            if (!closed) {
+                queue.add(pending);
+                if (queue.size() >= maxBatchSize) flushNeeded.signal();
+                return pending.future;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // Shutting down: send it right away
+        send(Collections.singletonList(pending));
+        return pending.future;
+    }
+
+    @Override
+    public void flush() {
+        List<Pending> batch;
+        lock.lock();
+        try {
+            if (queue.isEmpty()) return;
+            batch = queue;
+            queue = new ArrayList<>();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        // The queue may hold more than a batch after a slow call, send it in max-batch-size chunks
+        for (int from = 0; from < batch.size(); from += maxBatchSize) {
+            send(batch.subList(from, Math.min(batch.size(), from + maxBatchSize)));
+        }
+    }
+
+    /**
+     * Sends a batch as one call per route, grouping the Sms Requests by text, and completes every Sms Request with its
+     * outcome. The calls are handed over to the senders, one per route.
+     */
+    private void send(List<Pending> batch) {
+        Map<String, List<Pending>> byRoute = new LinkedHashMap<>();
+        for (Pending pending : batch) {
+            byRoute.computeIfAbsent(providerRouter.routeKey(pending.payload.getPhoneNumber()), routeKey -> new ArrayList<>()).add(pending);
+        }
+        batchSize.record(batch.size());
+        byRoute.forEach(this::sendAsync);
+    }
+
+    /**
+     * Hands the call of a route over to a sender, waiting for one to be free. Sent on the calling thread when there is
+     * no sender (not started, or shut down).
+     */
+    private void sendAsync(String routeKey, List<Pending> batch) {
+        if (senderPool == null) {
+            send(routeKey, batch);
+            return;
+        }
+        freeSenders.acquireUninterruptibly();
+        try {
+            senderPool.execute(() -> {
+                try {
+                    send(routeKey, batch);
+                } finally {
+                    freeSenders.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            freeSenders.release();
+            send(routeKey, batch);
+        }
+    }
+
+    private void send(String routeKey, List<Pending> batch) {
+        Map<String, List<DestinationThirdPartySmsApiRequest>> destinationsByText = new LinkedHashMap<>();
+        Map<String, Pending> byCorrelationId = new HashMap<>();
+        for (Pending pending : batch) {
+            String correlationId = UUID.randomUUID().toString();
+            byCorrelationId.put(correlationId, pending);
+            destinationsByText.computeIfAbsent(pending.payload.getMessage(), text -> new ArrayList<>())
+                    .add(ThirdPartySmsClient.destination(pending.payload.getPhoneNumber(), correlationId));
+        }
+        List<ThirdPartySmsApiRequest> requests = new ArrayList<>(destinationsByText.size());
+        destinationsByText.forEach((text, destinations) -> requests.add(ThirdPartySmsClient.smsRequest(text, destinations)));
+
+        textsPerBatch.record(requests.size());
+        try {
+            ProviderResponse response = providerRouter.exchange(routeKey, requests);
+            logger.info("Sent batch of {} SMS requests ({} distinct texts, route {}): {}", batch.size(), requests.size(), routeKey, response.getResponseCode());
+            byCorrelationId.forEach((correlationId, pending) -> pending.future.complete(response.resultOf(correlationId)));
+        } catch (Exception e) {
+            logger.error("Error sending batch of {} SMS requests. Exception: {}", batch.size(), e.getMessage());
+            batch.forEach(pending -> pending.future.complete(ThirdPartyApiResponseCode.API_ERROR));
+        }
+    }
+
+    private void runDispatcher() {
+        while (!closed) {
+            lock.lock();
+            try {
+                if (queue.size() < maxBatchSize) {
+                    flushNeeded.await(maxDelayMs, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                flush();
+            } catch (Exception e) {
+                logger.error("SMS dispatch failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private int size() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (!enabled) return;
+        lock.lock();
+        try {
+            closed = true;
+            flushNeeded.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        dispatcher.join(TimeUnit.SECONDS.toMillis(30));
+        // Drain what is left, then wait for the calls in flight
+        flush();
+        senderPool.shutdown();
+        if (!senderPool.awaitTermination(30, TimeUnit.SECONDS)) {
+            logger.warn("SMS dispatch senders still busy after 30 s");
+        }
+        logger.info("SMS dispatcher drained");
+    }
+
+    /**
+     * A queued Sms Request and the caller waiting for it.
+     */
+    private static final class Pending {
+        private final SmsMessagePayload payload;
+        private final CompletableFuture<ThirdPartyApiResponseCode> future = new CompletableFuture<>();
+
+        private Pending(SmsMessagePayload payload) {
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package org.example.notificationsystem.services.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.example.notificationsystem.kafka.Producer;
+import org.example.notificationsystem.models.SmsRequest;
+import org.example.notificationsystem.models.SmsSchedule;
+import org.example.notificationsystem.repositories.SmsRequestRepository;
+import org.example.notificationsystem.repositories.SmsScheduleRepository;
+import org.example.notificationsystem.services.SendThrottleService;
+import org.example.notificationsystem.services.SmsScheduleService;
+import org.example.notificationsystem.utils.HierarchicalTimingWheel;
+import org.example.notificationsystem.utils.TokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the scheduled Sms Requests (see SmsSchedule) to Kafka once they are due.
+ * <ul>
+ *     <li><b>Far future</b>: The sms_schedule table, indexed by sendAt. Every load-interval-ms, the entries due within
+ *     horizon-ms are claimed (SKIP LOCKED, so every node loads disjoint entries) and moved into memory.</li>
+ *     <li><b>Near term</b>: An in-memory hierarchical timing wheel (tick-ms precision), which holds any number of
+ *     entries for a constant cost per entry.</li>
+ *     <li><b>Release</b>: Every tick, the due entries join a FIFO and are published to Kafka (then deleted from the
+ *     table) at most at release-rate-per-second, so that a burst of Sms Requests scheduled for the top of the hour
+ *     is spread out instead of hitting the consumers at once. The rate is cluster wide with sms.throttle.enabled (a
+ *     bucket shared in Redis, see SendThrottleService), per node otherwise. The release runs on a thread of its own
+ *     (scheduleReleaseExecutor), outside of any transaction: the blocking Kafka publish neither delays the other
+ *     scheduled jobs nor holds a MySQL connection.</li>
+ * </ul>
+ * A claim is a lease of lease-ms, renewed every lease-ms / 3 for every entry still held. An entry whose node stopped
+ * renewing it (ex: the node crashed) is loaded again by any node within lease-ms, so it may be published twice.
+ * <p>
+ * An Sms Request created less than load-interval-ms before it is due is published up to load-interval-ms late.
+ * <p>
+ * Exposes the following metrics:
+ * <ul>
+ *     <li><b>sms.schedule.held</b>: Entries in the timing wheel.</li>
+ *     <li><b>sms.schedule.due</b>: Due entries waiting for the release rate.</li>
+ *     <li><b>sms.schedule.released</b>: Entries published to Kafka.</li>
+ *     <li><b>sms.schedule.lateness</b>: Time between the sendAt and the publish of the entries.</li>
+ * </ul>
+ */
+@Service
+public class SmsScheduleServiceImpl implements SmsScheduleService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SmsScheduleServiceImpl.class);
+
+    /**
+     * The shared bucket of the release rate (see SendThrottleService).
+     */
+    static final String RELEASE_BUCKET = "schedule:release";
+
+    private final SmsScheduleRepository smsScheduleRepository;
+    private final SmsRequestRepository smsRequestRepository;
+    private final Producer producer;
+    private final SendThrottleService sendThrottleService;
+    private final ScheduledExecutorService releaseExecutor;
+
+    private final HierarchicalTimingWheel<SmsSchedule> timingWheel;
+    private final Deque<SmsSchedule> due = new ArrayDeque<>();
+    private final Set<Long> held = new HashSet<>();
+    private final TokenBucket releaseRate;
+    private final double releaseRatePerSecond;
+    private final long tickMs;
+    private long nextRenewalMillis;
+
+    private final Counter released;
+    private final Timer lateness;
+
+    @Value("${sms.schedule.horizon-ms}")
+    private long horizonMs;
+
+    @Value("${sms.schedule.lease-ms}")
+    private long leaseMs;
+
+    @Value("${sms.schedule.batch-size}")
+    private int batchSize;
+
+    @Autowired
+    public SmsScheduleServiceImpl(SmsScheduleRepository smsScheduleRepository,
+                                  SmsRequestRepository smsRequestRepository,
+                                  Producer producer,
+                                  SendThrottleService sendThrottleService,
+                                  @Qualifier("scheduleReleaseExecutor") ScheduledExecutorService releaseExecutor,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${sms.schedule.tick-ms}") long tickMs,
+                                  @Value("${sms.schedule.wheel-size}") int wheelSize,
+                                  @Value("${sms.schedule.release-rate-per-second}") double releaseRatePerSecond) {
+        this.smsScheduleRepository = smsScheduleRepository;
+        this.smsRequestRepository = smsRequestRepository;
+        this.producer = producer;
+        this.sendThrottleService = sendThrottleService;
+        this.releaseExecutor = releaseExecutor;
+        this.timingWheel = new HierarchicalTimingWheel<>(tickMs, wheelSize, System.currentTimeMillis());
+        // A burst of one second, so a backlog is released at the rate instead of in one go
+        this.releaseRate = new TokenBucket(releaseRatePerSecond, releaseRatePerSecond);
+        this.releaseRatePerSecond = releaseRatePerSecond;
+        this.tickMs = tickMs;
+
+        Gauge.builder("sms.schedule.held", this, SmsScheduleServiceImpl::heldCount).register(meterRegistry);
+        Gauge.builder("sms.schedule.due", this, SmsScheduleServiceImpl::dueCount).register(meterRegistry);
+        this.released = Counter.builder("sms.schedule.released").register(meterRegistry);
+        this.lateness = Timer.builder("sms.schedule.lateness").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        releaseExecutor.scheduleWithFixedDelay(this::releaseSafely, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void releaseSafely() {
+        try {
+            release();
+        } catch (Exception e) {
+            // An exception would cancel the periodic task
+            logger.error("Failed to release the due scheduled SMS requests", e);
+        }
+    }
+
+    /**
+     * Renews the lease of the entries held, then claims the entries due within the horizon and adds them to the
+     * timing wheel.
+     *
+     * @return The number of entries loaded.
+     */
+    @Override
+    @Transactional
+    @Scheduled(fixedDelayString = "${sms.schedule.load-interval-ms}")
+    public int load() {
+        long now = System.currentTimeMillis();
+        if (now >= nextRenewalMillis) {
+            renew(now);
+            nextRenewalMillis = now + leaseMs / 3;
+        }
+        List<SmsSchedule> entries = smsScheduleRepository.claimDue(new Date(now + horizonMs), new Date(now), batchSize);
+        if (entries.isEmpty()) return 0;
+
+        List<Long> ids = new ArrayList<>(entries.size());
+        entries.forEach(entry -> ids.add(entry.getId()));
+        smsScheduleRepository.claim(ids, new Date(now + leaseMs));
+
+        int loaded = 0;
+        synchronized (this) {
+            for (SmsSchedule entry : entries) {
+                // Still held after its claim expired (ex: a long release backlog): already on its way
+                if (!held.add(entry.getId())) continue;
+                if (!timingWheel.add(entry, entry.getSendAt().getTime())) due.add(entry);
+                loaded++;
+            }
+        }
+        logger.info("Loaded {} scheduled SMS requests due within {} ms", loaded, horizonMs);
+        return loaded;
+    }
+
+    /**
+     * Extends the lease of every entry still held (in the timing wheel, due or being published) to now + lease-ms.
+     */
+    private void renew(long now) {
+        List<Long> heldIds;
+        synchronized (this) {
+            heldIds = new ArrayList<>(held);
+        }
+        for (int from = 0; from < heldIds.size(); from += batchSize) {
+            smsScheduleRepository.claim(heldIds.subList(from, Math.min(heldIds.size(), from + batchSize)), new Date(now + leaseMs));
+        }
+        if (!heldIds.isEmpty()) logger.debug("Renewed the lease of {} scheduled SMS requests", heldIds.size());
+    }
+
+    /**
+     * Moves the timing wheel to now, then publishes the due entries allowed by the release rate.
+     * Entries whose publish failed, or whose lookup or publish threw, are retried with the next tick. Runs on the
+     * release thread only.
+     *
+     * @return The number of entries published.
+     */
+    @Override
+    public int release() {
+        int dueCount;
+        synchronized (this) {
+            timingWheel.advance(System.currentTimeMillis(), due::add);
+            dueCount = Math.min(due.size(), batchSize);
+        }
+        int permits = acquireRelease(dueCount);
+        if (permits == 0) return 0;
+        List<SmsSchedule> batch = new ArrayList<>(permits);
+        synchronized (this) {
+            // Only this thread takes from the FIFO, it still holds at least permits entries
+            for (int i = 0; i < permits; i++) batch.add(due.poll());
+        }
+
+        // Until the batch is settled all of it goes back to the FIFO: an entry taken off it but still held would
+        // have its lease renewed forever without ever being published
+        List<SmsSchedule> requeued = batch;
+        List<Long> done = Collections.emptyList();
+        List<SmsSchedule> found = new ArrayList<>(batch.size());
+        List<SmsSchedule> failed = new ArrayList<>();
+        try {
+            List<Long> smsRequestIds = new ArrayList<>(batch.size());
+            batch.forEach(entry -> smsRequestIds.add(entry.getSmsRequestId()));
+            Map<Long, SmsRequest> smsRequests = new HashMap<>();
+            smsRequestRepository.findAllById(smsRequestIds).forEach(smsRequest -> smsRequests.put(smsRequest.getId(), smsRequest));
+
+            List<SmsRequest> toPublish = new ArrayList<>(batch.size());
+            List<Long> settled = new ArrayList<>(batch.size());
+            for (SmsSchedule entry : batch) {
+                SmsRequest smsRequest = smsRequests.get(entry.getSmsRequestId());
+                if (smsRequest == null) {
+                    logger.error("Scheduled SMS request ID {} not found, dropping it", entry.getSmsRequestId());
+                    settled.add(entry.getId());
+                } else {
+                    found.add(entry);
+                    toPublish.add(smsRequest);
+                }
+            }
+
+            List<Boolean> published = toPublish.isEmpty() ? Collections.emptyList() : producer.publishBatch(toPublish);
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < found.size(); i++) {
+                SmsSchedule entry = found.get(i);
+                if (published.get(i)) {
+                    settled.add(entry.getId());
+                    lateness.record(Math.max(0, now - entry.getSendAt().getTime()), TimeUnit.MILLISECONDS);
+                } else {
+                    failed.add(entry);
+                }
+            }
+            requeued = failed;
+            done = settled;
+            if (!done.isEmpty()) smsScheduleRepository.deleteByIds(done);
+        } finally {
+            synchronized (this) {
+                done.forEach(held::remove);
+                // Ahead of the entries that became due since, so that they keep their order
+                for (int i = requeued.size() - 1; i >= 0; i--) due.addFirst(requeued.get(i));
+            }
+        }
+        released.increment(found.size() - failed.size());
+        if (!failed.isEmpty()) {
+            logger.error("Failed to publish {} of {} scheduled SMS requests, retrying", failed.size(), found.size());
+        }
+        return found.size() - failed.size();
+    }
+
+    /**
+     * @param wanted The number of due entries.
+     * @return The number of them that may be published now: from the bucket shared by the cluster if the throttle is
+     * enabled (one tick worth of the rate at a time), otherwise from the bucket of this node.
+     */
+    private int acquireRelease(int wanted) {
+        if (wanted == 0) return 0;
+        if (sendThrottleService.isEnabled()) {
+            int permits = (int) Math.min(wanted, Math.max(1, Math.ceil(releaseRatePerSecond * tickMs / 1000.0)));
+            return sendThrottleService.tryAcquire(RELEASE_BUCKET, releaseRatePerSecond, permits) == 0 ? permits : 0;
+        }
+        int permits = 0;
+        while (permits < wanted && releaseRate.tryAcquire(1) == 0) permits++;
+        return permits;
+    }
+
+    private synchronized int heldCount() {
+        return timingWheel.size();
+    }
+
+    private synchronized int dueCount() {
+        return due.size();
+    }
+}
@@ -1,32 +1,64 @@
 package org.example.notificationsystem.services.impl;
 
+import org.example.notificationsystem.constants.ErrorCodeConstants;
 import org.example.notificationsystem.constants.FailureCodeConstants;
+import org.example.notificationsystem.constants.PriorityConstants;
 import org.example.notificationsystem.constants.StatusConstants;
 import org.example.notificationsystem.dto.request.ElasticSearchRequest;
 import org.example.notificationsystem.dto.response.ElasticSearchResponse;
+import org.example.notificationsystem.dto.response.ErrorResponse;
+import org.example.notificationsystem.dto.response.GetSmsPageResponse;
+import org.example.notificationsystem.dto.response.SmsBatchItemResponse;
 import org.example.notificationsystem.dto.response.SmsRequestElasticsearchResponse;
+import org.example.notificationsystem.exception.DuplicateMessageException;
 import org.example.notificationsystem.kafka.Producer;
+import org.example.notificationsystem.models.SmsOutbox;
 import org.example.notificationsystem.models.SmsRequest;
 import org.example.notificationsystem.models.SmsRequestElasticsearch;
+import org.example.notificationsystem.models.SmsSchedule;
+import org.example.notificationsystem.models.StatusTransition;
 import org.example.notificationsystem.repositories.ElasticSearchRepository;
+import org.example.notificationsystem.repositories.SmsOutboxRepository;
 import org.example.notificationsystem.repositories.SmsRequestElasticsearchRepository;
 import org.example.notificationsystem.repositories.SmsRequestRepository;
+import org.example.notificationsystem.repositories.SmsScheduleRepository;
 import org.example.notificationsystem.services.SmsService;
+import org.example.notificationsystem.utils.CompiledTemplate;
+import org.example.notificationsystem.utils.KeysetCursor;
 import org.example.notificationsystem.utils.NotificationSystemUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionOperations;
 
-import javax.transaction.Transactional;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.Statement;
+import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 import static org.example.notificationsystem.constants.Time.MAX_DATE;
+import static org.example.notificationsystem.utils.NotificationSystemUtils.afterCommit;
+import static org.example.notificationsystem.utils.NotificationSystemUtils.afterRollback;
 import static org.example.notificationsystem.utils.NotificationSystemUtils.isValidPageRequest;
 import static org.example.notificationsystem.utils.NotificationSystemUtils.parseIstToUtcDate;
 
@@ -42,13 +74,59 @@ public class SmsServiceImpl implements SmsService {
     private final SmsRequestElasticsearchRepository smsRequestElasticsearchRepository;
     private final Producer producer;
     private final ElasticSearchRepository elasticSearchRepository;
+    private final Executor publishCallbackExecutor;
+    private final SmsOutboxRepository smsOutboxRepository;
+    private final SmsScheduleRepository smsScheduleRepository;
+    private final DuplicateSuppressionServiceImpl duplicateSuppressionServiceImpl;
+    private final SmsTemplateServiceImpl smsTemplateServiceImpl;
+    private final JdbcTemplate jdbcTemplate;
+    /**
+     * Runs the writes of a created request, its duplicate check being made before (see createSmsRequest).
+     */
+    private final TransactionOperations transactionOperations;
+
+    /**
+     * Used to detach the streamed entities (see streamSmsRequests).
+     */
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * If true, createSmsRequest returns once the Kafka record is handed to the producer instead of waiting for the acks.
+     */
+    @Value("${sms.ingest.async-publish:false}")
+    private boolean asyncPublish;
+
+    /**
+     * If true, createSmsRequest only writes MySQL (the sms_request row and its outbox entry) and the outbox relay
+     * publishes to Kafka and indexes into Elasticsearch in the background.
+     */
+    @Value("${sms.outbox.enabled:false}")
+    private boolean outboxEnabled;
 
     @Autowired
-    public SmsServiceImpl(SmsRequestRepository smsRequestRepository, SmsRequestElasticsearchRepository smsRequestElasticsearchRepository, Producer producer, ElasticSearchRepository elasticSearchRepository) {
+    public SmsServiceImpl(SmsRequestRepository smsRequestRepository, SmsRequestElasticsearchRepository smsRequestElasticsearchRepository, Producer producer, ElasticSearchRepository elasticSearchRepository,
+                          @Qualifier("publishCallbackExecutor") Executor publishCallbackExecutor, SmsOutboxRepository smsOutboxRepository,
+                          SmsScheduleRepository smsScheduleRepository, DuplicateSuppressionServiceImpl duplicateSuppressionServiceImpl,
+                          SmsTemplateServiceImpl smsTemplateServiceImpl, JdbcTemplate jdbcTemplate, TransactionOperations transactionOperations) {
         this.smsRequestRepository = smsRequestRepository;
         this.smsRequestElasticsearchRepository = smsRequestElasticsearchRepository;
         this.producer = producer;
         this.elasticSearchRepository = elasticSearchRepository;
+        this.publishCallbackExecutor = publishCallbackExecutor;
+        this.smsOutboxRepository = smsOutboxRepository;
+        this.smsScheduleRepository = smsScheduleRepository;
+        this.duplicateSuppressionServiceImpl = duplicateSuppressionServiceImpl;
+        this.smsTemplateServiceImpl = smsTemplateServiceImpl;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionOperations = transactionOperations;
+    }
+
+    /**
+     * @return true if the Kafka publish of a created request completes after createSmsRequest returns (the request is accepted, not yet queued).
+     */
+    public boolean isPublishDeferred() {
+        return asyncPublish || outboxEnabled;
     }
 
     /**
@@ -58,21 +136,122 @@ public class SmsServiceImpl implements SmsService {
      * @param message The content of the SMS message.
      * @return The saved {@link SmsRequest} object.
      */
-    @Transactional
     public SmsRequest createSmsRequest(String number, String message) {
+        return createSmsRequest(number, message, PriorityConstants.NORMAL, null);
+    }
+
+    /**
+     * Creates a new SMS request, saves it to MySQL, Elasticsearch, and sends a Kafka message to the lane of its priority.
+     * An SMS request due in the future is written to the sms_schedule table instead, and published to Kafka by the
+     * SmsScheduleService once due.
+     * A copy of an SMS request created within the dedup window (see DuplicateSuppressionService) is dropped before
+     * anything is written. The check is made before the transaction of the writes begins, so that the Redis round
+     * trip does not hold a MySQL connection, and the request is forgotten again if the transaction does not commit.
+     *
+     * @param number   The phone number to send the SMS to.
+     * @param message  The content of the SMS message.
+     * @param priority The priority of the SMS (null for NORMAL).
+     * @param sendAt   When to send the SMS (null for now).
+     * @return The saved {@link SmsRequest} object.
+     * @throws DuplicateMessageException If it is a duplicate.
+     */
+    public SmsRequest createSmsRequest(String number, String message, PriorityConstants priority, Date sendAt) {
+        SmsRequest smsRequest = newSmsRequest(number, priority, sendAt);
+        smsRequest.setMessage(message);
+        return createSmsRequest(smsRequest, message);
+    }
+
+    /**
+     * Creates a new templated SMS request, like createSmsRequest with a message. Only the template id and the
+     * parameters are stored (MySQL and Elasticsearch), the text is rendered when the request is published to Kafka.
+     *
+     * @param number     The phone number to send the SMS to.
+     * @param templateId The id of the template version.
+     * @param params     The value of every parameter of the template, by name.
+     * @param priority   The priority of the SMS (null for NORMAL).
+     * @param sendAt     When to send the SMS (null for now).
+     * @return The saved {@link SmsRequest} object.
+     * @throws IllegalArgumentException  If the template does not exist or the parameters do not match it.
+     * @throws DuplicateMessageException If it is a duplicate (of the same text).
+     */
+    public SmsRequest createSmsRequest(String number, Long templateId, Map<String, String> params, PriorityConstants priority, Date sendAt) {
+        String templateParams = smsTemplateServiceImpl.encodeParams(templateId, params);
+        SmsRequest smsRequest = newSmsRequest(number, priority, sendAt);
+        smsRequest.setTemplateId(templateId);
+        smsRequest.setTemplateParams(templateParams);
+        return createSmsRequest(smsRequest, smsTemplateServiceImpl.render(templateId, templateParams));
+    }
+
+    /**
+     * @param smsRequest The SMS request to save.
+     * @param text       Its text, checked for duplicates.
+     */
+    private SmsRequest createSmsRequest(SmsRequest smsRequest, String text) {
+        String number = smsRequest.getPhoneNumber();
         logger.info("Creating SMS request for number: {}", number);
+        if (duplicateSuppressionServiceImpl.isDuplicate(number, text, smsRequest.getSendAt())) {
+            logger.warn("Dropping duplicate SMS request for number: {}", number);
+            throw new DuplicateMessageException(number);
+        }
+        return transactionOperations.execute(status -> {
+            // Not created: a retry of the client must not be taken for a duplicate
+            afterRollback(() -> duplicateSuppressionServiceImpl.forget(number, text, smsRequest.getSendAt()));
+            return saveSmsRequest(smsRequest);
+        });
+    }
 
-        // Save into MySQL - sms_request
+    /**
+     * @return A new IN_PROGRESS SMS request, without its message or template.
+     */
+    private static SmsRequest newSmsRequest(String number, PriorityConstants priority, Date sendAt) {
         SmsRequest smsRequest = new SmsRequest();
         smsRequest.setPhoneNumber(number);
-        smsRequest.setMessage(message);
+        smsRequest.setPriority((priority == null ? PriorityConstants.NORMAL : priority).ordinal());
+        smsRequest.setSendAt(sendAt);
         smsRequest.setStatus(StatusConstants.IN_PROGRESS.ordinal());
         smsRequest.setCreatedAt(NotificationSystemUtils.getNowAsDateIST());
         smsRequest.setUpdatedAt(NotificationSystemUtils.getNowAsDateIST());
+        return smsRequest;
+    }
+
+    /**
+     * @return A new IN_PROGRESS SMS request from a (validated) request body, with its message or its template.
+     * @throws IllegalArgumentException If the template does not exist or the parameters do not match it.
+     */
+    private SmsRequest newSmsRequest(org.example.notificationsystem.dto.request.SmsRequest request) {
+        SmsRequest smsRequest = newSmsRequest(request.getPhoneNumber(), request.getPriority(),
+                request.getSendAt() == null ? null : parseIstToUtcDate(request.getSendAt()));
+        if (request.getTemplateId() == null) {
+            smsRequest.setMessage(request.getMessage());
+        } else {
+            Long templateId = Long.valueOf(request.getTemplateId());
+            smsRequest.setTemplateId(templateId);
+            smsRequest.setTemplateParams(smsTemplateServiceImpl.encodeParams(templateId, request.getParams()));
+        }
+        return smsRequest;
+    }
+
+    private SmsRequest saveSmsRequest(SmsRequest smsRequest) {
+        String number = smsRequest.getPhoneNumber();
+        Date sendAt = smsRequest.getSendAt();
 
+        // Save into MySQL - sms_request
         SmsRequest persistedSmsRequest = smsRequestRepository.saveAndFlush(smsRequest);
         logger.info("SMS request for number {} saved to MySQL with status {}", number, StatusConstants.IN_PROGRESS.name());
 
+        boolean scheduled = isScheduled(persistedSmsRequest);
+        if (scheduled) {
+            smsScheduleRepository.save(newScheduleEntry(persistedSmsRequest));
+            logger.info("SMS request ID {} scheduled for {}", persistedSmsRequest.getId(), sendAt);
+        }
+
+        if (outboxEnabled) {
+            // Kafka (unless scheduled) and Elasticsearch are written by the outbox relay once this transaction commits.
+            smsOutboxRepository.save(newOutboxEntry(persistedSmsRequest, scheduled));
+            logger.info("SMS request ID {} added to the outbox", persistedSmsRequest.getId());
+            return persistedSmsRequest;
+        }
+
         // Save into Elasticsearch
         try {
             SmsRequestElasticsearch smsRequestElasticsearch = NotificationSystemUtils.getSmsRequestElasticsearchFromSmsRequest(persistedSmsRequest);
@@ -83,16 +262,184 @@ public class SmsServiceImpl implements SmsService {
             throw e;
         }
 
-        // Send Kafka Message
-        boolean success = producer.publishSync(persistedSmsRequest.getId());
-        if (success) {
-            logger.info("Kafka message sent for SMS request ID {}", persistedSmsRequest.getId());
-        } else {
-            logger.error("Failed to send Kafka message for SMS request ID {}", persistedSmsRequest.getId());
+        // Send Kafka Message, once the row is committed: a record published before the commit could be consumed, or
+        // its failure handled, before its sms_request row is visible, and a rollback would leave the record behind
+        Long smsRequestId = persistedSmsRequest.getId();
+        if (scheduled) {
+            return persistedSmsRequest;
+        }
+        if (asyncPublish) {
+            afterCommit(() -> producer.publishAsync(persistedSmsRequest).whenCompleteAsync((recordMetadata, exception) -> {
+                if (exception != null) {
+                    logger.error("Failed to send Kafka message for SMS request ID {}. Marking as FAILED", smsRequestId);
+                    transition(StatusTransition.fromInProgress(smsRequestId, StatusConstants.FAILED, FailureCodeConstants.QUEUE_PUBLISH_FAILED, "Could not publish the request to Kafka: " + exception.getMessage()));
+                }
+            }, publishCallbackExecutor));
+            return persistedSmsRequest;
         }
+
+        afterCommit(() -> {
+            boolean success = producer.publishSync(persistedSmsRequest);
+            if (success) {
+                logger.info("Kafka message sent for SMS request ID {}", smsRequestId);
+            } else {
+                logger.error("Failed to send Kafka message for SMS request ID {}", smsRequestId);
+            }
+        });
         return persistedSmsRequest;
     }
 
+    /**
+     * Creates a batch of SMS requests.
+     * The rows are written to MySQL as JDBC batch inserts, indexed into Elasticsearch with one bulk request
+     * and published to Kafka as one pipelined batch.
+     * A templated request whose template does not exist or whose parameters do not match it is answered with an
+     * INVALID_REQUEST error. The duplicates (see DuplicateSuppressionService) are dropped next and answered with a
+     * DUPLICATE_MESSAGE error. As for createSmsRequest, the duplicates are checked before the transaction of the writes.
+     *
+     * @param requests The (already validated) SMS requests to create.
+     * @return Per request results, in the same order as requests.
+     */
+    public List<SmsBatchItemResponse> createSmsRequests(List<org.example.notificationsystem.dto.request.SmsRequest> requests) {
+        logger.info("Creating batch of {} SMS requests", requests.size());
+        SmsBatchItemResponse[] results = new SmsBatchItemResponse[requests.size()];
+        List<SmsRequest> smsRequests = new ArrayList<>(requests.size());
+        List<Integer> indexes = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            try {
+                smsRequests.add(newSmsRequest(requests.get(i)));
+                indexes.add(i);
+            } catch (IllegalArgumentException e) {
+                results[i] = SmsBatchItemResponse.builder()
+                        .error(ErrorResponse.builder().code(ErrorCodeConstants.INVALID_REQUEST.toString()).message(e.getMessage()).build())
+                        .build();
+            }
+        }
+
+        List<Boolean> duplicates = duplicateSuppressionServiceImpl.areDuplicates(smsRequests);
+        List<SmsRequest> unique = new ArrayList<>(smsRequests.size());
+        List<Integer> uniqueIndexes = new ArrayList<>(smsRequests.size());
+        for (int i = 0; i < smsRequests.size(); i++) {
+            if (duplicates.get(i)) {
+                results[indexes.get(i)] = SmsBatchItemResponse.builder()
+                        .error(ErrorResponse.builder().code(FailureCodeConstants.DUPLICATE_MESSAGE.name()).message("The same message was already sent to this phone number recently").build())
+                        .build();
+            } else {
+                unique.add(smsRequests.get(i));
+                uniqueIndexes.add(indexes.get(i));
+            }
+        }
+        if (unique.size() < smsRequests.size()) {
+            logger.warn("Dropped {} duplicate SMS requests of the batch", smsRequests.size() - unique.size());
+        }
+
+        List<SmsBatchItemResponse> saved = unique.isEmpty() ? Collections.emptyList() : transactionOperations.execute(status -> {
+            // Not created: a retry of the client must not be taken for a duplicate
+            afterRollback(() -> duplicateSuppressionServiceImpl.forget(unique));
+            return saveSmsRequests(unique);
+        });
+        for (int i = 0; i < saved.size(); i++) {
+            results[uniqueIndexes.get(i)] = saved.get(i);
+        }
+        return Arrays.asList(results);
+    }
+
+    private List<SmsBatchItemResponse> saveSmsRequests(List<SmsRequest> smsRequests) {
+
+        // Save into MySQL - sms_request (batched by hibernate.jdbc.batch_size)
+        List<SmsRequest> persistedSmsRequests = smsRequestRepository.saveAllAndFlush(smsRequests);
+        logger.info("Batch of {} SMS requests saved to MySQL with status {}", persistedSmsRequests.size(), StatusConstants.IN_PROGRESS.name());
+
+        List<SmsSchedule> scheduleEntries = new ArrayList<>();
+        List<SmsRequest> toPublish = new ArrayList<>(persistedSmsRequests.size());
+        for (SmsRequest smsRequest : persistedSmsRequests) {
+            if (isScheduled(smsRequest)) {
+                scheduleEntries.add(newScheduleEntry(smsRequest));
+            } else {
+                toPublish.add(smsRequest);
+            }
+        }
+        if (!scheduleEntries.isEmpty()) {
+            smsScheduleRepository.saveAll(scheduleEntries);
+            logger.info("{} SMS requests of the batch scheduled", scheduleEntries.size());
+        }
+
+        if (outboxEnabled) {
+            List<SmsOutbox> outboxEntries = new ArrayList<>(persistedSmsRequests.size());
+            persistedSmsRequests.forEach(smsRequest -> outboxEntries.add(newOutboxEntry(smsRequest, isScheduled(smsRequest))));
+            smsOutboxRepository.saveAll(outboxEntries);
+            logger.info("Batch of {} SMS requests added to the outbox", outboxEntries.size());
+
+            List<SmsBatchItemResponse> results = new ArrayList<>(persistedSmsRequests.size());
+            persistedSmsRequests.forEach(smsRequest -> results.add(SmsBatchItemResponse.builder().requestId(smsRequest.getId().toString()).build()));
+            return results;
+        }
+
+        // Save into Elasticsearch (one bulk request)
+        List<SmsRequestElasticsearch> smsRequestsElasticsearch = new ArrayList<>(persistedSmsRequests.size());
+        persistedSmsRequests.forEach(smsRequest -> smsRequestsElasticsearch.add(NotificationSystemUtils.getSmsRequestElasticsearchFromSmsRequest(smsRequest)));
+        try {
+            smsRequestElasticsearchRepository.saveAll(smsRequestsElasticsearch);
+            logger.info("Batch of {} SMS requests saved to Elasticsearch", smsRequestsElasticsearch.size());
+        } catch (Exception e) {
+            logger.error("Failed to save batch of {} SMS requests to Elasticsearch: {}", smsRequestsElasticsearch.size(), e.getMessage());
+            throw e;
+        }
+
+        List<SmsBatchItemResponse> results = new ArrayList<>(persistedSmsRequests.size());
+        Map<Long, SmsBatchItemResponse> resultsById = new HashMap<>();
+        for (SmsRequest smsRequest : persistedSmsRequests) {
+            SmsBatchItemResponse result = SmsBatchItemResponse.builder().requestId(smsRequest.getId().toString()).build();
+            results.add(result);
+            resultsById.put(smsRequest.getId(), result);
+        }
+
+        // Send Kafka Messages once the rows are committed (the scheduled ones are published by the SmsScheduleService once due).
+        // The commit happens before the results are returned, so the publish failures still make it into them.
+        if (!toPublish.isEmpty()) {
+            afterCommit(() -> {
+                List<Boolean> published = producer.publishBatch(toPublish);
+                for (int i = 0; i < toPublish.size(); i++) {
+                    if (published.get(i)) continue;
+                    Long id = toPublish.get(i).getId();
+                    logger.error("Failed to send Kafka message for SMS request ID {}", id);
+                    resultsById.get(id).setError(ErrorResponse.builder().code(ErrorCodeConstants.PUBLISH_FAILED.toString()).message("Saved but could not be queued for sending").build());
+                }
+            });
+        }
+        return results;
+    }
+
+    /**
+     * Builds the outbox entry of a persisted SMS request.
+     *
+     * @param smsRequest The persisted SMS request.
+     * @param scheduled  If the SMS request is published by the SmsScheduleService instead of the outbox relay.
+     * @return An unindexed {@link SmsOutbox} entry, unpublished unless scheduled.
+     */
+    private static SmsOutbox newOutboxEntry(SmsRequest smsRequest, boolean scheduled) {
+        return SmsOutbox.builder()
+                .smsRequestId(smsRequest.getId())
+                .published(scheduled)
+                .indexed(false)
+                .createdAt(NotificationSystemUtils.getNowAsDateIST())
+                .build();
+    }
+
+    /**
+     * @return true if the SMS request is due in the future.
+     */
+    private static boolean isScheduled(SmsRequest smsRequest) {
+        return smsRequest.getSendAt() != null && smsRequest.getSendAt().getTime() > System.currentTimeMillis();
+    }
+
+    private static SmsSchedule newScheduleEntry(SmsRequest smsRequest) {
+        return SmsSchedule.builder()
+                .smsRequestId(smsRequest.getId())
+                .sendAt(smsRequest.getSendAt())
+                .build();
+    }
+
     /**
      * Fetches SMS requests from Elasticsearch based on given date range, phone number, and terms.
      *
@@ -131,7 +478,18 @@ public class SmsServiceImpl implements SmsService {
      */
     public Optional<SmsRequest> getSmsRequest(Long Id) {
         logger.info("Fetching SMS request by ID: {}", Id);
-        return smsRequestRepository.findById(Id);
+        return smsRequestRepository.findById(Id).map(this::rendered);
+    }
+
+    /**
+     * Fetches the SMS requests having the given IDs from MySQL with a single query.
+     *
+     * @param ids The IDs of the SMS requests to fetch.
+     * @return The {@link SmsRequest} objects found (in no particular order).
+     */
+    public List<SmsRequest> getSmsRequests(Collection<Long> ids) {
+        logger.info("Fetching {} SMS requests by ID", ids.size());
+        return smsRequestRepository.findAllById(ids);
     }
 
     /**
@@ -143,7 +501,7 @@ public class SmsServiceImpl implements SmsService {
         logger.info("Fetching all SMS requests from MySQL");
         List<SmsRequest> smsRequests = smsRequestRepository.findAll();
         logger.info("Fetched {} SMS requests from MySQL", smsRequests.size());
-        return smsRequests;
+        return rendered(smsRequests);
     }
 
     /**
@@ -153,7 +511,7 @@ public class SmsServiceImpl implements SmsService {
      */
     public List<SmsRequest> getFinishedSmsRequests() {
         logger.info("Fetching finished SMS requests");
-        return smsRequestRepository.findByStatus(StatusConstants.FINISHED.ordinal());
+        return rendered(smsRequestRepository.findByStatus(StatusConstants.FINISHED.ordinal()));
     }
 
     /**
@@ -163,7 +521,7 @@ public class SmsServiceImpl implements SmsService {
      */
     public List<SmsRequest> getInProgressSmsRequests() {
         logger.info("Fetching in-progress SMS requests");
-        return smsRequestRepository.findByStatus(StatusConstants.IN_PROGRESS.ordinal());
+        return rendered(smsRequestRepository.findByStatus(StatusConstants.IN_PROGRESS.ordinal()));
     }
 
     /**
@@ -173,7 +531,158 @@ public class SmsServiceImpl implements SmsService {
      */
     public List<SmsRequest> getFailedSmsRequests() {
         logger.info("Fetching failed SMS requests");
-        return smsRequestRepository.findByStatus(StatusConstants.FAILED.ordinal());
+        return rendered(smsRequestRepository.findByStatus(StatusConstants.FAILED.ordinal()));
+    }
+
+    /**
+     * Renders the text of the templated SMS requests read from MySQL into their message, so that every read path
+     * returns the text. The entities are detached first: the rendered text must never be written back to the row.
+     *
+     * @param smsRequests The SMS requests read from MySQL.
+     * @return The same list.
+     */
+    private List<SmsRequest> rendered(List<SmsRequest> smsRequests) {
+        smsRequests.forEach(this::rendered);
+        return smsRequests;
+    }
+
+    private SmsRequest rendered(SmsRequest smsRequest) {
+        return rendered(smsRequest, smsTemplateServiceImpl::textOf);
+    }
+
+    private SmsRequest rendered(SmsRequest smsRequest, Function<SmsRequest, String> textOf) {
+        if (smsRequest.getTemplateId() == null || smsRequest.getMessage() != null) return smsRequest;
+        entityManager.detach(smsRequest);
+        try {
+            smsRequest.setMessage(textOf.apply(smsRequest));
+        } catch (IllegalArgumentException e) {
+            logger.error("Could not render SMS request ID {} from template ID {}: {}", smsRequest.getId(), smsRequest.getTemplateId(), e.getMessage());
+        }
+        return smsRequest;
+    }
+
+    /**
+     * Fetches a page of SMS requests from MySQL using keyset pagination on (createdAt, id).
+     * One extra row is fetched to know whether there is a next page.
+     *
+     * @param status The status to filter on (null for any status).
+     * @param cursor The nextCursor of the previous page (null for the first page).
+     * @param limit  The maximum number of SMS requests in the page.
+     * @return The {@link GetSmsPageResponse} holding the page and the cursor of the next one (null on the last page).
+     */
+    public GetSmsPageResponse getSmsRequestsPage(StatusConstants status, String cursor, int limit) {
+        KeysetCursor after = cursor == null ? KeysetCursor.START : KeysetCursor.decode(cursor);
+        logger.info("Fetching page of {} SMS requests with status {} after ({}, {})", limit, status, after.getCreatedAt(), after.getId());
+        List<SmsRequest> smsRequests = status == null
+                ? smsRequestRepository.findPageAfter(after.getCreatedAt(), after.getId(), limit + 1)
+                : smsRequestRepository.findPageByStatusAfter(status.ordinal(), after.getCreatedAt(), after.getId(), limit + 1);
+
+        String nextCursor = null;
+        if (smsRequests.size() > limit) {
+            smsRequests = smsRequests.subList(0, limit);
+            SmsRequest last = smsRequests.get(limit - 1);
+            nextCursor = new KeysetCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        return GetSmsPageResponse.builder()
+                .data(rendered(smsRequests))
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    /**
+     * Streams the SMS requests matching the filters from MySQL (see {@link SmsRequestRepository#streamByCreatedAtBetween}
+     * and {@link SmsRequestRepository#streamByStatusAndCreatedAtBetween}).
+     * Every entity is detached before it is handed to the action (rendered if templated), so the persistence context
+     * does not grow with the result. The templates are all compiled before the stream is opened: while it is open its
+     * connection cannot run another query, so a template missing from the cache could not be loaded.
+     *
+     * @param status The status to filter on (null for any status).
+     * @param from   The start of the creation time range (inclusive).
+     * @param to     The end of the creation time range (exclusive).
+     * @param action Called for every matching {@link SmsRequest}, in (createdAt, id) order.
+     * @return The number of SMS requests streamed.
+     */
+    @Transactional(readOnly = true)
+    public long streamSmsRequests(StatusConstants status, Date from, Date to, Consumer<SmsRequest> action) {
+        logger.info("Streaming SMS requests with status {} created between {} and {}", status, from, to);
+        Map<Long, CompiledTemplate> templates = smsTemplateServiceImpl.compileAll();
+        long count = 0;
+        try (Stream<SmsRequest> smsRequests = status == null
+                ? smsRequestRepository.streamByCreatedAtBetween(from, to)
+                : smsRequestRepository.streamByStatusAndCreatedAtBetween(status.ordinal(), from, to)) {
+            for (SmsRequest smsRequest : (Iterable<SmsRequest>) smsRequests::iterator) {
+                entityManager.detach(smsRequest);
+                action.accept(rendered(smsRequest, templated -> {
+                    CompiledTemplate template = templates.get(templated.getTemplateId());
+                    if (template == null) throw new IllegalArgumentException("Unknown template: " + templated.getTemplateId());
+                    return template.render(templated.getTemplateParams());
+                }));
+                count++;
+            }
+        }
+        logger.info("Streamed {} SMS requests", count);
+        return count;
+    }
+
+    /**
+     * Applies a status transition with one conditional UPDATE (see {@link SmsRequestRepository#transition}),
+     * instead of a findById and a saveAndFlush for the status and again for the failure code.
+     *
+     * @param statusTransition The transition to apply.
+     * @return true if applied, false if the SMS request does not exist or is not in the expected status.
+     */
+    @Transactional
+    public boolean transition(StatusTransition statusTransition) {
+        logger.info("Applying transition {}", statusTransition);
+        int updated = smsRequestRepository.transition(
+                statusTransition.getSmsRequestId(),
+                statusTransition.getExpectedStatus().ordinal(),
+                statusTransition.getStatus().ordinal(),
+                statusTransition.getFailureCode().ordinal(),
+                statusTransition.getFailureComments(),
+                NotificationSystemUtils.getNowAsDateIST()
+        );
+        if (updated == 0) {
+            logger.warn("Rejected transition of SMS request ID: {} (missing, or not {})", statusTransition.getSmsRequestId(), statusTransition.getExpectedStatus());
+        }
+        return updated > 0;
+    }
+
+    /**
+     * Applies many status transitions with one JDBC batch of conditional UPDATEs (a single round trip with
+     * rewriteBatchedStatements).
+     *
+     * @param statusTransitions The transitions to apply.
+     * @return Per transition applied flags, in the same order as statusTransitions.
+     */
+    public List<Boolean> applyTransitions(List<StatusTransition> statusTransitions) {
+        List<Boolean> applied = new ArrayList<>(statusTransitions.size());
+        if (statusTransitions.isEmpty()) return applied;
+        logger.info("Applying {} SMS request status transitions", statusTransitions.size());
+        Timestamp now = new Timestamp(NotificationSystemUtils.getNowAsDateIST().getTime());
+        List<Object[]> batchArgs = new ArrayList<>(statusTransitions.size());
+        for (StatusTransition statusTransition : statusTransitions) {
+            batchArgs.add(new Object[]{
+                    statusTransition.getStatus().ordinal(),
+                    statusTransition.getFailureCode().ordinal(),
+                    statusTransition.getFailureComments(),
+                    now,
+                    statusTransition.getSmsRequestId(),
+                    statusTransition.getExpectedStatus().ordinal()
+            });
+        }
+        int[] counts = jdbcTemplate.batchUpdate("UPDATE sms_request SET status = ?, failure_code = ?, failure_comments = ?, updated_at = ? WHERE id = ? AND status = ?", batchArgs);
+        int rejected = 0;
+        for (int count : counts) {
+            // SUCCESS_NO_INFO: executed, but the driver did not report the row count
+            boolean ok = count > 0 || count == Statement.SUCCESS_NO_INFO;
+            if (!ok) rejected++;
+            applied.add(ok);
+        }
+        if (rejected > 0) {
+            logger.warn("Rejected {} of {} SMS request status transitions (missing, or not in the expected status)", rejected, statusTransitions.size());
+        }
+        return applied;
     }
 
     /**
@@ -271,7 +780,7 @@ public class SmsServiceImpl implements SmsService {
                                 .smsRequestId(res.getSmsRequestId())
                                 .updatedAt(res.getUpdatedAt().toString())
                                 .createdAt(res.getCreatedAt().toString())
-                                .message(res.getMessage())
+                                .message(textOf(res))
                                 .build()
                 )
         );
@@ -283,4 +792,15 @@ public class SmsServiceImpl implements SmsService {
                         .build()
         );
     }
-}
\ No newline at end of file
+
+    /**
+     * @return The text of an indexed SMS request: its message, or its template rendered with its parameters.
+     */
+    private String textOf(SmsRequestElasticsearch smsRequestElasticsearch) {
+        // A templated document only holds its template id and parameters
+        if (smsRequestElasticsearch.getTemplateId() == null || smsRequestElasticsearch.getMessage() != null) {
+            return smsRequestElasticsearch.getMessage();
+        }
+        return smsTemplateServiceImpl.render(Long.valueOf(smsRequestElasticsearch.getTemplateId()), smsRequestElasticsearch.getTemplateParams());
+    }
+}
@@ -0,0 +1,125 @@
+package org.example.notificationsystem.services.impl;
+
+import org.example.notificationsystem.models.SmsRequest;
+import org.example.notificationsystem.models.SmsTemplate;
+import org.example.notificationsystem.repositories.SmsTemplateRepository;
+import org.example.notificationsystem.services.SmsTemplateService;
+import org.example.notificationsystem.utils.CompiledTemplate;
+import org.example.notificationsystem.utils.NotificationSystemUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.example.notificationsystem.utils.NotificationSystemUtils.afterCommit;
+
+/**
+ * Implements SmsTemplateService with the templates in MySQL and their compiled form cached in memory.
+ * <p>
+ * A template version is immutable (a new version gets a new id), so a compiled template is cached by id for the life
+ * of the process and never invalidated: it is compiled once per node, the first time it is used. The cache holds one
+ * entry per version in use, a few dozen for the usual traffic.
+ */
+@Service
+public class SmsTemplateServiceImpl implements SmsTemplateService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SmsTemplateServiceImpl.class);
+
+    /**
+     * The longest text an Sms may have, rendered or not (the @Size of the message of an Sms Request).
+     */
+    public static final int MAX_TEXT_LENGTH = 10000;
+
+    private final SmsTemplateRepository smsTemplateRepository;
+    private final ConcurrentMap<Long, CompiledTemplate> compiledTemplates = new ConcurrentHashMap<>();
+
+    public SmsTemplateServiceImpl(SmsTemplateRepository smsTemplateRepository) {
+        this.smsTemplateRepository = smsTemplateRepository;
+    }
+
+    /**
+     * Registers the next version of a template. Two concurrent registrations of the same name conflict on the
+     * (name, version) unique key, the second one failing with a DataIntegrityViolationException.
+     * The compiled template is only cached once the version is committed, a rolled back id is never cached.
+     */
+    @Override
+    @Transactional
+    public SmsTemplate registerTemplate(String name, String body) {
+        CompiledTemplate compiledTemplate = CompiledTemplate.compile(body);
+        int version = smsTemplateRepository.findTopByNameOrderByVersionDesc(name)
+                .map(latest -> latest.getVersion() + 1)
+                .orElse(1);
+        SmsTemplate smsTemplate = smsTemplateRepository.saveAndFlush(SmsTemplate.builder()
+                .name(name)
+                .version(version)
+                .body(body)
+                .createdAt(NotificationSystemUtils.getNowAsDateIST())
+                .build());
+        afterCommit(() -> compiledTemplates.putIfAbsent(smsTemplate.getId(), compiledTemplate));
+        logger.info("Registered version {} of template {} with ID {} and parameters {}", version, name, smsTemplate.getId(), compiledTemplate.getParameterNames());
+        return smsTemplate;
+    }
+
+    @Override
+    public Optional<SmsTemplate> getTemplate(Long templateId) {
+        return smsTemplateRepository.findById(templateId);
+    }
+
+    @Override
+    public String encodeParams(Long templateId, Map<String, String> params) {
+        CompiledTemplate compiledTemplate = compiled(templateId);
+        String encodedParams = compiledTemplate.encodeParams(params);
+        int length = compiledTemplate.renderedLength(encodedParams);
+        if (length > MAX_TEXT_LENGTH) {
+            throw new IllegalArgumentException("The rendered message is " + length + " characters long, at most " + MAX_TEXT_LENGTH + " are allowed");
+        }
+        return encodedParams;
+    }
+
+    @Override
+    public String render(Long templateId, String encodedParams) {
+        return compiled(templateId).render(encodedParams);
+    }
+
+    @Override
+    public String textOf(SmsRequest smsRequest) {
+        if (smsRequest.getTemplateId() == null) return smsRequest.getMessage();
+        return render(smsRequest.getTemplateId(), smsRequest.getTemplateParams());
+    }
+
+    /**
+     * Compiles (and caches) every template version, for a caller that must not query MySQL while it renders, such as
+     * an export whose connection is busy with a streaming result set.
+     *
+     * @return The compiled template versions, by id.
+     */
+    public Map<Long, CompiledTemplate> compileAll() {
+        Map<Long, CompiledTemplate> all = new HashMap<>();
+        for (SmsTemplate smsTemplate : smsTemplateRepository.findAll()) {
+            all.put(smsTemplate.getId(), compiledTemplates.computeIfAbsent(smsTemplate.getId(), id -> CompiledTemplate.compile(smsTemplate.getBody())));
+        }
+        return all;
+    }
+
+    /**
+     * @return The compiled template version, loaded from MySQL the first time.
+     * @throws IllegalArgumentException If the template does not exist.
+     */
+    public CompiledTemplate compiled(Long templateId) {
+        CompiledTemplate compiledTemplate = compiledTemplates.get(templateId);
+        if (compiledTemplate != null) return compiledTemplate;
+
+        // Not under a lock of the map: a race compiles the template twice and keeps either copy
+        SmsTemplate smsTemplate = smsTemplateRepository.findById(templateId)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown template: " + templateId));
+        compiledTemplate = CompiledTemplate.compile(smsTemplate.getBody());
+        CompiledTemplate cached = compiledTemplates.putIfAbsent(templateId, compiledTemplate);
+        return cached == null ? compiledTemplate : cached;
+    }
+}
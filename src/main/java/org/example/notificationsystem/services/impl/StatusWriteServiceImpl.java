@@ -0,0 +1,272 @@
+package org.example.notificationsystem.services.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.example.notificationsystem.models.StatusTransition;
+import org.example.notificationsystem.services.StatusWriteService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Implements StatusWriteService with an in-memory write-behind buffer (sms.status.write-behind.enabled=true).
+ * <ul>
+ *     <li><b>Coalescing</b>: A transition of an Sms Request that is still buffered is chained to the buffered one if it
+ *     starts from the status the buffered one ends in: only the last one is written (keeping the expected status of the
+ *     first one) and every caller gets its result. Any other transition of the same Sms Request is rejected (its future
+ *     completes with false), as the conditional UPDATE would have rejected it.</li>
+ *     <li><b>Flushing</b>: A dedicated thread writes the buffer as one JDBC batch (SmsService.applyTransitions) as soon as it
+ *     holds batch-size transitions, or every flush-interval-ms otherwise.</li>
+ *     <li><b>Backpressure</b>: submit blocks the caller (the Kafka listener thread) while the buffer holds capacity transitions.</li>
+ *     <li><b>Durability</b>: The futures complete only once the batch is committed. A failed flush is retried up to
+ *     max-retries times, then the futures complete exceptionally: callers that commit Kafka offsets on completion never
+ *     commit past a transition that is not in MySQL, and must redeliver the record instead.</li>
+ *     <li><b>Shutdown</b>: New transitions are written synchronously and the buffer is drained before the bean is destroyed.</li>
+ * </ul>
+ */
+@Service
+public class StatusWriteServiceImpl implements StatusWriteService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatusWriteServiceImpl.class);
+
+    private final SmsServiceImpl smsServiceImpl;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition flushNeeded = lock.newCondition();
+    private Map<Long, Pending> buffer = new LinkedHashMap<>();
+    private volatile boolean closed = false;
+    private Thread flusher;
+
+    private final Counter coalesced;
+    private final Counter written;
+    private final Timer flushTimer;
+
+    @Value("${sms.status.write-behind.enabled}")
+    private boolean enabled;
+
+    @Value("${sms.status.write-behind.batch-size}")
+    private int batchSize;
+
+    @Value("${sms.status.write-behind.capacity}")
+    private int capacity;
+
+    @Value("${sms.status.write-behind.flush-interval-ms}")
+    private long flushIntervalMs;
+
+    @Value("${sms.status.write-behind.retry-backoff-ms}")
+    private long retryBackoffMs;
+
+    @Value("${sms.status.write-behind.max-retries}")
+    private int maxRetries;
+
+    @Autowired
+    public StatusWriteServiceImpl(SmsServiceImpl smsServiceImpl, MeterRegistry meterRegistry) {
+        this.smsServiceImpl = smsServiceImpl;
+        Gauge.builder("sms.status.buffer.size", this, StatusWriteServiceImpl::size).register(meterRegistry);
+        this.coalesced = Counter.builder("sms.status.coalesced").register(meterRegistry);
+        this.written = Counter.builder("sms.status.written").register(meterRegistry);
+        this.flushTimer = Timer.builder("sms.status.flush").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        flusher = new Thread(this::runFlusher, "status-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+        logger.info("Status write-behind enabled (batch size {}, capacity {}, flush interval {} ms)", batchSize, capacity, flushIntervalMs);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> submit(StatusTransition statusTransition) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        boolean buffered = false;
+        boolean rejected = false;
+        lock.lock();
+        try {
+            while (!closed && buffer.size() >= capacity && !buffer.containsKey(statusTransition.getSmsRequestId())) {
+                // Backpressure: the listener waits for the flusher instead of buffering without bound
+                flushNeeded.signal();
+                notFull.awaitUninterruptibly();
+            }
+            if (!closed) {
+                buffered = true;
+                Pending pending = buffer.get(statusTransition.getSmsRequestId());
+                if (pending == null) {
+                    buffer.put(statusTransition.getSmsRequestId(), new Pending(statusTransition, future));
+                } else if (pending.merge(statusTransition, future)) {
+                    coalesced.increment();
+                } else {
+                    rejected = true;
+                }
+                if (buffer.size() >= batchSize) flushNeeded.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (rejected) {
+            // Completed outside of the lock, the callbacks of the caller may be long
+            logger.warn("Rejected transition of SMS request ID: {} (not chained to the buffered one)", statusTransition.getSmsRequestId());
+            future.complete(false);
+        }
+        if (buffered) {
+            return future;
+        }
+
+        // Shutting down: write it right away
+        List<Boolean> applied = smsServiceImpl.applyTransitions(Collections.singletonList(statusTransition));
+        future.complete(applied.get(0));
+        return future;
+    }
+
+    @Override
+    public void flush() {
+        Map<Long, Pending> batch;
+        lock.lock();
+        try {
+            if (buffer.isEmpty()) return;
+            batch = buffer;
+            buffer = new LinkedHashMap<>();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        write(batch);
+    }
+
+    /**
+     * Writes a batch, retrying up to max-retries times (none once the service is closed).
+     * If it still fails, the futures complete exceptionally.
+     */
+    private void write(Map<Long, Pending> batch) {
+        List<StatusTransition> statusTransitions = new ArrayList<>(batch.size());
+        batch.values().forEach(pending -> statusTransitions.add(pending.statusTransition));
+        for (int attempt = 0; ; attempt++) {
+            try {
+                List<Boolean> applied = flushTimer.recordCallable(() -> smsServiceImpl.applyTransitions(statusTransitions));
+                int i = 0;
+                for (Pending pending : batch.values()) {
+                    Boolean result = applied.get(i++);
+                    pending.futures.forEach(future -> future.complete(result));
+                }
+                written.increment(statusTransitions.size());
+                return;
+            } catch (Exception e) {
+                if (attempt >= maxRetries || closed || !sleep(retryBackoffMs)) {
+                    logger.error("Failed to write {} status transitions after {} attempts: {}", statusTransitions.size(), attempt + 1, e.getMessage());
+                    // The callers do not commit the offsets of these records and redeliver them
+                    batch.values().forEach(pending -> pending.futures.forEach(future -> future.completeExceptionally(e)));
+                    return;
+                }
+                logger.error("Failed to write {} status transitions, retrying in {} ms: {}", statusTransitions.size(), retryBackoffMs, e.getMessage());
+            }
+        }
+    }
+
+    private void runFlusher() {
+        while (!closed) {
+            lock.lock();
+            try {
+                if (buffer.size() < batchSize) {
+                    flushNeeded.await(flushIntervalMs, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                flush();
+            } catch (Exception e) {
+                logger.error("Status write-behind flush failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private int size() {
+        lock.lock();
+        try {
+            return buffer.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (!enabled) return;
+        lock.lock();
+        try {
+            closed = true;
+            flushNeeded.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        flusher.join(TimeUnit.SECONDS.toMillis(30));
+        // Drain what is left
+        flush();
+        logger.info("Status write-behind drained");
+    }
+
+    /**
+     * The buffered transition of an Sms Request and the callers waiting for it.
+     */
+    private static final class Pending {
+        private StatusTransition statusTransition;
+        private final List<CompletableFuture<Boolean>> futures = new ArrayList<>(1);
+
+        private Pending(StatusTransition statusTransition, CompletableFuture<Boolean> future) {
+            this.statusTransition = statusTransition;
+            this.futures.add(future);
+        }
+
+        /**
+         * Chains the newer transition if it starts from the status the buffered one ends in: the newer one wins, guarded
+         * by the status the row had before the first buffered one.
+         *
+         * @return false if the newer transition does not chain (a stale or duplicate one), it is not merged.
+         */
+        private boolean merge(StatusTransition newer, CompletableFuture<Boolean> future) {
+            if (newer.getExpectedStatus() != statusTransition.getStatus()) {
+                return false;
+            }
+            statusTransition = new StatusTransition(newer.getSmsRequestId(), statusTransition.getExpectedStatus(),
+                    newer.getStatus(), newer.getFailureCode(), newer.getFailureComments());
+            futures.add(future);
+            return true;
+        }
+    }
+}
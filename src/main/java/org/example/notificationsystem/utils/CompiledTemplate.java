@@ -0,0 +1,186 @@
+package org.example.notificationsystem.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A message template parsed once into its literal segments and parameter slots, ex: "Your OTP is {{otp}}".
+ * <p>
+ * The parameters of an Sms are stored encoded (see {@link #encodeParams}): their values in the order of
+ * {@link #getParameterNames()}, separated by {@link #PARAM_SEPARATOR}. {@link #render} expands them straight from the
+ * encoded string into a StringBuilder sized up front, without splitting it, so that an Sms costs one int[], one
+ * StringBuilder and the resulting String. Immutable and thread safe.
+ */
+public final class CompiledTemplate {
+
+    /**
+     * Separates the values of the encoded parameters (the ASCII unit separator, rejected in values).
+     */
+    public static final char PARAM_SEPARATOR = '\u001F';
+
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+
+    /**
+     * literals[i] comes before slots[i], the last literal after the last slot (literals.length == slots.length + 1).
+     */
+    private final String[] literals;
+    /**
+     * The index (in parameterNames) of the parameter of every slot. A parameter may fill several slots.
+     */
+    private final int[] slots;
+    private final List<String> parameterNames;
+    private final int literalsLength;
+
+    private CompiledTemplate(String[] literals, int[] slots, List<String> parameterNames) {
+        this.literals = literals;
+        this.slots = slots;
+        this.parameterNames = parameterNames;
+        int length = 0;
+        for (String literal : literals) length += literal.length();
+        this.literalsLength = length;
+    }
+
+    /**
+     * Parses a template body. The parameters are written {{name}}, the name being made of letters, digits, '_', '-' or '.'.
+     *
+     * @param body The template body.
+     * @return The compiled template.
+     * @throws IllegalArgumentException If a parameter is not closed or has an invalid name.
+     */
+    public static CompiledTemplate compile(String body) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        Map<String, Integer> indexes = new LinkedHashMap<>();
+        int position = 0;
+        int open;
+        while ((open = body.indexOf(OPEN, position)) >= 0) {
+            int close = body.indexOf(CLOSE, open + OPEN.length());
+            if (close < 0) {
+                throw new IllegalArgumentException("Parameter at index " + open + " is not closed");
+            }
+            String name = body.substring(open + OPEN.length(), close).trim();
+            if (!isValidName(name)) {
+                throw new IllegalArgumentException("Invalid parameter name: '" + name + "'");
+            }
+            literals.add(body.substring(position, open));
+            Integer index = indexes.get(name);
+            if (index == null) {
+                index = indexes.size();
+                indexes.put(name, index);
+            }
+            slots.add(index);
+            position = close + CLOSE.length();
+        }
+        literals.add(body.substring(position));
+
+        int[] slotArray = new int[slots.size()];
+        for (int i = 0; i < slotArray.length; i++) slotArray[i] = slots.get(i);
+        return new CompiledTemplate(literals.toArray(new String[0]), slotArray,
+                Collections.unmodifiableList(new ArrayList<>(indexes.keySet())));
+    }
+
+    private static boolean isValidName(String name) {
+        if (name.isEmpty()) return false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.') return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The names of the parameters, in order of first appearance.
+     */
+    public List<String> getParameterNames() {
+        return parameterNames;
+    }
+
+    /**
+     * @param params The value of every parameter, by name.
+     * @return The values in the order of the parameter names, separated by PARAM_SEPARATOR ("" without parameters).
+     * @throws IllegalArgumentException If a parameter is missing or unknown, or a value contains PARAM_SEPARATOR.
+     */
+    public String encodeParams(Map<String, String> params) {
+        Map<String, String> values = params == null ? Collections.emptyMap() : params;
+        for (String name : values.keySet()) {
+            if (!parameterNames.contains(name)) {
+                throw new IllegalArgumentException("Unknown parameter: " + name);
+            }
+        }
+        StringBuilder encoded = new StringBuilder();
+        for (int i = 0; i < parameterNames.size(); i++) {
+            String value = values.get(parameterNames.get(i));
+            if (value == null) {
+                throw new IllegalArgumentException("Missing parameter: " + parameterNames.get(i));
+            }
+            if (value.indexOf(PARAM_SEPARATOR) >= 0) {
+                throw new IllegalArgumentException("Invalid character in parameter: " + parameterNames.get(i));
+            }
+            if (i > 0) encoded.append(PARAM_SEPARATOR);
+            encoded.append(value);
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * @param encodedParams The parameters, as returned by encodeParams.
+     * @return The text of the Sms.
+     * @throws IllegalArgumentException If the number of encoded values does not match the parameters.
+     */
+    public String render(String encodedParams) {
+        if (parameterNames.isEmpty()) {
+            if (!encodedParams.isEmpty()) throw new IllegalArgumentException("The template has no parameters");
+            return literals[0];
+        }
+        int[] starts = starts(encodedParams);
+
+        StringBuilder text = new StringBuilder(literalsLength + encodedParams.length());
+        text.append(literals[0]);
+        for (int i = 0; i < slots.length; i++) {
+            int parameter = slots[i];
+            text.append(encodedParams, starts[parameter], starts[parameter + 1] - 1);
+            text.append(literals[i + 1]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * @param encodedParams The parameters, as returned by encodeParams.
+     * @return The length of the text of the Sms, without rendering it.
+     * @throws IllegalArgumentException If the number of encoded values does not match the parameters.
+     */
+    public int renderedLength(String encodedParams) {
+        if (parameterNames.isEmpty()) {
+            if (!encodedParams.isEmpty()) throw new IllegalArgumentException("The template has no parameters");
+            return literalsLength;
+        }
+        int[] starts = starts(encodedParams);
+        int length = literalsLength;
+        for (int parameter : slots) {
+            length += starts[parameter + 1] - 1 - starts[parameter];
+        }
+        return length;
+    }
+
+    /**
+     * @return starts[i]: the index of the first character of value i, starts[count]: one past the end of the last value + 1.
+     */
+    private int[] starts(String encodedParams) {
+        int count = parameterNames.size();
+        int[] starts = new int[count + 1];
+        int found = 1;
+        for (int i = 0; i < encodedParams.length(); i++) {
+            if (encodedParams.charAt(i) == PARAM_SEPARATOR) {
+                if (found == count) throw new IllegalArgumentException("Expected " + count + " parameters");
+                starts[found++] = i + 1;
+            }
+        }
+        if (found != count) throw new IllegalArgumentException("Expected " + count + " parameters");
+        starts[count] = encodedParams.length() + 1;
+        return starts;
+    }
+}
@@ -0,0 +1,138 @@
+package org.example.notificationsystem.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel: holds items until their due time with O(1) inserts, whatever their number.
+ * <p>
+ * The first wheel has wheelSize buckets of tickMs each. An item due further than its span (tickMs * wheelSize) goes to
+ * an overflow wheel whose ticks are that whole span, and so on, so a few levels cover any delay. When the bucket of an
+ * upper wheel comes up its items cascade down into the finer wheels, until they are due.
+ * <p>
+ * Items are released at most one {@link #advance} call late (the caller's tick), never early. Not thread-safe.
+ */
+public final class HierarchicalTimingWheel<T> {
+
+    private final Level<T> root;
+    private int size = 0;
+
+    /**
+     * @param tickMs    The precision of the first wheel.
+     * @param wheelSize Buckets per wheel.
+     * @param startMs   The current time.
+     */
+    public HierarchicalTimingWheel(long tickMs, int wheelSize, long startMs) {
+        this.root = new Level<>(tickMs, wheelSize, startMs);
+    }
+
+    /**
+     * @param item  The item.
+     * @param dueMs When to release it.
+     * @return false if it is already due (not added, the caller releases it).
+     */
+    public boolean add(T item, long dueMs) {
+        if (dueMs <= root.currentTimeMs) return false;
+        root.add(new Entry<>(item, dueMs));
+        size++;
+        return true;
+    }
+
+    /**
+     * Moves the wheels to the time and releases every item due by then.
+     *
+     * @param nowMs   The current time.
+     * @param release Called with every due item, in no particular order.
+     */
+    public void advance(long nowMs, Consumer<T> release) {
+        if (nowMs < root.currentTimeMs) return;
+        for (Level<T> level = root; level != null; level = level.overflow) {
+            level.currentTimeMs = nowMs;
+        }
+        // From the top so that the cascaded items are checked by the finer wheels
+        List<Level<T>> levels = new ArrayList<>();
+        for (Level<T> level = root; level != null; level = level.overflow) levels.add(level);
+        for (int i = levels.size() - 1; i >= 0; i--) {
+            for (Entry<T> entry : levels.get(i).expireBuckets(nowMs)) {
+                if (entry.dueMs <= nowMs) {
+                    size--;
+                    release.accept(entry.item);
+                } else {
+                    root.add(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Items held.
+     */
+    public int size() {
+        return size;
+    }
+
+    private static final class Entry<T> {
+        private final T item;
+        private final long dueMs;
+
+        private Entry(T item, long dueMs) {
+            this.item = item;
+            this.dueMs = dueMs;
+        }
+    }
+
+    private static final class Level<T> {
+        private final long tickMs;
+        private final int wheelSize;
+        private final long spanMs;
+        private final List<List<Entry<T>>> buckets;
+        /**
+         * Start of the tick held by each bucket, -1 when empty.
+         */
+        private final long[] bucketStartMs;
+        private long currentTimeMs;
+        private Level<T> overflow;
+
+        private Level(long tickMs, int wheelSize, long currentTimeMs) {
+            this.tickMs = tickMs;
+            this.wheelSize = wheelSize;
+            this.spanMs = tickMs * wheelSize;
+            this.currentTimeMs = currentTimeMs;
+            this.buckets = new ArrayList<>(wheelSize);
+            this.bucketStartMs = new long[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets.add(new ArrayList<>());
+                bucketStartMs[i] = -1;
+            }
+        }
+
+        private void add(Entry<T> entry) {
+            long currentTickStart = currentTimeMs - currentTimeMs % tickMs;
+            if (entry.dueMs < currentTickStart + spanMs) {
+                long tick = entry.dueMs / tickMs;
+                int index = (int) (tick % wheelSize);
+                buckets.get(index).add(entry);
+                bucketStartMs[index] = tick * tickMs;
+            } else {
+                if (overflow == null) overflow = new Level<>(spanMs, wheelSize, currentTimeMs);
+                overflow.add(entry);
+            }
+        }
+
+        /**
+         * Empties the buckets whose tick has started.
+         */
+        private List<Entry<T>> expireBuckets(long nowMs) {
+            List<Entry<T>> expired = new ArrayList<>();
+            for (int i = 0; i < wheelSize; i++) {
+                if (bucketStartMs[i] >= 0 && bucketStartMs[i] <= nowMs) {
+                    expired.addAll(buckets.get(i));
+                    buckets.set(i, new ArrayList<>());
+                    bucketStartMs[i] = -1;
+                }
+            }
+            return expired;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.example.notificationsystem.utils;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Runs asynchronous tasks on an executor, one at a time per key and in submission order, any number of keys at once.
+ * <p>
+ * A task is done once the future it returns completes, only then does the next task of its key start. Keys without
+ * pending tasks take no memory.
+ */
+public final class KeyOrderedExecutor {
+
+    private final Executor executor;
+    private final Map<Object, Queue<Runnable>> lanes = new HashMap<>();
+
+    public KeyOrderedExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param key  Tasks of equal keys run one after the other.
+     * @param task Started on the executor once the previous tasks of the key are done.
+     * @return Completed with the outcome of the task.
+     */
+    public <T> CompletableFuture<T> submit(Object key, Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable run = () -> {
+            CompletableFuture<T> future;
+            try {
+                future = task.get();
+            } catch (Throwable e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            future.whenComplete((value, exception) -> {
+                // The next task of the key starts before the caller's stages run
+                next(key);
+                if (exception == null) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(exception);
+                }
+            });
+        };
+
+        boolean idle;
+        synchronized (lanes) {
+            Queue<Runnable> lane = lanes.get(key);
+            idle = lane == null;
+            if (idle) {
+                lanes.put(key, new ArrayDeque<>());
+            } else {
+                lane.add(run);
+            }
+        }
+        if (idle) {
+            try {
+                executor.execute(run);
+            } catch (RejectedExecutionException e) {
+                next(key);
+                throw e;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Number of keys with a running task.
+     */
+    public int activeKeys() {
+        synchronized (lanes) {
+            return lanes.size();
+        }
+    }
+
+    private void next(Object key) {
+        Runnable run;
+        synchronized (lanes) {
+            Queue<Runnable> lane = lanes.get(key);
+            run = lane.poll();
+            if (run == null) lanes.remove(key);
+        }
+        if (run == null) return;
+        try {
+            executor.execute(run);
+        } catch (RejectedExecutionException e) {
+            // Shutting down: the tasks already accepted still run, on the thread that completed the previous one
+            run.run();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.example.notificationsystem.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * The position after the last row of a page of Sms Requests, ordered by (createdAt, id).
+ * It is handed to clients as an opaque, URL safe token.
+ */
+@Getter
+@AllArgsConstructor
+public final class KeysetCursor {
+
+    /**
+     * The position before the first row.
+     */
+    public static final KeysetCursor START = new KeysetCursor(new Date(0), Long.MIN_VALUE);
+
+    private final Date createdAt;
+    private final Long id;
+
+    public String encode() {
+        String raw = createdAt.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param token A token returned by {@link #encode()}.
+     * @return The decoded cursor.
+     * @throws IllegalArgumentException If the token is not a valid cursor.
+     */
+    public static KeysetCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            if (separator < 0) throw new IllegalArgumentException("Invalid cursor");
+            return new KeysetCursor(new Date(Long.parseLong(raw.substring(0, separator))), Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException and invalid base64 included
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
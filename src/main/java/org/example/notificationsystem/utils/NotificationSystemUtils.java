@@ -1,23 +1,13 @@
 package org.example.notificationsystem.utils;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.example.notificationsystem.constants.ThirdPartyApiResponseCode;
 import org.example.notificationsystem.dto.request.ElasticSearchRequest;
-import org.example.notificationsystem.dto.request.ThirdPartySmsApiRequest;
 import org.example.notificationsystem.models.SmsRequest;
 import org.example.notificationsystem.models.SmsRequestElasticsearch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
@@ -33,7 +23,8 @@ import static org.example.notificationsystem.constants.Time.*;
  * <ul>
  *   <li><b>boolean isValidPageRequest(ElasticSearchRequest query)</b>: Is the ElasticSearchRequest query a pagination query?</li>
  *   <li><b>SmsRequestElasticsearch getSmsRequestElasticsearchFromSmsRequest(SmsRequest smsRequest)</b>: Used to create the SmsRequestElasticSearch object from the SmsRequest object for insertion into the index.</li>
- *   <li><b>ThirdPartyApiResponseCode send2ThirdPartyApi(List<ThirdPartySmsApiRequest> req)</b>: Handles the third party api request and if any error occurred, returns the type of the error.</li>
+ *   <li><b>void afterCommit(Runnable action)</b>: Runs an action once the current transaction commits.</li>
+ *   <li><b>void afterRollback(Runnable action)</b>: Runs an action if the current transaction does not commit.</li>
  *   <li><b>Date getNowAsDateIST()</b>: The current Time as IST.
  *   <li><b>Date parseIstToUtcDate(String dateString)</b>: Convert the readable IST strings in ElasticSearchRequest to a Date object which can be used to filter the ElasticSearch query.
  *   <li><b>String DateToElasticSearchTimestamp(Date date)</b>: Convert a Date to the String representation of the Date as stored in ElasticSearch (basic_date_time).</li>
@@ -44,8 +35,6 @@ import static org.example.notificationsystem.constants.Time.*;
  */
 public final class NotificationSystemUtils {
 
-    private static final String thirdPartyApiUrl = "https://notification.free.beeceptor.com/resources/v1/messaging";
-
     private static final Logger logger = LoggerFactory.getLogger(NotificationSystemUtils.class);
 
     /**
@@ -63,7 +52,8 @@ public final class NotificationSystemUtils {
     }
 
     /**
-     * Converts a SmsRequest to a SmsRequestElasticsearch for indexing.
+     * Converts a SmsRequest to a SmsRequestElasticsearch for indexing. A templated SmsRequest is indexed with its
+     * template id and parameters only, its text is rendered when it is read back.
      *
      * @param smsRequest the SmsRequest to convert
      * @return SmsRequestElasticsearch representation of the given SmsRequest
@@ -74,97 +64,44 @@ public final class NotificationSystemUtils {
         smsRequestElasticsearch.setUpdatedAt(smsRequest.getUpdatedAt());
         smsRequestElasticsearch.setPhoneNumber(smsRequest.getPhoneNumber());
         smsRequestElasticsearch.setMessage(smsRequest.getMessage());
+        smsRequestElasticsearch.setTemplateId(smsRequest.getTemplateId() == null ? null : smsRequest.getTemplateId().toString());
+        smsRequestElasticsearch.setTemplateParams(smsRequest.getTemplateParams());
         smsRequestElasticsearch.setSmsRequestId(smsRequest.getId().toString());
         return smsRequestElasticsearch;
     }
 
     /**
-     * Sends a request to the third party API and returns the corresponding response code.
+     * Runs the action once the current transaction commits, or right away without a transaction.
      *
-     * @param req list of ThirdPartySmsApiRequest objects to send
-     * @return ThirdPartyApiResponseCode indicating the outcome of the API call
+     * @param action the action to run
      */
-    public static ThirdPartyApiResponseCode send2ThirdPartyApi(List<ThirdPartySmsApiRequest> req) {
-        ObjectMapper objectMapper = new ObjectMapper();
-        String requestBody = "";
-        try {
-            requestBody = objectMapper.writeValueAsString(req);
-        } catch (JsonProcessingException e) {
-            logger.error("Error serializing request body", e);
-            return ThirdPartyApiResponseCode.INVALID_REQUEST_BODY;
+    public static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
         }
-        logger.info("Request Body: {}", requestBody);
-
-        HttpURLConnection connection = null;
-
-        try {
-            logger.info("Sending request to ThirdParty URL: {}", thirdPartyApiUrl);
-            URL url = new URL(thirdPartyApiUrl);
-            connection = (HttpURLConnection) url.openConnection();
-
-            connection.setRequestMethod("POST");
-            connection.setRequestProperty("Content-Type", "application/json");
-            connection.setRequestProperty("Accept", "application/json");
-            connection.setDoOutput(true);
-            connection.setConnectTimeout(5000);
-            connection.setReadTimeout(5000);
-
-            try {
-                OutputStream os = connection.getOutputStream();
-                byte[] input = requestBody.getBytes(StandardCharsets.UTF_8);
-                os.write(input, 0, input.length);
-            } catch (IOException e) {
-                logger.error("Error serializing request body", e);
-                return ThirdPartyApiResponseCode.INVALID_REQUEST_BODY;
-            }
-
-            int responseCode = connection.getResponseCode();
-            logger.info("Response Code: {}", responseCode);
-
-            StringBuilder response = getStringBuilder(responseCode, connection);
-
-            logger.info("Response Body: {}", response.toString());
-            if (responseCode == 200) {
-                logger.info("Successfully sent request to ThirdParty API");
-                return ThirdPartyApiResponseCode.SUCCESS;
-            } else {
-                logger.error("Request Failed. Received non 200 Response Code: {}", responseCode);
-                return ThirdPartyApiResponseCode.API_ERROR;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
             }
-        } catch (MalformedURLException e) {
-            logger.error("Error building URL. Malformed URL.", e);
-            return ThirdPartyApiResponseCode.MALFORMED_URL;
-        } catch (java.net.SocketTimeoutException e) {
-            logger.error("Timeout in sending request to third party api.", e);
-            return ThirdPartyApiResponseCode.TIMEOUT;
-        } catch (IOException e) {
-            return ThirdPartyApiResponseCode.API_ERROR;
-        }
+        });
     }
 
     /**
-     * Reads the response from the connection and returns it as a StringBuilder.
-     * Handles whether to read from the error stream or input stream based on the responseCode
+     * Runs the action once the current transaction is over if it did not commit (rolled back, or its commit failed).
+     * Without a transaction there is nothing to roll back, the action is never run.
      *
-     * @param responseCode the HTTP response code
-     * @param connection   the HttpURLConnection to read from
-     * @return StringBuilder containing the response
-     * @throws IOException if an I/O error occurs
+     * @param action the action to run
      */
-    private static StringBuilder getStringBuilder(int responseCode, HttpURLConnection connection) throws IOException {
-        BufferedReader br = null;
-        if (100 <= responseCode && responseCode <= 399) {
-            br = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-        } else {
-            br = new BufferedReader(new InputStreamReader(connection.getErrorStream()));
-        }
-
-        StringBuilder response = new StringBuilder();
-        String strCurrentLine;
-        while ((strCurrentLine = br.readLine()) != null) {
-            response.append(strCurrentLine);
-        }
-        return response;
+    public static void afterRollback(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) action.run();
+            }
+        });
     }
 
     /**
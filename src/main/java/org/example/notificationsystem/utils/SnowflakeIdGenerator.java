@@ -0,0 +1,138 @@
+package org.example.notificationsystem.utils;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generates time-ordered, unique 64-bit ids without any database round trip.
+ * <p>
+ * Layout of an id (most significant bit first):
+ * <ul>
+ *     <li><b>1 bit</b>: Always 0, so that ids are positive.</li>
+ *     <li><b>41 bits</b>: Milliseconds since {@link #EPOCH} (about 69 years).</li>
+ *     <li><b>10 bits</b>: The node id. Every node hands out ids from its own disjoint block.</li>
+ *     <li><b>12 bits</b>: A per millisecond sequence (4096 ids per millisecond per node).</li>
+ * </ul>
+ * Ids of a node are strictly increasing. Ids of different nodes are ordered by time up to clock skew, which keeps
+ * inserts at the right edge of the primary key index and the created_at / id orders close to each other.
+ * <p>
+ * If the clock goes backwards, or a millisecond runs out of sequence numbers, the generator keeps counting on its
+ * last timestamp (borrowing from the next millisecond) instead of blocking, so ids never repeat and never decrease.
+ */
+public final class SnowflakeIdGenerator {
+
+    /**
+     * 2025-01-01T00:00:00Z.
+     */
+    public static final long EPOCH = Instant.parse("2025-01-01T00:00:00Z").toEpochMilli();
+
+    public static final int NODE_ID_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODE_ID = (1 << NODE_ID_BITS) - 1;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+    /**
+     * One generator per node id in this JVM, so that every user of a node id shares the same sequence.
+     */
+    private static final Map<Integer, SnowflakeIdGenerator> generators = new ConcurrentHashMap<>();
+
+    private final long nodeId;
+    private long lastTimestamp = -1L;
+    private long sequence = 0L;
+
+    private SnowflakeIdGenerator(int nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * Returns the generator of a node id.
+     *
+     * @param nodeId The node id, between 0 and {@link #MAX_NODE_ID}. Must be unique across the running nodes.
+     * @return The {@link SnowflakeIdGenerator} of that node id.
+     */
+    public static SnowflakeIdGenerator forNode(int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + ", got " + nodeId);
+        }
+        return generators.computeIfAbsent(nodeId, SnowflakeIdGenerator::new);
+    }
+
+    /**
+     * Returns the generator of the configured node id. An unset node id is 0, which is only safe on a single node:
+     * two nodes left on it would generate the same ids, so a multi-node deployment refuses to start without one.
+     *
+     * @param nodeId    The configured node id, null or blank if unset.
+     * @param multiNode Whether the deployment runs several nodes.
+     * @return The {@link SnowflakeIdGenerator} of that node id.
+     * @throws IllegalStateException If the node id is unset in a multi-node deployment.
+     */
+    public static SnowflakeIdGenerator forConfiguredNode(String nodeId, boolean multiNode) {
+        if (nodeId == null || nodeId.trim().isEmpty()) {
+            if (multiNode) {
+                throw new IllegalStateException("The node id (SMS_NODE_ID) must be set, and unique per node, in a multi-node deployment");
+            }
+            return forNode(0);
+        }
+        return forNode(Integer.parseInt(nodeId.trim()));
+    }
+
+    /**
+     * @return The next id.
+     */
+    public synchronized long nextId() {
+        advance();
+        return compose(lastTimestamp, sequence);
+    }
+
+    /**
+     * Reserves the ids of a whole batch with a single lock acquisition.
+     *
+     * @param count The number of ids.
+     * @return count strictly increasing ids.
+     */
+    public long[] nextIds(int count) {
+        long[] ids = new long[count];
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                advance();
+                ids[i] = compose(lastTimestamp, sequence);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @param id An id generated by any node.
+     * @return The time the id was generated at, in epoch milliseconds.
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_ID_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+
+    /**
+     * @param id An id generated by any node.
+     * @return The node id that generated the id.
+     */
+    public static int nodeOf(long id) {
+        return (int) ((id >>> SEQUENCE_BITS) & MAX_NODE_ID);
+    }
+
+    private void advance() {
+        long now = System.currentTimeMillis() - EPOCH;
+        if (now > lastTimestamp) {
+            lastTimestamp = now;
+            sequence = 0;
+        } else if (sequence < MAX_SEQUENCE) {
+            sequence++;
+        } else {
+            // Sequence exhausted (or clock went backwards): move on to the next millisecond.
+            lastTimestamp++;
+            sequence = 0;
+        }
+    }
+
+    private long compose(long timestamp, long sequence) {
+        return (timestamp << (NODE_ID_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+    }
+}
@@ -0,0 +1,93 @@
+package org.example.notificationsystem.utils;
+
+/**
+ * A thread-safe token bucket.
+ * Tokens are refilled continuously at a rate of permits per second, up to the capacity (the allowed burst).
+ * The rate can be changed at any time, which is what the adaptive limiters build on.
+ */
+public final class TokenBucket {
+
+    private double ratePerSecond;
+    private double capacity;
+    private double tokens;
+    private long lastRefillNanos;
+    private long lastUsedNanos;
+
+    /**
+     * @param ratePerSecond The refill rate (permits per second).
+     * @param capacity      The maximum number of tokens (the burst). The bucket starts full.
+     */
+    public TokenBucket(double ratePerSecond, double capacity) {
+        this.ratePerSecond = ratePerSecond;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+        this.lastUsedNanos = lastRefillNanos;
+    }
+
+    /**
+     * Takes permits if they are all available.
+     *
+     * @param permits The number of permits to take.
+     * @return 0 if the permits were taken, otherwise the (estimated) nanoseconds until they will be available.
+     */
+    public synchronized long tryAcquire(int permits) {
+        refill();
+        lastUsedNanos = System.nanoTime();
+        // A request larger than the burst is let through on a full bucket and leaves it in debt,
+        // otherwise it could never be admitted.
+        if (tokens >= permits || (permits > capacity && tokens >= capacity)) {
+            tokens -= permits;
+            return 0;
+        }
+        if (ratePerSecond <= 0) return Long.MAX_VALUE;
+        double missing = Math.min(permits, capacity) - tokens;
+        return Math.max(1, (long) Math.ceil(missing / ratePerSecond * 1_000_000_000L));
+    }
+
+    /**
+     * Gives back permits taken by tryAcquire, ex: when a request admitted by this bucket was rejected by another one.
+     *
+     * @param permits The number of permits to give back.
+     */
+    public synchronized void release(int permits) {
+        refill();
+        tokens = Math.min(capacity, tokens + permits);
+    }
+
+    /**
+     * Changes the refill rate, keeping the tokens already accumulated.
+     *
+     * @param ratePerSecond The new refill rate (permits per second).
+     */
+    public synchronized void setRate(double ratePerSecond) {
+        refill();
+        this.ratePerSecond = ratePerSecond;
+    }
+
+    public synchronized double getRate() {
+        return ratePerSecond;
+    }
+
+    public synchronized double getCapacity() {
+        return capacity;
+    }
+
+    public synchronized double getAvailableTokens() {
+        refill();
+        return tokens;
+    }
+
+    /**
+     * @return The System.nanoTime() at which permits were last asked for.
+     */
+    public synchronized long getLastUsedNanos() {
+        return lastUsedNanos;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) / 1_000_000_000.0 * ratePerSecond);
+        lastRefillNanos = now;
+    }
+}
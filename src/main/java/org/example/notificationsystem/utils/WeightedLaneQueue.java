@@ -0,0 +1,89 @@
+package org.example.notificationsystem.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.Predicate;
+
+/**
+ * A FIFO queue per lane, drained by smooth weighted round robin: while every lane has items waiting, a lane of weight w
+ * gets w of every (sum of the weights) items, interleaved instead of in bursts. Empty lanes are skipped, so a lane
+ * alone gets everything and a lane of weight 1 is never starved. Not thread-safe.
+ */
+public final class WeightedLaneQueue<L, T> {
+
+    private final Map<L, Lane<T>> lanes = new LinkedHashMap<>();
+    private int size = 0;
+
+    /**
+     * @param weights The weight (at least 1) of every lane, in the order ties are broken.
+     */
+    public WeightedLaneQueue(Map<L, Integer> weights) {
+        weights.forEach((lane, weight) -> lanes.put(lane, new Lane<>(Math.max(1, weight))));
+    }
+
+    public void add(L lane, T item) {
+        Lane<T> queue = lanes.get(lane);
+        if (queue == null) throw new IllegalArgumentException("Unknown lane " + lane);
+        queue.items.add(item);
+        size++;
+    }
+
+    /**
+     * @return The next item, or null if every lane is empty.
+     */
+    public T poll() {
+        Lane<T> selected = null;
+        int totalWeight = 0;
+        for (Lane<T> lane : lanes.values()) {
+            if (lane.items.isEmpty()) continue;
+            lane.current += lane.weight;
+            totalWeight += lane.weight;
+            if (selected == null || lane.current > selected.current) selected = lane;
+        }
+        if (selected == null) return null;
+        selected.current -= totalWeight;
+        size--;
+        T item = selected.items.poll();
+        // An emptied lane starts over, instead of keeping credit (or debt) from a past backlog
+        if (selected.items.isEmpty()) selected.current = 0;
+        return item;
+    }
+
+    /**
+     * Removes the items matching the filter from every lane, keeping the order of the others.
+     *
+     * @return The removed items.
+     */
+    public List<T> removeIf(Predicate<? super T> filter) {
+        List<T> removed = new ArrayList<>();
+        for (Lane<T> lane : lanes.values()) {
+            lane.items.removeIf(item -> filter.test(item) && removed.add(item));
+            if (lane.items.isEmpty()) lane.current = 0;
+        }
+        size -= removed.size();
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int size(L lane) {
+        Lane<T> queue = lanes.get(lane);
+        return queue == null ? 0 : queue.items.size();
+    }
+
+    private static final class Lane<T> {
+        private final int weight;
+        private final Queue<T> items = new ArrayDeque<>();
+        private int current = 0;
+
+        private Lane(int weight) {
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.example.notificationsystem;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.notificationsystem.constants.PriorityConstants;
+import org.example.notificationsystem.kafka.ConsumerLagMonitor;
+import org.example.notificationsystem.kafka.PriorityLanes;
+import org.example.notificationsystem.kafka.Producer;
+import org.example.notificationsystem.models.AdmissionDecision;
+import org.example.notificationsystem.services.impl.AdmissionControlServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AdmissionControlServiceImplTest {
+
+    @Mock
+    private ConsumerLagMonitor consumerLagMonitor;
+
+    @Mock
+    private Producer producer;
+
+    private AdmissionControlServiceImpl admissionControlService;
+
+    @BeforeEach
+    void setUp() {
+        admissionControlService = new AdmissionControlServiceImpl(consumerLagMonitor, producer, new PriorityLanes("sms", true, 8, 3, 1), new SimpleMeterRegistry(), 1000, 1000);
+        ReflectionTestUtils.setField(admissionControlService, "enabled", true);
+        ReflectionTestUtils.setField(admissionControlService, "clientRate", 1.0);
+        ReflectionTestUtils.setField(admissionControlService, "clientBurst", 2.0);
+        ReflectionTestUtils.setField(admissionControlService, "maxTrackedClients", 100);
+        ReflectionTestUtils.setField(admissionControlService, "globalMinRate", 100.0);
+        ReflectionTestUtils.setField(admissionControlService, "globalMaxRate", 1000.0);
+        ReflectionTestUtils.setField(admissionControlService, "globalIncrease", 100.0);
+        ReflectionTestUtils.setField(admissionControlService, "globalDecreaseFactor", 0.5);
+        ReflectionTestUtils.setField(admissionControlService, "lagHighWatermark", 1000L);
+        ReflectionTestUtils.setField(admissionControlService, "lagLowWatermark", 100L);
+        ReflectionTestUtils.setField(admissionControlService, "bufferHighWatermark", 0.8);
+        ReflectionTestUtils.setField(admissionControlService, "bufferLowWatermark", 0.5);
+    }
+
+    @Test
+    void testClientOverBurstIsRejectedWithRetryAfter() {
+        assertTrue(admissionControlService.tryAdmit("client-a", PriorityConstants.NORMAL, 1).isAdmitted());
+        assertTrue(admissionControlService.tryAdmit("client-a", PriorityConstants.NORMAL, 1).isAdmitted());
+
+        AdmissionDecision decision = admissionControlService.tryAdmit("client-a", PriorityConstants.NORMAL, 1);
+        assertFalse(decision.isAdmitted());
+        assertTrue(decision.getRetryAfterSeconds() >= 1);
+
+        // Other clients have their own bucket
+        assertTrue(admissionControlService.tryAdmit("client-b", PriorityConstants.NORMAL, 1).isAdmitted());
+    }
+
+    @Test
+    void testGlobalRateBacksOffOnLagAndRecovers() {
+        when(consumerLagMonitor.getLag(anyString())).thenReturn(0L);
+        when(consumerLagMonitor.getLag("sms")).thenReturn(5000L, 5000L, 0L);
+        when(producer.getBufferUtilization()).thenReturn(0.1);
+
+        admissionControlService.adapt();
+        admissionControlService.adapt();
+        assertEquals(250.0, laneRate(PriorityConstants.NORMAL));
+
+        admissionControlService.adapt();
+        assertEquals(350.0, laneRate(PriorityConstants.NORMAL));
+    }
+
+    @Test
+    void testBulkBacklogOnlySlowsDownTheBulkLane() {
+        when(consumerLagMonitor.getLag(anyString())).thenReturn(0L);
+        when(consumerLagMonitor.getLag("sms-bulk")).thenReturn(5000L);
+        when(producer.getBufferUtilization()).thenReturn(0.1);
+
+        admissionControlService.adapt();
+
+        assertEquals(500.0, laneRate(PriorityConstants.BULK));
+        assertEquals(1000.0, laneRate(PriorityConstants.HIGH));
+        assertEquals(1000.0, laneRate(PriorityConstants.NORMAL));
+    }
+
+    @Test
+    void testBatchIsAdmittedAllOrNothingAcrossLanes() {
+        ReflectionTestUtils.setField(admissionControlService, "clientBurst", 5000.0);
+        assertTrue(admissionControlService.tryAdmit("client-a", PriorityConstants.BULK, 600).isAdmitted());
+        Map<PriorityConstants, Integer> permitsByLane = new EnumMap<>(PriorityConstants.class);
+        permitsByLane.put(PriorityConstants.HIGH, 10);
+        permitsByLane.put(PriorityConstants.BULK, 600);
+
+        assertFalse(admissionControlService.tryAdmit("client-a", permitsByLane).isAdmitted());
+
+        // The HIGH permits taken before the BULK lane rejected the batch were given back
+        assertTrue(availableTokens(PriorityConstants.HIGH) > 999.0);
+    }
+
+    @Test
+    void testLaneRejectionGivesTheClientPermitsBack() {
+        assertTrue(admissionControlService.tryAdmit("client-a", PriorityConstants.BULK, 1).isAdmitted());
+        ReflectionTestUtils.setField(admissionControlService, "clientBurst", 2000.0);
+        assertTrue(admissionControlService.tryAdmit("client-b", PriorityConstants.BULK, 999).isAdmitted());
+
+        // The BULK lane is empty: client-a's permit is given back, so it can still send on another lane
+        assertFalse(admissionControlService.tryAdmit("client-a", PriorityConstants.BULK, 1).isAdmitted());
+        assertTrue(admissionControlService.tryAdmit("client-a", PriorityConstants.HIGH, 1).isAdmitted());
+    }
+
+    @Test
+    void testClientsPastTheCapShareOneBucket() {
+        ReflectionTestUtils.setField(admissionControlService, "maxTrackedClients", 1);
+        assertTrue(admissionControlService.tryAdmit("client-a", PriorityConstants.NORMAL, 1).isAdmitted());
+        assertTrue(admissionControlService.tryAdmit("client-b", PriorityConstants.NORMAL, 2).isAdmitted());
+
+        // client-c is not tracked either: it shares client-b's (empty) overflow bucket
+        assertFalse(admissionControlService.tryAdmit("client-c", PriorityConstants.NORMAL, 1).isAdmitted());
+        assertEquals(2, ((Map<?, ?>) admissionControlService.getState().get("clients")).get("tracked"));
+    }
+
+    private double laneRate(PriorityConstants lane) {
+        return (Double) laneState(lane).get("ratePerSecond");
+    }
+
+    private double availableTokens(PriorityConstants lane) {
+        return (Double) laneState(lane).get("availableTokens");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> laneState(PriorityConstants lane) {
+        Map<String, Object> global = (Map<String, Object>) admissionControlService.getState().get("global");
+        return (Map<String, Object>) global.get(lane.name());
+    }
+}
@@ -0,0 +1,90 @@
+package org.example.notificationsystem;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.example.notificationsystem.constants.FailureCodeConstants;
+import org.example.notificationsystem.constants.StatusConstants;
+import org.example.notificationsystem.kafka.BatchConsumer;
+import org.example.notificationsystem.kafka.SmsMessagePayload;
+import org.example.notificationsystem.kafka.SmsRequestProcessor;
+import org.example.notificationsystem.models.StatusTransition;
+import org.example.notificationsystem.services.impl.BlacklistServiceImpl;
+import org.example.notificationsystem.services.impl.SmsServiceImpl;
+import org.example.notificationsystem.services.impl.StatusWriteServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anySet;
+
+@ExtendWith(MockitoExtension.class)
+class BatchConsumerTest {
+
+    @Mock
+    private BlacklistServiceImpl blacklistServiceImpl;
+
+    @Mock
+    private SmsServiceImpl smsServiceImpl;
+
+    @Mock
+    private SmsRequestProcessor smsRequestProcessor;
+
+    @Mock
+    private StatusWriteServiceImpl statusWriteServiceImpl;
+
+    @Mock
+    private Acknowledgment acknowledgment;
+
+    private BatchConsumer batchConsumer;
+    private final SmsMessagePayload payload = SmsMessagePayload.builder().id(7L).phoneNumber("+911111111111").message("Hello").build();
+    private final List<ConsumerRecord<Long, SmsMessagePayload>> records = Collections.singletonList(new ConsumerRecord<>("sms", 0, 42L, 7L, payload));
+
+    @BeforeEach
+    void setUp() {
+        batchConsumer = new BatchConsumer(blacklistServiceImpl, smsServiceImpl, smsRequestProcessor, statusWriteServiceImpl);
+    }
+
+    @Test
+    void parksTheRecordsNotSentWhenTheBlacklistIsUnavailable() {
+        Mockito.when(blacklistServiceImpl.areNumbersBlacklisted(anySet())).thenThrow(new RedisConnectionFailureException("Redis is away"));
+        Mockito.when(smsRequestProcessor.park(payload, false)).thenReturn(CompletableFuture.completedFuture(true));
+
+        batchConsumer.consume(records, acknowledgment);
+
+        Mockito.verify(acknowledgment).acknowledge();
+    }
+
+    @Test
+    void parksTheSentRecordsWhoseStatusIsNotWritten() {
+        StatusTransition sent = StatusTransition.fromInProgress(7L, StatusConstants.FINISHED, FailureCodeConstants.SUCCESS, "No Failure.");
+        Mockito.when(blacklistServiceImpl.areNumbersBlacklisted(anySet())).thenReturn(Collections.singletonMap(payload.getPhoneNumber(), false));
+        Mockito.when(smsRequestProcessor.dispatch(payload)).thenReturn(CompletableFuture.completedFuture(sent));
+        Mockito.doThrow(new QueryTimeoutException("MySQL is away")).when(smsServiceImpl).applyTransitions(anyList());
+        Mockito.when(smsRequestProcessor.park(payload, true)).thenReturn(CompletableFuture.completedFuture(true));
+
+        batchConsumer.consume(records, acknowledgment);
+
+        Mockito.verify(acknowledgment).acknowledge();
+    }
+
+    @Test
+    void leavesTheBatchUnacknowledgedWhenItCannotBeParked() {
+        Mockito.when(blacklistServiceImpl.areNumbersBlacklisted(anySet())).thenThrow(new RedisConnectionFailureException("Redis is away"));
+        Mockito.when(smsRequestProcessor.park(payload, false)).thenReturn(CompletableFuture.completedFuture(false));
+
+        assertThrows(RedisConnectionFailureException.class, () -> batchConsumer.consume(records, acknowledgment));
+
+        Mockito.verifyNoInteractions(acknowledgment);
+    }
+}
@@ -1,21 +1,30 @@
 package org.example.notificationsystem;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.example.notificationsystem.constants.RedisConstants;
 import org.example.notificationsystem.services.impl.BlacklistServiceImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.ValueOperations;
 
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -25,8 +34,9 @@ class BlacklistServiceImplTest {
     private RedisTemplate<String, String> redisTemplate;
     @Mock
     private SetOperations<String, String> setOperations;
+    @Mock
+    private ValueOperations<String, String> valueOperations;
 
-    @InjectMocks
     private BlacklistServiceImpl blacklistService;
 
 
@@ -34,6 +44,7 @@ class BlacklistServiceImplTest {
 
     @BeforeEach
     void setUp() {
+        blacklistService = new BlacklistServiceImpl(redisTemplate, new SimpleMeterRegistry(), true);
         numbers = new String[]{
                 "+911111111111",
                 "+911111111112",
@@ -46,6 +57,19 @@ class BlacklistServiceImplTest {
                 "+911111111119"};
     }
 
+    @Test
+    void areNumbersBlacklisted() {
+        // Mocking (one pipelined result per distinct number, in order)
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenReturn(Arrays.asList(true, false, null));
+
+        Map<String, Boolean> result = blacklistService.areNumbersBlacklisted(Arrays.asList(numbers[0], numbers[1], numbers[0], numbers[2]));
+        assertEquals(3, result.size());
+        assertTrue(result.get(numbers[0]));
+        assertFalse(result.get(numbers[1]));
+        // No answer from Redis counts as blacklisted
+        assertTrue(result.get(numbers[2]));
+    }
+
     @Test
     void addNumbersToBlacklist() {
         // Mocking
@@ -99,4 +123,92 @@ class BlacklistServiceImplTest {
         result = blacklistService.isNumberBlacklisted("+911111111112");
         assertFalse(result);
     }
+
+    @Test
+    void answersFromTheMirrorOnceLoaded() {
+        // Mocking
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(redisTemplate.opsForSet()).thenReturn(setOperations);
+        when(valueOperations.get(RedisConstants.blacklist_version_key)).thenReturn("3");
+        when(setOperations.members(RedisConstants.blacklisted_key)).thenReturn(new HashSet<>(Arrays.asList(numbers[0])));
+
+        blacklistService.resync();
+        assertTrue(blacklistService.isNumberBlacklisted(numbers[0]));
+        // Missing from the mirror: not blacklisted, without asking Redis
+        assertFalse(blacklistService.isNumberBlacklisted(numbers[1]));
+        Map<String, Boolean> result = blacklistService.areNumbersBlacklisted(Arrays.asList(numbers[0], numbers[1]));
+        assertTrue(result.get(numbers[0]));
+        assertFalse(result.get(numbers[1]));
+        verify(setOperations, never()).isMember(any(), any());
+        verify(redisTemplate, never()).executePipelined(any(SessionCallback.class));
+
+        // Same version: nothing to load
+        blacklistService.resync();
+        verify(setOperations, times(1)).members(RedisConstants.blacklisted_key);
+    }
+
+    @Test
+    void appliesTheChangesAndLoadsAgainWhenOneWasMissed() {
+        // Mocking
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(redisTemplate.opsForSet()).thenReturn(setOperations);
+        when(valueOperations.get(RedisConstants.blacklist_version_key)).thenReturn("3", "4", "6");
+        when(setOperations.members(RedisConstants.blacklisted_key)).thenReturn(new HashSet<>(Arrays.asList(numbers[0])),
+                new HashSet<>(Arrays.asList(numbers[1], numbers[2])));
+        blacklistService.resync();
+
+        // Changed through another node: applied, and the mirror follows the version
+        blacklistService.onChange(BlacklistServiceImpl.ADDED + "4:" + numbers[1] + "," + numbers[2]);
+        blacklistService.onChange(BlacklistServiceImpl.REMOVED + "4:" + numbers[0]);
+        assertFalse(blacklistService.isNumberBlacklisted(numbers[0]));
+        assertTrue(blacklistService.isNumberBlacklisted(numbers[1]));
+        blacklistService.resync();
+        verify(setOperations, times(1)).members(RedisConstants.blacklisted_key);
+
+        // The change of version 5 was missed: loaded again
+        blacklistService.onChange(BlacklistServiceImpl.ADDED + "6:" + numbers[3]);
+        blacklistService.resync();
+        verify(setOperations, times(2)).members(RedisConstants.blacklisted_key);
+        assertTrue(blacklistService.isNumberBlacklisted(numbers[2]));
+        assertFalse(blacklistService.isNumberBlacklisted(numbers[3]));
+    }
+
+    @Test
+    void changesMadeDuringALoadAreAppliedOnTopOfIt() {
+        // Mocking
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(redisTemplate.opsForSet()).thenReturn(setOperations);
+        when(setOperations.members(RedisConstants.blacklisted_key)).thenAnswer(invocation -> {
+            blacklistService.onChange(BlacklistServiceImpl.ADDED + "1:" + numbers[1]);
+            return new HashSet<>(Arrays.asList(numbers[0]));
+        });
+
+        blacklistService.resync();
+        assertTrue(blacklistService.isNumberBlacklisted(numbers[0]));
+        assertTrue(blacklistService.isNumberBlacklisted(numbers[1]));
+    }
+
+    @Test
+    void changesMadeOnThisNodeArePublishedWithTheirVersion() {
+        // Mocking
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(redisTemplate.opsForSet()).thenReturn(setOperations);
+        when(setOperations.members(RedisConstants.blacklisted_key)).thenReturn(new HashSet<>());
+        when(valueOperations.increment(RedisConstants.blacklist_version_key)).thenReturn(1L);
+        blacklistService.resync();
+
+        blacklistService.addNumbersToBlacklist(new String[]{numbers[0]});
+        assertTrue(blacklistService.isNumberBlacklisted(numbers[0]));
+        verify(redisTemplate).convertAndSend(eq(RedisConstants.blacklist_changes_channel), eq(BlacklistServiceImpl.ADDED + "1:" + numbers[0]));
+    }
+
+    @Test
+    void noAnswerFromRedisCountsAsBlacklisted() {
+        // Mocking
+        when(redisTemplate.opsForSet()).thenReturn(setOperations);
+        when(setOperations.isMember(RedisConstants.blacklisted_key, numbers[0])).thenReturn(null, false);
+
+        assertTrue(blacklistService.isNumberBlacklisted(numbers[0]));
+        assertFalse(blacklistService.isNumberBlacklisted(numbers[0]));
+    }
 }
@@ -0,0 +1,55 @@
+package org.example.notificationsystem;
+
+import org.example.notificationsystem.utils.CompiledTemplate;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledTemplateTest {
+
+    @Test
+    void rendersTheEncodedParams() {
+        CompiledTemplate template = CompiledTemplate.compile("Hi {{ name }}, your OTP is {{otp}}. Not you, {{name}}? Call us.");
+        assertEquals(Arrays.asList("name", "otp"), template.getParameterNames());
+
+        Map<String, String> params = new HashMap<>();
+        params.put("otp", "1234");
+        params.put("name", "Asha");
+        String encoded = template.encodeParams(params);
+        assertEquals("Asha" + CompiledTemplate.PARAM_SEPARATOR + "1234", encoded);
+        assertEquals("Hi Asha, your OTP is 1234. Not you, Asha? Call us.", template.render(encoded));
+        assertEquals(template.render(encoded).length(), template.renderedLength(encoded));
+    }
+
+    @Test
+    void rendersEmptyParamsAndNoParams() {
+        CompiledTemplate template = CompiledTemplate.compile("{{a}}{{b}}!");
+        assertEquals("!", template.render(CompiledTemplate.PARAM_SEPARATOR + ""));
+        assertEquals(1, template.renderedLength(CompiledTemplate.PARAM_SEPARATOR + ""));
+
+        CompiledTemplate plain = CompiledTemplate.compile("Your order has shipped");
+        assertEquals("", plain.encodeParams(null));
+        assertEquals("Your order has shipped", plain.render(""));
+    }
+
+    @Test
+    void rejectsParamsNotMatchingTheTemplate() {
+        CompiledTemplate template = CompiledTemplate.compile("Your OTP is {{otp}}");
+        assertThrows(IllegalArgumentException.class, () -> template.encodeParams(Collections.emptyMap()));
+        assertThrows(IllegalArgumentException.class, () -> template.encodeParams(Collections.singletonMap("pin", "1")));
+        assertThrows(IllegalArgumentException.class, () -> template.encodeParams(Collections.singletonMap("otp", "1" + CompiledTemplate.PARAM_SEPARATOR)));
+        assertThrows(IllegalArgumentException.class, () -> template.render("1" + CompiledTemplate.PARAM_SEPARATOR + "2"));
+    }
+
+    @Test
+    void rejectsInvalidTemplates() {
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("Your OTP is {{otp"));
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("Your OTP is {{}}"));
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("Your OTP is {{o tp}}"));
+    }
+}
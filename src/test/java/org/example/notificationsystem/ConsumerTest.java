@@ -0,0 +1,90 @@
+package org.example.notificationsystem;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.example.notificationsystem.kafka.Consumer;
+import org.example.notificationsystem.kafka.SmsMessagePayload;
+import org.example.notificationsystem.kafka.SmsRecordHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+
+@ExtendWith(MockitoExtension.class)
+class ConsumerTest {
+
+    @Mock
+    private SmsRecordHandler smsRecordHandler;
+
+    @Mock
+    private ScheduledExecutorService throttledRecordExecutor;
+
+    @Mock
+    private ConsumerSeekAware.ConsumerSeekCallback seekCallback;
+
+    @Mock
+    private Acknowledgment acknowledgment;
+
+    private Consumer consumer;
+    private final SmsMessagePayload payload = SmsMessagePayload.builder().id(7L).phoneNumber("+911111111111").message("Hello").build();
+    private final ConsumerRecord<Long, SmsMessagePayload> record = new ConsumerRecord<>("sms", 0, 42L, 7L, payload);
+
+    @BeforeEach
+    void setUp() {
+        ConcurrentKafkaListenerContainerFactory<Long, SmsMessagePayload> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.getContainerProperties().setAsyncAcks(true);
+        consumer = new Consumer(smsRecordHandler, factory, throttledRecordExecutor);
+        consumer.registerSeekCallback(seekCallback);
+        consumer.onPartitionsAssigned(Collections.singletonMap(new TopicPartition("sms", 0), 42L), seekCallback);
+    }
+
+    @Test
+    void holdsAThrottledRecordOffTheListenerThread() {
+        Mockito.when(smsRecordHandler.throttle(record)).thenReturn(500L, 200L, 0L);
+        Mockito.when(smsRecordHandler.handle(record)).thenReturn(CompletableFuture.completedFuture(null));
+
+        consumer.consume(record, acknowledgment);
+
+        ArgumentCaptor<Runnable> held = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(throttledRecordExecutor).schedule(held.capture(), eq(500L), eq(TimeUnit.MILLISECONDS));
+        Mockito.verify(smsRecordHandler, Mockito.never()).handle(record);
+
+        held.getValue().run();
+        Mockito.verify(throttledRecordExecutor).schedule(held.capture(), eq(200L), eq(TimeUnit.MILLISECONDS));
+        Mockito.verify(smsRecordHandler, Mockito.never()).handle(record);
+
+        held.getValue().run();
+        Mockito.verify(smsRecordHandler).handle(record);
+        Mockito.verify(acknowledgment).acknowledge();
+    }
+
+    @Test
+    void dropsAHeldRecordWhosePartitionWasRevoked() {
+        Mockito.when(smsRecordHandler.throttle(record)).thenReturn(500L);
+
+        consumer.consume(record, acknowledgment);
+        consumer.onPartitionsRevoked(Collections.singletonList(new TopicPartition("sms", 0)));
+
+        ArgumentCaptor<Runnable> held = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(throttledRecordExecutor).schedule(held.capture(), anyLong(), any(TimeUnit.class));
+        held.getValue().run();
+
+        Mockito.verify(smsRecordHandler, Mockito.never()).handle(record);
+        Mockito.verifyNoInteractions(acknowledgment);
+    }
+}
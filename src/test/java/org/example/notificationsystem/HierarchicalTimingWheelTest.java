@@ -0,0 +1,66 @@
+package org.example.notificationsystem;
+
+import org.example.notificationsystem.utils.HierarchicalTimingWheel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HierarchicalTimingWheelTest {
+
+    @Test
+    void releasesItemsOnceDueAcrossLevels() {
+        // 10 ms ticks, 8 buckets: 80 ms per first level wheel, 640 ms for the second one, then a third level
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(10, 8, 0);
+        assertTrue(wheel.add("soon", 25));
+        assertTrue(wheel.add("level-2", 300));
+        assertTrue(wheel.add("level-3", 5_000));
+        assertFalse(wheel.add("past", 0));
+        assertEquals(3, wheel.size());
+
+        List<String> released = new ArrayList<>();
+        for (long now = 10; now <= 6_000; now += 10) {
+            long tick = now;
+            wheel.advance(now, item -> {
+                released.add(item);
+                assertTrue(tick >= dueOf(item), item + " released early at " + tick);
+                assertTrue(tick < dueOf(item) + 10, item + " released late at " + tick);
+            });
+        }
+
+        assertEquals(Arrays.asList("soon", "level-2", "level-3"), released);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void releasesEverythingDueAfterAGap() {
+        HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>(10, 8, 0);
+        for (int i = 1; i <= 100; i++) {
+            wheel.add(i, i * 37L);
+        }
+
+        List<Integer> released = new ArrayList<>();
+        wheel.advance(2_000, released::add);
+        wheel.advance(4_000, released::add);
+
+        Collections.sort(released);
+        assertEquals(100, released.size());
+        assertEquals(1, released.get(0));
+        assertEquals(100, released.get(99));
+    }
+
+    private static long dueOf(String item) {
+        switch (item) {
+            case "soon":
+                return 25;
+            case "level-2":
+                return 300;
+            default:
+                return 5_000;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.example.notificationsystem;
+
+import org.example.notificationsystem.constants.RedisConstants;
+import org.example.notificationsystem.exception.IdempotencyKeyInProgressException;
+import org.example.notificationsystem.exception.IdempotencyKeyMismatchException;
+import org.example.notificationsystem.services.impl.IdempotencyServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyServiceImplTest {
+
+    private static final String KEY = RedisConstants.idempotency_key_prefix + "abc";
+    private static final String FINGERPRINT = IdempotencyServiceImpl.fingerprint("+911111111111", "Hello");
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @InjectMocks
+    private IdempotencyServiceImpl idempotencyService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(idempotencyService, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(idempotencyService, "pendingTtlSeconds", 5L);
+        ReflectionTestUtils.setField(idempotencyService, "waitTimeoutMs", 50L);
+        ReflectionTestUtils.setField(idempotencyService, "pollIntervalMs", 10L);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    @Test
+    void firstUseCreatesAndStoresRequestId() {
+        // Mocking
+        when(valueOperations.setIfAbsent(eq(KEY), anyString(), any(Duration.class))).thenReturn(true);
+
+        assertEquals("42", idempotencyService.getOrCreate("abc", FINGERPRINT, () -> "42"));
+        Mockito.verify(valueOperations).set(KEY, FINGERPRINT + ":42", Duration.ofSeconds(60));
+    }
+
+    @Test
+    void repeatedKeyReturnsOriginalRequestId() {
+        // Mocking
+        when(valueOperations.setIfAbsent(eq(KEY), anyString(), any(Duration.class))).thenReturn(false);
+        when(valueOperations.get(KEY)).thenReturn(FINGERPRINT + ":42");
+
+        AtomicInteger created = new AtomicInteger();
+        assertEquals("42", idempotencyService.getOrCreate("abc", FINGERPRINT, () -> String.valueOf(created.incrementAndGet())));
+        assertEquals(0, created.get());
+    }
+
+    @Test
+    void pendingKeyTimesOut() {
+        // Mocking
+        when(valueOperations.setIfAbsent(eq(KEY), anyString(), any(Duration.class))).thenReturn(false);
+        when(valueOperations.get(KEY)).thenReturn(FINGERPRINT + ":__pending__");
+
+        assertThrows(IdempotencyKeyInProgressException.class, () -> idempotencyService.getOrCreate("abc", FINGERPRINT, () -> "42"));
+    }
+
+    @Test
+    void failedCreationReleasesKey() {
+        // Mocking
+        when(valueOperations.setIfAbsent(eq(KEY), anyString(), any(Duration.class))).thenReturn(true);
+
+        assertThrows(IllegalStateException.class, () -> idempotencyService.getOrCreate("abc", FINGERPRINT, () -> {
+            throw new IllegalStateException("db down");
+        }));
+        Mockito.verify(redisTemplate).delete(KEY);
+    }
+
+    @Test
+    void keyReusedWithAnotherBodyIsRefused() {
+        // Mocking
+        when(valueOperations.setIfAbsent(eq(KEY), anyString(), any(Duration.class))).thenReturn(false);
+        when(valueOperations.get(KEY)).thenReturn(FINGERPRINT + ":42");
+
+        String otherFingerprint = IdempotencyServiceImpl.fingerprint("+911111111111", "Hello again");
+        assertNotEquals(FINGERPRINT, otherFingerprint);
+        assertThrows(IdempotencyKeyMismatchException.class, () -> idempotencyService.getOrCreate("abc", otherFingerprint, () -> "43"));
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.notificationsystem;
+
+import org.example.notificationsystem.utils.KeyOrderedExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyOrderedExecutorTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+    private final KeyOrderedExecutor keyOrderedExecutor = new KeyOrderedExecutor(executor);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void runsTasksOfAKeyInOrderUntilTheirFutureCompletes() throws Exception {
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<Void> first = new CompletableFuture<>();
+
+        CompletableFuture<Void> a = keyOrderedExecutor.submit("+911", () -> {
+            order.add(1);
+            return first;
+        });
+        CompletableFuture<Void> b = keyOrderedExecutor.submit("+911", () -> {
+            order.add(2);
+            return CompletableFuture.completedFuture(null);
+        });
+        CompletableFuture<Void> other = keyOrderedExecutor.submit("+912", () -> {
+            order.add(3);
+            return CompletableFuture.completedFuture(null);
+        });
+
+        other.get(1, TimeUnit.SECONDS);
+        assertFalse(b.isDone());
+        assertFalse(order.contains(2));
+
+        first.complete(null);
+        b.get(1, TimeUnit.SECONDS);
+        assertTrue(a.isDone());
+        assertTrue(order.indexOf(1) < order.indexOf(2));
+        assertEquals(0, keyOrderedExecutor.activeKeys());
+    }
+
+    @Test
+    void failedTaskReleasesItsKey() throws Exception {
+        CompletableFuture<Object> failed = keyOrderedExecutor.submit("+911", () -> {
+            throw new IllegalStateException("boom");
+        });
+        CompletableFuture<String> next = keyOrderedExecutor.submit("+911", () -> CompletableFuture.completedFuture("ok"));
+
+        assertEquals("ok", next.get(1, TimeUnit.SECONDS));
+        assertTrue(failed.isCompletedExceptionally());
+    }
+}
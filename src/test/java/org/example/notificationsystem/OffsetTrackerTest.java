@@ -0,0 +1,42 @@
+package org.example.notificationsystem;
+
+import org.example.notificationsystem.kafka.OffsetTracker;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OffsetTrackerTest {
+
+    @Test
+    void commitsUpToTheLowestOffsetInFlight() {
+        OffsetTracker tracker = new OffsetTracker();
+        for (long offset = 10; offset < 15; offset++) tracker.started(offset);
+
+        tracker.completed(12);
+        tracker.completed(13);
+        assertEquals(10, tracker.committable());
+        tracker.markCommitted(10);
+        assertEquals(-1, tracker.committable());
+
+        tracker.completed(10);
+        tracker.completed(11);
+        assertEquals(14, tracker.committable());
+
+        tracker.completed(14);
+        assertEquals(15, tracker.committable());
+        assertEquals(0, tracker.inFlight());
+    }
+
+    @Test
+    void commitsBelowTheAbandonedOffsets() {
+        OffsetTracker tracker = new OffsetTracker();
+        for (long offset = 10; offset < 13; offset++) tracker.started(offset);
+
+        tracker.completed(10);
+        tracker.abandoned(11);
+        tracker.completed(12);
+        // Left to the next owner of the partition
+        assertEquals(11, tracker.committable());
+        assertEquals(0, tracker.inFlight());
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.notificationsystem;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.notificationsystem.kafka.Producer;
+import org.example.notificationsystem.models.SmsOutbox;
+import org.example.notificationsystem.models.SmsRequest;
+import org.example.notificationsystem.repositories.SmsOutboxRepository;
+import org.example.notificationsystem.repositories.SmsRequestElasticsearchRepository;
+import org.example.notificationsystem.repositories.SmsRequestRepository;
+import org.example.notificationsystem.services.impl.OutboxRelayServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxRelayServiceImplTest {
+
+    @Mock
+    private SmsOutboxRepository smsOutboxRepository;
+
+    @Mock
+    private SmsRequestRepository smsRequestRepository;
+
+    @Mock
+    private SmsRequestElasticsearchRepository smsRequestElasticsearchRepository;
+
+    @Mock
+    private Producer producer;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private OutboxRelayServiceImpl outboxRelayServiceImpl;
+
+    @BeforeEach
+    void setUp() {
+        outboxRelayServiceImpl = new OutboxRelayServiceImpl(smsOutboxRepository, smsRequestRepository, smsRequestElasticsearchRepository,
+                producer, meterRegistry, 100);
+    }
+
+    @Test
+    void deletesTheEntriesWhoseSmsRequestIsMissing() {
+        SmsRequest smsRequest = SmsRequest.builder().id(1L).phoneNumber("+911111111111").message("Hello").build();
+        Mockito.when(smsOutboxRepository.claimUnpublished(100)).thenReturn(Arrays.asList(
+                SmsOutbox.builder().id(10L).smsRequestId(1L).build(),
+                SmsOutbox.builder().id(20L).smsRequestId(2L).build()));
+        Mockito.when(smsRequestRepository.findAllById(Arrays.asList(1L, 2L))).thenReturn(Collections.singletonList(smsRequest));
+        Mockito.when(producer.publishBatch(Collections.singletonList(smsRequest))).thenReturn(Collections.singletonList(true));
+
+        assertEquals(1, outboxRelayServiceImpl.relayToKafka());
+
+        Mockito.verify(smsOutboxRepository).deleteAllByIdInBatch(Collections.singletonList(20L));
+        Mockito.verify(smsOutboxRepository).markPublished(Collections.singletonList(10L));
+        assertEquals(1.0, meterRegistry.get("sms.outbox.orphaned").counter().count());
+    }
+
+    @Test
+    void publishesNothingWhenEverySmsRequestIsMissing() {
+        Mockito.when(smsOutboxRepository.claimUnpublished(100)).thenReturn(Collections.singletonList(
+                SmsOutbox.builder().id(20L).smsRequestId(2L).build()));
+        Mockito.when(smsRequestRepository.findAllById(Collections.singletonList(2L))).thenReturn(Collections.emptyList());
+
+        assertEquals(0, outboxRelayServiceImpl.relayToKafka());
+
+        Mockito.verify(smsOutboxRepository).deleteAllByIdInBatch(Collections.singletonList(20L));
+        Mockito.verify(producer, Mockito.never()).publishBatch(anyList());
+    }
+}
@@ -0,0 +1,170 @@
+package org.example.notificationsystem;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.notificationsystem.constants.ThirdPartyApiResponseCode;
+import org.example.notificationsystem.provider.ProviderGuard;
+import org.example.notificationsystem.provider.ProviderGuardProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProviderGuardTest {
+
+    private ProviderGuardProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ProviderGuardProperties();
+        properties.setSlidingWindowSize(10);
+        properties.setMinimumCalls(4);
+        properties.setHalfOpenCalls(2);
+        properties.setOpenDurationMs(50);
+        properties.setInitialLimit(4);
+        properties.setLatencyWindowSize(10);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void aNeutralTrialCallGivesItsPermitBack() throws InterruptedException {
+        ProviderGuard guard = new ProviderGuard("test", properties, meterRegistry);
+        for (int i = 0; i < 4; i++) call(guard, ThirdPartyApiResponseCode.TIMEOUT);
+        assertEquals(ProviderGuard.CircuitState.OPEN, guard.getCircuitState());
+
+        Thread.sleep(60);
+        Optional<ProviderGuard.Permit> first = guard.tryAcquire();
+        Optional<ProviderGuard.Permit> second = guard.tryAcquire();
+        assertTrue(first.isPresent() && second.isPresent());
+        assertTrue(guard.availableInMs() > 0);
+
+        // Throttled: decides nothing, another trial call takes its place
+        first.get().release(ThirdPartyApiResponseCode.THROTTLED);
+        assertEquals(ProviderGuard.CircuitState.HALF_OPEN, guard.getCircuitState());
+        assertEquals(0, guard.availableInMs());
+        Optional<ProviderGuard.Permit> third = guard.tryAcquire();
+        assertTrue(third.isPresent());
+
+        second.get().release(ThirdPartyApiResponseCode.SUCCESS);
+        third.get().release(ThirdPartyApiResponseCode.SUCCESS);
+        assertEquals(ProviderGuard.CircuitState.CLOSED, guard.getCircuitState());
+    }
+
+    @Test
+    void opensOnFailuresAndClosesAfterSuccessfulTrialCalls() throws InterruptedException {
+        ProviderGuard guard = new ProviderGuard("test", properties, meterRegistry);
+        call(guard, ThirdPartyApiResponseCode.SUCCESS);
+        call(guard, ThirdPartyApiResponseCode.TIMEOUT);
+        call(guard, ThirdPartyApiResponseCode.API_ERROR);
+        // Failed on our side: neutral
+        call(guard, ThirdPartyApiResponseCode.INVALID_REQUEST_BODY);
+        assertEquals(ProviderGuard.CircuitState.CLOSED, guard.getCircuitState());
+
+        call(guard, ThirdPartyApiResponseCode.TIMEOUT);
+        assertEquals(ProviderGuard.CircuitState.OPEN, guard.getCircuitState());
+        assertFalse(guard.tryAcquire().isPresent());
+        assertEquals(1.0, meterRegistry.get("sms.provider.rejected").tag("reason", "circuit_open").counter().count());
+        assertEquals(2.0, meterRegistry.get("sms.provider.circuit.state").gauge().value());
+
+        Thread.sleep(60);
+        Optional<ProviderGuard.Permit> first = guard.tryAcquire();
+        Optional<ProviderGuard.Permit> second = guard.tryAcquire();
+        assertTrue(first.isPresent() && second.isPresent());
+        assertEquals(ProviderGuard.CircuitState.HALF_OPEN, guard.getCircuitState());
+        // Only half-open-calls trial calls
+        assertFalse(guard.tryAcquire().isPresent());
+
+        first.get().release(ThirdPartyApiResponseCode.SUCCESS);
+        second.get().release(ThirdPartyApiResponseCode.SUCCESS);
+        assertEquals(ProviderGuard.CircuitState.CLOSED, guard.getCircuitState());
+    }
+
+    @Test
+    void shedsCallsAboveTheLimitAndBacksOffOnFailure() {
+        ProviderGuard guard = new ProviderGuard("test", properties, meterRegistry);
+        List<ProviderGuard.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            permits.add(guard.tryAcquire().orElseThrow(IllegalStateException::new));
+        }
+        assertFalse(guard.tryAcquire().isPresent());
+        assertEquals(1.0, meterRegistry.get("sms.provider.rejected").tag("reason", "concurrency_limit").counter().count());
+
+        permits.get(0).release(ThirdPartyApiResponseCode.TIMEOUT);
+        assertEquals(4 * 0.7, guard.getLimit(), 1e-9);
+        permits.get(1).release(ThirdPartyApiResponseCode.SUCCESS);
+        assertEquals(4 * 0.7 + 1 / (4 * 0.7), guard.getLimit(), 1e-9);
+        assertEquals(2, guard.getInFlight());
+    }
+
+    @Test
+    void derivesTheTimeoutFromTheObservedLatency() {
+        properties.setMinTimeoutMs(1);
+        ProviderGuard guard = new ProviderGuard("test", properties, meterRegistry);
+        assertEquals(5000, guard.tryAcquire().orElseThrow(IllegalStateException::new).getTimeoutMs());
+
+        for (int i = 0; i < 10; i++) {
+            call(guard, ThirdPartyApiResponseCode.SUCCESS);
+        }
+        // Calls completing right away: the timeout drops to the lower bound instead of staying at 5 s
+        assertTrue(guard.getTimeoutMs() < 100);
+    }
+
+    @Test
+    void raisesTheTimeoutWhenCallsTimeOut() {
+        properties.setMinTimeoutMs(1);
+        ProviderGuard guard = new ProviderGuard("test", properties, meterRegistry);
+        for (int i = 0; i < 10; i++) {
+            call(guard, ThirdPartyApiResponseCode.SUCCESS);
+        }
+        long tunedTimeoutMs = guard.getTimeoutMs();
+
+        for (int i = 0; i < 2; i++) {
+            call(guard, ThirdPartyApiResponseCode.TIMEOUT);
+        }
+        for (int i = 0; i < 8; i++) {
+            call(guard, ThirdPartyApiResponseCode.SUCCESS);
+        }
+        // The timed out calls count as calls as slow as their timeout
+        assertTrue(guard.getTimeoutMs() >= 2 * tunedTimeoutMs);
+    }
+
+    @Test
+    void givesTrialCallsTheMaximumTimeout() throws InterruptedException {
+        properties.setMinTimeoutMs(1);
+        ProviderGuard guard = new ProviderGuard("test", properties, meterRegistry);
+        for (int i = 0; i < 10; i++) {
+            call(guard, ThirdPartyApiResponseCode.SUCCESS);
+        }
+        for (int i = 0; i < 10; i++) {
+            guard.tryAcquire().orElseThrow(IllegalStateException::new).release(ThirdPartyApiResponseCode.API_ERROR);
+            if (guard.getCircuitState() == ProviderGuard.CircuitState.OPEN) break;
+        }
+        assertEquals(ProviderGuard.CircuitState.OPEN, guard.getCircuitState());
+        assertTrue(guard.availableInMs() > 0);
+
+        Thread.sleep(60);
+        assertEquals(0, guard.availableInMs());
+        assertEquals(5000, guard.tryAcquire().orElseThrow(IllegalStateException::new).getTimeoutMs());
+    }
+
+    @Test
+    void asksToWaitWhileAtTheLimit() {
+        ProviderGuard guard = new ProviderGuard("test", properties, meterRegistry);
+        List<ProviderGuard.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            permits.add(guard.tryAcquire().orElseThrow(IllegalStateException::new));
+        }
+        assertTrue(guard.availableInMs() > 0);
+
+        permits.get(0).release(ThirdPartyApiResponseCode.SUCCESS);
+        assertEquals(0, guard.availableInMs());
+    }
+
+    private static void call(ProviderGuard guard, ThirdPartyApiResponseCode responseCode) {
+        guard.tryAcquire().orElseThrow(IllegalStateException::new).release(responseCode);
+    }
+}
@@ -0,0 +1,153 @@
+package org.example.notificationsystem;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.notificationsystem.constants.ThirdPartyApiResponseCode;
+import org.example.notificationsystem.provider.ProviderGuardProperties;
+import org.example.notificationsystem.provider.ProviderRegistryProperties;
+import org.example.notificationsystem.provider.ProviderRouter;
+import org.example.notificationsystem.services.impl.SendThrottleServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+class ProviderRouterTest {
+
+    private final List<StubSmsProvider> stubs = new ArrayList<>();
+    private final ProviderRegistryProperties properties = new ProviderRegistryProperties();
+    private ProviderRouter router;
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SendThrottleServiceImpl sendThrottleService = Mockito.mock(SendThrottleServiceImpl.class);
+
+    @AfterEach
+    void tearDown() {
+        if (router != null) router.close();
+        stubs.forEach(StubSmsProvider::close);
+    }
+
+    @Test
+    void routesByLongestPrefix() throws IOException {
+        StubSmsProvider india = gateway("india", "+91");
+        StubSmsProvider fallback = gateway("fallback");
+        router = router();
+
+        assertEquals("+91", router.routeKey("+919999999999"));
+        assertEquals(ProviderRouter.DEFAULT_ROUTE, router.routeKey("+14155550100"));
+
+        assertEquals(ThirdPartyApiResponseCode.SUCCESS, router.exchange("+91", ThirdPartySmsClientTest.request("hello")).getResponseCode());
+        assertEquals(1, india.getRequests());
+        assertEquals(0, fallback.getRequests());
+    }
+
+    @Test
+    void shiftsTrafficToTheFasterGateway() throws IOException {
+        // The latencies are measured on a virtual clock that only the gateways move
+        AtomicLong clockNanos = new AtomicLong();
+        StubSmsProvider fast = gateway("fast").virtualLatencyMs(clockNanos, 1);
+        StubSmsProvider slow = gateway("slow").virtualLatencyMs(clockNanos, 40);
+        router = router();
+        ReflectionTestUtils.setField(router, "nanoClock", (LongSupplier) clockNanos::get);
+
+        // Both gateways get their first calls
+        for (int i = 0; i < 10; i++) {
+            router.exchange(ProviderRouter.DEFAULT_ROUTE, ThirdPartySmsClientTest.request("hello"));
+        }
+        int fastBefore = fast.getRequests();
+        int slowBefore = slow.getRequests();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(ThirdPartyApiResponseCode.SUCCESS, router.exchange(ProviderRouter.DEFAULT_ROUTE, ThirdPartySmsClientTest.request("hello")).getResponseCode());
+        }
+
+        int toFast = fast.getRequests() - fastBefore;
+        int toSlow = slow.getRequests() - slowBefore;
+        assertTrue(toFast > 3 * toSlow, toFast + " vs " + toSlow);
+    }
+
+    @Test
+    void failsOverToTheNextGateway() throws IOException {
+        StubSmsProvider broken = gateway("broken").status(503);
+        StubSmsProvider healthy = gateway("healthy");
+        router = router();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(ThirdPartyApiResponseCode.SUCCESS, router.exchange(ProviderRouter.DEFAULT_ROUTE, ThirdPartySmsClientTest.request("hello")).getResponseCode());
+        }
+        assertEquals(10, healthy.getRequests());
+        assertTrue(broken.getRequests() < 10);
+    }
+
+    @Test
+    void doesNotFailOverACallThatMayHaveBeenSent() throws IOException {
+        StubSmsProvider first = gateway("first").status(500);
+        StubSmsProvider second = gateway("second").status(500);
+        router = router();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(ThirdPartyApiResponseCode.API_ERROR, router.exchange(ProviderRouter.DEFAULT_ROUTE, ThirdPartySmsClientTest.request("hello")).getResponseCode());
+        }
+        // One gateway per call
+        assertEquals(10, first.getRequests() + second.getRequests());
+    }
+
+    @Test
+    void failsOverAThrottledCall() throws IOException {
+        StubSmsProvider throttled = gateway("throttled").status(429);
+        StubSmsProvider healthy = gateway("healthy");
+        router = router();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(ThirdPartyApiResponseCode.SUCCESS, router.exchange(ProviderRouter.DEFAULT_ROUTE, ThirdPartySmsClientTest.request("hello")).getResponseCode());
+        }
+        assertEquals(10, healthy.getRequests());
+        assertTrue(throttled.getRequests() < 10);
+    }
+
+    @Test
+    void skipsTheGatewaysOutOfTokens() throws IOException {
+        StubSmsProvider busy = gateway("busy");
+        StubSmsProvider free = gateway("free");
+        router = router();
+        when(sendThrottleService.tryAcquire(eq("gateway:busy"), anyDouble(), anyInt())).thenReturn(100L);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(ThirdPartyApiResponseCode.SUCCESS, router.exchange(ProviderRouter.DEFAULT_ROUTE, ThirdPartySmsClientTest.request("hello")).getResponseCode());
+        }
+        assertEquals(0, busy.getRequests());
+        assertEquals(10, free.getRequests());
+
+        // Every gateway is out of tokens: nothing is sent
+        when(sendThrottleService.tryAcquire(eq("gateway:free"), anyDouble(), anyInt())).thenReturn(100L);
+        assertEquals(ThirdPartyApiResponseCode.THROTTLED, router.exchange(ProviderRouter.DEFAULT_ROUTE, ThirdPartySmsClientTest.request("hello")).getResponseCode());
+        assertEquals(10, free.getRequests());
+    }
+
+    private StubSmsProvider gateway(String name, String... prefixes) throws IOException {
+        StubSmsProvider stub = new StubSmsProvider();
+        stubs.add(stub);
+        ProviderRegistryProperties.Gateway gateway = new ProviderRegistryProperties.Gateway();
+        gateway.setName(name);
+        gateway.setUrl(stub.getUrl());
+        Collections.addAll(gateway.getPrefixes(), prefixes);
+        properties.getGateways().add(gateway);
+        return stub;
+    }
+
+    private ProviderRouter router() {
+        return new ProviderRouter(new ObjectMapper(), registry, new ProviderGuardProperties(), properties, sendThrottleService,
+                4, 1000, 1000, 30000, false);
+    }
+}
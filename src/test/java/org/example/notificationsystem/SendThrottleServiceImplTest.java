@@ -0,0 +1,102 @@
+package org.example.notificationsystem;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.notificationsystem.services.impl.SendThrottleServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SendThrottleServiceImplTest {
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    private SendThrottleServiceImpl sendThrottleService;
+
+    @BeforeEach
+    void setUp() {
+        sendThrottleService = new SendThrottleServiceImpl(redisTemplate, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(sendThrottleService, "enabled", true);
+        ReflectionTestUtils.setField(sendThrottleService, "leaseSize", 5);
+        ReflectionTestUtils.setField(sendThrottleService, "leaseTtlMs", 1000L);
+        ReflectionTestUtils.setField(sendThrottleService, "burstSeconds", 1.0);
+    }
+
+    @Test
+    void spendsALeaseBeforeAskingRedisAgain() {
+        // Mocking
+        when(redisTemplate.execute(any(RedisScript.class), eq(Collections.singletonList("throttle:route:+91")), any(), any(), any(), any()))
+                .thenReturn(Arrays.asList(5L, 0L));
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, sendThrottleService.tryAcquire("route:+91", 100, 1));
+        }
+        Mockito.verify(redisTemplate, times(1)).execute(any(RedisScript.class), anyList(), any(), any(), any(), any());
+
+        assertEquals(0, sendThrottleService.tryAcquire("route:+91", 100, 1));
+        Mockito.verify(redisTemplate, times(2)).execute(any(RedisScript.class), anyList(), any(), any(), any(), any());
+    }
+
+    @Test
+    void waitsWithoutAskingRedisAgain() {
+        // Mocking
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any(), any())).thenReturn(Arrays.asList(0L, 200L));
+
+        assertEquals(200, sendThrottleService.tryAcquire("route:+91", 100, 1));
+        long waitMs = sendThrottleService.tryAcquire("route:+91", 100, 1);
+        assertTrue(waitMs > 0 && waitMs <= 200, String.valueOf(waitMs));
+        Mockito.verify(redisTemplate, times(1)).execute(any(RedisScript.class), anyList(), any(), any(), any(), any());
+    }
+
+    @Test
+    void unlimitedBucketsSkipRedis() {
+        assertEquals(0, sendThrottleService.tryAcquire("route:*", 0, 1));
+        Mockito.verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void letsSendsThroughWhenRedisFails() {
+        // Mocking
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any(), any())).thenThrow(new RedisConnectionFailureException("down"));
+
+        assertEquals(0, sendThrottleService.tryAcquire("gateway:beeceptor", 50, 1));
+    }
+
+    @Test
+    void collectsALargeRequestInChunksOfTheCapacity() {
+        // Mocking
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any(), any())).thenReturn(Arrays.asList(5L, 0L));
+
+        // 12 Sms on a 5 TPS gateway: one chunk of 5 per call, not granted before the last one
+        long waitMs = sendThrottleService.tryAcquire("gateway:beeceptor", 5, 12);
+        assertTrue(waitMs > 0, String.valueOf(waitMs));
+        Mockito.verify(redisTemplate).execute(any(RedisScript.class), anyList(), eq("5.0"), eq("5.0"), eq("5"), eq("5"));
+        assertTrue(sendThrottleService.availableIn("gateway:beeceptor") > 0);
+
+        assertTrue(sendThrottleService.tryAcquire("gateway:beeceptor", 5, 12) > 0);
+        Mockito.verify(redisTemplate, times(1)).execute(any(RedisScript.class), anyList(), any(), any(), any(), any());
+    }
+
+    @Test
+    void knowsNothingOfBucketsNeverAskedFor() {
+        assertEquals(0, sendThrottleService.availableIn("gateway:beeceptor"));
+    }
+}
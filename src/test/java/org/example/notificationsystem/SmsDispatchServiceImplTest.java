@@ -0,0 +1,114 @@
+package org.example.notificationsystem;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.notificationsystem.constants.ThirdPartyApiResponseCode;
+import org.example.notificationsystem.dto.request.ThirdPartySmsApiRequest;
+import org.example.notificationsystem.kafka.SmsMessagePayload;
+import org.example.notificationsystem.provider.ProviderResponse;
+import org.example.notificationsystem.provider.ProviderRouter;
+import org.example.notificationsystem.services.impl.SmsDispatchServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+@ExtendWith(MockitoExtension.class)
+class SmsDispatchServiceImplTest {
+
+    @Mock
+    private ProviderRouter providerRouter;
+
+    private SmsDispatchServiceImpl smsDispatchService;
+
+    @BeforeEach
+    void setUp() {
+        smsDispatchService = new SmsDispatchServiceImpl(providerRouter, new SimpleMeterRegistry());
+        // The dispatcher thread is not started, the tests flush explicitly
+        ReflectionTestUtils.setField(smsDispatchService, "enabled", true);
+        ReflectionTestUtils.setField(smsDispatchService, "maxBatchSize", 10);
+        ReflectionTestUtils.setField(smsDispatchService, "capacity", 100);
+    }
+
+    @Test
+    void groupsIdenticalTextsAndMapsResultsByCorrelationId() {
+        ArgumentCaptor<List<ThirdPartySmsApiRequest>> requests = ArgumentCaptor.forClass(List.class);
+        Mockito.when(providerRouter.routeKey(any())).thenReturn(ProviderRouter.DEFAULT_ROUTE);
+        Mockito.when(providerRouter.exchange(eq(ProviderRouter.DEFAULT_ROUTE), requests.capture())).thenAnswer(invocation -> {
+            List<ThirdPartySmsApiRequest> sent = invocation.getArgument(1);
+            // The API rejects the second destination of the first text
+            String rejected = sent.get(0).getDestination().get(1).getCorrelationId();
+            return new ProviderResponse(ThirdPartyApiResponseCode.SUCCESS, Collections.singletonMap(rejected, ThirdPartyApiResponseCode.API_ERROR));
+        });
+
+        CompletableFuture<ThirdPartyApiResponseCode> first = smsDispatchService.submit(payload(1L, "+911111111111", "OTP 1234"));
+        CompletableFuture<ThirdPartyApiResponseCode> second = smsDispatchService.submit(payload(2L, "+912222222222", "OTP 1234"));
+        CompletableFuture<ThirdPartyApiResponseCode> other = smsDispatchService.submit(payload(3L, "+913333333333", "Hello"));
+        assertFalse(first.isDone());
+
+        smsDispatchService.flush();
+
+        Mockito.verify(providerRouter, Mockito.times(1)).exchange(any(), any());
+        List<ThirdPartySmsApiRequest> sent = requests.getValue();
+        assertEquals(2, sent.size());
+        assertEquals("OTP 1234", sent.get(0).getChannels().getSms().getText());
+        assertEquals(2, sent.get(0).getDestination().size());
+        assertEquals(Collections.singletonList("+912222222222"), sent.get(0).getDestination().get(1).getMsisdn());
+        assertEquals(ThirdPartyApiResponseCode.SUCCESS, first.join());
+        assertEquals(ThirdPartyApiResponseCode.API_ERROR, second.join());
+        assertEquals(ThirdPartyApiResponseCode.SUCCESS, other.join());
+    }
+
+    @Test
+    void failedCallFailsEveryRequestOfTheBatch() {
+        Mockito.when(providerRouter.routeKey(any())).thenReturn(ProviderRouter.DEFAULT_ROUTE);
+        Mockito.when(providerRouter.exchange(any(), any())).thenReturn(ProviderResponse.of(ThirdPartyApiResponseCode.TIMEOUT));
+
+        CompletableFuture<ThirdPartyApiResponseCode> first = smsDispatchService.submit(payload(1L, "+911111111111", "OTP 1234"));
+        CompletableFuture<ThirdPartyApiResponseCode> second = smsDispatchService.submit(payload(2L, "+912222222222", "Hello"));
+        smsDispatchService.flush();
+
+        assertEquals(ThirdPartyApiResponseCode.TIMEOUT, first.join());
+        assertEquals(ThirdPartyApiResponseCode.TIMEOUT, second.join());
+    }
+
+    @Test
+    void sendsTheRoutesOfABatchConcurrently() throws InterruptedException {
+        ReflectionTestUtils.setField(smsDispatchService, "maxDelayMs", 10L);
+        ReflectionTestUtils.setField(smsDispatchService, "senders", 2);
+        CountDownLatch bothInFlight = new CountDownLatch(2);
+        Mockito.when(providerRouter.routeKey(any())).thenAnswer(invocation -> invocation.<String>getArgument(0).substring(0, 3));
+        Mockito.when(providerRouter.exchange(any(), any())).thenAnswer(invocation -> {
+            // Neither call returns until the other one is in flight
+            bothInFlight.countDown();
+            return ProviderResponse.of(bothInFlight.await(5, TimeUnit.SECONDS) ? ThirdPartyApiResponseCode.SUCCESS : ThirdPartyApiResponseCode.TIMEOUT);
+        });
+        smsDispatchService.start();
+        try {
+            CompletableFuture<ThirdPartyApiResponseCode> india = smsDispatchService.submit(payload(1L, "+911111111111", "Hello"));
+            CompletableFuture<ThirdPartyApiResponseCode> us = smsDispatchService.submit(payload(2L, "+142222222222", "Hello"));
+
+            assertEquals(ThirdPartyApiResponseCode.SUCCESS, india.join());
+            assertEquals(ThirdPartyApiResponseCode.SUCCESS, us.join());
+        } finally {
+            smsDispatchService.close();
+        }
+    }
+
+    private static SmsMessagePayload payload(Long id, String phoneNumber, String message) {
+        return SmsMessagePayload.builder().id(id).phoneNumber(phoneNumber).message(message).build();
+    }
+}
@@ -0,0 +1,73 @@
+package org.example.notificationsystem;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.example.notificationsystem.kafka.SmsMessagePayload;
+import org.example.notificationsystem.kafka.SmsMessagePayloadDeserializer;
+import org.example.notificationsystem.kafka.SmsMessagePayloadSerializer;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmsMessagePayloadSerializerTest {
+
+    private static final String TOPIC = "notificationsystem";
+
+    private final SmsMessagePayloadDeserializer deserializer = new SmsMessagePayloadDeserializer();
+
+    @Test
+    void roundTrip() {
+        SmsMessagePayloadSerializer serializer = new SmsMessagePayloadSerializer();
+        serializer.configure(Collections.emptyMap(), false);
+        SmsMessagePayload payload = new SmsMessagePayload(42L, "+911111111111", "Your OTP is 1234 ✓", (byte) 2, 1_700_000_000_000L);
+
+        SmsMessagePayload read = deserializer.deserialize(TOPIC, serializer.serialize(TOPIC, payload));
+        assertTrue(read.isComplete());
+        assertEquals(42L, read.getId());
+        assertEquals("+911111111111", read.getPhoneNumber());
+        assertEquals("Your OTP is 1234 ✓", read.getMessage());
+        assertEquals(2, read.getPriority());
+        assertEquals(1_700_000_000_000L, read.getEnqueuedAt());
+    }
+
+    @Test
+    void readsLegacyIdOnlyRecords() {
+        byte[] legacy = new LongSerializer().serialize(TOPIC, 42L);
+
+        SmsMessagePayload read = deserializer.deserialize(TOPIC, legacy);
+        assertEquals(42L, read.getId());
+        assertFalse(read.isComplete());
+    }
+
+    @Test
+    void recordsWithEmptyFieldsAreIncomplete() {
+        SmsMessagePayloadSerializer serializer = new SmsMessagePayloadSerializer();
+        serializer.configure(Collections.emptyMap(), false);
+
+        SmsMessagePayload read = deserializer.deserialize(TOPIC, serializer.serialize(TOPIC, new SmsMessagePayload(42L, "", "", (byte) 0, 0)));
+        assertEquals(42L, read.getId());
+        assertFalse(read.isComplete());
+    }
+
+    @Test
+    void writesLegacyFormatWhenConfigured() {
+        SmsMessagePayloadSerializer serializer = new SmsMessagePayloadSerializer();
+        serializer.configure(Collections.singletonMap(SmsMessagePayloadSerializer.LEGACY_FORMAT_CONFIG, true), false);
+
+        byte[] data = serializer.serialize(TOPIC, new SmsMessagePayload(42L, "+911111111111", "hi", (byte) 0, 0));
+        assertArrayEquals(new LongSerializer().serialize(TOPIC, 42L), data);
+    }
+
+    @Test
+    void rejectsTruncatedRecords() {
+        SmsMessagePayloadSerializer serializer = new SmsMessagePayloadSerializer();
+        serializer.configure(Collections.emptyMap(), false);
+        byte[] data = serializer.serialize(TOPIC, new SmsMessagePayload(42L, "+911111111111", "hello", (byte) 0, 0));
+        byte[] truncated = new byte[data.length - 3];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+
+        assertThrows(SerializationException.class, () -> deserializer.deserialize(TOPIC, truncated));
+    }
+}
@@ -0,0 +1,92 @@
+package org.example.notificationsystem;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.example.notificationsystem.constants.FailureCodeConstants;
+import org.example.notificationsystem.constants.StatusConstants;
+import org.example.notificationsystem.kafka.SmsMessagePayload;
+import org.example.notificationsystem.kafka.SmsRecordHandler;
+import org.example.notificationsystem.kafka.SmsRequestProcessor;
+import org.example.notificationsystem.models.StatusTransition;
+import org.example.notificationsystem.services.impl.BlacklistServiceImpl;
+import org.example.notificationsystem.services.impl.SmsServiceImpl;
+import org.example.notificationsystem.services.impl.StatusWriteServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class SmsRecordHandlerTest {
+
+    @Mock
+    private BlacklistServiceImpl blacklistServiceImpl;
+
+    @Mock
+    private SmsServiceImpl smsServiceImpl;
+
+    @Mock
+    private SmsRequestProcessor smsRequestProcessor;
+
+    @Mock
+    private StatusWriteServiceImpl statusWriteServiceImpl;
+
+    private SmsRecordHandler smsRecordHandler;
+    private final SmsMessagePayload payload = SmsMessagePayload.builder().id(7L).phoneNumber("+911111111111").message("Hello").build();
+    private final ConsumerRecord<Long, SmsMessagePayload> record = new ConsumerRecord<>("sms", 0, 42L, 7L, payload);
+    private final StatusTransition sent = StatusTransition.fromInProgress(7L, StatusConstants.FINISHED, FailureCodeConstants.SUCCESS, "No Failure.");
+
+    @BeforeEach
+    void setUp() {
+        smsRecordHandler = new SmsRecordHandler(blacklistServiceImpl, smsServiceImpl, smsRequestProcessor, statusWriteServiceImpl,
+                Runnable::run, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void writesTheStatusOfTheSentRequest() {
+        Mockito.when(smsRequestProcessor.dispatch(payload)).thenReturn(CompletableFuture.completedFuture(sent));
+        Mockito.when(smsServiceImpl.transition(sent)).thenReturn(true);
+
+        smsRecordHandler.handle(record).join();
+
+        Mockito.verify(smsRequestProcessor, Mockito.never()).park(Mockito.any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    void deadLettersASentRequestWhoseStatusWasNotWritten() {
+        Mockito.when(smsRequestProcessor.dispatch(payload)).thenReturn(CompletableFuture.completedFuture(sent));
+        Mockito.when(smsServiceImpl.transition(sent)).thenThrow(new IllegalStateException("MySQL down"));
+        Mockito.when(smsRequestProcessor.park(payload, true)).thenReturn(CompletableFuture.completedFuture(true));
+
+        smsRecordHandler.handle(record).join();
+
+        Mockito.verify(smsRequestProcessor).park(payload, true);
+    }
+
+    @Test
+    void retriesARequestThatFailedBeforeItsSend() {
+        Mockito.when(blacklistServiceImpl.isNumberBlacklisted(payload.getPhoneNumber())).thenThrow(new IllegalStateException("Redis down"));
+        Mockito.when(smsRequestProcessor.park(payload, false)).thenReturn(CompletableFuture.completedFuture(true));
+
+        smsRecordHandler.handle(record).join();
+
+        Mockito.verify(smsRequestProcessor).park(payload, false);
+    }
+
+    @Test
+    void failsIfTheRecordCouldNotBeParked() {
+        CompletableFuture<StatusTransition> dispatchFailed = new CompletableFuture<>();
+        dispatchFailed.completeExceptionally(new IllegalStateException("Dispatcher closed"));
+        Mockito.when(smsRequestProcessor.dispatch(payload)).thenReturn(dispatchFailed);
+        Mockito.when(smsRequestProcessor.park(payload, false)).thenReturn(CompletableFuture.completedFuture(false));
+
+        assertThrows(CompletionException.class, () -> smsRecordHandler.handle(record).join());
+    }
+}
@@ -0,0 +1,121 @@
+package org.example.notificationsystem;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.notificationsystem.constants.FailureCodeConstants;
+import org.example.notificationsystem.constants.PriorityConstants;
+import org.example.notificationsystem.constants.StatusConstants;
+import org.example.notificationsystem.constants.ThirdPartyApiResponseCode;
+import org.example.notificationsystem.kafka.Producer;
+import org.example.notificationsystem.kafka.RetryTopics;
+import org.example.notificationsystem.kafka.SmsMessagePayload;
+import org.example.notificationsystem.kafka.SmsRequestProcessor;
+import org.example.notificationsystem.models.StatusTransition;
+import org.example.notificationsystem.provider.ProviderRouter;
+import org.example.notificationsystem.services.impl.SmsDispatchServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+
+@ExtendWith(MockitoExtension.class)
+class SmsRequestProcessorTest {
+
+    @Mock
+    private ProviderRouter providerRouter;
+
+    @Mock
+    private SmsDispatchServiceImpl smsDispatchServiceImpl;
+
+    @Mock
+    private Producer producer;
+
+    private RetryTopics retryTopics;
+    private SmsRequestProcessor smsRequestProcessor;
+    private final SmsMessagePayload payload = SmsMessagePayload.builder().id(7L).phoneNumber("+911111111111").message("Hello").build();
+
+    @BeforeEach
+    void setUp() {
+        retryTopics = new RetryTopics("sms", true, Arrays.asList("5000", "60000", "600000"), true);
+        smsRequestProcessor = new SmsRequestProcessor(providerRouter, smsDispatchServiceImpl, producer, retryTopics, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void namesTheTiersAfterTheirDelays() {
+        assertEquals(Arrays.asList("sms-retry-5s", "sms-retry-1m", "sms-retry-10m",
+                "sms-high-retry-5s", "sms-high-retry-1m", "sms-high-retry-10m"), retryTopics.getTopics());
+        assertEquals("sms-dlt", retryTopics.getDeadLetterTopic());
+        assertEquals(4, retryTopics.getMaxAttempts());
+    }
+
+    @Test
+    void reEnqueuesTransientFailuresOnTheNextTier() {
+        Mockito.when(producer.publishRetryAsync(eq("sms-retry-1m"), eq(payload), eq(3), anyLong(), eq("TIMEOUT"))).thenReturn(CompletableFuture.completedFuture(true));
+
+        StatusTransition statusTransition = smsRequestProcessor.complete(payload, 2, ThirdPartyApiResponseCode.TIMEOUT);
+
+        assertEquals(StatusConstants.IN_PROGRESS, statusTransition.getStatus());
+        assertEquals(FailureCodeConstants.IN_PROGRESS, statusTransition.getFailureCode());
+    }
+
+    @Test
+    void retriesHighPriorityRequestsOnTheirOwnTiers() {
+        SmsMessagePayload otp = SmsMessagePayload.builder().id(8L).phoneNumber("+911111111111").message("OTP")
+                .priority((byte) PriorityConstants.HIGH.ordinal()).build();
+        Mockito.when(producer.publishRetryAsync(eq("sms-high-retry-5s"), eq(otp), eq(2), anyLong(), eq("TIMEOUT"))).thenReturn(CompletableFuture.completedFuture(true));
+
+        StatusTransition statusTransition = smsRequestProcessor.complete(otp, 1, ThirdPartyApiResponseCode.TIMEOUT);
+
+        assertEquals(StatusConstants.IN_PROGRESS, statusTransition.getStatus());
+    }
+
+    @Test
+    void deadLettersOnceTheTiersAreExhausted() {
+        Mockito.when(producer.publishRetryAsync(eq("sms-dlt"), eq(payload), eq(4), anyLong(), eq("API_ERROR"))).thenReturn(CompletableFuture.completedFuture(true));
+
+        StatusTransition statusTransition = smsRequestProcessor.complete(payload, 4, ThirdPartyApiResponseCode.API_ERROR);
+
+        assertEquals(StatusConstants.FAILED, statusTransition.getStatus());
+        assertEquals(FailureCodeConstants.EXTERNAL_API_ERROR, statusTransition.getFailureCode());
+    }
+
+    @Test
+    void doesNotRetryPermanentFailures() {
+        StatusTransition statusTransition = smsRequestProcessor.complete(payload, 1, ThirdPartyApiResponseCode.INVALID_REQUEST_BODY);
+
+        assertEquals(StatusConstants.FAILED, statusTransition.getStatus());
+        Mockito.verifyNoInteractions(producer);
+    }
+
+    @Test
+    void parksAFailedRecordOnTheFirstTierIfItWasNotSent() {
+        Mockito.when(producer.publishRetryAsync(eq("sms-retry-5s"), eq(payload), eq(2), anyLong(), eq("HANDLING_FAILED")))
+                .thenReturn(CompletableFuture.completedFuture(true));
+
+        assertTrue(smsRequestProcessor.park(payload, false).join());
+    }
+
+    @Test
+    void deadLettersAFailedRecordThatWasSent() {
+        Mockito.when(producer.publishRetryAsync(eq("sms-dlt"), eq(payload), eq(1), anyLong(), eq("STATUS_NOT_WRITTEN")))
+                .thenReturn(CompletableFuture.completedFuture(true));
+
+        assertTrue(smsRequestProcessor.park(payload, true).join());
+    }
+
+    @Test
+    void retriesRejectedAttemptsOnTheSameTier() {
+        Mockito.when(producer.publishRetryAsync(eq("sms-retry-1m"), eq(payload), eq(3), anyLong(), eq("REJECTED"))).thenReturn(CompletableFuture.completedFuture(true));
+
+        StatusTransition statusTransition = smsRequestProcessor.complete(payload, 3, ThirdPartyApiResponseCode.REJECTED);
+
+        assertEquals(StatusConstants.IN_PROGRESS, statusTransition.getStatus());
+    }
+}
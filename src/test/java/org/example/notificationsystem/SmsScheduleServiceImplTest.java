@@ -0,0 +1,144 @@
+package org.example.notificationsystem;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.notificationsystem.kafka.Producer;
+import org.example.notificationsystem.models.SmsRequest;
+import org.example.notificationsystem.models.SmsSchedule;
+import org.example.notificationsystem.repositories.SmsRequestRepository;
+import org.example.notificationsystem.repositories.SmsScheduleRepository;
+import org.example.notificationsystem.services.SendThrottleService;
+import org.example.notificationsystem.services.impl.SmsScheduleServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.*;
+
+@ExtendWith(MockitoExtension.class)
+class SmsScheduleServiceImplTest {
+
+    private static final long LEASE_MS = 30000;
+
+    @Mock
+    private SmsScheduleRepository smsScheduleRepository;
+
+    @Mock
+    private SmsRequestRepository smsRequestRepository;
+
+    @Mock
+    private Producer producer;
+
+    @Mock
+    private SendThrottleService sendThrottleService;
+
+    @Mock
+    private ScheduledExecutorService releaseExecutor;
+
+    private SmsScheduleServiceImpl smsScheduleService;
+
+    @BeforeEach
+    void setUp() {
+        // At most 2 releases per second
+        smsScheduleService = new SmsScheduleServiceImpl(smsScheduleRepository, smsRequestRepository, producer, sendThrottleService,
+                releaseExecutor, new SimpleMeterRegistry(), 100, 512, 2);
+        ReflectionTestUtils.setField(smsScheduleService, "horizonMs", 300000L);
+        ReflectionTestUtils.setField(smsScheduleService, "leaseMs", LEASE_MS);
+        ReflectionTestUtils.setField(smsScheduleService, "batchSize", 100);
+    }
+
+    @Test
+    void loadsDueEntriesWithALeaseAndPublishesThem() {
+        loadDue(entry(1L, 11L, -1000));
+        Mockito.when(smsRequestRepository.findAllById(Collections.singletonList(11L))).thenReturn(Collections.singletonList(smsRequest(11L)));
+        Mockito.when(producer.publishBatch(anyList())).thenReturn(Collections.singletonList(true));
+
+        assertEquals(1, smsScheduleService.release());
+        Mockito.verify(smsScheduleRepository).deleteByIds(Collections.singletonList(1L));
+    }
+
+    @Test
+    void releasesAtMostAtTheRate() {
+        List<SmsSchedule> entries = new ArrayList<>();
+        for (long id = 1; id <= 5; id++) entries.add(entry(id, 10 + id, -1000));
+        loadDue(entries.toArray(new SmsSchedule[0]));
+        Mockito.when(smsRequestRepository.findAllById(Arrays.asList(11L, 12L))).thenReturn(Arrays.asList(smsRequest(11L), smsRequest(12L)));
+        Mockito.when(producer.publishBatch(anyList())).thenReturn(Arrays.asList(true, true));
+
+        // The burst of one second, the 3 others wait for the rate
+        assertEquals(2, smsScheduleService.release());
+        assertEquals(0, smsScheduleService.release());
+    }
+
+    @Test
+    void takesTheReleaseRateFromTheSharedBucketWhenThrottled() {
+        loadDue(entry(1L, 11L, -1000));
+        Mockito.when(sendThrottleService.isEnabled()).thenReturn(true);
+        Mockito.when(sendThrottleService.tryAcquire("schedule:release", 2.0, 1)).thenReturn(500L);
+
+        assertEquals(0, smsScheduleService.release());
+        Mockito.verifyNoInteractions(producer);
+    }
+
+    @Test
+    void retriesTheEntriesWhosePublishFailed() {
+        loadDue(entry(1L, 11L, -1000));
+        Mockito.when(smsRequestRepository.findAllById(Collections.singletonList(11L))).thenReturn(Collections.singletonList(smsRequest(11L)));
+        Mockito.when(producer.publishBatch(anyList())).thenReturn(Collections.singletonList(false), Collections.singletonList(true));
+
+        assertEquals(0, smsScheduleService.release());
+        Mockito.verify(smsScheduleRepository, Mockito.never()).deleteByIds(any());
+
+        assertEquals(1, smsScheduleService.release());
+        Mockito.verify(smsScheduleRepository).deleteByIds(Collections.singletonList(1L));
+    }
+
+    @Test
+    void putsTheBatchBackWhenTheLookupThrows() {
+        loadDue(entry(1L, 11L, -1000));
+        Mockito.when(smsRequestRepository.findAllById(Collections.singletonList(11L)))
+                .thenThrow(new QueryTimeoutException("MySQL is away"))
+                .thenReturn(Collections.singletonList(smsRequest(11L)));
+        Mockito.when(producer.publishBatch(anyList())).thenReturn(Collections.singletonList(true));
+
+        assertThrows(QueryTimeoutException.class, () -> smsScheduleService.release());
+        assertEquals(1, smsScheduleService.release());
+        Mockito.verify(smsScheduleRepository).deleteByIds(Collections.singletonList(1L));
+    }
+
+    @Test
+    void renewsTheLeaseOfTheEntriesHeld() {
+        long before = System.currentTimeMillis();
+        loadDue(entry(1L, 11L, 60000));
+        Mockito.when(smsScheduleRepository.claimDue(any(), any(), anyInt())).thenReturn(Collections.emptyList());
+
+        ReflectionTestUtils.setField(smsScheduleService, "nextRenewalMillis", 0L);
+        smsScheduleService.load();
+
+        // Claimed once when loaded and once renewed, each time for a lease
+        Mockito.verify(smsScheduleRepository, Mockito.times(2)).claim(eq(Collections.singletonList(1L)),
+                argThat(claimedUntil -> claimedUntil.getTime() >= before + LEASE_MS && claimedUntil.getTime() <= before + LEASE_MS + 60000));
+    }
+
+    private void loadDue(SmsSchedule... entries) {
+        Mockito.when(smsScheduleRepository.claimDue(any(), any(), anyInt())).thenReturn(Arrays.asList(entries));
+        assertEquals(entries.length, smsScheduleService.load());
+    }
+
+    private static SmsSchedule entry(long id, long smsRequestId, long dueInMs) {
+        return SmsSchedule.builder().id(id).smsRequestId(smsRequestId).sendAt(new Date(System.currentTimeMillis() + dueInMs)).build();
+    }
+
+    private static SmsRequest smsRequest(long id) {
+        return SmsRequest.builder().id(id).phoneNumber("+911111111111").message("Hello").build();
+    }
+}
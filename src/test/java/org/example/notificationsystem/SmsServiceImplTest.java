@@ -1,27 +1,53 @@
 package org.example.notificationsystem;
 
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.example.notificationsystem.constants.FailureCodeConstants;
+import org.example.notificationsystem.constants.PriorityConstants;
 import org.example.notificationsystem.constants.StatusConstants;
+import org.example.notificationsystem.dto.response.GetSmsPageResponse;
+import org.example.notificationsystem.dto.response.SmsBatchItemResponse;
+import org.example.notificationsystem.exception.DuplicateMessageException;
 import org.example.notificationsystem.kafka.Producer;
 import org.example.notificationsystem.models.SmsRequest;
 import org.example.notificationsystem.models.SmsRequestElasticsearch;
+import org.example.notificationsystem.models.SmsTemplate;
+import org.example.notificationsystem.models.StatusTransition;
+import org.example.notificationsystem.repositories.SmsOutboxRepository;
 import org.example.notificationsystem.repositories.SmsRequestElasticsearchRepository;
 import org.example.notificationsystem.repositories.SmsRequestRepository;
+import org.example.notificationsystem.repositories.SmsScheduleRepository;
+import org.example.notificationsystem.repositories.SmsTemplateRepository;
+import org.example.notificationsystem.services.impl.DuplicateSuppressionServiceImpl;
 import org.example.notificationsystem.services.impl.SmsServiceImpl;
+import org.example.notificationsystem.services.impl.SmsTemplateServiceImpl;
+import org.example.notificationsystem.utils.CompiledTemplate;
+import org.example.notificationsystem.utils.KeysetCursor;
 import org.example.notificationsystem.utils.NotificationSystemUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
-import org.mockito.InjectMocks;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.persistence.EntityManager;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -35,8 +61,15 @@ class SmsServiceImplTest {
     private SmsRequestElasticsearchRepository smsRequestElasticsearchRepository;
     @Mock
     private Producer producer;
+    @Mock
+    private SmsOutboxRepository smsOutboxRepository;
+    @Mock
+    private SmsScheduleRepository smsScheduleRepository;
+    @Mock
+    private DuplicateSuppressionServiceImpl duplicateSuppressionServiceImpl;
+    @Mock
+    private SmsTemplateServiceImpl smsTemplateServiceImpl;
 
-    @InjectMocks
     private SmsServiceImpl smsService;
 
     private List<SmsRequest> smsRequests;
@@ -44,6 +77,8 @@ class SmsServiceImplTest {
 
     @BeforeEach
     void setUp() {
+        smsService = new SmsServiceImpl(smsRequestRepository, smsRequestElasticsearchRepository, producer, null, Runnable::run, smsOutboxRepository,
+                smsScheduleRepository, duplicateSuppressionServiceImpl, smsTemplateServiceImpl, null, TransactionOperations.withoutTransaction());
         smsRequests = new ArrayList<>();
         smsRequests.add(SmsRequest.builder().id(1L).phoneNumber("+911111111111").build());
         _smsRequestsElasticsearch = new ArrayList<>();
@@ -66,6 +101,237 @@ class SmsServiceImplTest {
         assertEquals(smsRequests.get(0).getMessage(), smsRequest.getMessage());
     }
 
+    @Test
+    void createTemplatedSmsRequestStoresTheParams() {
+        // Mock
+        Map<String, String> params = Collections.singletonMap("otp", "1234");
+        Mockito.when(smsTemplateServiceImpl.encodeParams(7L, params)).thenReturn("1234");
+        Mockito.when(smsTemplateServiceImpl.render(7L, "1234")).thenReturn("Your OTP is 1234");
+        Mockito.when(smsRequestRepository.saveAndFlush(any())).thenAnswer(invocation -> {
+            SmsRequest saved = invocation.getArgument(0);
+            saved.setId(1L);
+            return saved;
+        });
+        Mockito.when(producer.publishSync(any())).thenReturn(true);
+
+        SmsRequest smsRequest = smsService.createSmsRequest("+911111111111", 7L, params, null, null);
+        assertNull(smsRequest.getMessage());
+        assertEquals(7L, smsRequest.getTemplateId());
+        assertEquals("1234", smsRequest.getTemplateParams());
+        Mockito.verify(duplicateSuppressionServiceImpl).isDuplicate("+911111111111", "Your OTP is 1234", null);
+    }
+
+    @Test
+    void createSmsRequestDropsDuplicate() {
+        // Mock
+        Mockito.when(duplicateSuppressionServiceImpl.isDuplicate("+911111111111", "otp 1234", null)).thenReturn(true);
+
+        assertThrows(DuplicateMessageException.class, () -> smsService.createSmsRequest("+911111111111", "otp 1234"));
+        Mockito.verifyNoInteractions(smsRequestRepository, smsRequestElasticsearchRepository, producer);
+    }
+
+    @Test
+    void createSmsRequestAsyncPublishFailure() {
+        SmsServiceImpl asyncSmsService = new SmsServiceImpl(smsRequestRepository, smsRequestElasticsearchRepository, producer, null, Runnable::run, smsOutboxRepository, smsScheduleRepository, duplicateSuppressionServiceImpl, smsTemplateServiceImpl, null, TransactionOperations.withoutTransaction());
+        ReflectionTestUtils.setField(asyncSmsService, "asyncPublish", true);
+
+        // Mock
+        CompletableFuture<RecordMetadata> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RuntimeException("broker down"));
+        Mockito.when(smsRequestRepository.saveAndFlush(any())).thenReturn(smsRequests.get(0));
+        Mockito.when(producer.publishAsync(smsRequests.get(0))).thenReturn(failed);
+
+        SmsRequest smsRequest = asyncSmsService.createSmsRequest(smsRequests.get(0).getPhoneNumber(), smsRequests.get(0).getMessage());
+        assertEquals(smsRequests.get(0).getPhoneNumber(), smsRequest.getPhoneNumber());
+        Mockito.verify(smsRequestRepository).transition(Mockito.eq(1L), Mockito.eq(StatusConstants.IN_PROGRESS.ordinal()), Mockito.eq(StatusConstants.FAILED.ordinal()),
+                Mockito.eq(FailureCodeConstants.QUEUE_PUBLISH_FAILED.ordinal()), Mockito.anyString(), any());
+    }
+
+    @Test
+    void createSmsRequestPublishesOnceCommitted() {
+        SmsServiceImpl asyncSmsService = new SmsServiceImpl(smsRequestRepository, smsRequestElasticsearchRepository, producer, null, Runnable::run, smsOutboxRepository, smsScheduleRepository, duplicateSuppressionServiceImpl, smsTemplateServiceImpl, null, TransactionOperations.withoutTransaction());
+        ReflectionTestUtils.setField(asyncSmsService, "asyncPublish", true);
+
+        // Mock
+        Mockito.when(smsRequestRepository.saveAndFlush(any())).thenReturn(smsRequests.get(0));
+        Mockito.when(producer.publishAsync(smsRequests.get(0))).thenReturn(new CompletableFuture<>());
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            asyncSmsService.createSmsRequest(smsRequests.get(0).getPhoneNumber(), smsRequests.get(0).getMessage());
+            Mockito.verify(producer, Mockito.never()).publishAsync(any());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            Mockito.verify(producer).publishAsync(smsRequests.get(0));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void createSmsRequestForgetsTheDuplicateCheckOnRollback() {
+        // Mock
+        Mockito.when(smsRequestRepository.saveAndFlush(any())).thenReturn(smsRequests.get(0));
+        Mockito.when(smsRequestElasticsearchRepository.save(any(SmsRequestElasticsearch.class))).thenReturn(_smsRequestsElasticsearch.get(0));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            smsService.createSmsRequest("+911111111111", "otp 1234");
+            Mockito.verify(duplicateSuppressionServiceImpl, Mockito.never()).forget(any(), any(), any());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+            Mockito.verify(duplicateSuppressionServiceImpl).forget("+911111111111", "otp 1234", null);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void createSmsRequestOutbox() {
+        ReflectionTestUtils.setField(smsService, "outboxEnabled", true);
+
+        // Mock
+        Mockito.when(smsRequestRepository.saveAndFlush(any())).thenReturn(smsRequests.get(0));
+
+        SmsRequest smsRequest = smsService.createSmsRequest(smsRequests.get(0).getPhoneNumber(), smsRequests.get(0).getMessage());
+        assertEquals(smsRequests.get(0).getId(), smsRequest.getId());
+        assertTrue(smsService.isPublishDeferred());
+        Mockito.verify(smsOutboxRepository).save(Mockito.argThat(entry -> entry.getSmsRequestId().equals(1L) && !entry.isPublished() && !entry.isIndexed()));
+        Mockito.verifyNoInteractions(smsRequestElasticsearchRepository, producer);
+    }
+
+    @Test
+    void createScheduledSmsRequest() {
+        Date sendAt = new Date(System.currentTimeMillis() + 3_600_000);
+
+        // Mock
+        Mockito.when(smsRequestRepository.saveAndFlush(any())).thenAnswer(invocation -> {
+            SmsRequest saved = invocation.getArgument(0);
+            saved.setId(1L);
+            return saved;
+        });
+
+        SmsRequest smsRequest = smsService.createSmsRequest("+911111111111", "Reminder", PriorityConstants.NORMAL, sendAt);
+        assertEquals(sendAt, smsRequest.getSendAt());
+        Mockito.verify(smsScheduleRepository).save(Mockito.argThat(entry -> entry.getSmsRequestId().equals(1L) && entry.getSendAt().equals(sendAt)));
+        Mockito.verify(smsRequestElasticsearchRepository).save(any(SmsRequestElasticsearch.class));
+        Mockito.verifyNoInteractions(producer);
+    }
+
+    @Test
+    void streamSmsRequests() {
+        // Mock
+        EntityManager entityManager = Mockito.mock(EntityManager.class);
+        ReflectionTestUtils.setField(smsService, "entityManager", entityManager);
+        Date from = new Date(0);
+        Date to = new Date();
+        Mockito.when(smsRequestRepository.streamByStatusAndCreatedAtBetween(StatusConstants.FAILED.ordinal(), from, to)).thenReturn(smsRequests.stream());
+
+        List<Long> streamed = new ArrayList<>();
+        long count = smsService.streamSmsRequests(StatusConstants.FAILED, from, to, smsRequest -> streamed.add(smsRequest.getId()));
+        assertEquals(1, count);
+        assertEquals(Arrays.asList(1L), streamed);
+        Mockito.verify(entityManager).detach(smsRequests.get(0));
+    }
+
+    @Test
+    void getSmsRequestsPage() {
+        // Mock
+        Date createdAt = new Date(1_700_000_000_000L);
+        List<SmsRequest> rows = Arrays.asList(
+                SmsRequest.builder().id(1L).createdAt(createdAt).build(),
+                SmsRequest.builder().id(2L).createdAt(createdAt).build(),
+                SmsRequest.builder().id(3L).createdAt(createdAt).build()
+        );
+        Mockito.when(smsRequestRepository.findPageByStatusAfter(StatusConstants.FAILED.ordinal(), KeysetCursor.START.getCreatedAt(), KeysetCursor.START.getId(), 3)).thenReturn(rows);
+        Mockito.when(smsRequestRepository.findPageByStatusAfter(StatusConstants.FAILED.ordinal(), createdAt, 2L, 3)).thenReturn(rows.subList(2, 3));
+
+        GetSmsPageResponse first = smsService.getSmsRequestsPage(StatusConstants.FAILED, null, 2);
+        assertEquals(2, first.getData().size());
+        assertNotNull(first.getNextCursor());
+
+        GetSmsPageResponse last = smsService.getSmsRequestsPage(StatusConstants.FAILED, first.getNextCursor(), 2);
+        assertEquals(1, last.getData().size());
+        assertEquals(3L, last.getData().get(0).getId());
+        assertNull(last.getNextCursor());
+
+        assertThrows(IllegalArgumentException.class, () -> smsService.getSmsRequestsPage(null, "not a cursor", 2));
+    }
+
+    @Test
+    void transition() {
+        // Mock
+        Mockito.when(smsRequestRepository.transition(Mockito.eq(1L), Mockito.eq(StatusConstants.IN_PROGRESS.ordinal()), Mockito.eq(StatusConstants.FINISHED.ordinal()),
+                Mockito.eq(FailureCodeConstants.SUCCESS.ordinal()), Mockito.eq("No Failure."), any())).thenReturn(1, 0);
+
+        StatusTransition statusTransition = StatusTransition.fromInProgress(1L, StatusConstants.FINISHED, FailureCodeConstants.SUCCESS, "No Failure.");
+        assertTrue(smsService.transition(statusTransition));
+        // Duplicate delivery: the row is no longer IN_PROGRESS
+        assertFalse(smsService.transition(statusTransition));
+        Mockito.verify(smsRequestRepository, Mockito.never()).findById(any());
+    }
+
+    @Test
+    void applyTransitions() {
+        // Mock
+        JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        SmsServiceImpl batchSmsService = new SmsServiceImpl(smsRequestRepository, smsRequestElasticsearchRepository, producer, null, Runnable::run, smsOutboxRepository, smsScheduleRepository, duplicateSuppressionServiceImpl, smsTemplateServiceImpl, jdbcTemplate, TransactionOperations.withoutTransaction());
+        Mockito.when(jdbcTemplate.batchUpdate(Mockito.anyString(), Mockito.<List<Object[]>>any())).thenReturn(new int[]{1, 0});
+
+        List<Boolean> applied = batchSmsService.applyTransitions(Arrays.asList(
+                StatusTransition.fromInProgress(1L, StatusConstants.FINISHED, FailureCodeConstants.SUCCESS, "No Failure."),
+                StatusTransition.fromInProgress(2L, StatusConstants.FAILED, FailureCodeConstants.BLACKLISTED_PHONE_NUMBER, "blacklisted")
+        ));
+        assertEquals(Arrays.asList(true, false), applied);
+        Mockito.verify(jdbcTemplate).batchUpdate(Mockito.startsWith("UPDATE sms_request"), Mockito.<List<Object[]>>argThat(args ->
+                args.size() == 2 && args.get(1)[0].equals(StatusConstants.FAILED.ordinal()) && args.get(1)[4].equals(2L)
+                        && args.get(1)[5].equals(StatusConstants.IN_PROGRESS.ordinal())));
+        Mockito.verifyNoInteractions(smsRequestRepository);
+    }
+
+    @Test
+    void createSmsRequests() {
+        // Mock
+        List<SmsRequest> persisted = new ArrayList<>();
+        persisted.add(SmsRequest.builder().id(1L).phoneNumber("+911111111111").message("a").build());
+        persisted.add(SmsRequest.builder().id(2L).phoneNumber("+911111111112").message("b").build());
+        Mockito.when(smsRequestRepository.saveAllAndFlush(any())).thenReturn(persisted);
+        Mockito.when(producer.publishBatch(persisted)).thenReturn(Arrays.asList(true, false));
+        Mockito.when(duplicateSuppressionServiceImpl.areDuplicates(any())).thenReturn(Arrays.asList(false, false));
+
+        List<SmsBatchItemResponse> results = smsService.createSmsRequests(Arrays.asList(
+                org.example.notificationsystem.dto.request.SmsRequest.builder().phoneNumber("+911111111111").message("a").build(),
+                org.example.notificationsystem.dto.request.SmsRequest.builder().phoneNumber("+911111111112").message("b").build()
+        ));
+        Mockito.verify(smsRequestElasticsearchRepository).saveAll(any());
+        assertEquals(2, results.size());
+        assertEquals("1", results.get(0).getRequestId());
+        assertNull(results.get(0).getError());
+        assertEquals("2", results.get(1).getRequestId());
+        assertNotNull(results.get(1).getError());
+    }
+
+    @Test
+    void createSmsRequestsDropsDuplicates() {
+        // Mock
+        List<SmsRequest> persisted = new ArrayList<>();
+        persisted.add(SmsRequest.builder().id(1L).phoneNumber("+911111111111").message("a").build());
+        Mockito.when(smsRequestRepository.saveAllAndFlush(any())).thenReturn(persisted);
+        Mockito.when(producer.publishBatch(persisted)).thenReturn(Arrays.asList(true));
+        Mockito.when(duplicateSuppressionServiceImpl.areDuplicates(any())).thenReturn(Arrays.asList(false, true));
+
+        List<SmsBatchItemResponse> results = smsService.createSmsRequests(Arrays.asList(
+                org.example.notificationsystem.dto.request.SmsRequest.builder().phoneNumber("+911111111111").message("a").build(),
+                org.example.notificationsystem.dto.request.SmsRequest.builder().phoneNumber("+911111111111").message("a").build()
+        ));
+        Mockito.verify(smsRequestRepository).saveAllAndFlush(Mockito.argThat(rows -> ((List<?>) rows).size() == 1));
+        assertEquals(2, results.size());
+        assertEquals("1", results.get(0).getRequestId());
+        assertNull(results.get(0).getError());
+        assertNull(results.get(1).getRequestId());
+        assertEquals(FailureCodeConstants.DUPLICATE_MESSAGE.name(), results.get(1).getError().getCode());
+    }
+
     @Test
     void getAllSmsRequests() {
         // Mock
@@ -75,6 +341,46 @@ class SmsServiceImplTest {
         assertEquals(smsRequests, smsService.getAllSmsRequests());
     }
 
+    @Test
+    void streamTemplatedSmsRequestsWithAColdTemplateCache() {
+        EntityManager entityManager = Mockito.mock(EntityManager.class);
+        SmsTemplateRepository smsTemplateRepository = Mockito.mock(SmsTemplateRepository.class);
+        SmsServiceImpl exportSmsService = new SmsServiceImpl(smsRequestRepository, smsRequestElasticsearchRepository, producer, null, Runnable::run, smsOutboxRepository,
+                smsScheduleRepository, duplicateSuppressionServiceImpl, new SmsTemplateServiceImpl(smsTemplateRepository), null, TransactionOperations.withoutTransaction());
+        ReflectionTestUtils.setField(exportSmsService, "entityManager", entityManager);
+        String body = "Your OTP is {{otp}}";
+        Mockito.when(smsTemplateRepository.findAll()).thenReturn(Collections.singletonList(SmsTemplate.builder().id(7L).name("otp").version(1).body(body).build()));
+        SmsRequest templated = SmsRequest.builder().id(2L).phoneNumber("+911111111111").templateId(7L)
+                .templateParams(CompiledTemplate.compile(body).encodeParams(Collections.singletonMap("otp", "1234"))).build();
+        Date from = new Date(0);
+        Date to = new Date();
+        Mockito.when(smsRequestRepository.streamByCreatedAtBetween(from, to)).thenReturn(Stream.of(templated));
+
+        List<String> streamed = new ArrayList<>();
+        assertEquals(1, exportSmsService.streamSmsRequests(null, from, to, smsRequest -> streamed.add(smsRequest.getMessage())));
+        assertEquals(Collections.singletonList("Your OTP is 1234"), streamed);
+        // The templates are loaded before the stream is opened, never on its busy connection
+        InOrder inOrder = Mockito.inOrder(smsTemplateRepository, smsRequestRepository);
+        inOrder.verify(smsTemplateRepository).findAll();
+        inOrder.verify(smsRequestRepository).streamByCreatedAtBetween(from, to);
+        Mockito.verify(smsTemplateRepository, Mockito.never()).findById(any());
+    }
+
+    @Test
+    void getTemplatedSmsRequestRendersItsText() {
+        SmsRequest templated = SmsRequest.builder().id(2L).phoneNumber("+911111111111").templateId(7L).templateParams("1234").build();
+        Mockito.when(smsRequestRepository.findById(2L)).thenReturn(Optional.of(templated));
+        Mockito.when(smsTemplateServiceImpl.textOf(templated)).thenReturn("Your OTP is 1234");
+        EntityManager entityManager = Mockito.mock(EntityManager.class);
+        ReflectionTestUtils.setField(smsService, "entityManager", entityManager);
+
+        Optional<SmsRequest> smsRequest = smsService.getSmsRequest(2L);
+        assertTrue(smsRequest.isPresent());
+        assertEquals("Your OTP is 1234", smsRequest.get().getMessage());
+        // Detached first, so that the rendered text is never written back to the row
+        Mockito.verify(entityManager).detach(templated);
+    }
+
     @Test
     void getSmsRequests() {
         // Mock
@@ -0,0 +1,60 @@
+package org.example.notificationsystem;
+
+import org.example.notificationsystem.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnowflakeIdGeneratorTest {
+
+    @Test
+    void nextIdIsIncreasingAndCarriesNodeAndTime() {
+        SnowflakeIdGenerator generator = SnowflakeIdGenerator.forNode(7);
+        long before = System.currentTimeMillis();
+        long previous = 0;
+        for (int i = 0; i < 10000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            assertEquals(7, SnowflakeIdGenerator.nodeOf(id));
+            previous = id;
+        }
+        assertTrue(SnowflakeIdGenerator.timestampOf(previous) >= before);
+    }
+
+    @Test
+    void nextIdsReservesUniqueIncreasingBlock() {
+        SnowflakeIdGenerator generator = SnowflakeIdGenerator.forNode(8);
+        long first = generator.nextId();
+        long[] ids = generator.nextIds(5000);
+        Set<Long> unique = new HashSet<>();
+        long previous = first;
+        for (long id : ids) {
+            assertTrue(id > previous);
+            assertTrue(unique.add(id));
+            previous = id;
+        }
+        assertTrue(generator.nextId() > ids[ids.length - 1]);
+    }
+
+    @Test
+    void nodesHaveDisjointIds() {
+        assertSame(SnowflakeIdGenerator.forNode(9), SnowflakeIdGenerator.forNode(9));
+        long[] a = SnowflakeIdGenerator.forNode(10).nextIds(1000);
+        long[] b = SnowflakeIdGenerator.forNode(11).nextIds(1000);
+        Set<Long> unique = new HashSet<>();
+        for (long id : a) unique.add(id);
+        for (long id : b) assertTrue(unique.add(id));
+        assertThrows(IllegalArgumentException.class, () -> SnowflakeIdGenerator.forNode(SnowflakeIdGenerator.MAX_NODE_ID + 1));
+    }
+
+    @Test
+    void anUnsetNodeIdIsRefusedOnlyWithSeveralNodes() {
+        assertSame(SnowflakeIdGenerator.forNode(0), SnowflakeIdGenerator.forConfiguredNode("", false));
+        assertSame(SnowflakeIdGenerator.forNode(12), SnowflakeIdGenerator.forConfiguredNode(" 12 ", true));
+        assertThrows(IllegalStateException.class, () -> SnowflakeIdGenerator.forConfiguredNode(null, true));
+        assertThrows(IllegalStateException.class, () -> SnowflakeIdGenerator.forConfiguredNode(" ", true));
+    }
+}
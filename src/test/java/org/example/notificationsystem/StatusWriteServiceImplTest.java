@@ -0,0 +1,101 @@
+package org.example.notificationsystem;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.notificationsystem.constants.FailureCodeConstants;
+import org.example.notificationsystem.constants.StatusConstants;
+import org.example.notificationsystem.models.StatusTransition;
+import org.example.notificationsystem.services.impl.SmsServiceImpl;
+import org.example.notificationsystem.services.impl.StatusWriteServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+
+@ExtendWith(MockitoExtension.class)
+class StatusWriteServiceImplTest {
+
+    @Mock
+    private SmsServiceImpl smsServiceImpl;
+
+    private StatusWriteServiceImpl statusWriteService;
+
+    @BeforeEach
+    void setUp() {
+        statusWriteService = new StatusWriteServiceImpl(smsServiceImpl, new SimpleMeterRegistry());
+        // The flusher thread is not started, the tests flush explicitly
+        ReflectionTestUtils.setField(statusWriteService, "enabled", true);
+        ReflectionTestUtils.setField(statusWriteService, "batchSize", 100);
+        ReflectionTestUtils.setField(statusWriteService, "capacity", 100);
+        ReflectionTestUtils.setField(statusWriteService, "retryBackoffMs", 1L);
+        ReflectionTestUtils.setField(statusWriteService, "maxRetries", 2);
+    }
+
+    @Test
+    void coalescesChainedTransitionsOfTheSameRequest() {
+        Mockito.when(smsServiceImpl.applyTransitions(any())).thenReturn(Arrays.asList(true, false));
+
+        CompletableFuture<Boolean> first = statusWriteService.submit(StatusTransition.fromInProgress(1L, StatusConstants.FAILED, FailureCodeConstants.EXTERNAL_API_TIMEOUT, "timeout"));
+        CompletableFuture<Boolean> other = statusWriteService.submit(StatusTransition.fromInProgress(2L, StatusConstants.FINISHED, FailureCodeConstants.SUCCESS, "No Failure."));
+        CompletableFuture<Boolean> second = statusWriteService.submit(new StatusTransition(1L, StatusConstants.FAILED, StatusConstants.FINISHED, FailureCodeConstants.SUCCESS, "No Failure."));
+        assertFalse(first.isDone());
+
+        statusWriteService.flush();
+
+        Mockito.verify(smsServiceImpl).applyTransitions(Mockito.<List<StatusTransition>>argThat(batch -> batch.size() == 2
+                && batch.get(0).getSmsRequestId().equals(1L)
+                && batch.get(0).getStatus() == StatusConstants.FINISHED
+                && batch.get(0).getExpectedStatus() == StatusConstants.IN_PROGRESS));
+        assertTrue(first.join());
+        assertTrue(second.join());
+        assertFalse(other.join());
+    }
+
+    @Test
+    void rejectsAStaleTransitionOfABufferedRequest() {
+        Mockito.when(smsServiceImpl.applyTransitions(any())).thenReturn(Arrays.asList(true));
+
+        CompletableFuture<Boolean> first = statusWriteService.submit(StatusTransition.fromInProgress(1L, StatusConstants.FAILED, FailureCodeConstants.EXTERNAL_API_TIMEOUT, "timeout"));
+        CompletableFuture<Boolean> stale = statusWriteService.submit(StatusTransition.fromInProgress(1L, StatusConstants.FINISHED, FailureCodeConstants.SUCCESS, "No Failure."));
+        assertFalse(stale.join());
+
+        statusWriteService.flush();
+
+        Mockito.verify(smsServiceImpl).applyTransitions(Mockito.<List<StatusTransition>>argThat(batch -> batch.size() == 1
+                && batch.get(0).getStatus() == StatusConstants.FAILED));
+        assertTrue(first.join());
+    }
+
+    @Test
+    void failsTheCallersOnceTheRetriesAreExhausted() {
+        Mockito.when(smsServiceImpl.applyTransitions(any())).thenThrow(new RuntimeException("MySQL down"));
+
+        CompletableFuture<Boolean> future = statusWriteService.submit(StatusTransition.fromInProgress(1L, StatusConstants.FINISHED, FailureCodeConstants.SUCCESS, "No Failure."));
+        statusWriteService.flush();
+
+        assertTrue(future.isCompletedExceptionally());
+        Mockito.verify(smsServiceImpl, Mockito.times(3)).applyTransitions(any());
+    }
+
+    @Test
+    void completesOnlyOnceTheWriteSucceeded() {
+        Mockito.when(smsServiceImpl.applyTransitions(any()))
+                .thenThrow(new RuntimeException("MySQL down"))
+                .thenReturn(Arrays.asList(true));
+
+        CompletableFuture<Boolean> future = statusWriteService.submit(StatusTransition.fromInProgress(1L, StatusConstants.FINISHED, FailureCodeConstants.SUCCESS, "No Failure."));
+        statusWriteService.flush();
+
+        assertTrue(future.join());
+        Mockito.verify(smsServiceImpl, Mockito.times(2)).applyTransitions(any());
+    }
+}
@@ -0,0 +1,113 @@
+package org.example.notificationsystem;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Local HTTP stand-in of an SMS gateway, with a configurable latency, status code and response body.
+ */
+class StubSmsProvider implements AutoCloseable {
+
+    static {
+        // Without TCP_NODELAY, small responses wait for the delayed ACK of the client and every call looks ~40 ms slower
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final AtomicLong latencyMs = new AtomicLong(0);
+    private final AtomicReference<AtomicLong> virtualClockNanos = new AtomicReference<>();
+    private final AtomicInteger status = new AtomicInteger(200);
+    private final AtomicReference<String> responseBody = new AtomicReference<>("{\"status\":\"accepted\"}");
+    private final AtomicReference<String> lastBody = new AtomicReference<>();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    StubSmsProvider() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/messaging", exchange -> {
+            requests.incrementAndGet();
+            lastBody.set(readAll(exchange.getRequestBody()));
+            AtomicLong clock = virtualClockNanos.get();
+            if (clock != null) {
+                clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(latencyMs.get()));
+            } else {
+                sleep(latencyMs.get());
+            }
+            byte[] response = responseBody.get().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status.get(), response.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(response);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/messaging";
+    }
+
+    StubSmsProvider latencyMs(long latencyMs) {
+        this.latencyMs.set(latencyMs);
+        return this;
+    }
+
+    /**
+     * Adds the latency to a virtual clock instead of sleeping, for callers that time the calls with it.
+     */
+    StubSmsProvider virtualLatencyMs(AtomicLong clockNanos, long latencyMs) {
+        this.virtualClockNanos.set(clockNanos);
+        return latencyMs(latencyMs);
+    }
+
+    StubSmsProvider status(int status) {
+        this.status.set(status);
+        return this;
+    }
+
+    StubSmsProvider responseBody(String responseBody) {
+        this.responseBody.set(responseBody);
+        return this;
+    }
+
+    String getLastBody() {
+        return lastBody.get();
+    }
+
+    int getRequests() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
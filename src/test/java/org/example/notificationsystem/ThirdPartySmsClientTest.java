@@ -0,0 +1,84 @@
+package org.example.notificationsystem;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.notificationsystem.constants.ThirdPartyApiResponseCode;
+import org.example.notificationsystem.dto.request.ThirdPartySmsApiRequest;
+import org.example.notificationsystem.provider.ProviderGuardProperties;
+import org.example.notificationsystem.provider.ProviderResponse;
+import org.example.notificationsystem.provider.ThirdPartySmsClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThirdPartySmsClientTest {
+
+    private StubSmsProvider provider;
+    private SimpleMeterRegistry meterRegistry;
+    private ThirdPartySmsClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        provider = new StubSmsProvider();
+        meterRegistry = new SimpleMeterRegistry();
+        client = new ThirdPartySmsClient("test", new ObjectMapper(), meterRegistry, new ProviderGuardProperties(),
+                provider.getUrl(), 4, 1000, 1000, 30000, false);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        client.close();
+        provider.close();
+    }
+
+    @Test
+    void reusesPooledConnections() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(ThirdPartyApiResponseCode.SUCCESS, client.send(request("hello")));
+        }
+
+        assertTrue(provider.getLastBody().contains("\"text\":\"hello\""));
+        assertEquals(1.0, meterRegistry.get("sms.provider.connections.opened").counter().count());
+        assertEquals(0.0, meterRegistry.get("sms.provider.connections").tag("state", "leased").gauge().value());
+        assertEquals(5, meterRegistry.get("sms.provider.request").tag("outcome", "SUCCESS").timer().count());
+    }
+
+    @Test
+    void mapsNon200ResponsesToApiError() {
+        provider.status(500);
+
+        assertEquals(ThirdPartyApiResponseCode.API_ERROR, client.send(request("hello")));
+        assertEquals(0.0, meterRegistry.get("sms.provider.connections").tag("state", "leased").gauge().value());
+    }
+
+    @Test
+    void readsPerDestinationResults() {
+        provider.responseBody("{\"results\":[{\"correlationId\":\"c-1\",\"status\":\"ACCEPTED\"},{\"correlationId\":\"c-2\",\"status\":\"rejected\"}]}");
+
+        ProviderResponse response = client.exchange(request("hello"));
+
+        assertEquals(ThirdPartyApiResponseCode.SUCCESS, response.getResponseCode());
+        assertEquals(ThirdPartyApiResponseCode.SUCCESS, response.resultOf("c-1"));
+        assertEquals(ThirdPartyApiResponseCode.API_ERROR, response.resultOf("c-2"));
+        assertEquals(ThirdPartyApiResponseCode.SUCCESS, response.resultOf("c-3"));
+    }
+
+    @Test
+    void rejectsMalformedUrl() {
+        ThirdPartySmsClient malformed = new ThirdPartySmsClient("malformed", new ObjectMapper(), new SimpleMeterRegistry(), new ProviderGuardProperties(),
+                "http://bad host/messaging", 1, 1000, 1000, 30000, false);
+
+        assertEquals(ThirdPartyApiResponseCode.MALFORMED_URL, malformed.send(request("hello")));
+    }
+
+    static List<ThirdPartySmsApiRequest> request(String text) {
+        return Collections.singletonList(ThirdPartySmsClient.smsRequest(text,
+                Collections.singletonList(ThirdPartySmsClient.destination("+919999999999", "c-1"))));
+    }
+}
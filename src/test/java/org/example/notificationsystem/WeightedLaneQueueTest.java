@@ -0,0 +1,68 @@
+package org.example.notificationsystem;
+
+import org.example.notificationsystem.constants.PriorityConstants;
+import org.example.notificationsystem.utils.WeightedLaneQueue;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WeightedLaneQueueTest {
+
+    private final WeightedLaneQueue<PriorityConstants, String> queue = new WeightedLaneQueue<>(weights());
+
+    private static Map<PriorityConstants, Integer> weights() {
+        Map<PriorityConstants, Integer> weights = new EnumMap<>(PriorityConstants.class);
+        weights.put(PriorityConstants.HIGH, 8);
+        weights.put(PriorityConstants.NORMAL, 3);
+        weights.put(PriorityConstants.BULK, 1);
+        return weights;
+    }
+
+    @Test
+    void servesTheLanesByWeightWithoutStarvingBulk() {
+        for (int i = 0; i < 1000; i++) {
+            queue.add(PriorityConstants.BULK, "bulk");
+            queue.add(PriorityConstants.HIGH, "otp");
+            queue.add(PriorityConstants.NORMAL, "normal");
+        }
+
+        Map<String, Integer> served = new HashMap<>();
+        for (int i = 0; i < 120; i++) {
+            served.merge(queue.poll(), 1, Integer::sum);
+        }
+
+        assertEquals(80, served.get("otp"));
+        assertEquals(30, served.get("normal"));
+        assertEquals(10, served.get("bulk"));
+    }
+
+    @Test
+    void skipsEmptyLanes() {
+        queue.add(PriorityConstants.BULK, "bulk-1");
+        queue.add(PriorityConstants.BULK, "bulk-2");
+        queue.add(PriorityConstants.HIGH, "otp");
+
+        assertEquals("otp", queue.poll());
+        assertEquals("bulk-1", queue.poll());
+        assertEquals("bulk-2", queue.poll());
+        assertNull(queue.poll());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void removesTheMatchingItemsInOrder() {
+        queue.add(PriorityConstants.BULK, "p0-bulk");
+        queue.add(PriorityConstants.HIGH, "p1-otp");
+        queue.add(PriorityConstants.HIGH, "p0-otp");
+
+        assertEquals(Arrays.asList("p0-otp", "p0-bulk"), queue.removeIf(item -> item.startsWith("p0")));
+        assertEquals(1, queue.size());
+        assertEquals("p1-otp", queue.poll());
+        assertNull(queue.poll());
+    }
+}